@@ -0,0 +1,82 @@
+package uk.ac.ncl.benchmarks;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.traversal.Traverser;
+import uk.ac.ncl.Settings;
+import uk.ac.ncl.core.Context;
+import uk.ac.ncl.core.GraphOps;
+import uk.ac.ncl.structure.Pair;
+import uk.ac.ncl.structure.Template;
+import uk.ac.ncl.utils.IO;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Opens one of the bundled datasets and samples templates for the most frequent
+ * target relationship, the same way generalization does.
+ */
+class GraphFixture {
+    final GraphDatabaseService graph;
+    final String target;
+    final Set<Pair> trainPairs;
+    final Set<Pair> validPairs;
+    final Set<Pair> testPairs;
+    final boolean functional;
+
+    GraphFixture(String home) {
+        Settings.VERBOSITY = 0;
+        File data = new File(home, "data");
+        target = mostFrequentTarget(new File(data, "annotated_train.txt"));
+        Settings.TARGET = target;
+
+        graph = IO.loadGraph(new File(home, "databases/graph.db"));
+        trainPairs = IO.readPair(graph, new File(data, "annotated_train.txt"), target);
+        validPairs = IO.readPair(graph, new File(data, "annotated_valid.txt"), target);
+        testPairs = IO.readPair(graph, new File(data, "annotated_test.txt"), target);
+        functional = IO.isTargetFunctional(trainPairs);
+    }
+
+    /**
+     * Samples distinct templates from paths around random training pairs.
+     */
+    List<Template> sampleTemplates(int count, long seed) {
+        Random rand = new Random(seed);
+        List<Pair> pairs = new ArrayList<>(trainPairs);
+        pairs.sort(Comparator.comparingLong((Pair p) -> p.subId).thenComparingLong(p -> p.objId));
+        Set<Template> templates = new LinkedHashSet<>();
+        try(Transaction tx = graph.beginTx()) {
+            for (int attempt = 0; attempt < count * 20 && templates.size() < count; attempt++) {
+                Pair pair = pairs.get(rand.nextInt(pairs.size()));
+                Traverser traverser = GraphOps.buildStandardTraverser(graph, pair, Settings.RANDOM_WALKERS);
+                for (Path path : traverser) {
+                    templates.add((Template) Context.createTemplate(path, pair));
+                    if(templates.size() >= count) break;
+                }
+            }
+            tx.success();
+        }
+        return new ArrayList<>(templates);
+    }
+
+    void close() {
+        graph.shutdown();
+    }
+
+    private static String mostFrequentTarget(File trainFile) {
+        try {
+            Map<String, Long> counts = Files.lines(trainFile.toPath())
+                    .map(line -> line.split("\t")[2])
+                    .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+            return Collections.max(counts.entrySet(), Map.Entry.comparingByValue()).getKey();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read " + trainFile, e);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package uk.ac.ncl.benchmarks;
+
+import org.neo4j.graphdb.Transaction;
+import org.openjdk.jmh.annotations.*;
+import uk.ac.ncl.Settings;
+import uk.ac.ncl.core.GraphOps;
+import uk.ac.ncl.graph.InMemoryGraph;
+import uk.ac.ncl.structure.Template;
+import uk.ac.ncl.structure.TripleSet;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Grounds the same closed templates with the Neo4j core API and with the in-memory graph.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8G"})
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class GroundingBenchmark {
+    @Param({"data/UWCSE", "data/WN18RR-LV"})
+    public String home;
+
+    private GraphFixture fixture;
+    private InMemoryGraph inMemoryGraph;
+    private List<Template> templates;
+
+    @Setup
+    public void setup() {
+        fixture = new GraphFixture(home);
+        templates = fixture.sampleTemplates(200, 42).stream()
+                .filter(Template::isClosed).limit(20).collect(Collectors.toList());
+        inMemoryGraph = new InMemoryGraph(fixture.graph
+                , new TripleSet(fixture.trainPairs, fixture.validPairs, fixture.testPairs), Settings.DEPTH);
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public long neo4jGrounding() {
+        long groundings = 0;
+        try(Transaction tx = fixture.graph.beginTx()) {
+            for (Template template : templates)
+                groundings += GraphOps.bodyGroundingCoreAPI(fixture.graph, template, true, () -> false).size();
+            tx.success();
+        }
+        return groundings;
+    }
+
+    @Benchmark
+    public long inMemoryGrounding() {
+        long groundings = 0;
+        for (Template template : templates)
+            groundings += inMemoryGraph.groundRules(template).size();
+        return groundings;
+    }
+}
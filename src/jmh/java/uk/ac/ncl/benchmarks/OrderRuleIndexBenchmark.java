@@ -0,0 +1,81 @@
+package uk.ac.ncl.benchmarks;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+import uk.ac.ncl.utils.IO;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Orders a synthetic rule index file with a mix of closed and open templates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class OrderRuleIndexBenchmark {
+    @Param({"1000", "20000"})
+    public int templates;
+
+    @Param({"50"})
+    public int insRulesPerTemplate;
+
+    private File source;
+    private File target;
+
+    @Setup
+    public void setup() throws IOException {
+        source = File.createTempFile("rule_index", ".txt");
+        target = File.createTempFile("rule_index_ordered", ".txt");
+        Random rand = new Random(5);
+        try(PrintWriter writer = new PrintWriter(source)) {
+            for (int i = 0; i < templates; i++) {
+                String measures = measures(rand);
+                if(i % 4 == 0) {
+                    writer.println("ABS: " + i + "\tCAR\tR(X,Y) <- P(X,V0,0), Q(V0,Y,0)\t" + measures);
+                } else {
+                    writer.println("ABS: " + i + "\tOAR\tR(X,Y) <- P(X,V0,0)\t" + measures);
+                    StringBuilder insRules = new StringBuilder();
+                    for (int j = 0; j < insRulesPerTemplate; j++) {
+                        if(j != 0) insRules.append("\t");
+                        insRules.append(j % 2 == 0 ? "0," + j + "," : "2," + j + "," + (j + 1) + ",")
+                                .append(measures(rand).replace("\t", ","));
+                    }
+                    writer.println(insRules);
+                }
+            }
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void copy() throws IOException {
+        FileUtils.copyFile(source, target);
+    }
+
+    @TearDown
+    public void tearDown() {
+        FileUtils.deleteQuietly(source);
+        FileUtils.deleteQuietly(target);
+    }
+
+    @Benchmark
+    public long orderRuleIndexFile() {
+        IO.orderRuleIndexFile(target);
+        return target.length();
+    }
+
+    private static String measures(Random rand) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 6; i++) {
+            if(i != 0) builder.append("\t");
+            builder.append(String.format("%.5f", rand.nextDouble()));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,82 @@
+package uk.ac.ncl.benchmarks;
+
+import com.google.common.collect.Multimap;
+import com.google.common.collect.MultimapBuilder;
+import org.openjdk.jmh.annotations.*;
+import uk.ac.ncl.core.Context;
+import uk.ac.ncl.core.Evaluator;
+import uk.ac.ncl.structure.Atom;
+import uk.ac.ncl.structure.Pair;
+import uk.ac.ncl.structure.RankingEngine;
+import uk.ac.ncl.structure.Rule;
+import uk.ac.ncl.structure.Template;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ranks the candidates of a single query by their rule quality vectors.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class RankingBenchmark {
+    @Param({"100", "10000"})
+    public int candidates;
+
+    /**
+     * Number of distinct rule qualities; fewer levels produce more ties.
+     */
+    @Param({"5", "100"})
+    public int levels;
+
+    private List<Pair> answers;
+    private Multimap<Pair, Rule> ruleMap;
+    private RankingEvaluator evaluator;
+
+    @Setup
+    public void setup() {
+        Random rand = new Random(3);
+        List<Rule> rules = new ArrayList<>();
+        for (int i = 0; i < levels; i++) {
+            Rule rule = new Template(new Atom("R(X,Y)", true), Collections.singletonList(new Atom("P" + i + "(X,Y,0)", false)));
+            rule.setStats(1 + i, levels + 1, levels + 1);
+            rules.add(rule);
+        }
+
+        answers = new ArrayList<>();
+        ruleMap = MultimapBuilder.hashKeys().hashSetValues().build();
+        for (int i = 0; i < candidates; i++) {
+            Pair pair = new Pair(0, i + 1);
+            answers.add(pair);
+            int size = 1 + rand.nextInt(Math.min(levels, 20));
+            for (int j = 0; j < size; j++)
+                ruleMap.put(pair, rules.get(rand.nextInt(levels)));
+        }
+        evaluator = new RankingEvaluator();
+    }
+
+    @Benchmark
+    public List<Pair> rankCandidates() {
+        return evaluator.rank(answers, ruleMap).top(10);
+    }
+
+    private static class RankingEvaluator extends Evaluator {
+        RankingEvaluator() {
+            super(Collections.emptySet(), Collections.emptySet(), emptyContext(), null, null, null);
+        }
+
+        RankingEngine<Pair> rank(Collection<Pair> answers, Multimap<Pair, Rule> ruleMap) {
+            return rankCandidates(answers, ruleMap, answers.iterator().next());
+        }
+
+        private static Context emptyContext() {
+            Context context = new Context();
+            context.initPredictionMap();
+            return context;
+        }
+    }
+}
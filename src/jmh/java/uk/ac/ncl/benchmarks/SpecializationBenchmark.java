@@ -0,0 +1,102 @@
+package uk.ac.ncl.benchmarks;
+
+import org.apache.commons.io.FileUtils;
+import org.neo4j.graphdb.Transaction;
+import org.openjdk.jmh.annotations.*;
+import uk.ac.ncl.Settings;
+import uk.ac.ncl.core.Context;
+import uk.ac.ncl.graph.Neo4jGraphAccess;
+import uk.ac.ncl.structure.*;
+import uk.ac.ncl.utils.RuleIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Specializes a fixed sample of templates of one length on UWCSE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8G"})
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SpecializationBenchmark {
+    @Param({"data/UWCSE"})
+    public String home;
+
+    @Param({"1", "2", "3"})
+    public int length;
+
+    private GraphFixture fixture;
+    private File indexFile;
+    private List<Template> templates;
+    private Context context;
+    private LongPairSet trainSet, validSet;
+    private LongMultimap objOriginalMap, subOriginalMap, validObjToSub, validSubToObj;
+
+    @Setup
+    public void setup() throws IOException {
+        fixture = new GraphFixture(home);
+        indexFile = File.createTempFile("rule_index", RuleIndex.extension());
+        templates = fixture.sampleTemplates(500, 7).stream()
+                .filter(t -> t.length() == length).limit(10).collect(Collectors.toList());
+
+        trainSet = new LongPairSet(fixture.trainPairs);
+        validSet = new LongPairSet(fixture.validPairs);
+        objOriginalMap = new LongMultimap();
+        subOriginalMap = new LongMultimap();
+        validObjToSub = new LongMultimap();
+        validSubToObj = new LongMultimap();
+        for (Pair pair : fixture.trainPairs) {
+            objOriginalMap.put(pair.objId, pair.subId);
+            subOriginalMap.put(pair.subId, pair.objId);
+        }
+        for (Pair pair : fixture.validPairs) {
+            validObjToSub.put(pair.objId, pair.subId);
+            validSubToObj.put(pair.subId, pair.objId);
+        }
+        objOriginalMap.freeze();
+        subOriginalMap.freeze();
+        validObjToSub.freeze();
+        validSubToObj.freeze();
+    }
+
+    /**
+     * A fresh context per invocation, as the time and rule caps of a spent context would
+     * stop specialization right away.
+     */
+    @Setup(Level.Invocation)
+    public void resetContext() {
+        context = new Context(fixture.target, fixture.functional, Settings.THREAD_NUMBER);
+        templates.forEach(context::updateFreqAndIndex);
+        context.setSpecStartTime(System.currentTimeMillis());
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.close();
+        FileUtils.deleteQuietly(indexFile);
+    }
+
+    @Benchmark
+    public int specialization() throws InterruptedException {
+        BlockingQueue<String> ruleFileContents = new LinkedBlockingDeque<>();
+        try(Transaction tx = fixture.graph.beginTx();
+            RuleIndex.Writer indexWriter = RuleIndex.Writer.open(indexFile, false)) {
+            for (Template template : templates) {
+                template.specialization(Neo4jGraphAccess.of(fixture.graph), trainSet, validSet
+                        , template.isFromSubject() ? objOriginalMap : subOriginalMap
+                        , template.isFromSubject() ? validObjToSub : validSubToObj
+                        , context, ruleFileContents, indexWriter);
+            }
+            tx.success();
+        }
+        return ruleFileContents.size();
+    }
+}
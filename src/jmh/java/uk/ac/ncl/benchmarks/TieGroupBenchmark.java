@@ -0,0 +1,57 @@
+package uk.ac.ncl.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import uk.ac.ncl.structure.Pair;
+import uk.ac.ncl.structure.RankingEngine;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds overlapping candidate sets into a RankingEngine in descending rule quality,
+ * reading the ranking after each rule as TestQuery does for each applied rule.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class TieGroupBenchmark {
+    @Param({"100", "1000"})
+    public int rules;
+
+    @Param({"1000"})
+    public int candidates;
+
+    private List<Set<Pair>> batches;
+    private double[] qualities;
+
+    @Setup
+    public void setup() {
+        Random rand = new Random(11);
+        batches = new ArrayList<>();
+        for (int i = 0; i < rules; i++) {
+            Set<Pair> batch = new HashSet<>();
+            int size = 1 + rand.nextInt(50);
+            for (int j = 0; j < size; j++)
+                batch.add(new Pair(0, rand.nextInt(candidates)));
+            batches.add(batch);
+        }
+        qualities = new double[rules];
+        for (int i = 0; i < rules; i++)
+            qualities[i] = 1 - (double) (i / 4) / rules;
+    }
+
+    @Benchmark
+    public int add() {
+        RankingEngine<Pair> ranking = new RankingEngine<>();
+        Pair focus = batches.get(0).iterator().next();
+        ranking.focus(focus);
+        for (int i = 0; i < batches.size(); i++) {
+            ranking.add(batches.get(i), qualities[i]);
+            ranking.tieGroup(focus);
+        }
+        return ranking.rankedAbove(focus);
+    }
+}
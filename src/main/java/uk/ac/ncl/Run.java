@@ -2,6 +2,7 @@ package uk.ac.ncl;
 
 import uk.ac.ncl.core.Engine;
 import uk.ac.ncl.core.Evaluator;
+import uk.ac.ncl.graph.GraphSnapshot;
 import uk.ac.ncl.model.GPFL;
 import uk.ac.ncl.model.GenSpec;
 import uk.ac.ncl.utils.Helpers;
@@ -25,6 +26,9 @@ public class Run {
         options.addOption(Option.builder("bg").longOpt("buildGraph")
                 .desc("Build a Neo4j graph database from training/validation/test triple files.").build());
 
+        options.addOption(Option.builder("xg").longOpt("exportGraph")
+                .desc("Export the Neo4j graph database to a binary snapshot used by GenSpec instead of Neo4j where possible.").build());
+
         options.addOption(Option.builder("sg").longOpt("splitGraph")
                 .desc("Create training/test/validation splits from a graph database.").build());
 
@@ -118,6 +122,9 @@ public class Run {
                 String home = jsonArgs.getString("home");
 
                 if(cmd.hasOption("gs")) {
+                    if(cmd.hasOption("xg"))
+                        GraphSnapshot.export(new File(home, "databases/graph.db"), new File(home, "databases/graph.csr"));
+
                     if(cmd.hasOption("r")) {
                         GenSpec system = new GenSpec(config);
                         system.run();
@@ -149,6 +156,9 @@ public class Run {
                     if (cmd.hasOption("sg"))
                         Engine.createRandomSplitsFromGraph(config).shutdown();
 
+                    if (cmd.hasOption("xg"))
+                        GraphSnapshot.export(new File(home, "databases/graph.db"), new File(home, "databases/graph.csr"));
+
                     if (cmd.hasOption("sf"))
                         Engine.createRandomSplitsFromFiles(config);
 
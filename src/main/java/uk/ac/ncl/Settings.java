@@ -59,8 +59,6 @@ public class Settings {
      */
     public static String EVAL_PROTOCOL = "TransE";
 
-    public static int MAX_RECURSION_DEPTH = 1000;
-
     /**
      *  Select which rule quality measure to use from:
      *  smoothedConf
@@ -87,6 +85,37 @@ public class Settings {
      */
     public static int APPLY_GROUNDINGS = Integer.MAX_VALUE;
 
+    /**
+     * Number of first-atom relationships per parallel range when grounding a rule
+     * inside the specialization pool. When = 0, rules are grounded by one thread.
+     */
+    public static int GROUNDING_RANGE = 0;
+
+    /**
+     * If true, rules are applied top-down from the entities of test queries, and only
+     * predictions that can answer a test query are materialized.
+     */
+    public static boolean QUERY_DRIVEN = false;
+
+    /**
+     * If true, rule application stops once the top {@link #TOP_K} answers of every test
+     * query, ranked by the max quality of their rules, cannot change any more. Rules left
+     * out can still break ties between answers. Requires a binary rule index.
+     */
+    public static boolean EARLY_STOP = false;
+
+    /**
+     * If true, GPFL learns and applies rules on a graph loaded from data/train.txt,
+     * valid.txt and test.txt instead of the Neo4j database, and no database is needed.
+     * Rules learned this way can only be applied in this mode.
+     */
+    public static boolean NATIVE_GRAPH = false;
+
+    /**
+     * Format of rule index files: "binary" (columnar, memory-mapped when read) or "text".
+     */
+    public static String RULE_INDEX_FORMAT = "binary";
+
     /**
      * Standard confidence threshold.
      */
@@ -125,6 +154,18 @@ public class Settings {
      */
     public static int THREAD_NUMBER = 4;
 
+    /**
+     * Number of targets GPFL learns and applies rules for at the same time. The threads
+     * of {@link #THREAD_NUMBER} are split between them.
+     */
+    public static int PARALLEL_TARGETS = 1;
+
+    /**
+     * Fraction of the max JVM heap in use above which GPFL starts no further target while
+     * another one is running.
+     */
+    public static double MEMORY_BUDGET = 0.75;
+
     /**
      * Logging and debugging print priority.
      * = 1, print only timer and memory usage
@@ -180,11 +221,10 @@ public class Settings {
     public static boolean RULE_GRAPH = false;
 
     /**
-     * Legacy setting. Now serve as a static variable storing current learning target.
+     * Legacy setting. Now serve as a static variable storing current learning target of
+     * the models that process targets one at a time. GPFL keeps the target in its Context.
      */
     public static String TARGET = null;
 
-    public static boolean TARGET_FUNCTIONAL = false;
-
     //###############End#################
 }
@@ -16,30 +16,115 @@ import java.text.MessageFormat;
 import java.text.NumberFormat;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * State of learning and applying rules for one target. Targets processed at the same time
+ * each have their own context, so nothing here may be shared between targets.
+ */
 public class Context {
-    private static BiMap<Integer, Rule> indexRule = HashBiMap.create();
+    private final String target;
+    private final boolean functional;
+    private final int threads;
+
+    private long specStartTime = 0;
+    private long genStartTime = 0;
+    private long essentialStartTime = 0;
+
+    private BiMap<Integer, Rule> indexRule = HashBiMap.create();
     public Map<Rule, Integer> ruleFrequency = new HashMap<>();
 
     private List<Rule> refinedRules = new ArrayList<>();
     private List<Rule> specializedRules = new ArrayList<>();
     private List<Rule> appliedRules = new ArrayList<>();
-    private ConcurrentHashMap<Pair, List<Rule>> predictionMap;
+    private ConcurrentHashMap<Pair, TopRules> predictionMap;
+    private AtomicInteger predictionCount = new AtomicInteger();
 
-    private static int index = 0;
+    private int index = 0;
     private int totalInsRules = 0;
     private int essentialRules = 0;
 
+    private LongSet queryHeads;
+    private LongSet queryTails;
+
+    private Map<Long, QueryTracker> headTrackers;
+    private Map<Long, QueryTracker> tailTrackers;
+    private List<QueryTracker> trackers;
+    private LongPairSet knownPairs;
+    private int settledTrackers = 0;
+    private double settledBound = Double.MAX_VALUE;
+    private AtomicInteger skippedTemplates = new AtomicInteger();
+
+    /**
+     * Context of the current {@link Settings#TARGET}, for models that process targets one at a time.
+     */
+    public Context() {
+        this(Settings.TARGET, false, Settings.THREAD_NUMBER);
+    }
+
+    /**
+     * @param functional if true, the apcaConf of the rules of the target is their pcaConf.
+     * @param threads number of threads each step of the target may use.
+     */
+    public Context(String target, boolean functional, int threads) {
+        this.target = target;
+        this.functional = functional;
+        this.threads = Math.max(1, threads);
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public boolean isFunctional() {
+        return functional;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setSpecStartTime(long specStartTime) {
+        this.specStartTime = specStartTime;
+    }
+
+    public boolean stopSpec() {
+        if(Settings.SPEC_TIME == 0)
+            return false;
+        return ((double) (System.currentTimeMillis() - specStartTime) / 1000d) > Settings.SPEC_TIME;
+    }
+
+    public void setGenStartTime(long genStartTime) {
+        this.genStartTime = genStartTime;
+    }
+
+    public boolean stopGen() {
+        if(Settings.GEN_TIME == 0)
+            return false;
+        return ((double) (System.currentTimeMillis() - genStartTime) / 1000d) > Settings.GEN_TIME;
+    }
+
+    public void setEssentialStartTime(long essentialStartTime) {
+        this.essentialStartTime = essentialStartTime;
+    }
+
+    public boolean stopEssential() {
+        if(Settings.ESSENTIAL_TIME == 0)
+            return false;
+        return ((double) (System.currentTimeMillis() - essentialStartTime) / 1000d) > Settings.ESSENTIAL_TIME;
+    }
+
     Multimap<Pair, Rule> getPredictionMultiMap() {
         Multimap<Pair, Rule> candidateMap = MultimapBuilder.hashKeys().hashSetValues().build();
-        for (Map.Entry<Pair, List<Rule>> entry : predictionMap.entrySet()) {
-            candidateMap.putAll(entry.getKey(), entry.getValue());
+        for (Map.Entry<Pair, TopRules> entry : predictionMap.entrySet()) {
+            candidateMap.putAll(entry.getKey(), entry.getValue().toList());
         }
         return candidateMap;
     }
 
     public void initPredictionMap() {
-        predictionMap = new ConcurrentHashMap<>((int) (Settings.SUGGESTION_CAP * 0.3), 0.8f, Settings.THREAD_NUMBER);
+        predictionMap = new ConcurrentHashMap<>((int) (Settings.SUGGESTION_CAP * 0.3), 0.8f, threads);
+        predictionCount.set(0);
     }
 
     public boolean checkInsRuleCap() {
@@ -47,28 +132,103 @@ public class Context {
     }
 
     public boolean checkSuggestionCap() {
-        return predictionMap.size() > Settings.SUGGESTION_CAP;
-    }
-
-    public synchronized void putInPredictionMap(Pair pair, Rule rule) {
-        if(!predictionMap.containsKey(pair)) {
-            predictionMap.put(pair, new ArrayList<>());
-            predictionMap.get(pair).add(rule);
-        } else {
-            List<Rule> rules = predictionMap.get(pair);
-            if(rules.size() >= Settings.PREDICTION_RULE_CAP) {
-                if(rules.get(rules.size() - 1).getQuality() < rule.getQuality()) {
-                    rules.remove(rules.size() - 1);
-                    rules.add(rule);
-                    rules.sort(IO.ruleComparatorBySC());
-                }
-            } else {
-                rules.add(rule);
-                rules.sort(IO.ruleComparatorBySC());
+        return predictionCount.get() > Settings.SUGGESTION_CAP;
+    }
+
+    /**
+     * Records that the rule suggests the pair. Only the entry of the pair is locked,
+     * and at most {@link Settings#PREDICTION_RULE_CAP} best rules are kept per pair.
+     */
+    public void putInPredictionMap(Pair pair, Rule rule) {
+        predictionMap.compute(pair, (key, rules) -> {
+            if(rules == null) {
+                rules = new TopRules(Settings.PREDICTION_RULE_CAP);
+                predictionCount.incrementAndGet();
             }
+            rules.add(rule);
+            return rules;
+        });
+        if(trackers != null && !knownPairs.contains(pair.subId, pair.objId)) {
+            QueryTracker tracker = headTrackers.get(pair.subId);
+            if(tracker != null) tracker.update(pair.objId, rule.getQuality());
+            tracker = tailTrackers.get(pair.objId);
+            if(tracker != null) tracker.update(pair.subId, rule.getQuality());
+        }
+    }
+
+    /**
+     * Tracks the top {@link Settings#TOP_K} answers of the head and tail queries of the test
+     * pairs, ignoring candidates in {@code knownPairs}, so that application can stop early.
+     */
+    public void trackQueries(Collection<Pair> testPairs, Collection<Pair> knownPairs) {
+        this.knownPairs = new LongPairSet(knownPairs);
+        headTrackers = new HashMap<>();
+        tailTrackers = new HashMap<>();
+        for (Pair pair : testPairs) {
+            headTrackers.computeIfAbsent(pair.subId, k -> new QueryTracker(Settings.TOP_K));
+            tailTrackers.computeIfAbsent(pair.objId, k -> new QueryTracker(Settings.TOP_K));
+        }
+        trackers = new ArrayList<>(headTrackers.values());
+        trackers.addAll(tailTrackers.values());
+        settledTrackers = 0;
+        settledBound = Double.MAX_VALUE;
+    }
+
+    public boolean isTrackingQueries() {
+        return trackers != null;
+    }
+
+    /**
+     * @return true if no rule of quality at most {@code bound} can change the top answers
+     * of any tracked query. Always false if queries are not tracked.
+     */
+    public synchronized boolean queriesSettled(double bound) {
+        if(trackers == null || Settings.TOP_K <= 0) return false;
+        // A settled tracker stays settled for lower bounds, so the scan resumes where it stopped.
+        if(bound > settledBound) settledTrackers = 0;
+        settledBound = bound;
+        while(settledTrackers < trackers.size() && trackers.get(settledTrackers).settled(bound))
+            settledTrackers++;
+        return settledTrackers == trackers.size();
+    }
+
+    public void skipTemplate() {
+        skippedTemplates.incrementAndGet();
+    }
+
+    public void skipTemplate(int count) {
+        skippedTemplates.addAndGet(count);
+    }
+
+    public int getSkippedTemplates() {
+        return skippedTemplates.get();
+    }
+
+    /**
+     * Makes rule application query driven: only predictions whose subject is the head or
+     * whose object is the tail of a test pair are materialized.
+     */
+    public void setQueries(Collection<Pair> testPairs) {
+        queryHeads = new LongSet(testPairs.size());
+        queryTails = new LongSet(testPairs.size());
+        for (Pair pair : testPairs) {
+            queryHeads.add(pair.subId);
+            queryTails.add(pair.objId);
         }
     }
 
+    public boolean isQueryDriven() {
+        return queryHeads != null;
+    }
+
+    public LongSet getQueryHeads() {
+        return queryHeads;
+    }
+
+    public LongSet getQueryTails() {
+        return queryTails;
+    }
+
     public synchronized void addSpecializedRules(Rule rule) {
         specializedRules.add(rule);
     }
@@ -78,7 +238,7 @@ public class Context {
     }
 
     public int predictionMapSize() {
-        return predictionMap.keySet().size();
+        return predictionCount.get();
     }
 
     public synchronized int getTotalInsRules() {
@@ -124,6 +284,7 @@ public class Context {
             ruleFrequency.put(rule, ruleFrequency.get(rule) + 1);
         else {
             ruleFrequency.put(rule, 1);
+            rule.stats.functional = functional;
             indexRule.put(index++, rule);
         }
     }
@@ -2,6 +2,8 @@ package uk.ac.ncl.core;
 
 import uk.ac.ncl.Settings;
 import uk.ac.ncl.analysis.AnalysisUtils;
+import uk.ac.ncl.graph.GraphAccess;
+import uk.ac.ncl.graph.Neo4jGraphAccess;
 import uk.ac.ncl.structure.*;
 import uk.ac.ncl.utils.*;
 import uk.ac.ncl.structure.*;
@@ -29,7 +31,10 @@ import java.text.MessageFormat;
 import java.text.NumberFormat;
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -39,6 +44,7 @@ public abstract class Engine {
 
     protected GraphDatabaseService graph;
     protected GraphDatabaseService ruleGraph;
+    protected GraphAccess access;
 
     protected JSONObject args;
     protected File home;
@@ -67,6 +73,8 @@ public abstract class Engine {
         Settings.CONFIDENCE_OFFSET = Helpers.readSetting(args, "conf_offset", Settings.CONFIDENCE_OFFSET);
         Settings.TOP_K = Helpers.readSetting(args, "top_k", Settings.TOP_K);
         Settings.THREAD_NUMBER = Helpers.readSetting(args, "thread_number", Settings.THREAD_NUMBER);
+        Settings.PARALLEL_TARGETS = Helpers.readSetting(args, "parallel_targets", Settings.PARALLEL_TARGETS);
+        Settings.MEMORY_BUDGET = Helpers.readSetting(args, "memory_budget", Settings.MEMORY_BUDGET);
         Settings.VERBOSITY = Helpers.readSetting(args, "verbosity", Settings.VERBOSITY);
         Settings.MIN_INSTANCES = Helpers.readSetting(args, "min_instances", Settings.MIN_INSTANCES);
         Settings.MAX_INSTANCES = Helpers.readSetting(args, "max_instances", Settings.MAX_INSTANCES);
@@ -97,10 +105,15 @@ public abstract class Engine {
 
         Settings.LEARN_GROUNDINGS = Helpers.readSettingConditionMax(args, "learn_groundings", Settings.LEARN_GROUNDINGS);
         Settings.APPLY_GROUNDINGS = Helpers.readSettingConditionMax(args, "apply_groundings", Settings.APPLY_GROUNDINGS);
+        Settings.GROUNDING_RANGE = Helpers.readSetting(args, "grounding_range", Settings.GROUNDING_RANGE);
         Settings.SUGGESTION_CAP = Helpers.readSettingConditionMax(args, "suggestion_cap", Settings.SUGGESTION_CAP);
         Settings.INS_RULE_CAP = Helpers.readSettingConditionMax(args, "ins_rule_cap", Settings.INS_RULE_CAP);
 
         Settings.RULE_GRAPH = Helpers.readSetting(args, "rule_graph", Settings.RULE_GRAPH);
+        Settings.RULE_INDEX_FORMAT = Helpers.readSetting(args, "rule_index_format", Settings.RULE_INDEX_FORMAT);
+        Settings.QUERY_DRIVEN = Helpers.readSetting(args, "query_driven", Settings.QUERY_DRIVEN);
+        Settings.EARLY_STOP = Helpers.readSetting(args, "early_stop", Settings.EARLY_STOP);
+        Settings.NATIVE_GRAPH = Helpers.readSetting(args, "native_graph", Settings.NATIVE_GRAPH);
         if(Settings.RULE_GRAPH) {
             Logger.println("# Initialize Rule Graph at: " + (new File(out, "RuleGraph/databases/graph.db")).getPath(), 1);
             ruleGraph = GraphOps.createEmptyGraph(new File( out, "RuleGraph"));
@@ -137,15 +150,7 @@ public abstract class Engine {
                 "Randomly Selected Targets: {2}", Settings.MIN_INSTANCES, Settings.MAX_INSTANCES, Settings.RANDOMLY_SELECTED_RELATIONS));
 
         CountedSet<String> counter = new CountedSet<>();
-        try(LineIterator l = FileUtils.lineIterator(new File(home, "data/train.txt"))) {
-            while(l.hasNext()) {
-                String target = l.nextLine().split("\t")[1];
-                counter.add(target);
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-            System.exit(-1);
-        }
+        TripleReader.read(new File(home, "data/train.txt"), (head, relation, tail) -> counter.add(relation));
 
         System.out.println("# All Targets: " + counter.size());
 
@@ -257,6 +262,8 @@ public abstract class Engine {
         Multimap<String, Pair> pairMap = MultimapBuilder.hashKeys().hashSetValues().build();
         GraphDatabaseService graph = IO.loadGraph(new File(home, "databases/graph.db"));
         Runtime.getRuntime().addShutdownHook(new Thread(graph::shutdown));
+        // Test and valid edges are deleted below, so a snapshot of the graph would keep them.
+        new File(home, "databases/graph.csr").delete();
 
         File dataFolder = new File(home, "data");
         dataFolder.mkdir();
@@ -319,6 +326,7 @@ public abstract class Engine {
             for (PrintWriter writer : writers) {
                 writer.close();
             }
+            RelationshipIndex.invalidate(graph);
             tx.success();
         } catch (IOException e) {
             e.printStackTrace();
@@ -354,23 +362,8 @@ public abstract class Engine {
         GraphDatabaseService graph = IO.loadGraph(new File(home, "databases/graph.db"));
         Runtime.getRuntime().addShutdownHook(new Thread(graph::shutdown));
 
-        try {
-            LineIterator anTestL = FileUtils.lineIterator(new File(dataFolder, "test.txt"));
-            LineIterator anValidL = FileUtils.lineIterator(new File(dataFolder, "valid.txt"));
-            while(anTestL.hasNext()) {
-                String[] words = anTestL.nextLine().split("\t");
-                testPairs.add(new Pair(words[0], words[1], words[2]));
-            }
-            while(anValidL.hasNext()) {
-                String[] words = anValidL.nextLine().split("\t");
-                validPairs.add(new Pair(words[0], words[1], words[2]));
-            }
-            anTestL.close();
-            anValidL.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-            System.exit(-1);
-        }
+        TripleReader.read(new File(dataFolder, "test.txt"), (head, relation, tail) -> testPairs.add(new Pair(head, relation, tail)));
+        TripleReader.read(new File(dataFolder, "valid.txt"), (head, relation, tail) -> validPairs.add(new Pair(head, relation, tail)));
 
 
         int trainTriples = 0, testTriples = 0, validTriples = 0, beforeRemovalGraphSize = 0;
@@ -438,6 +431,7 @@ public abstract class Engine {
             for (PrintWriter writer : writers) {
                 writer.close();
             }
+            RelationshipIndex.invalidate(graph);
             tx.success();
         } catch (IOException e) {
             e.printStackTrace();
@@ -606,16 +600,28 @@ public abstract class Engine {
         return results;
     }
 
+    /**
+     * @return the graph the learning and application steps run on; the Neo4j graph unless
+     * a model has set {@link #access} to another implementation.
+     */
+    protected GraphAccess graphAccess() {
+        if(access == null)
+            access = Neo4jGraphAccess.of(graph);
+        return access;
+    }
+
+    /**
+     * @return the number of the target starting now, for targets started by several threads.
+     */
+    protected synchronized int countTarget() {
+        return globalTargetCounter++;
+    }
+
     public void populateTargets() {
         if(testFile != null)
             targets = IO.readTargets(testFile);
-        else {
-            try(Transaction tx = graph.beginTx()) {
-                for (RelationshipType type : graph.getAllRelationshipTypes())
-                    targets.add(type.name());
-                tx.success();
-            }
-        }
+        else
+            targets.addAll(graphAccess().relationshipTypes());
 
         Set<String> selectedTargets = new HashSet<>();
         try {
@@ -693,10 +699,10 @@ public abstract class Engine {
         BlockingQueue<Rule> ruleQueue = new LinkedBlockingDeque<>(Settings.BATCH_SIZE * 2);
         Set<Pair> visitedTrainPairs = new HashSet<>();
 
-        RuleProducer[] producers = new RuleProducer[Settings.THREAD_NUMBER];
+        RuleProducer[] producers = new RuleProducer[context.getThreads()];
         RuleConsumer consumer = new RuleConsumer(0, ruleQueue, context);
         for (int i = 0; i < producers.length; i++) {
-            producers[i] = new RuleProducer(i, ruleQueue, trainPairs, visitedTrainPairs, graph, consumer);
+            producers[i] = new RuleProducer(i, ruleQueue, trainPairs, visitedTrainPairs, graphAccess(), consumer);
         }
         try {
             for (RuleProducer producer : producers) {
@@ -725,12 +731,12 @@ public abstract class Engine {
         int id;
         List<Pair> trainPairs;
         BlockingQueue<Rule> ruleQueue;
-        GraphDatabaseService graph;
+        GraphAccess graph;
         Thread consumer;
         Set<Pair> visitedTrainPairs;
 
         RuleProducer(int id, BlockingQueue<Rule> ruleQueue, Set<Pair> trainPairs, Set<Pair> visitedTrainPairs
-                , GraphDatabaseService graph, Thread consumer) {
+                , GraphAccess graph, Thread consumer) {
             super("RuleProducer-" + id);
             this.id = id;
             this.ruleQueue = ruleQueue;
@@ -744,26 +750,32 @@ public abstract class Engine {
         @Override
         public void run() {
             Random rand = new Random();
-            try(Transaction tx = graph.beginTx()) {
+            GraphAccess.Session session = graph.open();
+            try {
                 while(consumer.isAlive()) {
                     Pair pair = trainPairs.get(rand.nextInt(trainPairs.size()));
                     addVisitedPair(pair);
-                    Traverser traverser = GraphOps.buildStandardTraverser(graph, pair, Settings.RANDOM_WALKERS);
-                    for (Path path : traverser) {
-                        Rule rule = Context.createTemplate(path, pair);
-                        while (consumer.isAlive()) {
-                            if (ruleQueue.offer(rule, 100, TimeUnit.MILLISECONDS))
-                                break;
-                        }
-                        if (!consumer.isAlive())
-                            break;
-                    }
+                    GraphOps.samplePaths(graph, pair, Settings.DEPTH, Settings.RANDOM_WALKERS, this::offer);
+                }
+            } finally {
+                session.close();
+            }
+        }
+
+        /**
+         * @return false once the consumer is done, which stops sampling.
+         */
+        private boolean offer(Rule rule) {
+            try {
+                while (consumer.isAlive()) {
+                    if (ruleQueue.offer(rule, 100, TimeUnit.MILLISECONDS))
+                        break;
                 }
-                tx.success();
             } catch (InterruptedException e) {
                 e.printStackTrace();
                 System.exit(-1);
             }
+            return consumer.isAlive();
         }
 
         private synchronized void addVisitedPair(Pair pair) {
@@ -783,7 +795,7 @@ public abstract class Engine {
             this.id = id;
             this.ruleQueue = ruleQueue;
             this.context = context;
-            GlobalTimer.setGenStartTime(System.currentTimeMillis());
+            context.setGenStartTime(System.currentTimeMillis());
             start();
         }
 
@@ -812,7 +824,7 @@ public abstract class Engine {
                         currentBatch.add(rule);
                     pathCount++;
                 }
-            } while (saturation < Settings.SATURATION && !GlobalTimer.stopGen());
+            } while (saturation < Settings.SATURATION && !context.stopGen());
             for (Rule rule : currentBatch) {
                 context.updateFreqAndIndex(rule);
             }
@@ -827,46 +839,24 @@ public abstract class Engine {
         }
     }
 
-    public void specialization(Context context, Set<Pair> trainPairs, Set<Pair> validPairs, File ruleIndexFile) {
+    public void specialization(Context context, TargetExamples examples, File ruleIndexFile) {
         NumberFormat f = NumberFormat.getNumberInstance(Locale.US);
         long s = System.currentTimeMillis();
 
-        Multimap<Long, Long> objOriginalMap = MultimapBuilder.hashKeys().hashSetValues().build();
-        Multimap<Long, Long> subOriginalMap = MultimapBuilder.hashKeys().hashSetValues().build();
-        for (Pair trainPair : trainPairs) {
-            objOriginalMap.put(trainPair.objId, trainPair.subId);
-            subOriginalMap.put(trainPair.subId, trainPair.objId);
-        }
-
-        Multimap<Long, Long> validObjToSub = MultimapBuilder.hashKeys().hashSetValues().build();
-        Multimap<Long, Long> validSubToObj = MultimapBuilder.hashKeys().hashSetValues().build();
-        for (Pair validPair : validPairs) {
-            validObjToSub.put(validPair.objId, validPair.subId);
-            validSubToObj.put(validPair.subId, validPair.objId);
-        }
-
-        BlockingQueue<Rule> abstractRuleQueue = new LinkedBlockingDeque<>(context.sortTemplates());
-        BlockingQueue<String> tempFileContents = new LinkedBlockingDeque<>(1000000);
         BlockingQueue<String> ruleFileContents = new LinkedBlockingDeque<>(1000000);
 
-        GlobalTimer.setSpecStartTime(System.currentTimeMillis());
-        SpecializationTask[] tasks = new SpecializationTask[Settings.THREAD_NUMBER];
-        for (int i = 0; i < tasks.length; i++) {
-            tasks[i] = new SpecializationTask(i, graph, abstractRuleQueue
-                    , trainPairs, validPairs, objOriginalMap, subOriginalMap, validObjToSub, validSubToObj
-                    , context, tempFileContents, ruleFileContents);
-        }
-        RuleWriter tempFileWriter = new RuleWriter(0, tasks, ruleIndexFile, tempFileContents, true);
-        RuleWriter ruleFileWriter = new RuleWriter(0, tasks, ruleFile, ruleFileContents, true);
-        try {
-            for (SpecializationTask task : tasks) {
-                task.join();
-            }
-            tempFileWriter.join();
-            ruleFileWriter.join();
+        context.setSpecStartTime(System.currentTimeMillis());
+        AsyncWriter ruleFileWriter = new AsyncWriter("RuleWriter", ruleFile, ruleFileContents, true, true);
+        try(RuleIndex.Writer indexWriter = RuleIndex.Writer.open(ruleIndexFile, true)) {
+            Specializer specializer = new Specializer(graphAccess(), context.sortTemplates()
+                    , examples.trainSet, examples.validSet, examples.objOriginalMap, examples.subOriginalMap
+                    , examples.validObjToSub, examples.validSubToObj, context, indexWriter, ruleFileContents);
+            specializer.join();
         } catch (InterruptedException e) {
             e.printStackTrace();
             System.exit(-1);
+        } finally {
+            ruleFileWriter.close();
         }
 
         GlobalTimer.updateInsRuleStats(Helpers.timerAndMemory(s,"# Specialization"));
@@ -881,10 +871,10 @@ public abstract class Engine {
         context.initPredictionMap();
 
         BlockingQueue<Rule> abstractRuleQueue = new LinkedBlockingDeque<>(100000);
-        RuleApplicationTask[] tasks = new RuleApplicationTask[Settings.THREAD_NUMBER];
+        RuleApplicationTask[] tasks = new RuleApplicationTask[context.getThreads()];
         RuleReader reader = new RuleReader(0, ruleIndexHome, abstractRuleQueue, context);
         for (int i = 0; i < tasks.length; i++) {
-            tasks[i] = new RuleApplicationTask(i, graph, abstractRuleQueue, context, reader);
+            tasks[i] = new RuleApplicationTask(i, graphAccess(), abstractRuleQueue, context, reader);
         }
         try {
             for (RuleApplicationTask task : tasks) {
@@ -898,40 +888,44 @@ public abstract class Engine {
 
         GlobalTimer.updateRuleApplyStats(Helpers.timerAndMemory(s,"# Rule Application"));
         Logger.println("# Predictions: " + f.format(context.predictionMapSize()), 2);
+        if(context.isTrackingQueries())
+            Logger.println("# Templates Skipped by Early Stop: " + f.format(context.getSkippedTemplates()), 2);
         Logger.println(Context.analyzeRuleComposition("# Applied Rules", context.getAppliedRules()), 2);
     }
 
-    static class SpecializationTask extends Thread {
-        int id;
-        GraphDatabaseService graph;
-        BlockingQueue<Rule> abstractRuleQueue;
-        BlockingQueue<String> tempFileContents;
+    /**
+     * Specializes templates on a work-stealing pool. Templates are submitted in the order
+     * of {@link Context#sortTemplates()}, and the anchorings of an open template are further
+     * split into stealable ranges, so a single hot template does not hold up the run.
+     */
+    static class Specializer extends Thread {
+        GraphAccess graph;
+        List<Rule> templates;
+        RuleIndex.Writer indexWriter;
         Context context;
-        Set<Pair> trainPairs;
-        Set<Pair> validPairs;
-        Multimap<Long, Long> objOriginalMap;
-        Multimap<Long, Long> subOriginalMap;
-        Multimap<Long, Long> validObjToSub;
-        Multimap<Long, Long> validSubToObj;
+        LongPairSet trainPairs;
+        LongPairSet validPairs;
+        LongMultimap objOriginalMap;
+        LongMultimap subOriginalMap;
+        LongMultimap validObjToSub;
+        LongMultimap validSubToObj;
         BlockingQueue<String> ruleFileContents;
 
-        public SpecializationTask(int id
-                , GraphDatabaseService graph
-                , BlockingQueue<Rule> abstractRuleQueue
-                , Set<Pair> trainPairs
-                , Set<Pair> validPairs
-                , Multimap<Long, Long> objOriginalMap
-                , Multimap<Long, Long> subOriginalMap
-                , Multimap<Long, Long> validObjToSub
-                , Multimap<Long, Long> validSubToObj
+        public Specializer(GraphAccess graph
+                , List<Rule> templates
+                , LongPairSet trainPairs
+                , LongPairSet validPairs
+                , LongMultimap objOriginalMap
+                , LongMultimap subOriginalMap
+                , LongMultimap validObjToSub
+                , LongMultimap validSubToObj
                 , Context context
-                , BlockingQueue<String> tempFileContents
+                , RuleIndex.Writer indexWriter
                 , BlockingQueue<String> ruleFileContents) {
-            super("InstantiationTask-" + id);
-            this.id = id;
+            super("Specializer");
             this.graph = graph;
-            this.abstractRuleQueue = abstractRuleQueue;
-            this.tempFileContents = tempFileContents;
+            this.templates = templates;
+            this.indexWriter = indexWriter;
             this.trainPairs = trainPairs;
             this.objOriginalMap = objOriginalMap;
             this.subOriginalMap = subOriginalMap;
@@ -945,34 +939,59 @@ public abstract class Engine {
 
         @Override
         public void run() {
-            try(Transaction tx = graph.beginTx()) {
-                while (!abstractRuleQueue.isEmpty() && !GlobalTimer.stopSpec() && context.getTotalInsRules() < Settings.INS_RULE_CAP) {
-                    Template abstractRule = (Template) abstractRuleQueue.poll();
-                    if(abstractRule != null) {
-                        Multimap<Long, Long> anchoringToOriginalMap = abstractRule.isFromSubject() ? objOriginalMap : subOriginalMap;
-                        Multimap<Long, Long> validOriginals = abstractRule.isFromSubject() ? validObjToSub : validSubToObj;
-                        abstractRule.specialization(graph, trainPairs, validPairs
-                                , anchoringToOriginalMap, validOriginals, context
-                                , ruleFileContents, tempFileContents);
-                    }
-                }
-                tx.success();
+            ForkJoinPool pool = new ForkJoinPool(context.getThreads()
+                    , new GraphWorkerFactory(graph, "SpecializationTask"), null, false);
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (Rule template : templates) {
+                tasks.add(pool.submit(new SpecializationTask((Template) template)));
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+            pool.shutdown();
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
             } catch (InterruptedException e) {
                 e.printStackTrace();
                 System.exit(-1);
             }
         }
+
+        class SpecializationTask extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+            Template abstractRule;
+
+            SpecializationTask(Template abstractRule) {
+                this.abstractRule = abstractRule;
+            }
+
+            @Override
+            protected void compute() {
+                if(context.stopSpec() || context.getTotalInsRules() >= Settings.INS_RULE_CAP)
+                    return;
+                LongMultimap anchoringToOriginalMap = abstractRule.isFromSubject() ? objOriginalMap : subOriginalMap;
+                LongMultimap validOriginals = abstractRule.isFromSubject() ? validObjToSub : validSubToObj;
+                try {
+                    abstractRule.specialization(graph, trainPairs, validPairs
+                            , anchoringToOriginalMap, validOriginals, context
+                            , ruleFileContents, indexWriter);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                    System.exit(-1);
+                }
+            }
+        }
     }
 
     static class RuleApplicationTask extends Thread {
         int id;
-        GraphDatabaseService graph;
+        GraphAccess graph;
         BlockingQueue<Rule> abstractRuleQueue;
         Thread ruleReader;
         Context context;
 
         RuleApplicationTask(int id,
-                            GraphDatabaseService graph,
+                            GraphAccess graph,
                             BlockingQueue<Rule> abstractRuleQueue,
                             Context context,
                             Thread ruleReader) {
@@ -987,19 +1006,26 @@ public abstract class Engine {
 
         @Override
         public void run() {
-            try(Transaction tx = graph.beginTx()) {
+            GraphAccess.Session session = graph.open();
+            try {
                 while ((ruleReader.isAlive() || !abstractRuleQueue.isEmpty())
                         && context.predictionMapSize() < Settings.SUGGESTION_CAP) {
                     Template abstractRule = (Template) abstractRuleQueue.poll();
                     if (abstractRule != null) {
+                        // Keep draining so the reader is never left blocked on a full queue.
+                        if(context.queriesSettled(abstractRule.qualityBound)) {
+                            context.skipTemplate();
+                            continue;
+                        }
                         context.addAppliedRule(abstractRule);
                         abstractRule.applyRule(graph, context);
                     }
                 }
-                tx.success();
             } catch (Exception e) {
                 e.printStackTrace();
                 System.exit(-1);
+            } finally {
+                session.close();
             }
         }
     }
@@ -1021,6 +1047,41 @@ public abstract class Engine {
 
         @Override
         public void run() {
+            if(RuleIndex.isBinary(file)) readBinary();
+            else readText();
+        }
+
+        private void readBinary() {
+            try (RuleIndex.Reader reader = new RuleIndex.Reader(file)) {
+                // Templates are ordered by score, not max quality, so bound each by the max of the rest.
+                double[] bounds = new double[reader.size()];
+                for (int i = reader.size() - 1; i >= 0; i--)
+                    bounds[i] = Math.max(reader.maxQuality(i), i + 1 < bounds.length ? bounds[i + 1] : 0);
+                for (int i = 0; i < reader.size(); i++) {
+                    if(context.queriesSettled(bounds[i])) {
+                        context.skipTemplate(reader.size() - i);
+                        break;
+                    }
+                    Template rule = (Template) context.getRule(reader.templateIndex(i));
+                    rule = reader.read(i, rule);
+                    rule.qualityBound = bounds[i];
+                    if(!rule.head.predicate.equals(context.getTarget()))
+                        continue;
+                    if(!rule.isClosed()) {
+                        rule.insRules.removeIf(ValidRuleQuality::overfitting);
+                        if(rule.insRules.isEmpty())
+                            continue;
+                    } else if(ValidRuleQuality.overfitting(rule))
+                        continue;
+                    abstractRuleQueue.put(rule);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+                System.exit(-1);
+            }
+        }
+
+        private void readText() {
             try (LineIterator l = FileUtils.lineIterator(file)) {
                 while(l.hasNext()) {
                     String line = l.nextLine();
@@ -1030,7 +1091,7 @@ public abstract class Engine {
                         if(rule == null) {
                             rule = new Template(line.split("ABS: ")[1]);
                         }
-                        if(!rule.head.predicate.equals(Settings.TARGET))
+                        if(!rule.head.predicate.equals(context.getTarget()))
                             continue;
                         if(!rule.isClosed()) {
                             String insRuleLine = l.nextLine();
@@ -1063,46 +1124,4 @@ public abstract class Engine {
         }
     }
 
-    static class RuleWriter extends Thread {
-        Thread[] threads;
-        File file;
-        BlockingQueue<String> contentQueue;
-        boolean append;
-        int id;
-
-        public RuleWriter(int id, Thread[] threads, File file, BlockingQueue<String> contents, boolean append) {
-            super("RuleWriter-" + id);
-            this.append = append;
-            this.id = id;
-            this.file = file;
-            this.contentQueue = contents;
-            this.threads = threads;
-            start();
-        }
-
-        @Override
-        public void run() {
-            boolean stop = false;
-            try(PrintWriter writer = new PrintWriter(new FileWriter(file, append))) {
-                while(!stop || !contentQueue.isEmpty()) {
-                    String line = contentQueue.poll();
-                    if(line != null) {
-                        writer.println(line);
-                    }
-                    boolean flag = true;
-                    for (Thread producer : threads) {
-                        if (producer.isAlive()) {
-                            flag = false;
-                            break;
-                        }
-                    }
-                    if(flag) stop = true;
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-                System.exit(-1);
-            }
-        }
-    }
-
 }
@@ -1,25 +1,22 @@
 package uk.ac.ncl.core;
 
 import uk.ac.ncl.Settings;
+import uk.ac.ncl.graph.GraphAccess;
 import uk.ac.ncl.structure.*;
 import uk.ac.ncl.structure.Rule;
 import uk.ac.ncl.structure.Template;
+import uk.ac.ncl.utils.AsyncWriter;
+import uk.ac.ncl.utils.RuleIndex;
 import uk.ac.ncl.utils.Helpers;
 import uk.ac.ncl.utils.Logger;
 import uk.ac.ncl.utils.SemaphoredThreadPool;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.MultimapBuilder;
 import org.neo4j.graphdb.Direction;
-import org.neo4j.graphdb.GraphDatabaseService;
-import org.neo4j.graphdb.Relationship;
-import org.neo4j.graphdb.Transaction;
 import uk.ac.ncl.structure.InstantiatedRule;
 import uk.ac.ncl.structure.Pair;
 
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.PrintWriter;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.Collection;
@@ -31,14 +28,13 @@ import java.util.concurrent.*;
 public class EssentialRuleGenerator {
 
     public static void generateEssentialRules(Set<Pair> trainPairs, Set<Pair> validPairs
-            , Context context, GraphDatabaseService graph
+            , Context context, GraphAccess graph
             , File tempFile, File ruleFile) {
         long s = System.currentTimeMillis();
         NumberFormat f = NumberFormat.getNumberInstance(Locale.US);
-        GlobalTimer.setEssentialStartTime(System.currentTimeMillis());
+        context.setEssentialStartTime(System.currentTimeMillis());
 
         Set<Rule> essentialRules = new HashSet<>();
-        BlockingQueue<String> tempFileContents = new LinkedBlockingDeque<>(10000000);
         BlockingQueue<String> ruleFileContents = new LinkedBlockingDeque<>(10000000);
 
         for (Rule rule : context.getAbstractRules()) {
@@ -61,19 +57,18 @@ public class EssentialRuleGenerator {
             validSubToObj.put(validPair.subId, validPair.objId);
         }
 
-        ExecutorService executors = new SemaphoredThreadPool(Settings.THREAD_NUMBER);
-        RuleWriter tempFileWriter = new RuleWriter(0, executors, tempFile, tempFileContents, true);
-        RuleWriter ruleFileWriter = new RuleWriter(0, executors, ruleFile, ruleFileContents, true);
+        ExecutorService executors = new SemaphoredThreadPool(context.getThreads());
         Set<Rule> specializedRules = new HashSet<>();
 
-        try {
+        AsyncWriter ruleFileWriter = new AsyncWriter("EssentialRule-RuleWriter", ruleFile, ruleFileContents, true, true);
+        try(RuleIndex.Writer indexWriter = RuleIndex.Writer.open(tempFile, true)) {
             for (Rule rule : essentialRules) {
-                if(GlobalTimer.stopEssential()) break;
-                BlockingQueue<String> contents = new LinkedBlockingDeque<>();
+                if(context.stopEssential()) break;
+                RuleIndex.Block insRules = new RuleIndex.Block();
                 Set<Future<?>> futures = new HashSet<>();
                 context.ruleFrequency.remove(rule);
 
-                Set<Pair> groundings = generateBodyGrounding(rule, graph);
+                Set<Pair> groundings = generateBodyGrounding(rule, graph, context);
                 Multimap<Long, Long> originalToTails = MultimapBuilder.hashKeys().hashSetValues().build();
                 Multimap<Long, Long> tailToOriginals = MultimapBuilder.hashKeys().hashSetValues().build();
 
@@ -85,23 +80,23 @@ public class EssentialRuleGenerator {
                 Multimap<Long, Long> trainAnchoringToOriginals = rule.isFromSubject() ? trainObjToSub : trainSubToObj;
                 Multimap<Long, Long> validAnchoringToOriginals = rule.isFromSubject() ? validObjToSub : validSubToObj;
                 for (Long anchoring : trainAnchoringToOriginals.keySet()) {
-                    if(GlobalTimer.stopEssential()) break;
+                    if(context.stopEssential()) break;
                     Collection<Long> validOriginals = validAnchoringToOriginals.get(anchoring);
                     futures.add(executors.submit(new CreateHAR(rule, anchoring, trainAnchoringToOriginals.get(anchoring)
                              , validOriginals, originalToTails.keySet()
-                             , graph, contents, ruleFileContents, context)));
+                             , graph, insRules, ruleFileContents, context)));
 
                     Set<Pair> candidates = new HashSet<>();
                     for (Long original : trainAnchoringToOriginals.get(anchoring)) {
-                        if(GlobalTimer.stopEssential()) break;
+                        if(context.stopEssential()) break;
                         for (Long tail : originalToTails.get(original)) {
-                            if(GlobalTimer.stopEssential()) break;
+                            if(context.stopEssential()) break;
                             Pair candidate = new Pair(anchoring, tail);
                             if (!candidates.contains(candidate) && !trivialCheck(rule, anchoring, tail)) {
                                 candidates.add(candidate);
                                 futures.add(executors.submit(new CreateBAR(rule, candidate, trainAnchoringToOriginals.get(anchoring)
                                         , validOriginals, tailToOriginals.get(tail)
-                                        , graph, contents, ruleFileContents, context)));
+                                        , graph, insRules, ruleFileContents, context)));
                             }
                         }
                     }
@@ -111,28 +106,20 @@ public class EssentialRuleGenerator {
                     future.get();
                 }
 
-                if(!contents.isEmpty()) {
+                if(!insRules.isEmpty()) {
                     specializedRules.add(rule);
                     rule.stats.compute();
-                    tempFileContents.put("ABS: " + context.getIndex(rule) + "\t"
-                            + ((Template) rule).toRuleIndexString() + "\t"
-                            + f.format(rule.getStandardConf()) + "\t"
-                            + f.format(rule.getSmoothedConf()) + "\t"
-                            + f.format(rule.getPcaConf()) + "\t"
-                            + f.format(rule.getApcaConf()) + "\t"
-                            + f.format(rule.getHeadCoverage()) + "\t"
-                            + f.format(rule.getValidPrecision()) + "\n"
-                            + String.join("\t", contents) + "\n");
+                    indexWriter.write(context.getIndex(rule), (Template) rule, insRules);
                 }
             }
 
             executors.shutdown();
             executors.awaitTermination(1L, TimeUnit.MINUTES);
-            tempFileWriter.join();
-            ruleFileWriter.join();
         } catch (Exception e) {
             e.printStackTrace();
             System.exit(-1);
+        } finally {
+            ruleFileWriter.close();
         }
 
         GlobalTimer.updateGenEssentialStats(Helpers.timerAndMemory(s, "# Generate Essentials"));
@@ -140,46 +127,13 @@ public class EssentialRuleGenerator {
                 "Generated Essential Rules: " + f.format(context.getEssentialRules()), 1);
     }
 
-    private static class RuleWriter extends Thread {
-        int id;
-        ExecutorService service;
-        File file;
-        BlockingQueue<String> contents;
-        boolean append;
-
-        RuleWriter(int id, ExecutorService service, File file, BlockingQueue<String> contents, boolean append) {
-            super("EssentialRule-RuleWriter-" + id);
-            this.id = id;
-            this.service = service;
-            this.file = file;
-            this.contents = contents;
-            this.append = append;
-            start();
-        }
-
-        @Override
-        public void run() {
-            try(PrintWriter writer = new PrintWriter(new FileWriter(file, append))) {
-                while(!service.isTerminated() || !contents.isEmpty()) {
-                    String line = contents.poll();
-                    if(line != null) {
-                        writer.println(line);
-                    }
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-                System.exit(-1);
-            }
-        }
-    }
-
     private static class CreateBAR implements Runnable {
         Rule base;
         Pair candidate;
         Collection<Long> originals;
         Collection<Long> groundingOriginals;
-        GraphDatabaseService graph;
-        BlockingQueue<String> tempFileContents;
+        GraphAccess graph;
+        RuleIndex.Block insRules;
         BlockingQueue<String> ruleFileContents;
         Context context;
         Collection<Long> validOriginals;
@@ -188,8 +142,8 @@ public class EssentialRuleGenerator {
                 , Collection<Long> originals
                 , Collection<Long> validOriginals
                 , Collection<Long> groundingOriginals
-                , GraphDatabaseService graph
-                , BlockingQueue<String> tempFileContents
+                , GraphAccess graph
+                , RuleIndex.Block insRules
                 , BlockingQueue<String> ruleFileContents
                 , Context context) {
             this.base = base;
@@ -197,7 +151,7 @@ public class EssentialRuleGenerator {
             this.originals = originals;
             this.groundingOriginals = groundingOriginals;
             this.graph = graph;
-            this.tempFileContents = tempFileContents;
+            this.insRules = insRules;
             this.ruleFileContents = ruleFileContents;
             this.context = context;
             this.validOriginals = validOriginals;
@@ -206,12 +160,13 @@ public class EssentialRuleGenerator {
         @Override
         public void run() {
             DecimalFormat f = new DecimalFormat("####.#####");
-            try(Transaction tx = graph.beginTx()) {
+            GraphAccess.Session session = graph.open();
+            try {
                 int totalPredictions = 0, support = 0, groundTruth = originals.size()
                         , validTotalPredictions = 0, validPredictions = 0;
 
-                candidate.subName = (String) graph.getNodeById(candidate.subId).getProperty(Settings.NEO4J_IDENTIFIER);
-                candidate.objName = (String) graph.getNodeById(candidate.objId).getProperty(Settings.NEO4J_IDENTIFIER);
+                candidate.subName = graph.nodeName(candidate.subId);
+                candidate.objName = graph.nodeName(candidate.objId);
                 Rule rule = new InstantiatedRule(base, candidate);
                 for (Long groundingOriginal : groundingOriginals) {
                     totalPredictions++;
@@ -228,15 +183,7 @@ public class EssentialRuleGenerator {
                 if(Template.qualityCheck(rule)) {
                     try {
                         context.updateEssentialRules();
-                        tempFileContents.put("2" + ","
-                                + rule.getHeadAnchoring() + ","
-                                + rule.getTailAnchoring() + ","
-                                + f.format(rule.getStandardConf()) + ","
-                                + f.format(rule.getSmoothedConf()) + ","
-                                + f.format(rule.getPcaConf()) + ","
-                                + f.format(rule.getApcaConf()) + ","
-                                + f.format(rule.getHeadCoverage()) + ","
-                                + f.format(rule.getValidPrecision()));
+                        insRules.add(rule);
                         ruleFileContents.put(rule.toString() + "\t"
                                 + f.format(rule.getQuality()) + "\t"
                                 + f.format(rule.getHeadCoverage()) + "\t"
@@ -248,7 +195,8 @@ public class EssentialRuleGenerator {
                         System.exit(-1);
                     }
                 }
-                tx.success();
+            } finally {
+                session.close();
             }
         }
     }
@@ -258,8 +206,8 @@ public class EssentialRuleGenerator {
         long anchoring;
         Collection<Long> originals;
         Collection<Long> groundingOriginals;
-        GraphDatabaseService graph;
-        BlockingQueue<String> tempFileContents;
+        GraphAccess graph;
+        RuleIndex.Block insRules;
         BlockingQueue<String> ruleFileContents;
         Context context;
         Collection<Long> validOriginals;
@@ -268,8 +216,8 @@ public class EssentialRuleGenerator {
                 , Collection<Long> originals
                 , Collection<Long> validOriginals
                 , Collection<Long> groundingOriginals
-                , GraphDatabaseService graph
-                , BlockingQueue<String> tempFileContents
+                , GraphAccess graph
+                , RuleIndex.Block insRules
                 , BlockingQueue<String> ruleFileContents
                 , Context context) {
             this.base = base;
@@ -278,7 +226,7 @@ public class EssentialRuleGenerator {
             this.validOriginals = validOriginals;
             this.groundingOriginals = groundingOriginals;
             this.graph = graph;
-            this.tempFileContents = tempFileContents;
+            this.insRules = insRules;
             this.ruleFileContents = ruleFileContents;
             this.context = context;
         }
@@ -286,10 +234,11 @@ public class EssentialRuleGenerator {
         @Override
         public void run() {
             DecimalFormat f = new DecimalFormat("####.#####");
-            try(Transaction tx = graph.beginTx()) {
+            GraphAccess.Session session = graph.open();
+            try {
                 int totalPredictions = 0, support = 0, groundTruth = originals.size()
                         , validTotalPredictions = 0, validPredictions = 0;
-                String headName = (String) graph.getNodeById(anchoring).getProperty(Settings.NEO4J_IDENTIFIER);
+                String headName = graph.nodeName(anchoring);
                 Rule rule = new InstantiatedRule(base, headName, anchoring);
                 for (Long groundingOriginal : groundingOriginals) {
                     totalPredictions++;
@@ -307,14 +256,7 @@ public class EssentialRuleGenerator {
                     try {
                         context.updateEssentialRules();
                         updateBaseStats(rule);
-                        tempFileContents.put("0" + ","
-                                + rule.getHeadAnchoring() + ","
-                                + f.format(rule.getStandardConf()) + ","
-                                + f.format(rule.getSmoothedConf()) + ","
-                                + f.format(rule.getPcaConf()) + ","
-                                + f.format(rule.getApcaConf()) + ","
-                                + f.format(rule.getHeadCoverage()) + ","
-                                + f.format(rule.getValidPrecision()));
+                        insRules.add(rule);
                         ruleFileContents.put(rule.toString() + "\t"
                                 + f.format(rule.getQuality()) + "\t"
                                 + f.format(rule.getHeadCoverage()) + "\t"
@@ -326,7 +268,8 @@ public class EssentialRuleGenerator {
                         System.exit(-1);
                     }
                 }
-                tx.success();
+            } finally {
+                session.close();
             }
         }
 
@@ -346,19 +289,20 @@ public class EssentialRuleGenerator {
         return head == tail && rule.length() == 1 && rule.head.predicate.equals(rule.bodyAtoms.get(0).predicate);
     }
 
-    private static Set<Pair> generateBodyGrounding(Rule rule, GraphDatabaseService graph) {
+    private static Set<Pair> generateBodyGrounding(Rule rule, GraphAccess graph, Context context) {
         Set<Pair> groundings = new HashSet<>();
         String predicate = rule.bodyAtoms.get(0).predicate;
         boolean outgoing = rule.bodyAtoms.get(0).direction.equals(Direction.OUTGOING);
-        try(Transaction tx = graph.beginTx()) {
-            for (Relationship relationship : graph.getAllRelationships()) {
-                if(GlobalTimer.stopEssential() || groundings.size() > Settings.LEARN_GROUNDINGS) break;
-                if(relationship.getType().name().equals(predicate)) {
-                    groundings.add(outgoing ? new Pair(relationship.getStartNodeId(), relationship.getEndNodeId())
-                            : new Pair(relationship.getEndNodeId(), relationship.getStartNodeId()));
-                }
+        GraphAccess.Session session = graph.open();
+        try {
+            GraphAccess.Edges relationships = graph.edges(predicate, 0, graph.count(predicate));
+            while(relationships.next()) {
+                if(context.stopEssential() || groundings.size() > Settings.LEARN_GROUNDINGS) break;
+                groundings.add(outgoing ? new Pair(relationships.startId(), relationships.endId())
+                        : new Pair(relationships.endId(), relationships.startId()));
             }
-            tx.success();
+        } finally {
+            session.close();
         }
         return groundings;
     }
@@ -1,24 +1,23 @@
 package uk.ac.ncl.core;
 
 import uk.ac.ncl.Settings;
+import uk.ac.ncl.graph.GraphAccess;
 import uk.ac.ncl.structure.Pair;
+import uk.ac.ncl.structure.RankingEngine;
 import uk.ac.ncl.structure.Rule;
 import uk.ac.ncl.structure.Triple;
+import uk.ac.ncl.utils.AsyncWriter;
 import uk.ac.ncl.utils.Helpers;
 import uk.ac.ncl.utils.IO;
 import uk.ac.ncl.utils.Logger;
-import com.google.common.collect.Lists;
+import uk.ac.ncl.utils.TripleReader;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.MultimapBuilder;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.LineIterator;
-import org.neo4j.graphdb.GraphDatabaseService;
-import org.neo4j.graphdb.Transaction;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.text.DecimalFormat;
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
@@ -32,13 +31,15 @@ public class Evaluator {
     Multimap<Long, Pair> subIndex = MultimapBuilder.hashKeys().hashSetValues().build();
     Multimap<Long, Pair> objIndex = MultimapBuilder.hashKeys().hashSetValues().build();
 
-    GraphDatabaseService graph;
+    GraphAccess graph;
     BlockingQueue<String> predictionContentQueue = new LinkedBlockingDeque<>(100000);
     BlockingQueue<String> verificationContentQueue = new LinkedBlockingDeque<>(100000);
     File predictionFile;
     File verificationFile;
     Multimap<Pair, Rule> candidates;
     Set<Pair> filterSet;
+    String target;
+    int threads;
 
     static DecimalFormat f = new DecimalFormat("####.#####");
     static Multimap<String, Integer> rankMap;
@@ -50,13 +51,15 @@ public class Evaluator {
             , Context context
             , File predictionFile
             , File verificationFile
-            , GraphDatabaseService graph) {
+            , GraphAccess graph) {
         this.testPairs = new LinkedBlockingDeque<>(testPairs);
         this.predictionFile = predictionFile;
         this.verificationFile = verificationFile;
         this.candidates = context.getPredictionMultiMap();
         this.graph = graph;
         this.filterSet = filterSet;
+        this.target = context.getTarget();
+        this.threads = context.getThreads();
 
         for (Pair pair : candidates.keySet()) {
             subIndex.put(pair.subId, pair);
@@ -66,21 +69,22 @@ public class Evaluator {
 
     public void createQueries() {
         long s = System.currentTimeMillis();
-        Thread[] queryCreators = new QueryCreator[Settings.THREAD_NUMBER];
+        Thread[] queryCreators = new QueryCreator[threads];
         for (int i = 0; i < queryCreators.length; i++) {
             queryCreators[i] = new QueryCreator(i);
         }
-        WriterTask predictionWriter = new WriterTask(queryCreators, predictionFile, predictionContentQueue);
-        WriterTask verificationWriter = new WriterTask(queryCreators, verificationFile, verificationContentQueue);
+        AsyncWriter predictionWriter = new AsyncWriter("PredictionWriter", predictionFile, predictionContentQueue, true, false);
+        AsyncWriter verificationWriter = new AsyncWriter("VerificationWriter", verificationFile, verificationContentQueue, true, false);
         try {
             for (Thread thread : queryCreators) {
                 thread.join();
             }
-            predictionWriter.join();
-            verificationWriter.join();
         } catch (InterruptedException e) {
             e.printStackTrace();
             System.exit(-1);
+        } finally {
+            predictionWriter.close();
+            verificationWriter.close();
         }
         Helpers.timerAndMemory(s, "# Create Queries");
     }
@@ -103,14 +107,7 @@ public class Evaluator {
 
     static public Set<Triple> readTriples(File f) {
         Set<Triple> triples = new HashSet<>();
-        try(LineIterator l = FileUtils.lineIterator(f)) {
-            while(l.hasNext()) {
-                triples.add(new Triple(l.nextLine(), 0));
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-            System.exit(-1);
-        }
+        TripleReader.read(f, (head, relation, tail) -> triples.add(new Triple(head, relation, tail)));
         return triples;
     }
 
@@ -350,7 +347,8 @@ public class Evaluator {
 
         @Override
         public void run() {
-            try(Transaction tx = graph.beginTx()) {
+            GraphAccess.Session session = graph.open();
+            try {
                 while (!testPairs.isEmpty()) {
                     Pair testPair = testPairs.poll();
                     if (testPair != null) {
@@ -362,41 +360,39 @@ public class Evaluator {
                         predictionContentQueue.put(createQueryAnswers("Head Query: ", testPair, headAnswers));
                     }
                 }
-                tx.success();
             } catch (InterruptedException e) {
                 e.printStackTrace();
                 System.exit(-1);
+            } finally {
+                session.close();
             }
         }
 
         private String createQueryAnswers(String header, Pair testPair, Collection<Pair> answers) {
-            String content = header + testPair.toQueryString(graph) + "\n";
-            List<Pair> rankedAnswers = new ArrayList<>();
-            if(!answers.isEmpty()) {
-                rankedAnswers = rankCandidates(answers, candidates);
-                for (Pair answer : rankedAnswers.subList(0, Math.min(rankedAnswers.size(), Settings.TOP_K))) {
-                    content += answer.toQueryString(graph) + "\t" + f.format(answer.scores[0]) + "\n";
-                }
+            String content = header + testPair.toQueryString(graph, target) + "\n";
+            RankingEngine<Pair> ranking = rankCandidates(answers, candidates, testPair);
+            for (Pair answer : ranking.top(Settings.TOP_K)) {
+                content += answer.toQueryString(graph, target) + "\t" + f.format(ranking.best(answer)) + "\n";
             }
-            populateVerification(header, testPair, rankedAnswers);
+            populateVerification(header, testPair, ranking);
             content += "\n";
             return content;
         }
 
-        private void populateVerification(String header, Pair testPair, List<Pair> rankedAnswers) {
+        private void populateVerification(String header, Pair testPair, RankingEngine<Pair> ranking) {
             int topAnswers = Settings.VERIFY_PREDICTION_SIZE;
             int topRules = Settings.VERIFY_RULE_SIZE;
 
-            String verificationContent = header + testPair.toVerificationString(graph) + "\n";
-            if(rankedAnswers.isEmpty()) {
+            String verificationContent = header + testPair.toVerificationString(graph, target) + "\n";
+            if(ranking.size() == 0) {
                 verificationContent += "\n";
                 verificationContentQueue.add(verificationContent);
                 return;
             }
 
             int count = 1;
-            for (Pair pair : rankedAnswers.subList(0, Math.min(topAnswers, rankedAnswers.size()))) {
-                verificationContent += "Top Answer: " + count + "\t" + pair.toVerificationString(graph) + "\n";
+            for (Pair pair : ranking.top(topAnswers)) {
+                verificationContent += "Top Answer: " + count + "\t" + pair.toVerificationString(graph, target) + "\n";
                 List<Rule> rules = new ArrayList<>(candidates.get(pair));
                 rules.sort(IO.ruleComparatorBySC());
                 for (Rule rule : rules.subList(0, Math.min(topRules, rules.size()))) {
@@ -406,8 +402,8 @@ public class Evaluator {
                 count++;
             }
 
-            if(rankedAnswers.contains(testPair)) {
-                verificationContent += "Correct Answer: " + (rankedAnswers.indexOf(testPair) + 1) +  "\t" + testPair.toVerificationString(graph) + "\n";
+            if(ranking.contains(testPair)) {
+                verificationContent += "Correct Answer: " + ranking.rank(testPair) +  "\t" + testPair.toVerificationString(graph, target) + "\n";
                 List<Rule> rules = new ArrayList<>(candidates.get(testPair));
                 rules.sort(IO.ruleComparatorBySC());
                 for (Rule rule : rules.subList(0, Math.min(topRules, rules.size()))) {
@@ -431,87 +427,20 @@ public class Evaluator {
         }
     }
 
-    class WriterTask extends Thread {
-        Thread[] threads;
-        File file;
-        BlockingQueue<String> contentQueue;
-
-        public WriterTask(Thread[] threads, File file, BlockingQueue<String> contentQueue) {
-            this.threads = threads;
-            this.file = file;
-            this.contentQueue = contentQueue;
-            start();
-        }
-
-        @Override
-        public void run() {
-            boolean stop = false;
-            try(PrintWriter writer = new PrintWriter(new FileWriter(file, true))) {
-                while(!stop || !contentQueue.isEmpty()) {
-                    String line = contentQueue.poll();
-                    if(line != null) writer.print(line);
-                    boolean flag = true;
-                    for (Thread producer : threads) {
-                        if(producer.isAlive()) flag = false;
-                    }
-                    if(flag) stop = true;
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-                System.exit(-1);
-            }
-        }
-    }
-
-    protected List<Pair> rankCandidates(Collection<Pair> answers, Multimap<Pair, Rule> ruleMap) {
+    /**
+     * Ranks the answers of a query by their rule qualities. The top answers written to the
+     * prediction and verification files and the rank of the test pair are exact.
+     */
+    protected RankingEngine<Pair> rankCandidates(Collection<Pair> answers, Multimap<Pair, Rule> ruleMap, Pair testPair) {
+        Map<Pair, double[]> scores = new HashMap<>(answers.size() * 2);
         for (Pair pair : answers) {
-            Double[] scores = new Double[ruleMap.get(pair).size()];
+            Collection<Rule> rules = ruleMap.get(pair);
+            double[] qualities = new double[rules.size()];
             int count = 0;
-            for (Rule rule : ruleMap.get(pair)) scores[count++] = rule.getQuality();
-            Arrays.sort(scores, Comparator.reverseOrder());
-            pair.scores = scores;
-        }
-        return sortTies(answers.toArray(new Pair[0]), 0);
-    }
-
-    protected List<Pair> sortTies(Pair[] ar, int l) {
-        Arrays.sort(ar, Pair.scoresComparator(l));
-        List<Pair> set = Lists.newArrayList();
-        Multimap<Pair, Pair> ties = MultimapBuilder.hashKeys().hashSetValues().build();
-        createTies(ar, set, ties, l);
-
-        //A base case to avoid deep recursion introducing stack overflow
-        if(l > Settings.MAX_RECURSION_DEPTH) return Arrays.asList(ar);
-
-        List<Pair> sorted = Lists.newArrayList();
-        for(Pair i : set) {
-            if(ties.containsKey(i)) {
-                Pair[] ar1 = ties.get(i).toArray(new Pair[0]);
-                sorted.addAll(sortTies(ar1, l + 1));
-            } else sorted.add(i);
-        }
-        return sorted;
-    }
-
-    protected void createTies(Pair[] ar, List<Pair> set, Multimap<Pair, Pair> ties, int l) {
-        for(int i = 0; i < ar.length; i++) {
-            final int here = i;
-            if(i == ar.length - 1) set.add(ar[here]);
-            for(int j = i + 1; j < ar.length; j++) {
-                double p = -1, q = -1;
-                if(l < ar[here].scores.length) p = ar[here].scores[l];
-                if(l < ar[j].scores.length) q = ar[j].scores[l];
-                if(p == q && p != -1) {
-                    i++;
-                    if(!ties.keySet().contains(ar[here])) ties.put(ar[here], ar[here]);
-                    if(i == ar.length - 1) set.add(ar[here]);
-                    ties.put(ar[here], ar[j]);
-                } else {
-                    set.add(ar[here]);
-                    break;
-                }
-            }
+            for (Rule rule : rules) qualities[count++] = rule.getQuality();
+            scores.put(pair, qualities);
         }
+        return RankingEngine.rank(scores, Math.max(Settings.TOP_K, Settings.VERIFY_PREDICTION_SIZE), testPair);
     }
 
 }
@@ -1,6 +1,5 @@
 package uk.ac.ncl.core;
 
-import uk.ac.ncl.Settings;
 import uk.ac.ncl.structure.Stamp;
 import uk.ac.ncl.utils.Logger;
 import uk.ac.ncl.utils.MathUtils;
@@ -14,10 +13,6 @@ import java.util.List;
 public class GlobalTimer {
     static DecimalFormat f = new DecimalFormat("####.###");
 
-    private static long specStartTime = 0;
-    private static long genStartTime = 0;
-    private static long essentialStartTime = 0;
-
     public static long programStartTime = 0;
 
     public static List<Double> generalizationTime = new ArrayList<>();
@@ -32,41 +27,41 @@ public class GlobalTimer {
     public static List<Double> allTime = new ArrayList<>();
 
 
-    public static void updateGenEssentialStats(Stamp stamp) {
+    public static synchronized void updateGenEssentialStats(Stamp stamp) {
         genEssentialTime.add(stamp.time);
         genEssentialMem.add(stamp.mem);
         allTime.add(stamp.time);
         allMem.add(stamp.mem);
     }
 
-    public static void updateTemplateGenStats(Stamp stamp) {
+    public static synchronized void updateTemplateGenStats(Stamp stamp) {
         generalizationTime.add(stamp.time);
         generalizationMem.add(stamp.mem);
         allTime.add(stamp.time);
         allMem.add(stamp.mem);
     }
 
-    public static void updateInsRuleStats(Stamp stamp) {
+    public static synchronized void updateInsRuleStats(Stamp stamp) {
         specializationTime.add(stamp.time);
         specializationMem.add(stamp.mem);
         allTime.add(stamp.time);
         allMem.add(stamp.mem);
     }
 
-    public static void updateRuleApplyStats(Stamp stamp) {
+    public static synchronized void updateRuleApplyStats(Stamp stamp) {
         ruleApplyTime.add(stamp.time);
         ruleApplyMem.add(stamp.mem);
         allTime.add(stamp.time);
         allMem.add(stamp.mem);
     }
 
-    public static void reportMaxMemoryUsed() {
+    public static synchronized void reportMaxMemoryUsed() {
         allMem.sort(Comparator.reverseOrder());
         double value = allMem.isEmpty() ? 0 : allMem.get(0);
         Logger.println("\n# Memory Usage: " + f.format(value) + "mb");
     }
 
-    public static void reportTime() {
+    public static synchronized void reportTime() {
         double totalRuntime = (double) (System.currentTimeMillis() - programStartTime) / 1000;
         Logger.println(MessageFormat.format("# Runtime: Total = {0}s | Avg per Target = {1}s\n" +
                 "# Generalization: Total = {2}s | Avg per Target = {3}s\n" +
@@ -80,35 +75,4 @@ public class GlobalTimer {
                 , f.format(MathUtils.listSum(genEssentialTime)), f.format(MathUtils.listMean(genEssentialTime))
                 ), 2);
     }
-
-    public static boolean stopSpec() {
-        if(Settings.SPEC_TIME == 0)
-            return false;
-        return ((double) (System.currentTimeMillis() - specStartTime) / 1000d) > Settings.SPEC_TIME;
-    }
-
-    public static void setSpecStartTime(long insStartTime) {
-        GlobalTimer.specStartTime = insStartTime;
-    }
-
-    public static void setEssentialStartTime(long startTime) {
-        GlobalTimer.essentialStartTime = startTime;
-    }
-
-    public static boolean stopEssential() {
-        if(Settings.ESSENTIAL_TIME == 0)
-            return false;
-        return ((double) (System.currentTimeMillis() - essentialStartTime) / 1000d) > Settings.ESSENTIAL_TIME;
-    }
-
-    public static void setGenStartTime(long genStartTime) {
-        GlobalTimer.genStartTime = genStartTime;
-    }
-
-    public static boolean stopGen() {
-        if(Settings.GEN_TIME == 0)
-            return false;
-        return ((double) (System.currentTimeMillis() - genStartTime) / 1000d) > Settings.GEN_TIME;
-    }
-
 }
@@ -1,6 +1,8 @@
 package uk.ac.ncl.core;
 
 import uk.ac.ncl.Settings;
+import uk.ac.ncl.graph.GraphAccess;
+import uk.ac.ncl.graph.Neo4jGraphAccess;
 import uk.ac.ncl.structure.*;
 import uk.ac.ncl.utils.Helpers;
 import uk.ac.ncl.utils.IO;
@@ -21,6 +23,9 @@ import java.io.PrintWriter;
 import java.text.DecimalFormat;
 import java.text.MessageFormat;
 import java.util.*;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -116,8 +121,8 @@ public class GraphOps {
     public static Set<Relationship> getRelationshipsAPI(GraphDatabaseService graph, String relationshipName) {
         Set<Relationship> relationships = new HashSet<>();
         try(Transaction tx = graph.beginTx()) {
-            for (Relationship relationship : graph.getAllRelationships()) {
-                if(relationship.getType().name().equals(relationshipName)) relationships.add(relationship);
+            for (long id : RelationshipIndex.of(graph).ids(relationshipName)) {
+                relationships.add(graph.getRelationshipById(id));
             }
             tx.success();
         }
@@ -138,10 +143,15 @@ public class GraphOps {
     }
 
     public static void removeRelationshipAPI(GraphDatabaseService graph, Set<Pair> pairs) {
+        Map<String, LongSet> removed = new HashMap<>();
         try(Transaction tx = graph.beginTx()) {
-            pairs.forEach(pair -> pair.rel.delete());
+            pairs.forEach(pair -> {
+                removed.computeIfAbsent(pair.rel.getType().name(), k -> new LongSet()).add(pair.rel.getId());
+                pair.rel.delete();
+            });
             tx.success();
         }
+        RelationshipIndex.update(graph, index -> removed.forEach(index::removed));
     }
 
     public static void removeRelationshipQuery(GraphDatabaseService graph, List<Instance> instances) {
@@ -156,6 +166,7 @@ public class GraphOps {
             }
             tx.success();
         }
+        RelationshipIndex.invalidate(graph);
     }
 
     public static List<Instance> addRelationshipAPI(GraphDatabaseService graph, List<Instance> instances, File out) {
@@ -169,11 +180,13 @@ public class GraphOps {
             });
             tx.success();
         }
+        RelationshipIndex.invalidate(graph);
         IO.writeInstance(graph, out, newInstances);
         return newInstances;
     }
 
     public static void addRelationshipAPI(GraphDatabaseService graph, Set<Pair> pairs, File out) {
+        Map<String, LongSet> added = new HashMap<>();
         try(Transaction tx = graph.beginTx()) {
             try(PrintWriter writer = new PrintWriter(new FileWriter(out, true))) {
                 for (Pair pair : pairs) {
@@ -181,6 +194,7 @@ public class GraphOps {
                     Node endNode = graph.getNodeById(pair.objId);
                     RelationshipType type = pair.type;
                     Relationship rel = startNode.createRelationshipTo(endNode, type);
+                    added.computeIfAbsent(type.name(), k -> new LongSet()).add(rel.getId());
                     String[] words = new String[]{String.valueOf(rel.getId())
                             , (String) startNode.getProperty(Settings.NEO4J_IDENTIFIER)
                             , type.name()
@@ -193,6 +207,7 @@ public class GraphOps {
             e.printStackTrace();
             System.exit(-1);
         }
+        RelationshipIndex.update(graph, index -> added.forEach(index::added));
     }
 
     public static List<Instance> addRelationshipQuery(GraphDatabaseService graph, List<Instance> instances) {
@@ -261,53 +276,359 @@ public class GraphOps {
 //        return results;
 //    }
 
-    public static CountedSet<Pair> bodyGroundingCoreAPI(GraphDatabaseService graph, Rule pattern
+    public static LongPairCountedSet bodyGroundingCoreAPI(GraphDatabaseService graph, Rule pattern
             , boolean application, Supplier<Boolean> stoppingCondition) {
-        CountedSet<Pair> pairs = new CountedSet<>();
-        Flag stop = new Flag();
+        return bodyGroundingCoreAPI(Neo4jGraphAccess.of(graph), pattern, application, stoppingCondition);
+    }
 
+    public static LongPairCountedSet bodyGroundingCoreAPI(GraphAccess graph, Rule pattern
+            , boolean application, Supplier<Boolean> stoppingCondition) {
         boolean checkTail = false;
         if(pattern instanceof InstantiatedRule || pattern instanceof SimpleInsRule) {
             int type = pattern.getType();
             if(type == 1 || type == 2) checkTail = true;
         }
 
-        Set<Relationship> currentRelationships = getRelationshipsAPI(graph, pattern.getBodyAtom(0).getBasePredicate());
-        for (Relationship relationship : currentRelationships) {
+        int groundingCap = groundingCap(pattern, application);
+        String[] types = bodyTypes(pattern);
+
+        int firstRelationships = graph.count(pattern.getBodyAtom(0).getBasePredicate());
+        if(checkTail) {
+            long tail = pattern.getTailAnchoring();
+            int last = pattern.length() - 1;
+            long tailCost = graph.degree(tail, pattern.getBodyAtom(last).direction.reverse(), types[last]);
+            if(GroundingPlan.choose(firstRelationships, tailCost, -1) == GroundingPlan.FROM_TAIL) {
+                LongPairCountedSet pairs = new LongPairCountedSet();
+                GroundingStack stack = GroundingStack.local().reset(pattern.length());
+                groundFromTail(graph, pattern, types, tail, stack, pairs, new Flag(), groundingCap, stoppingCondition);
+                flush(stack.groundings, pairs, null);
+                return pairs;
+            }
+        }
+
+        if(Settings.GROUNDING_RANGE > 0 && firstRelationships > Settings.GROUNDING_RANGE
+                && ForkJoinTask.inForkJoinPool()) {
+            GroundingRange task = new GroundingRange(graph, pattern, types, 0, firstRelationships
+                    , checkTail, groundingCap, stoppingCondition, new AtomicInteger());
+            return mergeGroundings(task.invoke(), groundingCap);
+        }
+
+        LongPairCountedSet pairs = new LongPairCountedSet();
+        groundRange(graph, pattern, types, 0, firstRelationships, GroundingStack.local()
+                , pairs, checkTail, groundingCap, stoppingCondition, null);
+        return pairs;
+    }
+
+    /**
+     * Grounds the rule from the first-atom relationships in {@code [from, to)}. If {@code total}
+     * is given, it counts the distinct groundings of all ranges grounded in parallel and the
+     * cap is enforced against it instead of {@code pairs}.
+     */
+    private static void groundRange(GraphAccess graph, Rule pattern, String[] types
+            , int from, int to, GroundingStack stack, LongPairCountedSet pairs, boolean checkTail
+            , int groundingCap, Supplier<Boolean> stoppingCondition, AtomicInteger total) {
+        Flag stop = new Flag();
+        stack.reset(pattern.length());
+        boolean outgoing = pattern.getBodyAtom(0).direction.equals(Direction.OUTGOING);
+        GraphAccess.Edges relationships = graph.edges(pattern.getBodyAtom(0).getBasePredicate(), from, to);
+        while(relationships.next()) {
+            if(stop.flag || stoppingCondition.get() || (total != null && total.get() >= groundingCap)) break;
+            stack.push(outgoing ? relationships.startId() : relationships.endId());
+            stack.push(outgoing ? relationships.endId() : relationships.startId());
+            DFSGrounding(graph, pattern, types, stack, pairs, stop, checkTail, groundingCap, stoppingCondition, total);
+            stack.pop();
+            stack.pop();
+            flush(stack.groundings, pairs, total);
+        }
+    }
+
+    public static LongPairCountedSet bodyGroundingFromStarts(GraphDatabaseService graph, Rule pattern, LongSet starts
+            , boolean application, Supplier<Boolean> stoppingCondition) {
+        return bodyGroundingFromStarts(Neo4jGraphAccess.of(graph), pattern, starts, application, stoppingCondition);
+    }
+
+    /**
+     * Grounds the rule only from the given start nodes, for applying rules top-down from
+     * the entities of test queries.
+     */
+    public static LongPairCountedSet bodyGroundingFromStarts(GraphAccess graph, Rule pattern, LongSet starts
+            , boolean application, Supplier<Boolean> stoppingCondition) {
+        int groundingCap = groundingCap(pattern, application);
+        String[] types = bodyTypes(pattern);
+        LongPairCountedSet pairs = new LongPairCountedSet();
+        GroundingStack stack = GroundingStack.local().reset(pattern.length());
+        Flag stop = new Flag();
+        for (int i = 0; i < starts.size(); i++) {
+            if(stop.flag || stoppingCondition.get()) break;
+            stack.push(starts.get(i));
+            DFSGrounding(graph, pattern, types, stack, pairs, stop, false, groundingCap, stoppingCondition, null);
+            stack.pop();
+        }
+        flush(stack.groundings, pairs, null);
+        return pairs;
+    }
+
+    public static LongPairCountedSet bodyGroundingToEnds(GraphDatabaseService graph, Rule pattern, LongSet ends
+            , boolean application, Supplier<Boolean> stoppingCondition) {
+        return bodyGroundingToEnds(Neo4jGraphAccess.of(graph), pattern, ends, application, stoppingCondition);
+    }
+
+    /**
+     * Grounds the rule backwards from the given end nodes. Groundings are (start, end) pairs
+     * as in {@link #bodyGroundingCoreAPI(GraphAccess, Rule, boolean, Supplier)}.
+     */
+    public static LongPairCountedSet bodyGroundingToEnds(GraphAccess graph, Rule pattern, LongSet ends
+            , boolean application, Supplier<Boolean> stoppingCondition) {
+        int groundingCap = groundingCap(pattern, application);
+        String[] types = bodyTypes(pattern);
+        LongPairCountedSet pairs = new LongPairCountedSet();
+        GroundingStack stack = GroundingStack.local().reset(pattern.length());
+        Flag stop = new Flag();
+        for (int i = 0; i < ends.size(); i++) {
             if(stop.flag || stoppingCondition.get()) break;
-            LocalPath currentPath = new LocalPath(relationship, pattern.getBodyAtom(0).direction);
-            DFSGrounding(pattern, currentPath, pairs, stop, checkTail, application, stoppingCondition);
+            groundFromTail(graph, pattern, types, ends.get(i), stack, pairs, stop, groundingCap, stoppingCondition);
         }
+        flush(stack.groundings, pairs, null);
+        return pairs;
+    }
 
+    /**
+     * Grounds the rule forward from {@code starts} and backward from {@code ends}. A pair
+     * reached from both sides was counted over the same paths by both walks, so it keeps
+     * the larger of its two counts, and the grounding cap applies to the merged pairs.
+     */
+    public static LongPairCountedSet bodyGroundingBetween(GraphAccess graph, Rule pattern, LongSet starts, LongSet ends
+            , boolean application, Supplier<Boolean> stoppingCondition) {
+        int groundingCap = groundingCap(pattern, application);
+        LongPairCountedSet pairs = bodyGroundingFromStarts(graph, pattern, starts, application, stoppingCondition);
+        LongPairCountedSet toEnds = bodyGroundingToEnds(graph, pattern, ends, application, stoppingCondition);
+        for (int i = 0; i < toEnds.size(); i++) {
+            int count = pairs.get(toEnds.sub(i), toEnds.obj(i));
+            if(count == -1 && pairs.size() < groundingCap)
+                pairs.increment(toEnds.sub(i), toEnds.obj(i), toEnds.count(i));
+            else if(count != -1 && toEnds.count(i) > count)
+                pairs.increment(toEnds.sub(i), toEnds.obj(i), toEnds.count(i) - count);
+        }
         return pairs;
     }
 
-    private static void DFSGrounding(Rule pattern, LocalPath path, CountedSet<Pair> pairs, Flag stop
-            , boolean checkTail, boolean application, Supplier<Boolean> stoppingCondition) {
-        if(path.length() >= pattern.length()) {
-            if(checkTail && pattern.getTailAnchoring() != path.getEndNode().getId()) return;
+    public static LongSet groundedStarts(GraphDatabaseService graph, Rule pattern, LongSet starts
+            , Supplier<Boolean> stoppingCondition) {
+        return groundedStarts(Neo4jGraphAccess.of(graph), pattern, starts, stoppingCondition);
+    }
 
-            pairs.add(new Pair(path.getStartNode().getId(), path.getEndNode().getId()));
+    /**
+     * @return the start nodes among {@code starts} from which the rule body can be grounded.
+     * The search from a start stops at its first path.
+     */
+    public static LongSet groundedStarts(GraphAccess graph, Rule pattern, LongSet starts
+            , Supplier<Boolean> stoppingCondition) {
+        String[] types = bodyTypes(pattern);
+        LongSet grounded = new LongSet();
+        GroundingStack stack = GroundingStack.local().reset(pattern.length());
+        for (int i = 0; i < starts.size(); i++) {
+            if(stoppingCondition.get()) break;
+            long start = starts.get(i);
+            stack.push(start);
+            if(pathExists(graph, pattern, types, stack, stoppingCondition))
+                grounded.add(start);
+            stack.pop();
+        }
+        return grounded;
+    }
+
+    private static int groundingCap(Rule pattern, boolean application) {
+        return !pattern.isClosed() ? Integer.MAX_VALUE
+                : application ? Settings.APPLY_GROUNDINGS : Settings.LEARN_GROUNDINGS;
+    }
+
+    private static String[] bodyTypes(Rule pattern) {
+        String[] types = new String[pattern.length()];
+        for (int i = 0; i < types.length; i++)
+            types[i] = pattern.getBodyAtom(i).predicate;
+        return types;
+    }
+
+    private static long otherId(GraphAccess.Edges relationship, long id) {
+        return relationship.startId() == id ? relationship.endId() : relationship.startId();
+    }
 
-            int groundingCap = application ? Integer.MAX_VALUE : Settings.LEARN_GROUNDINGS;
-            if(pairs.size() >= groundingCap && pattern.isClosed())
-                stop.flag = true;
+    private static boolean pathExists(GraphAccess graph, Rule pattern, String[] types, GroundingStack stack
+            , Supplier<Boolean> stoppingCondition) {
+        int length = stack.length();
+        if(length >= pattern.length()) return true;
+        long endId = stack.endId();
+        GraphAccess.Edges relationships = graph.edges(endId, pattern.getBodyAtom(length).direction, types[length]);
+        while(relationships.next()) {
+            if(stoppingCondition.get()) return false;
+
+            long otherId = otherId(relationships, endId);
+            if(!stack.contains(otherId)) {
+                stack.push(otherId);
+                boolean found = pathExists(graph, pattern, types, stack, stoppingCondition);
+                stack.pop();
+                if(found) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Grounds a tail-anchored rule from its tail constant, walking the body atoms from the
+     * last to the first. The stack holds the path reversed, so groundings are buffered as
+     * (end of stack, tail).
+     */
+    private static void groundFromTail(GraphAccess graph, Rule pattern, String[] types, long tail, GroundingStack stack
+            , LongPairCountedSet pairs, Flag stop, int groundingCap, Supplier<Boolean> stoppingCondition) {
+        stack.push(tail);
+        reverseDFSGrounding(graph, pattern, types, stack, pairs, stop, groundingCap, stoppingCondition);
+        stack.pop();
+    }
+
+    private static void reverseDFSGrounding(GraphAccess graph, Rule pattern, String[] types, GroundingStack stack
+            , LongPairCountedSet pairs, Flag stop, int groundingCap, Supplier<Boolean> stoppingCondition) {
+        int length = stack.length();
+        if(length >= pattern.length()) {
+            stack.groundings.add(stack.endId(), stack.startId());
+            if(pairs.size() + stack.groundings.size() >= groundingCap) {
+                flush(stack.groundings, pairs, null);
+                if(pairs.size() >= groundingCap) stop.flag = true;
+            }
         }
         else {
-            Direction nextDirection = pattern.getBodyAtom(path.length()).direction;
-            RelationshipType nextType = RelationshipType.withName(pattern.getBodyAtom(path.length()).predicate);
-            for (Relationship relationship : path.getEndNode().getRelationships(nextDirection, nextType)) {
+            int atom = pattern.length() - 1 - length;
+            Direction nextDirection = pattern.getBodyAtom(atom).direction.reverse();
+            long endId = stack.endId();
+            GraphAccess.Edges relationships = graph.edges(endId, nextDirection, types[atom]);
+            while(relationships.next()) {
                 if(stoppingCondition.get()) break;
 
-                if(!path.nodes.contains(relationship.getOtherNode(path.getEndNode()))) {
-                    LocalPath currentPath = new LocalPath(path, relationship);
-                    DFSGrounding(pattern, currentPath, pairs, stop, checkTail, application, stoppingCondition);
+                long otherId = otherId(relationships, endId);
+                if(!stack.contains(otherId)) {
+                    stack.push(otherId);
+                    reverseDFSGrounding(graph, pattern, types, stack, pairs, stop, groundingCap, stoppingCondition);
+                    stack.pop();
                     if (stop.flag) break;
                 }
             }
         }
     }
 
+    /**
+     * Grounds a range of first-atom relationships, splitting it in halves down to
+     * {@link Settings#GROUNDING_RANGE} relationships. Each range owns its stack and
+     * grounding set; the sets are returned in range order and merged by the caller.
+     */
+    static class GroundingRange extends RecursiveTask<List<LongPairCountedSet>> {
+        private static final long serialVersionUID = 1L;
+        GraphAccess graph;
+        Rule pattern;
+        String[] types;
+        int from;
+        int to;
+        boolean checkTail;
+        int groundingCap;
+        Supplier<Boolean> stoppingCondition;
+        AtomicInteger total;
+
+        GroundingRange(GraphAccess graph, Rule pattern, String[] types
+                , int from, int to, boolean checkTail, int groundingCap, Supplier<Boolean> stoppingCondition
+                , AtomicInteger total) {
+            this.graph = graph;
+            this.pattern = pattern;
+            this.types = types;
+            this.from = from;
+            this.to = to;
+            this.checkTail = checkTail;
+            this.groundingCap = groundingCap;
+            this.stoppingCondition = stoppingCondition;
+            this.total = total;
+        }
+
+        @Override
+        protected List<LongPairCountedSet> compute() {
+            if(to - from > Settings.GROUNDING_RANGE) {
+                int mid = (from + to) >>> 1;
+                GroundingRange right = new GroundingRange(graph, pattern, types, mid, to
+                        , checkTail, groundingCap, stoppingCondition, total);
+                right.fork();
+                List<LongPairCountedSet> results = new GroundingRange(graph, pattern, types, from, mid
+                        , checkTail, groundingCap, stoppingCondition, total).compute();
+                results.addAll(right.join());
+                return results;
+            }
+            // A worker joining a range may run another range, so the thread-local stack is not used here.
+            LongPairCountedSet pairs = new LongPairCountedSet();
+            groundRange(graph, pattern, types, from, to, new GroundingStack()
+                    , pairs, checkTail, groundingCap, stoppingCondition, total);
+            List<LongPairCountedSet> results = new ArrayList<>();
+            results.add(pairs);
+            return results;
+        }
+    }
+
+    /**
+     * Folds range results together in range order. Counts of known pairs are always added,
+     * but new pairs are dropped once the cap is reached, as in serial grounding.
+     */
+    private static LongPairCountedSet mergeGroundings(List<LongPairCountedSet> ranges, int groundingCap) {
+        LongPairCountedSet pairs = new LongPairCountedSet();
+        for (LongPairCountedSet range : ranges) {
+            for (int i = 0; i < range.size(); i++) {
+                long sub = range.sub(i), obj = range.obj(i);
+                if(pairs.size() < groundingCap || pairs.contains(sub, obj))
+                    pairs.increment(sub, obj, range.count(i));
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * Grounds the remaining body atoms from the end of the stack, backtracking in place.
+     * Groundings are buffered and only folded into {@code pairs} when the buffer could
+     * reach the grounding cap, so the cap is still enforced on distinct pairs.
+     */
+    private static void DFSGrounding(GraphAccess graph, Rule pattern, String[] types, GroundingStack stack
+            , LongPairCountedSet pairs, Flag stop, boolean checkTail, int groundingCap
+            , Supplier<Boolean> stoppingCondition, AtomicInteger total) {
+        int length = stack.length();
+        if(length >= pattern.length()) {
+            if(checkTail && pattern.getTailAnchoring() != stack.endId()) return;
+
+            stack.groundings.add(stack.startId(), stack.endId());
+            int grounded = total == null ? pairs.size() : total.get();
+            if(grounded + stack.groundings.size() >= groundingCap) {
+                flush(stack.groundings, pairs, total);
+                if((total == null ? pairs.size() : total.get()) >= groundingCap)
+                    stop.flag = true;
+            }
+        }
+        else {
+            Direction nextDirection = pattern.getBodyAtom(length).direction;
+            long endId = stack.endId();
+            GraphAccess.Edges relationships = graph.edges(endId, nextDirection, types[length]);
+            while(relationships.next()) {
+                if(stoppingCondition.get()) break;
+
+                long otherId = otherId(relationships, endId);
+                if(!stack.contains(otherId)) {
+                    stack.push(otherId);
+                    DFSGrounding(graph, pattern, types, stack, pairs, stop, checkTail, groundingCap, stoppingCondition, total);
+                    stack.pop();
+                    if (stop.flag) break;
+                }
+            }
+        }
+    }
+
+    private static void flush(LongPairBuffer groundings, LongPairCountedSet pairs, AtomicInteger total) {
+        int before = pairs.size();
+        for (int i = 0; i < groundings.size(); i++)
+            pairs.increment(groundings.sub(i), groundings.obj(i));
+        groundings.clear();
+        if(total != null) total.addAndGet(pairs.size() - before);
+    }
+
     public static Traverser buildStandardTraverser(GraphDatabaseService graph, Pair pair, int randomWalkers){
         Traverser traverser;
         Node startNode = graph.getNodeById(pair.subId);
@@ -434,50 +755,131 @@ public class GraphOps {
             @Override
             public Evaluation evaluate(Path path, BranchState state)
             {
-                boolean fromSource = pair.subId == path.startNode().getId();
-                boolean closed = pathIsClosed( path, pair );
-                boolean hasTargetRelation = false;
-                int pathLength = path.length();
-
-                if ( path.lastRelationship() != null ) {
-                    Relationship relation = path.lastRelationship();
-                    hasTargetRelation = relation.getType().equals(pair.type);
-                    if ( pathLength == 1
-                            && relation.getStartNodeId() == pair.objId
-                            && relation.getEndNodeId() == pair.subId
-                            && hasTargetRelation)
-                        return Evaluation.INCLUDE_AND_PRUNE;
-                }
-
-                if ( pathLength == 0 )
+                Relationship relation = path.lastRelationship();
+                if ( relation == null )
                     return Evaluation.EXCLUDE_AND_CONTINUE;
-
-                if ( pathLength == 1 && hasTargetRelation && closed )
-                    return Evaluation.EXCLUDE_AND_PRUNE;
-
-                if ( closed && fromSource )
-                    return Evaluation.INCLUDE_AND_PRUNE;
-                else if ( closed )
-                    return Evaluation.EXCLUDE_AND_PRUNE;
-
-                if (selfloop(path))
-                    return Evaluation.EXCLUDE_AND_PRUNE;
-
-                return Evaluation.of( pathLength <= depth, pathLength < depth );
+                return GraphOps.evaluate(path.length(), path.startNode().getId(), path.endNode().getId()
+                        , relation.getStartNodeId(), relation.getEndNodeId(), relation.getType().name()
+                        , depth, pair);
             }
         };
     }
 
-    private static boolean pathIsClosed(Path path, Pair pair) {
-        boolean fromSource = path.startNode().getId() == pair.subId;
-        if ( fromSource )
-            return path.endNode().getId() == pair.objId;
-        else
-            return path.endNode().getId() == pair.subId;
+    /**
+     * Evaluates a sampled path of at least one relationship for {@link #toDepthNoTrivial(int, Pair)}
+     * and {@link #samplePaths(GraphAccess, Pair, int, int, Predicate)}.
+     */
+    private static Evaluation evaluate(int pathLength, long startId, long endId
+            , long lastStartId, long lastEndId, String lastType, int depth, Pair pair) {
+        boolean fromSource = pair.subId == startId;
+        boolean closed = fromSource ? endId == pair.objId : endId == pair.subId;
+        boolean hasTargetRelation = lastType.equals(pair.type.name());
+
+        if ( pathLength == 1
+                && lastStartId == pair.objId
+                && lastEndId == pair.subId
+                && hasTargetRelation)
+            return Evaluation.INCLUDE_AND_PRUNE;
+
+        if ( pathLength == 1 && hasTargetRelation && closed )
+            return Evaluation.EXCLUDE_AND_PRUNE;
+
+        if ( closed && fromSource )
+            return Evaluation.INCLUDE_AND_PRUNE;
+        else if ( closed )
+            return Evaluation.EXCLUDE_AND_PRUNE;
+
+        if ( startId == endId )
+            return Evaluation.EXCLUDE_AND_PRUNE;
+
+        return Evaluation.of( pathLength <= depth, pathLength < depth );
+    }
+
+    /**
+     * Samples paths around the pair the way the traverser of {@link #buildStandardTraverser(GraphDatabaseService, Pair, int)}
+     * does, but over any {@link GraphAccess}: node-unique paths are expanded breadth-first from
+     * both ends of the pair, each through at most {@code randomWalkers} randomly chosen
+     * relationships, and evaluated as in {@link #toDepthNoTrivial(int, Pair)}. Every included
+     * path is handed to {@code consumer} as a template; sampling stops when it returns false.
+     */
+    public static void samplePaths(GraphAccess graph, Pair pair, int depth, int randomWalkers, Predicate<Rule> consumer) {
+        Random rand = new Random();
+        Deque<SampledPath> queue = new ArrayDeque<>();
+        queue.add(new SampledPath(pair.subId));
+        queue.add(new SampledPath(pair.objId));
+        List<SampledPath> candidates = new ArrayList<>();
+        while(!queue.isEmpty()) {
+            SampledPath path = queue.poll();
+            Evaluation evaluation = path.length == 0 ? Evaluation.EXCLUDE_AND_CONTINUE
+                    : evaluate(path.length, path.origin(), path.node, path.startId, path.endId, path.type, depth, pair);
+            if(evaluation.includes() && !consumer.test(path.toTemplate(pair)))
+                return;
+            if(!evaluation.continues())
+                continue;
+
+            candidates.clear();
+            GraphAccess.Edges relationships = graph.edges(path.node, Direction.BOTH, null);
+            while(relationships.next())
+                candidates.add(new SampledPath(path, relationships.startId(), relationships.endId(), relationships.type()));
+            if(randomWalkers != 0 && candidates.size() >= randomWalkers) {
+                Collections.shuffle(candidates, rand);
+                candidates.subList(randomWalkers, candidates.size()).clear();
+            }
+            for (SampledPath candidate : candidates) {
+                if(!path.contains(candidate.node))
+                    queue.add(candidate);
+            }
+        }
     }
 
-    private static boolean selfloop(Path path) {
-        return path.startNode().equals( path.endNode() ) && path.length() != 0;
+    /**
+     * A sampled path, stored as its last relationship and a link to the path it extends.
+     */
+    static class SampledPath {
+        final SampledPath parent;
+        final long node;
+        final long startId;
+        final long endId;
+        final String type;
+        final int length;
+
+        SampledPath(long node) {
+            this.parent = null;
+            this.node = node;
+            this.startId = -1;
+            this.endId = -1;
+            this.type = null;
+            this.length = 0;
+        }
+
+        SampledPath(SampledPath parent, long startId, long endId, String type) {
+            this.parent = parent;
+            this.node = startId == parent.node ? endId : startId;
+            this.startId = startId;
+            this.endId = endId;
+            this.type = type;
+            this.length = parent.length + 1;
+        }
+
+        long origin() {
+            SampledPath path = this;
+            while(path.parent != null) path = path.parent;
+            return path.node;
+        }
+
+        boolean contains(long node) {
+            for (SampledPath path = this; path != null; path = path.parent) {
+                if(path.node == node) return true;
+            }
+            return false;
+        }
+
+        Rule toTemplate(Pair pair) {
+            Atom[] bodyAtoms = new Atom[length];
+            for (SampledPath path = this; path.parent != null; path = path.parent)
+                bodyAtoms[path.length - 1] = new Atom(path.parent.node, path.startId, path.endId, path.type);
+            return new Template(new Atom(pair), Arrays.asList(bodyAtoms));
+        }
     }
 
     static class Counter {
@@ -504,12 +906,14 @@ public class GraphOps {
 
     public static void removeRelationships(Set<Pair> pairs, GraphDatabaseService graph) {
         int count = 0;
+        LongSet removed = new LongSet();
         try(Transaction tx = graph.beginTx()) {
             for (Pair pair : pairs) {
                 Node s = graph.getNodeById(pair.subId);
                 Node e = graph.getNodeById(pair.objId);
                 for (Relationship r : s.getRelationships(Direction.OUTGOING, RelationshipType.withName(Settings.TARGET))) {
                     if(r.getOtherNode(s).equals(e)) {
+                        removed.add(r.getId());
                         r.delete();
                         count++;
                     }
@@ -517,20 +921,23 @@ public class GraphOps {
             }
             tx.success();
         }
+        RelationshipIndex.update(graph, index -> index.removed(Settings.TARGET, removed));
 //        Logger.println("# Removed validation and test relationships: " + count);
     }
 
     public static void addRelationships(Set<Pair> pairs, GraphDatabaseService graph) {
         int count = 0;
+        LongSet added = new LongSet();
         try(Transaction tx = graph.beginTx()) {
             for (Pair pair : pairs) {
                 Node s = graph.getNodeById(pair.subId);
                 Node e = graph.getNodeById(pair.objId);
-                s.createRelationshipTo(e, RelationshipType.withName(Settings.TARGET));
+                added.add(s.createRelationshipTo(e, RelationshipType.withName(Settings.TARGET)).getId());
                 count++;
             }
             tx.success();
         }
+        RelationshipIndex.update(graph, index -> index.added(Settings.TARGET, added));
 //        Logger.println("# Added validation and test relationships back: " + count);
     }
 }
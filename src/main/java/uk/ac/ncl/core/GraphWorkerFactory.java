@@ -0,0 +1,51 @@
+package uk.ac.ncl.core;
+
+import uk.ac.ncl.graph.GraphAccess;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates fork-join workers that hold a read session on the graph for their whole
+ * lifetime, so tasks can read nodes and relationships without opening their own.
+ */
+public class GraphWorkerFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+    private final GraphAccess graph;
+    private final String name;
+    private final AtomicInteger count = new AtomicInteger();
+
+    public GraphWorkerFactory(GraphAccess graph, String name) {
+        this.graph = graph;
+        this.name = name;
+    }
+
+    @Override
+    public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+        return new GraphWorker(pool, graph, name + "-" + count.getAndIncrement());
+    }
+
+    static class GraphWorker extends ForkJoinWorkerThread {
+        GraphAccess graph;
+        GraphAccess.Session session;
+
+        GraphWorker(ForkJoinPool pool, GraphAccess graph, String name) {
+            super(pool);
+            this.graph = graph;
+            setName(name);
+        }
+
+        @Override
+        protected void onStart() {
+            super.onStart();
+            session = graph.open();
+        }
+
+        @Override
+        protected void onTermination(Throwable exception) {
+            if(session != null)
+                session.close();
+            super.onTermination(exception);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package uk.ac.ncl.core;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import uk.ac.ncl.structure.LongSet;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Consumer;
+
+/**
+ * Relationship ids of a graph grouped by relationship type, built with one scan of the
+ * store the first time a type is asked for. Grounding starts from these ids instead of
+ * scanning every relationship. Arrays handed out are never modified: removing or adding
+ * relationships through {@link GraphOps} replaces the arrays of the affected types, and
+ * code that changes the store directly calls {@link #invalidate(GraphDatabaseService)}.
+ * The scan runs outside the lock on the graph map, so lookups of other graphs, and of this
+ * graph once built, do not wait for it.
+ */
+public class RelationshipIndex {
+    private final static long[] EMPTY = new long[0];
+    // Weak keys, so an index does not keep a shut down database reachable.
+    private final static Map<GraphDatabaseService, FutureTask<RelationshipIndex>> indexes = new WeakHashMap<>();
+
+    private final Map<String, long[]> typeToIds = new ConcurrentHashMap<>();
+
+    private RelationshipIndex(GraphDatabaseService graph) {
+        Map<String, long[]> ids = new HashMap<>();
+        Map<String, Integer> sizes = new HashMap<>();
+        try(Transaction tx = graph.beginTx()) {
+            for (Relationship relationship : graph.getAllRelationships()) {
+                String type = relationship.getType().name();
+                long[] array = ids.get(type);
+                int size = sizes.getOrDefault(type, 0);
+                if(array == null) {
+                    array = new long[64];
+                    ids.put(type, array);
+                } else if(size == array.length) {
+                    array = Arrays.copyOf(array, size * 2);
+                    ids.put(type, array);
+                }
+                array[size] = relationship.getId();
+                sizes.put(type, size + 1);
+            }
+            tx.success();
+        }
+        for (Map.Entry<String, long[]> entry : ids.entrySet())
+            typeToIds.put(entry.getKey(), Arrays.copyOf(entry.getValue(), sizes.get(entry.getKey())));
+    }
+
+    public static RelationshipIndex of(GraphDatabaseService graph) {
+        FutureTask<RelationshipIndex> task;
+        synchronized (indexes) {
+            task = indexes.computeIfAbsent(graph, g -> new FutureTask<>(() -> new RelationshipIndex(g)));
+        }
+        // Builds the index in the first caller; later callers wait for it, or return at once if built.
+        task.run();
+        try {
+            return task.get();
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+            System.exit(-1);
+            return null;
+        }
+    }
+
+    /**
+     * Drops the index of the graph; it is rebuilt on next use.
+     */
+    public static void invalidate(GraphDatabaseService graph) {
+        synchronized (indexes) {
+            indexes.remove(graph);
+        }
+    }
+
+    /**
+     * Applies {@code change} to the index of the graph if one has been built. An index still
+     * being built may or may not have seen the change, so it is dropped instead.
+     */
+    static void update(GraphDatabaseService graph, Consumer<RelationshipIndex> change) {
+        synchronized (indexes) {
+            FutureTask<RelationshipIndex> task = indexes.get(graph);
+            if(task == null) return;
+            if(!task.isDone()) {
+                indexes.remove(graph);
+                return;
+            }
+            try {
+                change.accept(task.get());
+            } catch (InterruptedException | ExecutionException e) {
+                e.printStackTrace();
+                System.exit(-1);
+            }
+        }
+    }
+
+    /**
+     * @return ids of the relationships of the type. The array must not be modified.
+     */
+    public long[] ids(String type) {
+        return typeToIds.getOrDefault(type, EMPTY);
+    }
+
+    public int size(String type) {
+        return ids(type).length;
+    }
+
+    synchronized void removed(String type, LongSet ids) {
+        if(ids.size() == 0) return;
+        long[] current = ids(type);
+        long[] kept = new long[current.length];
+        int size = 0;
+        for (long id : current)
+            if(!ids.contains(id)) kept[size++] = id;
+        typeToIds.put(type, Arrays.copyOf(kept, size));
+    }
+
+    synchronized void added(String type, LongSet ids) {
+        if(ids.size() == 0) return;
+        long[] current = ids(type);
+        long[] grown = Arrays.copyOf(current, current.length + ids.size());
+        for (int i = 0; i < ids.size(); i++)
+            grown[current.length + i] = ids.get(i);
+        typeToIds.put(type, grown);
+    }
+}
@@ -1,15 +1,15 @@
 package uk.ac.ncl.core;
 
 import uk.ac.ncl.Settings;
-import uk.ac.ncl.structure.CountedSet;
 import uk.ac.ncl.structure.InstantiatedRule;
+import uk.ac.ncl.structure.LongPairCountedSet;
+import uk.ac.ncl.structure.LongPairSet;
+import uk.ac.ncl.structure.LongSet;
 import uk.ac.ncl.structure.Pair;
 import uk.ac.ncl.structure.Rule;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Transaction;
 
-import java.util.HashSet;
-import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -59,14 +59,15 @@ public class RuleApplication {
         }
 
         private void singleRuleApplication(GraphDatabaseService graph, Rule rule, Context context) {
-            CountedSet<Pair> bodyGroundings = GraphOps.bodyGroundingCoreAPI(graph, rule, true, () -> false);
-            Set<Long> originals = new HashSet<>();
-            for (Pair bodyGrounding : bodyGroundings) {
-                originals.add(bodyGrounding.subId);
-            }
+            LongPairCountedSet bodyGroundings = GraphOps.bodyGroundingCoreAPI(graph, rule, true, () -> false);
 
             if(rule instanceof InstantiatedRule) {
-                for (Long original : originals) {
+                LongSet originals = new LongSet(bodyGroundings.size());
+                for (int i = 0; i < bodyGroundings.size(); i++) {
+                    originals.add(bodyGroundings.sub(i));
+                }
+                for (int i = 0; i < originals.size(); i++) {
+                    long original = originals.get(i);
                     Pair pair = rule.isFromSubject() ? new Pair(original, rule.getHeadAnchoring()) : new Pair(rule.getHeadAnchoring(), original);
                     if(!pair.isSelfloop()) {
                         context.putInPredictionMap(pair, rule);
@@ -77,10 +78,10 @@ public class RuleApplication {
             }
         }
 
-        private void applyClosedRule(Rule rule, CountedSet<Pair> bodyGroundings, Context context) {
-            for (Pair grounding : bodyGroundings) {
-                Pair pair = rule.isFromSubject() ? grounding : new Pair(grounding.objId, grounding.subId);
-                if(!pair.isSelfloop()) {
+        private void applyClosedRule(Rule rule, LongPairSet bodyGroundings, Context context) {
+            for (int i = 0; i < bodyGroundings.size(); i++) {
+                Pair grounding = new Pair(bodyGroundings.sub(i), bodyGroundings.obj(i));
+                if(!grounding.isSelfloop()) {
                     context.putInPredictionMap(grounding, rule);
                 }
             }
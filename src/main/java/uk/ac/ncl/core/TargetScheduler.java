@@ -0,0 +1,196 @@
+package uk.ac.ncl.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingDeque;
+
+/**
+ * Processes targets on a fixed number of target workers sharing one read-only graph.
+ * The threads of {@link uk.ac.ncl.Settings#THREAD_NUMBER} are split between the workers,
+ * so each target runs its steps on its share. A worker only starts a target while the
+ * used heap is within the memory budget, unless no other target is running, so that
+ * targets are delayed rather than run out of memory, and a single target always runs.
+ * <p>
+ * The inputs of a target, such as its examples, are prepared by a loader stage ahead of
+ * the workers. At most one prepared target waits per worker, so the inputs of the next
+ * target are read while the current one is learned, without reading all of them up front.
+ * <p>
+ * If loading or running a target fails, the queue is replaced by end markers and the other
+ * stages are interrupted, so none of them stays blocked on it, and the failure is reported
+ * once all of them have stopped.
+ */
+public class TargetScheduler<T> {
+    private final List<String> targets;
+    private final BlockingQueue<Prepared<T>> prepared;
+    private final TargetLoader<T> loader;
+    private final TargetTask<T> task;
+    private final double memoryBudget;
+    private final int parallelism;
+    private final int threads;
+    private final Runtime runtime = Runtime.getRuntime();
+    private final List<Thread> stages = new ArrayList<>();
+    private volatile Throwable failure;
+    private int running = 0;
+
+    public interface TargetLoader<T> {
+        /**
+         * @return the inputs of the target, or null to skip it.
+         */
+        T load(String target);
+    }
+
+    public interface TargetTask<T> {
+        void run(String target, T inputs, int threads);
+    }
+
+    private static class Prepared<T> {
+        final String target;
+        final T inputs;
+
+        Prepared(String target, T inputs) {
+            this.target = target;
+            this.inputs = inputs;
+        }
+    }
+
+    private TargetScheduler(Collection<String> targets, int parallelism, int threads
+            , double memoryBudget, TargetLoader<T> loader, TargetTask<T> task) {
+        this.targets = new ArrayList<>(targets);
+        this.prepared = new LinkedBlockingDeque<>(parallelism);
+        this.loader = loader;
+        this.task = task;
+        this.memoryBudget = memoryBudget;
+        this.parallelism = parallelism;
+        this.threads = Math.max(1, threads / parallelism);
+    }
+
+    /**
+     * Runs the task for every target, at most {@code parallelism} at a time, and returns
+     * once all of them are done.
+     *
+     * @param threads threads to split between the targets running at the same time.
+     * @param memoryBudget fraction of the max heap in use above which no further target is started.
+     */
+    public static <T> void run(Collection<String> targets, int parallelism, int threads
+            , double memoryBudget, TargetLoader<T> loader, TargetTask<T> task) {
+        parallelism = Math.max(1, Math.min(parallelism, targets.size()));
+        TargetScheduler<T> scheduler = new TargetScheduler<>(targets, parallelism, threads, memoryBudget, loader, task);
+        Thread loaderStage = scheduler.new LoaderStage(parallelism);
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < parallelism; i++) {
+            workers.add(scheduler.new TargetWorker(i));
+        }
+        try {
+            loaderStage.join();
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        if(scheduler.failure != null) {
+            scheduler.failure.printStackTrace();
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Registers the running stage, interrupting it at once if another stage already failed.
+     */
+    private synchronized void register(Thread stage) {
+        stages.add(stage);
+        if(failure != null) stage.interrupt();
+    }
+
+    /**
+     * Records the first failure, drops the prepared targets for one end marker per worker
+     * and interrupts the other stages, which may be blocked on the queue or the memory budget.
+     */
+    private synchronized void fail(Throwable e) {
+        if(failure == null) failure = e;
+        prepared.clear();
+        for (int i = 0; i < parallelism; i++) {
+            prepared.offer(new Prepared<>(null, null));
+        }
+        for (Thread stage : stages) {
+            if(stage != Thread.currentThread()) stage.interrupt();
+        }
+    }
+
+    private synchronized void admit() throws InterruptedException {
+        // Memory is freed by the collector without notice, so the budget is polled.
+        while(running > 0 && usedMemory() > memoryBudget * runtime.maxMemory())
+            wait(1000);
+        running++;
+    }
+
+    private synchronized void release() {
+        running--;
+        notifyAll();
+    }
+
+    private long usedMemory() {
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    class LoaderStage extends Thread {
+        final int workers;
+
+        LoaderStage(int workers) {
+            super("TargetLoader");
+            this.workers = workers;
+            start();
+        }
+
+        @Override
+        public void run() {
+            register(this);
+            try {
+                for (String target : targets) {
+                    if(failure != null) return;
+                    T inputs = loader.load(target);
+                    if(inputs != null)
+                        prepared.put(new Prepared<>(target, inputs));
+                }
+                // One end marker per worker.
+                for (int i = 0; i < workers; i++) {
+                    prepared.put(new Prepared<>(null, null));
+                }
+            } catch (InterruptedException e) {
+                if(failure == null) fail(e);
+            } catch (Throwable e) {
+                fail(e);
+            }
+        }
+    }
+
+    class TargetWorker extends Thread {
+        TargetWorker(int id) {
+            super("TargetWorker-" + id);
+            start();
+        }
+
+        @Override
+        public void run() {
+            register(this);
+            try {
+                Prepared<T> next;
+                while(failure == null && (next = prepared.take()).target != null) {
+                    admit();
+                    try {
+                        task.run(next.target, next.inputs, threads);
+                    } finally {
+                        release();
+                    }
+                }
+            } catch (InterruptedException e) {
+                if(failure == null) fail(e);
+            } catch (Throwable e) {
+                fail(e);
+            }
+        }
+    }
+}
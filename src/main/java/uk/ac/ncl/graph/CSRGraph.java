@@ -0,0 +1,330 @@
+package uk.ac.ncl.graph;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable compressed sparse row (CSR) adjacency store. Nodes are renumbered to
+ * dense int indices ordered by their Neo4j ids, relationship types are interned
+ * to int ids, and for each direction the neighbours of a node are grouped into
+ * per-type segments of a single int array. Edges are additionally kept grouped
+ * by type so that the first atom of a rule can be scanned without a lookup.
+ */
+public class CSRGraph {
+    final long[] nodeIds;
+    final String[] nodeNames;
+    final String[] types;
+    private final Map<String, Integer> typeIndex;
+
+    final int[] typeOffsets;
+    final int[] edgeHeads;
+    final int[] edgeTails;
+
+    final Adjacency out;
+    final Adjacency in;
+
+    private CSRGraph(long[] nodeIds, String[] nodeNames, String[] types
+            , int[] typeOffsets, int[] edgeHeads, int[] edgeTails) {
+        this(nodeIds, nodeNames, types, typeOffsets, edgeHeads, edgeTails
+                , new Adjacency(nodeIds.length, types.length, typeOffsets, edgeHeads, edgeTails)
+                , new Adjacency(nodeIds.length, types.length, typeOffsets, edgeTails, edgeHeads));
+    }
+
+    /**
+     * Assembles a graph from arrays laid out by a previous build, as read from a {@link GraphSnapshot}.
+     */
+    CSRGraph(long[] nodeIds, String[] nodeNames, String[] types
+            , int[] typeOffsets, int[] edgeHeads, int[] edgeTails, Adjacency out, Adjacency in) {
+        this.nodeIds = nodeIds;
+        this.nodeNames = nodeNames;
+        this.types = types;
+        this.typeIndex = new HashMap<>();
+        for (int i = 0; i < types.length; i++) typeIndex.put(types[i], i);
+        this.typeOffsets = typeOffsets;
+        this.edgeHeads = edgeHeads;
+        this.edgeTails = edgeTails;
+        this.out = out;
+        this.in = in;
+    }
+
+    public int nodeCount() {
+        return nodeIds.length;
+    }
+
+    public int edgeCount() {
+        return edgeHeads.length;
+    }
+
+    public int typeCount() {
+        return types.length;
+    }
+
+    /**
+     * @return the dense index of the node with the given Neo4j id, or -1 if the
+     * node is not in the graph.
+     */
+    public int indexOf(long nodeId) {
+        int index = Arrays.binarySearch(nodeIds, nodeId);
+        return index < 0 ? -1 : index;
+    }
+
+    public long nodeId(int node) {
+        return nodeIds[node];
+    }
+
+    public String nodeName(int node) {
+        return nodeNames[node];
+    }
+
+    /**
+     * @return the interned id of the relationship type, or -1 if no edge has this type.
+     */
+    public int typeId(String type) {
+        Integer id = typeIndex.get(type);
+        return id == null ? -1 : id;
+    }
+
+    public String typeName(int type) {
+        return types[type];
+    }
+
+    public int typeStart(int type) {
+        return typeOffsets[type];
+    }
+
+    public int typeEnd(int type) {
+        return typeOffsets[type + 1];
+    }
+
+    public int edgeHead(int edge) {
+        return edgeHeads[edge];
+    }
+
+    public int edgeTail(int edge) {
+        return edgeTails[edge];
+    }
+
+    /**
+     * @return the segment holding the neighbours of {@code node} over edges of {@code type}
+     * in the given direction, or -1 if there are none.
+     */
+    public int segment(int node, boolean outgoing, int type) {
+        return (outgoing ? out : in).segment(node, type);
+    }
+
+    public int segmentStart(boolean outgoing, int segment) {
+        return (outgoing ? out : in).segOffsets[segment];
+    }
+
+    public int segmentEnd(boolean outgoing, int segment) {
+        return (outgoing ? out : in).segOffsets[segment + 1];
+    }
+
+    public int neighbour(boolean outgoing, int slot) {
+        return (outgoing ? out : in).neighbours[slot];
+    }
+
+    /**
+     * @return the first segment of {@code node} in the given direction; the segments of
+     * the node run up to {@link #segmentsEnd(int, boolean)}.
+     */
+    public int segmentsStart(int node, boolean outgoing) {
+        return (outgoing ? out : in).nodeOffsets[node];
+    }
+
+    public int segmentsEnd(int node, boolean outgoing) {
+        return (outgoing ? out : in).nodeOffsets[node + 1];
+    }
+
+    public int segmentType(boolean outgoing, int segment) {
+        return (outgoing ? out : in).segTypes[segment];
+    }
+
+    public int degree(int node, boolean outgoing, int type) {
+        Adjacency adjacency = outgoing ? out : in;
+        int segment = adjacency.segment(node, type);
+        return segment == -1 ? 0 : adjacency.segOffsets[segment + 1] - adjacency.segOffsets[segment];
+    }
+
+    public int degree(int node, boolean outgoing) {
+        Adjacency adjacency = outgoing ? out : in;
+        return adjacency.segOffsets[adjacency.nodeOffsets[node + 1]] - adjacency.segOffsets[adjacency.nodeOffsets[node]];
+    }
+
+    /**
+     * One direction of the adjacency. {@code nodeOffsets} points into the segment arrays,
+     * where each segment is a run of neighbours sharing a relationship type. Segments of
+     * a node are ordered by type id.
+     */
+    static class Adjacency {
+        final int[] nodeOffsets;
+        final int[] segTypes;
+        final int[] segOffsets;
+        final int[] neighbours;
+
+        Adjacency(int[] nodeOffsets, int[] segTypes, int[] segOffsets, int[] neighbours) {
+            this.nodeOffsets = nodeOffsets;
+            this.segTypes = segTypes;
+            this.segOffsets = segOffsets;
+            this.neighbours = neighbours;
+        }
+
+        Adjacency(int nodeCount, int typeCount, int[] typeOffsets, int[] keys, int[] others) {
+            int edgeCount = keys.length;
+            int[] counts = new int[nodeCount + 1];
+            for (int key : keys) counts[key + 1]++;
+            for (int i = 0; i < nodeCount; i++) counts[i + 1] += counts[i];
+
+            // Stable counting sort by key keeps edges of a node ordered by type.
+            int[] order = new int[edgeCount];
+            int[] cursor = Arrays.copyOf(counts, nodeCount);
+            for (int e = 0; e < edgeCount; e++) order[cursor[keys[e]]++] = e;
+
+            int[] edgeTypes = new int[edgeCount];
+            for (int t = 0; t < typeCount; t++)
+                Arrays.fill(edgeTypes, typeOffsets[t], typeOffsets[t + 1], t);
+
+            int segments = 0;
+            for (int i = 0; i < edgeCount; i++) {
+                if (i == 0 || keys[order[i]] != keys[order[i - 1]] || edgeTypes[order[i]] != edgeTypes[order[i - 1]])
+                    segments++;
+            }
+
+            nodeOffsets = new int[nodeCount + 1];
+            segTypes = new int[segments];
+            segOffsets = new int[segments + 1];
+            neighbours = new int[edgeCount];
+
+            int segment = -1;
+            for (int i = 0; i < edgeCount; i++) {
+                int e = order[i];
+                if (i == 0 || keys[e] != keys[order[i - 1]] || edgeTypes[e] != edgeTypes[order[i - 1]]) {
+                    segment++;
+                    segTypes[segment] = edgeTypes[e];
+                    segOffsets[segment] = i;
+                    nodeOffsets[keys[e] + 1] = segment + 1;
+                }
+                neighbours[i] = others[e];
+            }
+            segOffsets[segments] = edgeCount;
+            for (int i = 0; i < nodeCount; i++) {
+                if (nodeOffsets[i + 1] < nodeOffsets[i]) nodeOffsets[i + 1] = nodeOffsets[i];
+            }
+        }
+
+        int segment(int node, int type) {
+            int low = nodeOffsets[node], high = nodeOffsets[node + 1] - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (segTypes[mid] < type) low = mid + 1;
+                else if (segTypes[mid] > type) high = mid - 1;
+                else return mid;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Collects nodes and typed edges keyed by Neo4j ids. Duplicate edges are
+     * dropped when the graph is built.
+     */
+    public static class Builder {
+        private final Map<Long, Integer> nodeIndex = new HashMap<>();
+        private long[] ids = new long[1024];
+        private String[] names = new String[1024];
+
+        private final Map<String, Integer> typeIndex = new HashMap<>();
+        private int[] heads = new int[1024];
+        private int[] tails = new int[1024];
+        private int[] edgeTypes = new int[1024];
+        private int edges = 0;
+
+        public int addNode(long id, String name) {
+            Integer index = nodeIndex.get(id);
+            if (index != null) return index;
+            index = nodeIndex.size();
+            if (index == ids.length) {
+                ids = Arrays.copyOf(ids, index * 2);
+                names = Arrays.copyOf(names, index * 2);
+            }
+            ids[index] = id;
+            names[index] = name;
+            nodeIndex.put(id, index);
+            return index;
+        }
+
+        public boolean containsNode(long id) {
+            return nodeIndex.containsKey(id);
+        }
+
+        public void addEdge(long startId, String startName, long endId, String endName, String type) {
+            int head = addNode(startId, startName);
+            int tail = addNode(endId, endName);
+            Integer typeId = typeIndex.get(type);
+            if (typeId == null) {
+                typeId = typeIndex.size();
+                typeIndex.put(type, typeId);
+            }
+            if (edges == heads.length) {
+                heads = Arrays.copyOf(heads, edges * 2);
+                tails = Arrays.copyOf(tails, edges * 2);
+                edgeTypes = Arrays.copyOf(edgeTypes, edges * 2);
+            }
+            heads[edges] = head;
+            tails[edges] = tail;
+            edgeTypes[edges] = typeId;
+            edges++;
+        }
+
+        public CSRGraph build() {
+            int nodeCount = nodeIndex.size();
+
+            // Renumber nodes in ascending Neo4j id order so lookups are a binary search.
+            long[] sortedIds = Arrays.copyOf(ids, nodeCount);
+            Arrays.sort(sortedIds);
+            int[] remap = new int[nodeCount];
+            String[] sortedNames = new String[nodeCount];
+            for (int i = 0; i < nodeCount; i++) {
+                int index = Arrays.binarySearch(sortedIds, ids[i]);
+                remap[i] = index;
+                sortedNames[index] = names[i];
+            }
+
+            // Types are ordered by name so the layout does not depend on insertion order.
+            String[] typeNames = typeIndex.keySet().toArray(new String[0]);
+            Arrays.sort(typeNames);
+            int[] typeRemap = new int[typeNames.length];
+            for (int t = 0; t < typeNames.length; t++) typeRemap[typeIndex.get(typeNames[t])] = t;
+
+            int[] typeCounts = new int[typeNames.length + 1];
+            for (int e = 0; e < edges; e++) typeCounts[typeRemap[edgeTypes[e]] + 1]++;
+            for (int t = 0; t < typeNames.length; t++) typeCounts[t + 1] += typeCounts[t];
+
+            long[] packed = new long[edges];
+            int[] cursor = Arrays.copyOf(typeCounts, typeNames.length);
+            for (int e = 0; e < edges; e++) {
+                packed[cursor[typeRemap[edgeTypes[e]]]++] = ((long) remap[heads[e]] << 32) | remap[tails[e]];
+            }
+
+            int[] typeOffsets = new int[typeNames.length + 1];
+            int[] edgeHeads = new int[edges];
+            int[] edgeTails = new int[edges];
+            int size = 0;
+            for (int t = 0; t < typeNames.length; t++) {
+                typeOffsets[t] = size;
+                Arrays.sort(packed, typeCounts[t], typeCounts[t + 1]);
+                for (int i = typeCounts[t]; i < typeCounts[t + 1]; i++) {
+                    if (i != typeCounts[t] && packed[i] == packed[i - 1]) continue;
+                    edgeHeads[size] = (int) (packed[i] >>> 32);
+                    edgeTails[size] = (int) packed[i];
+                    size++;
+                }
+            }
+            typeOffsets[typeNames.length] = size;
+
+            return new CSRGraph(sortedIds, sortedNames, typeNames, typeOffsets
+                    , Arrays.copyOf(edgeHeads, size), Arrays.copyOf(edgeTails, size));
+        }
+    }
+}
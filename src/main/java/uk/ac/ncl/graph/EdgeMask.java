@@ -0,0 +1,39 @@
+package uk.ac.ncl.graph;
+
+import uk.ac.ncl.structure.LongPairSet;
+import uk.ac.ncl.structure.Pair;
+
+import java.util.Collection;
+
+/**
+ * Hashed set of edges of one relationship type that a view of the graph leaves out, such
+ * as the valid and test examples of the current target. Edges are identified by their
+ * (start, end) node ids, so parallel edges of the type between two nodes are masked together.
+ */
+public class EdgeMask {
+    private final String type;
+    private final LongPairSet edges;
+
+    @SafeVarargs
+    public EdgeMask(String type, Collection<Pair>... pairs) {
+        this.type = type;
+        int size = 0;
+        for (Collection<Pair> collection : pairs) size += collection.size();
+        edges = new LongPairSet(size);
+        for (Collection<Pair> collection : pairs) {
+            for (Pair pair : collection) edges.add(pair.subId, pair.objId);
+        }
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public boolean isEmpty() {
+        return edges.isEmpty();
+    }
+
+    public boolean masks(long startId, long endId, String type) {
+        return this.type.equals(type) && edges.contains(startId, endId);
+    }
+}
@@ -0,0 +1,65 @@
+package uk.ac.ncl.graph;
+
+import org.neo4j.graphdb.Direction;
+import uk.ac.ncl.structure.Pair;
+
+import java.io.File;
+import java.util.Set;
+
+/**
+ * Read access to a graph by node ids, as needed to sample paths, ground rules and name
+ * entities. GPFL runs either on a Neo4j database through {@link Neo4jGraphAccess} or on a
+ * {@link NativeGraph} loaded straight from the triple files.
+ */
+public interface GraphAccess {
+    /**
+     * Opens a read scope for the calling thread. Every thread reading the graph holds one
+     * while it reads.
+     */
+    Session open();
+
+    String nodeName(long node);
+
+    Set<String> relationshipTypes();
+
+    /**
+     * @return number of relationships of the type.
+     */
+    int count(String type);
+
+    /**
+     * Iterates the relationships of the type in {@code [from, to)} of a fixed order.
+     */
+    Edges edges(String type, int from, int to);
+
+    /**
+     * Iterates the relationships of the node in the direction, of the type or of every
+     * type if {@code type} is null.
+     */
+    Edges edges(long node, Direction direction, String type);
+
+    int degree(long node, Direction direction, String type);
+
+    /**
+     * Reads the examples of the target from an example file in the format of this graph.
+     */
+    Set<Pair> readPairs(File file, String target);
+
+    /**
+     * Cursor over relationships; {@link #next()} must be called before reading the first one.
+     */
+    interface Edges {
+        boolean next();
+
+        long startId();
+
+        long endId();
+
+        String type();
+    }
+
+    interface Session extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,278 @@
+package uk.ac.ncl.graph;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import uk.ac.ncl.core.GraphOps;
+import uk.ac.ncl.utils.IO;
+import uk.ac.ncl.utils.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.text.MessageFormat;
+
+/**
+ * Binary snapshot of a whole graph in {@link CSRGraph} layout, so that runs on the same
+ * dataset can skip opening Neo4j. The file holds a header, the sorted node ids, a string
+ * table of node names and one of relationship type names, the type-grouped edge arrays
+ * and the arrays of both adjacency directions. Loading memory-maps the file and copies
+ * each array out in bulk; nothing is rebuilt.
+ * <p>
+ * The header keeps the sizes of the node and relationship stores of the exported database,
+ * so a snapshot of an older database is not loaded in place of a rebuilt one.
+ */
+public class GraphSnapshot {
+    private final static long MAGIC = 0x4750464C43535231L;
+    private final static int VERSION = 2;
+    private final static int WINDOW = 1 << 30;
+
+    /**
+     * Exports every node and relationship of the Neo4j graph at {@code graphFile} to {@code snapshotFile}.
+     * The database is shut down once the graph is read.
+     */
+    public static void export(File graphFile, File snapshotFile) {
+        long s = System.currentTimeMillis();
+        GraphDatabaseService database = IO.loadGraph(graphFile);
+        CSRGraph.Builder builder = new CSRGraph.Builder();
+        CSRGraph graph;
+        try(Transaction tx = database.beginTx()) {
+            for (Node node : database.getAllNodes())
+                builder.addNode(node.getId(), GraphOps.readNeo4jProperty(node));
+            for (Relationship rel : database.getAllRelationships())
+                builder.addEdge(rel.getStartNodeId(), null, rel.getEndNodeId(), null, rel.getType().name());
+            tx.success();
+            graph = builder.build();
+        } finally {
+            // Later steps of the run open the same database again.
+            database.shutdown();
+        }
+        write(graph, fingerprint(graphFile), snapshotFile);
+        Logger.println(MessageFormat.format("# Exported {0} Nodes and {1} Edges to: {2} | Time: {3}s"
+                , graph.nodeCount(), graph.edgeCount(), snapshotFile.getPath()
+                , (System.currentTimeMillis() - s) / 1000d), 1);
+    }
+
+    /**
+     * @return sizes of the node and relationship store files of the database, which change
+     * when the graph is rebuilt or relationships are added.
+     */
+    public static long[] fingerprint(File graphFile) {
+        return new long[]{new File(graphFile, "neostore.nodestore.db").length()
+                , new File(graphFile, "neostore.relationshipstore.db").length()};
+    }
+
+    /**
+     * @return true if the snapshot was exported from the database in its current state.
+     */
+    public static boolean matches(File snapshotFile, File graphFile) {
+        long[] fingerprint = fingerprint(graphFile);
+        try(FileChannel channel = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.READ)) {
+            if(channel.size() < 28) return false;
+            Reader reader = new Reader(channel);
+            return reader.getLong() == MAGIC && reader.getInt() == VERSION
+                    && reader.getLong() == fingerprint[0] && reader.getLong() == fingerprint[1];
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
+            return false;
+        }
+    }
+
+    public static void write(CSRGraph graph, long[] fingerprint, File file) {
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE
+                , StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer writer = new Writer(channel);
+            writer.putLong(MAGIC);
+            writer.putInt(VERSION);
+            writer.putLongs(fingerprint);
+            writer.putInt(graph.nodeCount());
+            writer.putInt(graph.typeCount());
+            writer.putInt(graph.edgeCount());
+            writer.putInt(graph.out.segTypes.length);
+            writer.putInt(graph.in.segTypes.length);
+
+            writer.putLongs(graph.nodeIds);
+            writer.putStrings(graph.nodeNames);
+            writer.putStrings(graph.types);
+            writer.putInts(graph.typeOffsets);
+            writer.putInts(graph.edgeHeads);
+            writer.putInts(graph.edgeTails);
+            for (CSRGraph.Adjacency adjacency : new CSRGraph.Adjacency[]{graph.out, graph.in}) {
+                writer.putInts(adjacency.nodeOffsets);
+                writer.putInts(adjacency.segTypes);
+                writer.putInts(adjacency.segOffsets);
+                writer.putInts(adjacency.neighbours);
+            }
+            writer.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
+
+    public static CSRGraph load(File file) {
+        long s = System.currentTimeMillis();
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            Reader reader = new Reader(channel);
+            if(reader.getLong() != MAGIC || reader.getInt() != VERSION) {
+                System.err.println("# Not a graph snapshot of this version: " + file.getPath());
+                System.exit(-1);
+            }
+            reader.getLong();
+            reader.getLong();
+            int nodes = reader.getInt();
+            int types = reader.getInt();
+            int edges = reader.getInt();
+            int outSegments = reader.getInt();
+            int inSegments = reader.getInt();
+
+            long[] nodeIds = reader.getLongs(nodes);
+            String[] nodeNames = reader.getStrings(nodes);
+            String[] typeNames = reader.getStrings(types);
+            int[] typeOffsets = reader.getInts(types + 1);
+            int[] edgeHeads = reader.getInts(edges);
+            int[] edgeTails = reader.getInts(edges);
+            CSRGraph.Adjacency out = new CSRGraph.Adjacency(reader.getInts(nodes + 1)
+                    , reader.getInts(outSegments), reader.getInts(outSegments + 1), reader.getInts(edges));
+            CSRGraph.Adjacency in = new CSRGraph.Adjacency(reader.getInts(nodes + 1)
+                    , reader.getInts(inSegments), reader.getInts(inSegments + 1), reader.getInts(edges));
+
+            Logger.println(MessageFormat.format("\n# Load Graph Snapshot from: {0}\n# Relationship Types: {1} " +
+                            "| Relationships: {2} | Nodes: {3} | Time: {4}s"
+                    , file.getPath(), types, edges, nodes, (System.currentTimeMillis() - s) / 1000d), 1);
+            return new CSRGraph(nodeIds, nodeNames, typeNames, typeOffsets, edgeHeads, edgeTails, out, in);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
+            return null;
+        }
+    }
+
+    private static class Writer {
+        final FileChannel channel;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+
+        Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void ensure(int bytes) throws IOException {
+            if(buffer.remaining() < bytes) flush();
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while(buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void putInts(int[] values) throws IOException {
+            for (int value : values) putInt(value);
+        }
+
+        void putLongs(long[] values) throws IOException {
+            for (long value : values) putLong(value);
+        }
+
+        /**
+         * Writes a string table: byte offsets of every string, then all UTF-8 bytes.
+         */
+        void putStrings(String[] values) throws IOException {
+            byte[][] encoded = new byte[values.length][];
+            long size = 0;
+            for (int i = 0; i < values.length; i++) {
+                encoded[i] = values[i] == null ? new byte[0] : values[i].getBytes(StandardCharsets.UTF_8);
+                size += encoded[i].length;
+            }
+            if(size > Integer.MAX_VALUE)
+                throw new IOException("String table exceeds " + Integer.MAX_VALUE + " bytes.");
+            int offset = 0;
+            putInt(offset);
+            for (byte[] bytes : encoded) putInt(offset += bytes.length);
+            for (byte[] bytes : encoded) {
+                int written = 0;
+                while(written < bytes.length) {
+                    if(!buffer.hasRemaining()) flush();
+                    int length = Math.min(buffer.remaining(), bytes.length - written);
+                    buffer.put(bytes, written, length);
+                    written += length;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the file sequentially through mapped windows of at most {@link #WINDOW} bytes.
+     */
+    private static class Reader {
+        final FileChannel channel;
+        long position = 0;
+
+        Reader(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        MappedByteBuffer map(long bytes) throws IOException {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, bytes);
+            position += bytes;
+            return buffer;
+        }
+
+        int getInt() throws IOException {
+            return map(4).getInt();
+        }
+
+        long getLong() throws IOException {
+            return map(8).getLong();
+        }
+
+        int[] getInts(int count) throws IOException {
+            int[] values = new int[count];
+            int step = WINDOW / 4;
+            for (int i = 0; i < count; i += step) {
+                int length = Math.min(step, count - i);
+                map(4L * length).asIntBuffer().get(values, i, length);
+            }
+            return values;
+        }
+
+        long[] getLongs(int count) throws IOException {
+            long[] values = new long[count];
+            int step = WINDOW / 8;
+            for (int i = 0; i < count; i += step) {
+                int length = Math.min(step, count - i);
+                map(8L * length).asLongBuffer().get(values, i, length);
+            }
+            return values;
+        }
+
+        String[] getStrings(int count) throws IOException {
+            int[] offsets = getInts(count + 1);
+            byte[] bytes = new byte[offsets[count]];
+            for (int i = 0; i < bytes.length; i += WINDOW) {
+                int length = Math.min(WINDOW, bytes.length - i);
+                map(length).get(bytes, i, length);
+            }
+            String[] values = new String[count];
+            for (int i = 0; i < count; i++)
+                values[i] = new String(bytes, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+            return values;
+        }
+    }
+}
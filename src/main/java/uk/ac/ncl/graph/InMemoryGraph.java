@@ -1,7 +1,5 @@
 package uk.ac.ncl.graph;
 
-import com.google.common.collect.Multimap;
-import com.google.common.collect.MultimapBuilder;
 import org.neo4j.graphdb.*;
 import uk.ac.ncl.Settings;
 import uk.ac.ncl.core.GlobalTimer;
@@ -10,30 +8,22 @@ import uk.ac.ncl.structure.*;
 import uk.ac.ncl.structure.Package;
 import uk.ac.ncl.utils.Helpers;
 import uk.ac.ncl.utils.Logger;
+import uk.ac.ncl.utils.ReorderBuffer;
 
 import java.text.DecimalFormat;
 import java.text.MessageFormat;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingDeque;
 
 public class InMemoryGraph {
-    public Set<InMemoryRel> relationships = new HashSet<>();
-    public Set<String> relationshipTypes = new HashSet<>();
-    public Set<InMemoryNode> nodes = new HashSet<>();
-
-    private Multimap<String, InMemoryRel> type2Rel = MultimapBuilder.hashKeys().hashSetValues().build();
-    private Multimap<InMemoryNode, InMemoryRel> head2Rel = MultimapBuilder.hashKeys().hashSetValues().build();
-    private Multimap<InMemoryNode, InMemoryRel> tail2Rel = MultimapBuilder.hashKeys().hashSetValues().build();
-    private Map<InMemoryNode, Multimap<String, InMemoryRel>> headType2Rel = new HashMap<>();
-    private Map<InMemoryNode, Multimap<String, InMemoryRel>> tailType2Rel = new HashMap<>();
-    private Map<Long, InMemoryNode> id2Node = new HashMap<>();
-    private Map<String, InMemoryNode> name2Node = new HashMap<>();
+    private final CSRGraph graph;
 
     final private TripleSet tripleSet;
 
     public InMemoryGraph(GraphDatabaseService database, TripleSet tripleSet, int range) {
         this.tripleSet = tripleSet;
+        CSRGraph.Builder builder = new CSRGraph.Builder();
+        EdgeMask mask = new EdgeMask(Settings.TARGET, tripleSet.validPairs, tripleSet.testPairs);
         try(Transaction tx = database.beginTx()) {
             Set<Long> allTargetNodes = new HashSet<>();
             tripleSet.trainPairs.forEach(p -> {
@@ -57,36 +47,17 @@ public class InMemoryGraph {
                 Set<Long> nextTargetNodes = new HashSet<>();
                 for (Long n : currentTargetNodes) {
                     Node neo4jNode = database.getNodeById(n);
-                    InMemoryNode node = new InMemoryNode(neo4jNode.getId(), GraphOps.readNeo4jProperty(neo4jNode));
-
-                    nodes.add(node);
-                    id2Node.put(node.getId(), node);
-                    name2Node.put(node.getName(), node);
+                    builder.addNode(neo4jNode.getId(), GraphOps.readNeo4jProperty(neo4jNode));
 
                     for (Relationship rel : neo4jNode.getRelationships(Direction.BOTH)) {
-                        Pair p = new Pair(rel.getStartNodeId(), rel.getEndNodeId());
-                        if(tripleSet.testPairs.contains(p) || tripleSet.validPairs.contains(p))
-                            if(rel.getType().name().equals(Settings.TARGET))
-                                continue;
-
-                        InMemoryNode startNode = new InMemoryNode(rel.getStartNodeId(), GraphOps.readNeo4jProperty(rel.getStartNode()));
-                        InMemoryNode endNode = new InMemoryNode(rel.getEndNodeId(), GraphOps.readNeo4jProperty(rel.getEndNode()));
-
-                        InMemoryRel r = new InMemoryRel(startNode, endNode, rel.getType().name());
-                        relationships.add(r);
-                        relationshipTypes.add(r.getType());
+                        if(mask.masks(rel.getStartNodeId(), rel.getEndNodeId(), rel.getType().name()))
+                            continue;
 
-                        type2Rel.put(r.getType(), r);
-                        head2Rel.put(r.getStartNode(), r);
-                        tail2Rel.put(r.getEndNode(), r);
-
-                        if(!headType2Rel.containsKey(r.getStartNode()))
-                            headType2Rel.put(r.getStartNode(), MultimapBuilder.hashKeys().hashSetValues().build());
-                        headType2Rel.get(r.getStartNode()).put(r.getType(), r);
-
-                        if(!tailType2Rel.containsKey(r.getEndNode()))
-                            tailType2Rel.put(r.getEndNode(), MultimapBuilder.hashKeys().hashSetValues().build());
-                        tailType2Rel.get(r.getEndNode()).put(r.getType(), r);
+                        Node startNode = rel.getStartNode();
+                        Node endNode = rel.getEndNode();
+                        builder.addEdge(startNode.getId(), readName(builder, startNode)
+                                , endNode.getId(), readName(builder, endNode)
+                                , rel.getType().name());
 
                         Node other = rel.getOtherNode(neo4jNode);
                         if(!allTargetNodes.contains(other.getId())) {
@@ -100,53 +71,244 @@ public class InMemoryGraph {
             }
             tx.success();
         }
+        graph = builder.build();
+    }
+
+    /**
+     * Builds the same neighbourhood of the target as the Neo4j constructor, but walks a
+     * {@link GraphSnapshot} of the whole graph instead of the database.
+     */
+    public InMemoryGraph(CSRGraph snapshot, TripleSet tripleSet, int range) {
+        this.tripleSet = tripleSet;
+        CSRGraph.Builder builder = new CSRGraph.Builder();
+        int target = snapshot.typeId(Settings.TARGET);
+        EdgeMask mask = new EdgeMask(Settings.TARGET, tripleSet.validPairs, tripleSet.testPairs);
+        boolean[] visited = new boolean[snapshot.nodeCount()];
+
+        int[] frontier = new int[1024];
+        int size = 0;
+        for (Set<Pair> pairs : Arrays.asList(tripleSet.trainPairs, tripleSet.validPairs, tripleSet.testPairs)) {
+            for (Pair p : pairs) {
+                for (long id : new long[]{p.subId, p.objId}) {
+                    int node = snapshot.indexOf(id);
+                    if(node == -1 || visited[node]) continue;
+                    visited[node] = true;
+                    if(size == frontier.length) frontier = Arrays.copyOf(frontier, size * 2);
+                    frontier[size++] = node;
+                }
+            }
+        }
+
+        for (int current = 0; current < range; current++) {
+            int[] next = new int[Math.max(16, size)];
+            int nextSize = 0;
+            for (int i = 0; i < size; i++) {
+                int node = frontier[i];
+                builder.addNode(snapshot.nodeId(node), snapshot.nodeName(node));
+                for (boolean outgoing : new boolean[]{true, false}) {
+                    for (int segment = snapshot.segmentsStart(node, outgoing); segment < snapshot.segmentsEnd(node, outgoing); segment++) {
+                        int type = snapshot.segmentType(outgoing, segment);
+                        for (int slot = snapshot.segmentStart(outgoing, segment); slot < snapshot.segmentEnd(outgoing, segment); slot++) {
+                            int other = snapshot.neighbour(outgoing, slot);
+                            int head = outgoing ? node : other, tail = outgoing ? other : node;
+                            if(type == target && mask.masks(snapshot.nodeId(head), snapshot.nodeId(tail), Settings.TARGET))
+                                continue;
+
+                            builder.addEdge(snapshot.nodeId(head), snapshot.nodeName(head)
+                                    , snapshot.nodeId(tail), snapshot.nodeName(tail)
+                                    , snapshot.typeName(type));
+
+                            if(!visited[other]) {
+                                visited[other] = true;
+                                if(nextSize == next.length) next = Arrays.copyOf(next, nextSize * 2);
+                                next[nextSize++] = other;
+                            }
+                        }
+                    }
+                }
+            }
+            frontier = next;
+            size = nextSize;
+        }
+        graph = builder.build();
+    }
+
+    private static String readName(CSRGraph.Builder builder, Node node) {
+        return builder.containsNode(node.getId()) ? null : GraphOps.readNeo4jProperty(node);
+    }
+
+    public CSRGraph getGraph() {
+        return graph;
     }
 
     public Set<Pair> groundRules(Rule pattern) {
         Set<Pair> pairs = new HashSet<>();
-        Flag stop = new Flag();
 
-        Collection<InMemoryRel> currentRelationships = type2Rel.get(pattern.getBodyAtom(0).getBasePredicate());
-        for (InMemoryRel relationship : currentRelationships) {
-            if(stop.flag) break;
-            Path currentPath = new Path(relationship, pattern.getBodyAtom(0).direction);
-            DFSGrounding(pattern, currentPath, pairs, stop);
+        int length = pattern.length();
+        int[] types = new int[length];
+        boolean[] outgoing = new boolean[length];
+        for (int i = 0; i < length; i++) {
+            Atom atom = pattern.getBodyAtom(i);
+            types[i] = graph.typeId(atom.predicate);
+            if(types[i] == -1) return pairs;
+            outgoing[i] = atom.direction.equals(Direction.OUTGOING);
+        }
+
+        int tail = -1;
+        long tailCost = -1;
+        if(!pattern.closed && ((InstantiatedRule) pattern).type == 2) {
+            tail = graph.indexOf(pattern.getTailAnchoring());
+            if(tail == -1) return pairs;
+            tailCost = graph.degree(tail, !outgoing[length - 1], types[length - 1]);
+        }
+
+        int[] candidates = candidateStarts(pattern);
+        int[] candidateEnds = pattern.closed ? queryNodes(pattern.isFromSubject() ? tripleSet.testTails : tripleSet.testHeads) : null;
+        long candidateCost = -1;
+        if(candidates != null) {
+            candidateCost = 0;
+            for (int candidate : candidates)
+                candidateCost += graph.degree(candidate, outgoing[0], types[0]);
+            if(candidateEnds != null) {
+                for (int candidate : candidateEnds)
+                    candidateCost += graph.degree(candidate, !outgoing[length - 1], types[length - 1]);
+            }
         }
-        return pairs;
-    }
 
-    private void DFSGrounding(Rule pattern, Path path, Set<Pair> pairs, Flag stop) {
-        if(path.length() == pattern.length()) {
-            Pair current;
-            if(pattern.closed) {
-                current = pattern.isFromSubject() ?
-                        new Pair(path.getStartNode().getId(), path.getEndNode().getId()) :
-                        new Pair(path.getEndNode().getId(), path.getStartNode().getId());
-            } else {
-                InstantiatedRule insPattern = (InstantiatedRule) pattern;
-                if(insPattern.type == 2) {
-                    long currentTail = path.getEndNode().getId();
-                    if(insPattern.getTailAnchoring() != currentTail) return;
+        // An anchored rule predicts one pair per start node, so one path from each start is enough.
+        boolean firstPathOnly = !pattern.closed;
+        GroundingStack stack = GroundingStack.local().reset(length);
+        long scanCost = graph.typeEnd(types[0]) - graph.typeStart(types[0]);
+        switch (GroundingPlan.choose(scanCost, tailCost, candidateCost)) {
+            case FROM_TAIL:
+                stack.push(tail);
+                reverseDFSGrounding(types, outgoing, stack);
+                stack.pop();
+                drainGroundings(pattern, stack.groundings, pairs);
+                break;
+            case FROM_CANDIDATES:
+                for (int candidate : candidates) {
+                    stack.push(candidate);
+                    DFSGrounding(types, outgoing, stack, tail, firstPathOnly);
+                    stack.pop();
+                    drainGroundings(pattern, stack.groundings, pairs);
                 }
+                if(candidateEnds != null) {
+                    for (int candidate : candidateEnds) {
+                        stack.push(candidate);
+                        reverseDFSGrounding(types, outgoing, stack);
+                        stack.pop();
+                        drainGroundings(pattern, stack.groundings, pairs);
+                    }
+                }
+                break;
+            default:
+                LongSet grounded = new LongSet();
+                for (int e = graph.typeStart(types[0]); e < graph.typeEnd(types[0]); e++) {
+                    int start = outgoing[0] ? graph.edgeHead(e) : graph.edgeTail(e);
+                    if(firstPathOnly && grounded.contains(start)) continue;
+                    stack.push(start);
+                    stack.push(outgoing[0] ? graph.edgeTail(e) : graph.edgeHead(e));
+                    if(DFSGrounding(types, outgoing, stack, tail, firstPathOnly) && firstPathOnly)
+                        grounded.add(start);
+                    stack.pop();
+                    stack.pop();
+                    drainGroundings(pattern, stack.groundings, pairs);
+                }
+        }
+        return pairs;
+    }
 
-                long currentOriginal = path.getStartNode().getId();
-                current = pattern.isFromSubject() ? new Pair(currentOriginal, pattern.getHeadAnchoring()) :
-                        new Pair(pattern.getHeadAnchoring(), currentOriginal);
+    /**
+     * Moves the raw paths found so far into the predicted pairs, so that the buffer holds
+     * the paths of one start or first edge only, like the per-edge grounding of the Neo4j graph.
+     */
+    private void drainGroundings(Rule pattern, LongPairBuffer groundings, Set<Pair> pairs) {
+        for (int i = 0; i < groundings.size(); i++) {
+            long start = graph.nodeId((int) groundings.sub(i));
+            long end = pattern.closed ? graph.nodeId((int) groundings.obj(i)) : pattern.getHeadAnchoring();
+            long sub = pattern.isFromSubject() ? start : end;
+            long obj = pattern.isFromSubject() ? end : start;
+
+            if(!tripleSet.inNonTest(sub, obj) && tripleSet.possibleSolution(sub, obj)) {
+                pairs.add(new Pair(sub, obj));
             }
+        }
+        groundings.clear();
+    }
+
+    /**
+     * Start nodes a rule can make a test prediction from, or null if any start can because
+     * the head constant of the rule is itself a test entity on the predicted side. A closed
+     * rule also predicts for test entities on the end side, see the ends in {@link #groundRules(Rule)}.
+     */
+    private int[] candidateStarts(Rule pattern) {
+        if(!pattern.closed) {
+            long anchoring = pattern.getHeadAnchoring();
+            if(pattern.isFromSubject() ? tripleSet.testTails.contains(anchoring) : tripleSet.testHeads.contains(anchoring))
+                return null;
+        }
+        return queryNodes(pattern.isFromSubject() ? tripleSet.testHeads : tripleSet.testTails);
+    }
+
+    private int[] queryNodes(LongSet entities) {
+        int[] nodes = new int[entities.size()];
+        int size = 0;
+        for (int i = 0; i < entities.size(); i++) {
+            int node = graph.indexOf(entities.get(i));
+            if(node != -1) nodes[size++] = node;
+        }
+        return Arrays.copyOf(nodes, size);
+    }
 
-            if(!tripleSet.inNonTest(current) && tripleSet.possibleSolution(current)) {
-                pairs.add(current);
+    /**
+     * Extends the path on the stack by the next body atom, backtracking in place.
+     * Node ids on the stack are dense CSR indices; {@code tail} is the index the
+     * path has to end at, or -1 if the rule is not tail anchored.
+     *
+     * @return true if a grounding was found; with {@code firstPathOnly} the search stops there.
+     */
+    private boolean DFSGrounding(int[] types, boolean[] outgoing, GroundingStack stack, int tail, boolean firstPathOnly) {
+        int depth = stack.length();
+        if(depth == types.length) {
+            if(tail != -1 && stack.endId() != tail) return false;
+            stack.groundings.add(stack.startId(), stack.endId());
+            return true;
+        }
+        boolean found = false;
+        int segment = graph.segment((int) stack.endId(), outgoing[depth], types[depth]);
+        if(segment == -1) return false;
+        for (int slot = graph.segmentStart(outgoing[depth], segment); slot < graph.segmentEnd(outgoing[depth], segment); slot++) {
+            int next = graph.neighbour(outgoing[depth], slot);
+            if(!stack.contains(next)) {
+                stack.push(next);
+                found |= DFSGrounding(types, outgoing, stack, tail, firstPathOnly);
+                stack.pop();
+                if(found && firstPathOnly) break;
             }
         }
-        else {
-            Direction nextDirection = pattern.getBodyAtom(path.length()).direction;
-            String nextType = pattern.getBodyAtom(path.length()).predicate;
-            for (InMemoryRel relationship : getRelationships(path.getEndNode(), nextDirection, nextType)) {
-                if(!path.nodes.contains(relationship.getOtherNode(path.getEndNode()))) {
-                    Path currentPath = new Path(path, relationship);
-                    DFSGrounding(pattern, currentPath, pairs, stop);
-                    if (stop.flag) break;
-                }
+        return found;
+    }
+
+    /**
+     * Walks the body from the last atom back to the first, starting from the tail index
+     * at the bottom of the stack. Groundings are emitted as (start, tail) like the forward walk.
+     */
+    private void reverseDFSGrounding(int[] types, boolean[] outgoing, GroundingStack stack) {
+        int depth = stack.length();
+        if(depth == types.length) {
+            stack.groundings.add(stack.endId(), stack.startId());
+            return;
+        }
+        int atom = types.length - 1 - depth;
+        int segment = graph.segment((int) stack.endId(), !outgoing[atom], types[atom]);
+        if(segment == -1) return;
+        for (int slot = graph.segmentStart(!outgoing[atom], segment); slot < graph.segmentEnd(!outgoing[atom], segment); slot++) {
+            int next = graph.neighbour(!outgoing[atom], slot);
+            if(!stack.contains(next)) {
+                stack.push(next);
+                reverseDFSGrounding(types, outgoing, stack);
+                stack.pop();
             }
         }
     }
@@ -157,12 +319,12 @@ public class InMemoryGraph {
         LinkedBlockingDeque<Package> inputQueue = new LinkedBlockingDeque<>();
         Package.resetIndex();
         rules.forEach(r -> inputQueue.add(Package.create(r)));
-        ConcurrentHashMap<Integer, Package> outputQueue = new ConcurrentHashMap<>();
+        ReorderBuffer<Package> outputBuffer = new ReorderBuffer<>(3000);
 
-        Dispatcher dispatcher = new Dispatcher(inputQueue, outputQueue, tripleSet);
+        Dispatcher dispatcher = new Dispatcher(inputQueue.size(), outputBuffer, tripleSet);
         RuleApplier[] appliers = new RuleApplier[Settings.THREAD_NUMBER];
         for (int i = 0; i < appliers.length; i++) {
-            appliers[i] = new RuleApplier(i, dispatcher, outputQueue, inputQueue, tripleSet);
+            appliers[i] = new RuleApplier(i, outputBuffer, inputQueue);
         }
         try {
             for (RuleApplier applier : appliers) {
@@ -177,69 +339,6 @@ public class InMemoryGraph {
         GlobalTimer.updateRuleApplyStats(Helpers.timerAndMemory(s,"# Rule Application"));
     }
 
-    public Path samplePath(Pair pair, String target, int depth) {
-//        Random rand = new Random();
-//
-//        InMemoryNode startNode = id2Node.get(pair.subId);
-//        InMemoryNode endNode = id2Node.get(pair.objId);
-//
-//
-//
-//        int currentDepth = 0;
-//        Path path;
-//        while(currentDepth < depth) {
-//            List<InMemoryRel> rels = getRelationships(startNode, Direction.BOTH);
-//            InMemoryRel rel = rels.get(rand.nextInt(rels.size()));
-//
-//
-//            currentDepth++;
-//        }
-        return null;
-    }
-
-    private List<InMemoryRel> getRelationships(InMemoryNode node, Direction d, String type) {
-        if(d.equals(Direction.OUTGOING)) {
-            if(headType2Rel.get(node) != null)
-                return new ArrayList<>(headType2Rel.get(node).get(type));
-            else
-                return new ArrayList<>();
-        }
-        else if(d.equals(Direction.INCOMING)) {
-            if (tailType2Rel.get(node) != null)
-                return new ArrayList<>(tailType2Rel.get(node).get(type));
-            else
-                return new ArrayList<>();
-        } else if(d.equals(Direction.BOTH)) {
-            List<InMemoryRel> results = new ArrayList<>();
-            if(headType2Rel.get(node) != null)
-                results.addAll(headType2Rel.get(node).get(type));
-            if(tailType2Rel.get(node) != null)
-                results.addAll(tailType2Rel.get(node).get(type));
-            return results;
-        }
-        else{
-            System.err.println("Error: Invalid direction type.");
-            System.exit(-1);
-            return null;
-        }
-    }
-
-    private List<InMemoryRel> getRelationships(InMemoryNode node, Direction d) {
-        List<InMemoryRel> results = new ArrayList<>();
-        if(d.equals(Direction.OUTGOING)) {
-            results.addAll(head2Rel.get(node));
-        } else if(d.equals(Direction.INCOMING)) {
-            results.addAll(tail2Rel.get(node));
-        } else if(d.equals(Direction.BOTH)) {
-            results.addAll(head2Rel.get(node));
-            results.addAll(tail2Rel.get(node));
-        } else {
-            System.err.println("Error: Invalid direction type.");
-            System.exit(-1);
-        }
-        return results;
-    }
-
     public static class Flag {
         public boolean flag;
         public Flag() {
@@ -248,35 +347,27 @@ public class InMemoryGraph {
     }
 
     class RuleApplier extends Thread {
-        Dispatcher dispatcher;
-        ConcurrentHashMap<Integer, Package> outputQueue;
+        ReorderBuffer<Package> outputBuffer;
         LinkedBlockingDeque<Package> inputQueue;
-        TripleSet tripleSet;
 
-        public RuleApplier(int id, Dispatcher dispatcher
-                , ConcurrentHashMap<Integer, Package> outputQueue
-                , LinkedBlockingDeque<Package> inputQueue
-                , TripleSet tripleSet) {
+        public RuleApplier(int id, ReorderBuffer<Package> outputBuffer
+                , LinkedBlockingDeque<Package> inputQueue) {
             super("RuleApplier-" + id);
-            this.dispatcher = dispatcher;
-            this.outputQueue = outputQueue;
+            this.outputBuffer = outputBuffer;
             this.inputQueue = inputQueue;
-            this.tripleSet = tripleSet;
             start();
         }
 
         @Override
         public void run() {
             try {
-                Thread.sleep(300);
-                while (dispatcher.isAlive() && !inputQueue.isEmpty()) {
-                    if (outputQueue.size() < 3000) {
-                        Package p = inputQueue.poll();
-                        if (p != null) {
-                            p.candidates = groundRules(p.rule);
-                            outputQueue.put(p.id, p);
-                        }
-                    }
+                // Packages are polled in rule order, so the one the dispatcher waits for is
+                // always held by some applier and fits in the buffer.
+                while (!outputBuffer.isClosed()) {
+                    Package p = inputQueue.poll();
+                    if (p == null) break;
+                    p.candidates = groundRules(p.rule);
+                    if (!outputBuffer.put(p.id, p)) break;
                 }
             } catch (InterruptedException e) {
                 e.printStackTrace();
@@ -286,104 +377,43 @@ public class InMemoryGraph {
     }
 
     static class Dispatcher extends Thread {
-        LinkedBlockingDeque<Package> inputQueue;
-        ConcurrentHashMap<Integer, Package> outputQueue;
+        int allRules;
+        ReorderBuffer<Package> outputBuffer;
         TripleSet tripleSet;
         int current = 0;
 
-        public Dispatcher(LinkedBlockingDeque<Package> inputQueue
-                ,ConcurrentHashMap<Integer, Package> outputQueue, TripleSet tripleSet) {
-            this.outputQueue = outputQueue;
+        public Dispatcher(int allRules, ReorderBuffer<Package> outputBuffer, TripleSet tripleSet) {
+            this.allRules = allRules;
+            this.outputBuffer = outputBuffer;
             this.tripleSet = tripleSet;
-            this.inputQueue = inputQueue;
             start();
         }
 
         @Override
         public void run() {
             DecimalFormat f = new DecimalFormat("###.####");
-            int allRules = inputQueue.size();
-            int previous = 0;
-            boolean converge = false;
-
-            while(true) {
-                if(outputQueue.containsKey(current)) {
-                    Package p = outputQueue.remove(current);
+            try {
+                while(current < allRules) {
+                    Package p = outputBuffer.take();
                     current++;
                     if(!p.candidates.isEmpty()) {
                         tripleSet.updateTestCases(p);
-//                        System.out.println(p.rule + "\t" + current);
                     }
-                    converge = tripleSet.converge();
-                }
+                    if(tripleSet.converge()) break;
 
-                if(current % 5000 == 0 && current != previous) {
-                    Logger.println("# Visited " + current + " Rules | Coverage: " + f.format(tripleSet.coverage));
+                    if(current % 5000 == 0) {
+                        Logger.println("# Visited " + current + " Rules | Coverage: " + f.format(tripleSet.coverage));
+                    }
                 }
-                previous = current;
-
-                boolean empty = inputQueue.isEmpty() && outputQueue.isEmpty();
-                if(converge) break;
-                else if(empty && current == allRules) break;
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                System.exit(-1);
+            } finally {
+                outputBuffer.close();
             }
 
             Logger.println(MessageFormat.format("# Visited/All Rules: {0}/{1} | Coverage: {2}",
                     current, allRules, f.format(tripleSet.coverage)));
         }
     }
-
-    static class Path {
-        public List<InMemoryRel> relationships = new ArrayList<>();
-        public List<Direction> directions = new ArrayList<>();
-        public List<InMemoryNode> nodes = new ArrayList<>();
-
-        InMemoryRel lastRelationship;
-
-        public Path(Path base, InMemoryRel added) {
-            relationships.addAll(base.relationships);
-            nodes.addAll(base.nodes);
-            directions.addAll(base.directions);
-
-            InMemoryNode endNode = getEndNode();
-            if(added.getStartNode().equals(endNode)) directions.add(Direction.OUTGOING);
-            else directions.add(Direction.INCOMING);
-
-            relationships.add(added);
-            nodes.add(added.getOtherNode(endNode));
-
-            lastRelationship = added;
-        }
-
-        public Path(InMemoryRel l, Direction d) {
-            relationships.add(l);
-            directions.add(d);
-            if(d.equals(Direction.OUTGOING)) {
-                nodes.add(l.getStartNode());
-                nodes.add(l.getEndNode());
-            } else {
-                nodes.add(l.getEndNode());
-                nodes.add(l.getStartNode());
-            }
-        }
-
-        public int length() {
-            return relationships.size();
-        }
-
-        public InMemoryNode getEndNode() {
-            return nodes.get(nodes.size() - 1);
-        }
-
-        public InMemoryNode getStartNode() {
-            return nodes.get(0);
-        }
-
-        @Override
-        public String toString() {
-            return relationships.toString();
-        }
-    }
-
-
-
 }
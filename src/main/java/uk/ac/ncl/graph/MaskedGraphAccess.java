@@ -0,0 +1,114 @@
+package uk.ac.ncl.graph;
+
+import org.neo4j.graphdb.Direction;
+import uk.ac.ncl.structure.Pair;
+
+import java.io.File;
+import java.util.Set;
+
+/**
+ * Read-only view of a graph without the edges of an {@link EdgeMask}. Learning for a
+ * target runs on such a view instead of deleting the valid and test edges of the target
+ * from the store and adding them back, so the underlying graph is never written and can
+ * be shared by views of different targets.
+ */
+public class MaskedGraphAccess implements GraphAccess {
+    private final GraphAccess graph;
+    private final EdgeMask mask;
+
+    public MaskedGraphAccess(GraphAccess graph, EdgeMask mask) {
+        this.graph = graph;
+        this.mask = mask;
+    }
+
+    public GraphAccess getGraph() {
+        return graph;
+    }
+
+    public EdgeMask getMask() {
+        return mask;
+    }
+
+    @Override
+    public Session open() {
+        return graph.open();
+    }
+
+    @Override
+    public String nodeName(long node) {
+        return graph.nodeName(node);
+    }
+
+    @Override
+    public Set<String> relationshipTypes() {
+        return graph.relationshipTypes();
+    }
+
+    /**
+     * @return number of relationships of the type in the underlying graph, as ranges passed
+     * to {@link #edges(String, int, int)} index the underlying order.
+     */
+    @Override
+    public int count(String type) {
+        return graph.count(type);
+    }
+
+    @Override
+    public Edges edges(String type, int from, int to) {
+        Edges edges = graph.edges(type, from, to);
+        return type.equals(mask.getType()) ? new MaskedEdges(edges) : edges;
+    }
+
+    @Override
+    public Edges edges(long node, Direction direction, String type) {
+        Edges edges = graph.edges(node, direction, type);
+        return type == null || type.equals(mask.getType()) ? new MaskedEdges(edges) : edges;
+    }
+
+    @Override
+    public int degree(long node, Direction direction, String type) {
+        if(mask.isEmpty() || (type != null && !type.equals(mask.getType())))
+            return graph.degree(node, direction, type);
+        int degree = 0;
+        Edges edges = edges(node, direction, type);
+        while(edges.next()) degree++;
+        return degree;
+    }
+
+    @Override
+    public Set<Pair> readPairs(File file, String target) {
+        return graph.readPairs(file, target);
+    }
+
+    class MaskedEdges implements Edges {
+        final Edges edges;
+
+        MaskedEdges(Edges edges) {
+            this.edges = edges;
+        }
+
+        @Override
+        public boolean next() {
+            while(edges.next()) {
+                if(!mask.masks(edges.startId(), edges.endId(), edges.type()))
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public long startId() {
+            return edges.startId();
+        }
+
+        @Override
+        public long endId() {
+            return edges.endId();
+        }
+
+        @Override
+        public String type() {
+            return edges.type();
+        }
+    }
+}
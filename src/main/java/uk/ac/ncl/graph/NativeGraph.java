@@ -0,0 +1,257 @@
+package uk.ac.ncl.graph;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.RelationshipType;
+import uk.ac.ncl.structure.LongPairBuffer;
+import uk.ac.ncl.structure.LongPairSet;
+import uk.ac.ncl.structure.Pair;
+import uk.ac.ncl.utils.Logger;
+import uk.ac.ncl.utils.TripleReader;
+
+import java.io.File;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link GraphAccess} over a {@link CSRGraph} built straight from the train, valid and test
+ * triple files, without a Neo4j database. Entities get dense ids in order of first
+ * appearance over the three files, so ids are stable between runs on the same files and
+ * rules learned in one run can be applied in another. Only train triples become edges,
+ * once per distinct triple, as in the graph built by {@link uk.ac.ncl.utils.GraphBuilder}.
+ */
+public class NativeGraph implements GraphAccess {
+    private final static Session NO_SESSION = () -> {};
+
+    private final CSRGraph graph;
+    private final Map<String, Integer> nodeIndex;
+    private final Map<File, Map<String, LongPairBuffer>> examples;
+
+    private NativeGraph(CSRGraph graph, Map<String, Integer> nodeIndex, Map<File, Map<String, LongPairBuffer>> examples) {
+        this.graph = graph;
+        this.nodeIndex = nodeIndex;
+        this.examples = examples;
+    }
+
+    public static NativeGraph load(File trainFile, File... otherFiles) {
+        long s = System.currentTimeMillis();
+        Map<String, Integer> nodeIndex = new HashMap<>();
+        Map<File, Map<String, LongPairBuffer>> examples = new ConcurrentHashMap<>();
+        CSRGraph.Builder builder = new CSRGraph.Builder();
+        Map<String, LongPairBuffer> trainExamples = new HashMap<>();
+        Map<String, LongPairSet> trainEdges = new HashMap<>();
+        TripleReader.read(trainFile, (head, relation, tail) -> {
+            int sub = index(nodeIndex, builder, head), obj = index(nodeIndex, builder, tail);
+            // Duplicate triples would become parallel edges and inflate the rule statistics.
+            if(trainEdges.computeIfAbsent(relation, k -> new LongPairSet()).add(sub, obj)) {
+                builder.addEdge(sub, head, obj, tail, relation);
+                trainExamples.computeIfAbsent(relation, k -> new LongPairBuffer()).add(sub, obj);
+            }
+        });
+        examples.put(trainFile.getAbsoluteFile(), trainExamples);
+        for (File file : otherFiles) {
+            Map<String, LongPairBuffer> fileExamples = new HashMap<>();
+            TripleReader.read(file, (head, relation, tail) -> fileExamples.computeIfAbsent(relation, k -> new LongPairBuffer())
+                    .add(index(nodeIndex, builder, head), index(nodeIndex, builder, tail)));
+            examples.put(file.getAbsoluteFile(), fileExamples);
+        }
+        NativeGraph graph = new NativeGraph(builder.build(), nodeIndex, examples);
+        Logger.println(MessageFormat.format("\n# Load Native Graph from: {0}\n# Relationship Types: {1} " +
+                        "| Relationships: {2} | Nodes: {3} | Time: {4}s"
+                , trainFile.getParent(), graph.graph.typeCount(), graph.graph.edgeCount()
+                , graph.graph.nodeCount(), (System.currentTimeMillis() - s) / 1000d), 1);
+        return graph;
+    }
+
+    private static int index(Map<String, Integer> nodeIndex, CSRGraph.Builder builder, String name) {
+        Integer id = nodeIndex.get(name);
+        if(id == null) {
+            id = nodeIndex.size();
+            nodeIndex.put(name, id);
+            builder.addNode(id, name);
+        }
+        return id;
+    }
+
+    public CSRGraph getGraph() {
+        return graph;
+    }
+
+    @Override
+    public Session open() {
+        return NO_SESSION;
+    }
+
+    @Override
+    public String nodeName(long node) {
+        return graph.nodeName((int) node);
+    }
+
+    @Override
+    public Set<String> relationshipTypes() {
+        return new HashSet<>(Arrays.asList(graph.types));
+    }
+
+    @Override
+    public int count(String type) {
+        int t = graph.typeId(type);
+        return t == -1 ? 0 : graph.typeEnd(t) - graph.typeStart(t);
+    }
+
+    @Override
+    public Edges edges(String type, int from, int to) {
+        int t = graph.typeId(type);
+        int start = t == -1 ? 0 : graph.typeStart(t);
+        return new Edges() {
+            int edge = start + from - 1;
+            final int end = t == -1 ? 0 : start + to;
+
+            @Override
+            public boolean next() {
+                return ++edge < end;
+            }
+
+            @Override
+            public long startId() {
+                return graph.edgeHead(edge);
+            }
+
+            @Override
+            public long endId() {
+                return graph.edgeTail(edge);
+            }
+
+            @Override
+            public String type() {
+                return type;
+            }
+        };
+    }
+
+    @Override
+    public Edges edges(long node, Direction direction, String type) {
+        return new NodeEdges((int) node, direction, type == null ? -1 : graph.typeId(type), type != null);
+    }
+
+    @Override
+    public int degree(long node, Direction direction, String type) {
+        int n = (int) node;
+        if(type == null) {
+            int degree = 0;
+            if(direction != Direction.INCOMING) degree += graph.degree(n, true);
+            if(direction != Direction.OUTGOING) degree += graph.degree(n, false);
+            return degree;
+        }
+        int t = graph.typeId(type);
+        if(t == -1) return 0;
+        int degree = 0;
+        if(direction != Direction.INCOMING) degree += graph.degree(n, true, t);
+        if(direction != Direction.OUTGOING) degree += graph.degree(n, false, t);
+        return degree;
+    }
+
+    /**
+     * Reads the examples of the target from a triple file. The examples of the files given to
+     * {@link #load(File, File...)} are grouped by relation while loading; any other file is
+     * read and grouped once, on first use, keeping the triples whose entities are in the graph.
+     */
+    @Override
+    public Set<Pair> readPairs(File file, String target) {
+        Set<Pair> pairs = new HashSet<>();
+        LongPairBuffer buffer = examples.computeIfAbsent(file.getAbsoluteFile(), this::groupExamples).get(target);
+        if(buffer == null) return pairs;
+        RelationshipType type = RelationshipType.withName(target);
+        for (int i = 0; i < buffer.size(); i++) {
+            long sub = buffer.sub(i), obj = buffer.obj(i);
+            pairs.add(new Pair(sub, obj, -1, null, type, nodeName(sub), nodeName(obj), target));
+        }
+        return pairs;
+    }
+
+    private Map<String, LongPairBuffer> groupExamples(File file) {
+        Map<String, LongPairBuffer> fileExamples = new HashMap<>();
+        TripleReader.read(file, (head, relation, tail) -> {
+            Integer sub = nodeIndex.get(head), obj = nodeIndex.get(tail);
+            if(sub != null && obj != null)
+                fileExamples.computeIfAbsent(relation, k -> new LongPairBuffer()).add(sub, obj);
+        });
+        return fileExamples;
+    }
+
+    /**
+     * Walks the adjacency segments of a node: outgoing ones first, then incoming ones.
+     * When both directions are walked, incoming self-loops are skipped as they were
+     * already seen as outgoing.
+     */
+    class NodeEdges implements Edges {
+        final int node;
+        final int type;
+        final boolean typed;
+        boolean outgoing;
+        final boolean both;
+        int segment, segmentsEnd;
+        int slot = -1, slotEnd = -1;
+
+        NodeEdges(int node, Direction direction, int type, boolean typed) {
+            this.node = node;
+            this.type = type;
+            this.typed = typed;
+            this.both = direction == Direction.BOTH;
+            this.outgoing = direction != Direction.INCOMING;
+            enter();
+        }
+
+        private void enter() {
+            if(typed) {
+                int s = type == -1 ? -1 : graph.segment(node, outgoing, type);
+                segment = s;
+                segmentsEnd = s == -1 ? -1 : s + 1;
+            } else {
+                segment = graph.segmentsStart(node, outgoing);
+                segmentsEnd = graph.segmentsEnd(node, outgoing);
+            }
+            slot = segment < segmentsEnd ? graph.segmentStart(outgoing, segment) - 1 : -1;
+            slotEnd = segment < segmentsEnd ? graph.segmentEnd(outgoing, segment) : -1;
+        }
+
+        @Override
+        public boolean next() {
+            while(true) {
+                if(++slot < slotEnd) {
+                    if(both && !outgoing && graph.neighbour(false, slot) == node) continue;
+                    return true;
+                }
+                if(++segment < segmentsEnd) {
+                    slot = graph.segmentStart(outgoing, segment) - 1;
+                    slotEnd = graph.segmentEnd(outgoing, segment);
+                    continue;
+                }
+                if(both && outgoing) {
+                    outgoing = false;
+                    enter();
+                    continue;
+                }
+                return false;
+            }
+        }
+
+        @Override
+        public long startId() {
+            return outgoing ? node : graph.neighbour(false, slot);
+        }
+
+        @Override
+        public long endId() {
+            return outgoing ? graph.neighbour(true, slot) : node;
+        }
+
+        @Override
+        public String type() {
+            return graph.typeName(graph.segmentType(outgoing, segment));
+        }
+    }
+}
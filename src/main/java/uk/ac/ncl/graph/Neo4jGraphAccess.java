@@ -0,0 +1,138 @@
+package uk.ac.ncl.graph;
+
+import org.neo4j.graphdb.*;
+import uk.ac.ncl.core.GraphOps;
+import uk.ac.ncl.core.RelationshipIndex;
+import uk.ac.ncl.structure.Pair;
+import uk.ac.ncl.utils.IO;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * {@link GraphAccess} over an embedded Neo4j database. Relationships of a type are scanned
+ * through the {@link RelationshipIndex} of the database, and sessions are transactions.
+ * The access holds no state of its own, so callers keep the one they need instead of it
+ * being cached per database.
+ */
+public class Neo4jGraphAccess implements GraphAccess {
+    private final GraphDatabaseService graph;
+
+    private Neo4jGraphAccess(GraphDatabaseService graph) {
+        this.graph = graph;
+    }
+
+    public static Neo4jGraphAccess of(GraphDatabaseService graph) {
+        return new Neo4jGraphAccess(graph);
+    }
+
+    public GraphDatabaseService getDatabase() {
+        return graph;
+    }
+
+    @Override
+    public Session open() {
+        Transaction tx = graph.beginTx();
+        return () -> {
+            tx.success();
+            tx.close();
+        };
+    }
+
+    @Override
+    public String nodeName(long node) {
+        return GraphOps.readNeo4jProperty(graph.getNodeById(node));
+    }
+
+    @Override
+    public Set<String> relationshipTypes() {
+        Set<String> types = new HashSet<>();
+        try(Transaction tx = graph.beginTx()) {
+            for (RelationshipType type : graph.getAllRelationshipTypes())
+                types.add(type.name());
+            tx.success();
+        }
+        return types;
+    }
+
+    @Override
+    public int count(String type) {
+        return RelationshipIndex.of(graph).size(type);
+    }
+
+    @Override
+    public Edges edges(String type, int from, int to) {
+        long[] ids = RelationshipIndex.of(graph).ids(type);
+        return new Edges() {
+            int i = from - 1;
+            Relationship current;
+
+            @Override
+            public boolean next() {
+                if(++i >= to) return false;
+                current = graph.getRelationshipById(ids[i]);
+                return true;
+            }
+
+            @Override
+            public long startId() {
+                return current.getStartNodeId();
+            }
+
+            @Override
+            public long endId() {
+                return current.getEndNodeId();
+            }
+
+            @Override
+            public String type() {
+                return type;
+            }
+        };
+    }
+
+    @Override
+    public Edges edges(long node, Direction direction, String type) {
+        Node n = graph.getNodeById(node);
+        Iterator<Relationship> relationships = (type == null ? n.getRelationships(direction)
+                : n.getRelationships(direction, RelationshipType.withName(type))).iterator();
+        return new Edges() {
+            Relationship current;
+
+            @Override
+            public boolean next() {
+                if(!relationships.hasNext()) return false;
+                current = relationships.next();
+                return true;
+            }
+
+            @Override
+            public long startId() {
+                return current.getStartNodeId();
+            }
+
+            @Override
+            public long endId() {
+                return current.getEndNodeId();
+            }
+
+            @Override
+            public String type() {
+                return type == null ? current.getType().name() : type;
+            }
+        };
+    }
+
+    @Override
+    public int degree(long node, Direction direction, String type) {
+        Node n = graph.getNodeById(node);
+        return type == null ? n.getDegree(direction) : n.getDegree(RelationshipType.withName(type), direction);
+    }
+
+    @Override
+    public Set<Pair> readPairs(File file, String target) {
+        return IO.readPair(graph, file, target);
+    }
+}
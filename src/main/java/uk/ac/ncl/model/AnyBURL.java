@@ -9,6 +9,9 @@ import uk.ac.ncl.core.Context;
 import uk.ac.ncl.core.Engine;
 import uk.ac.ncl.core.GlobalTimer;
 import uk.ac.ncl.core.GraphOps;
+import uk.ac.ncl.graph.EdgeMask;
+import uk.ac.ncl.graph.MaskedGraphAccess;
+import uk.ac.ncl.graph.Neo4jGraphAccess;
 import uk.ac.ncl.structure.Pair;
 import uk.ac.ncl.structure.Rule;
 import uk.ac.ncl.utils.Helpers;
@@ -63,8 +66,7 @@ public class AnyBURL extends Engine {
             Logger.println(MessageFormat.format("# Train Size: {0} | Valid Size: {1} | Test Size: {2}"
                     , trainPairs.size(), validPairs.size(), testPairs.size()), 1);
 
-            GraphOps.removeRelationships(validPairs, graph);
-            GraphOps.removeRelationships(testPairs, graph);
+            access = new MaskedGraphAccess(Neo4jGraphAccess.of(graph), new EdgeMask(target, validPairs, testPairs));
 
             BlockingQueue<Rule> ruleQueue = new LinkedBlockingDeque<>();
             RuleProducer[] producers = new RuleProducer[Settings.THREAD_NUMBER];
@@ -72,9 +74,6 @@ public class AnyBURL extends Engine {
             }
 
             IO.writeRules(ruleFile, context.topRules);
-
-            GraphOps.addRelationships(validPairs, graph);
-            GraphOps.addRelationships(testPairs, graph);
         }
     }
 
@@ -2,17 +2,19 @@ package uk.ac.ncl.model;
 
 import uk.ac.ncl.Settings;
 import uk.ac.ncl.core.*;
+import uk.ac.ncl.graph.GraphAccess;
+import uk.ac.ncl.graph.NativeGraph;
+import uk.ac.ncl.graph.Neo4jGraphAccess;
 import uk.ac.ncl.utils.Helpers;
 import uk.ac.ncl.utils.IO;
 import uk.ac.ncl.utils.Logger;
+import uk.ac.ncl.utils.RuleIndex;
 import com.google.common.collect.Multimap;
-import org.neo4j.graphdb.Transaction;
-import uk.ac.ncl.structure.Pair;
+import uk.ac.ncl.structure.TargetExamples;
 import uk.ac.ncl.structure.Triple;
 
 import java.io.File;
 import java.text.MessageFormat;
-import java.util.Set;
 
 public class GPFL extends Engine {
 
@@ -28,12 +30,31 @@ public class GPFL extends Engine {
         Helpers.reportSettings();
     }
 
+    /**
+     * Opens the graph and sets the example files: the Neo4j database with its annotated
+     * files, or, if {@link Settings#NATIVE_GRAPH} is set, a {@link NativeGraph} read from
+     * the triple files. The native graph always reads the test file, so that entity ids
+     * are the same whether or not a run uses test examples.
+     */
+    private void loadGraph(boolean withTestFile) {
+        if(Settings.NATIVE_GRAPH) {
+            trainFile = new File(home, "data/train.txt");
+            validFile = new File(home, "data/valid.txt");
+            testFile = new File(home, "data/test.txt");
+            access = NativeGraph.load(trainFile, validFile, testFile);
+        } else {
+            graphFile = new File(home, "databases/graph.db");
+            graph = IO.loadGraph(graphFile);
+            access = Neo4jGraphAccess.of(graph);
+            trainFile = new File(home, "data/annotated_train.txt");
+            validFile = new File(home, "data/annotated_valid.txt");
+            testFile = new File(home, "data/annotated_test.txt");
+        }
+        if(!withTestFile) testFile = null;
+    }
+
     public void run() {
-        graphFile = new File(home, "databases/graph.db");
-        graph = IO.loadGraph(graphFile);
-        trainFile = new File(home, "data/annotated_train.txt");
-        validFile = new File(home, "data/annotated_valid.txt");
-        testFile = new File(home, "data/annotated_test.txt");
+        loadGraph(true);
         ruleFile = IO.createEmptyFile(new File(out, "rules.txt"));
         predictionFile = IO.createEmptyFile(new File(out, "predictions.txt"));
         verificationFile = IO.createEmptyFile(new File(out, "verifications.txt"));
@@ -42,38 +63,9 @@ public class GPFL extends Engine {
 
         populateTargets();
         GlobalTimer.programStartTime = System.currentTimeMillis();
+        TargetScheduler.run(targets, Settings.PARALLEL_TARGETS, Settings.THREAD_NUMBER
+                , Settings.MEMORY_BUDGET, this::readExamples, this::runTarget);
 
-        for (String target : targets) {
-            File ruleIndexFile = IO.createEmptyFile(new File(ruleIndexHome
-                    , target.replaceAll("[:/]", "_") + ".txt"));
-            Settings.TARGET = target;
-            Context context = new Context();
-            Logger.println(MessageFormat.format("\n# ({0}\\{1}) Start Learning Rules for Target: {2}",
-                    globalTargetCounter++, targets.size(), target), 1);
-
-            try (Transaction tx = graph.beginTx()) {
-                Set<Pair> trainPairs = IO.readPair(graph, trainFile, target);
-                Settings.TARGET_FUNCTIONAL = IO.isTargetFunctional(trainPairs);
-                Set<Pair> validPairs = IO.readPair(graph, validFile, target);
-                Set<Pair> testPairs = IO.readPair(graph, testFile, target);
-
-                Logger.println(MessageFormat.format("# Functional: {0} | Train Size: {1} | Valid Size: {2} | Test Size: {3}"
-                        , Settings.TARGET_FUNCTIONAL, trainPairs.size(), validPairs.size(), testPairs.size()), 1);
-
-                Set<Pair> filterSet = Helpers.combine(trainPairs, validPairs, testPairs);
-                generalization(trainPairs, context);
-                if(Settings.ESSENTIAL_TIME != -1 && Settings.INS_DEPTH != 0)
-                    EssentialRuleGenerator.generateEssentialRules(trainPairs, validPairs
-                            , context, graph, ruleIndexFile, ruleFile);
-                specialization(context, trainPairs, validPairs, ruleIndexFile);
-                IO.orderRuleIndexFile(ruleIndexFile);
-
-                ruleApplication(context, ruleIndexFile);
-                Evaluator evaluator = new Evaluator(testPairs, filterSet, context, predictionFile, verificationFile, graph);
-                evaluator.createQueries();
-                tx.success();
-            }
-        }
         GlobalTimer.reportMaxMemoryUsed();
         GlobalTimer.reportTime();
 
@@ -82,87 +74,99 @@ public class GPFL extends Engine {
         Evaluator.scoreGPFL(filterMap, predictionFile);
     }
 
-    public void learn() {
-        graphFile = new File(home, "databases/graph.db");
-        graph = IO.loadGraph(graphFile);
+    /**
+     * Loader stage of the target pipeline: reads and indexes the examples of a target
+     * while earlier targets are learned.
+     */
+    private TargetExamples readExamples(String target) {
+        return TargetExamples.read(access, target, trainFile, validFile, testFile);
+    }
+
+    private TargetExamples readApplyExamples(String target) {
+        if(!RuleIndex.locate(ruleIndexHome, target.replaceAll("[:/]", "_")).exists())
+            return null;
+        return readExamples(target);
+    }
+
+    private void runTarget(String target, TargetExamples examples, int threads) {
+        File ruleIndexFile = IO.createEmptyFile(new File(ruleIndexHome
+                , target.replaceAll("[:/]", "_") + RuleIndex.extension()));
+        Logger.println(MessageFormat.format("\n# ({0}\\{1}) Start Learning Rules for Target: {2}",
+                countTarget(), targets.size(), target), 1);
+
+        GraphAccess.Session session = access.open();
+        try {
+            Context context = new Context(target, examples.functional, threads);
+            Logger.println(MessageFormat.format("# Target: {0} | Functional: {1} | Train Size: {2} | Valid Size: {3} | Test Size: {4}"
+                    , target, context.isFunctional(), examples.trainPairs.size(), examples.validPairs.size()
+                    , examples.testPairs.size()), 1);
+
+            generalization(examples.trainPairs, context);
+            if(Settings.ESSENTIAL_TIME != -1 && Settings.INS_DEPTH != 0)
+                EssentialRuleGenerator.generateEssentialRules(examples.trainPairs, examples.validPairs
+                        , context, access, ruleIndexFile, ruleFile);
+            specialization(context, examples, ruleIndexFile);
+            IO.orderRuleIndexFile(ruleIndexFile);
+
+            if(Settings.QUERY_DRIVEN) context.setQueries(examples.testPairs);
+            if(Settings.EARLY_STOP) context.trackQueries(examples.testPairs, examples.filterSet);
+            ruleApplication(context, ruleIndexFile);
+            Evaluator evaluator = new Evaluator(examples.testPairs, examples.filterSet, context
+                    , predictionFile, verificationFile, access);
+            evaluator.createQueries();
+        } finally {
+            session.close();
+        }
+    }
 
-        trainFile = new File(home, "data/annotated_train.txt");
-        validFile = new File(home, "data/annotated_valid.txt");
+    public void learn() {
+        loadGraph(false);
         ruleFile = IO.createEmptyFile(new File(out, "rules.txt"));
         ruleIndexHome = new File(out, "index");
         ruleIndexHome.mkdir();
         populateTargets();
         GlobalTimer.programStartTime = System.currentTimeMillis();
-
-        for (String target : targets) {
-            File ruleIndexFile = IO.createEmptyFile(new File(ruleIndexHome
-                    , target.replaceAll("[:/<>]", "_") + ".txt"));
-
-            Settings.TARGET = target;
-            Context context = new Context();
-            Logger.println(MessageFormat.format("\n# ({0}\\{1}) Start Learning Rules for Target: {2}",
-                    globalTargetCounter++, targets.size(), target), 1);
-
-            try (Transaction tx = graph.beginTx()) {
-                Set<Pair> trainPairs = IO.readPair(graph, trainFile, target);
-                Settings.TARGET_FUNCTIONAL = IO.isTargetFunctional(trainPairs);
-                Set<Pair> validPairs = IO.readPair(graph, validFile, target);
-
-                Logger.println(MessageFormat.format("# Train Size: {0}", trainPairs.size()), 1);
-
-                generalization(trainPairs, context);
-                if(Settings.ESSENTIAL_TIME != -1 && Settings.INS_DEPTH != 0)
-                    EssentialRuleGenerator.generateEssentialRules(trainPairs, validPairs, context, graph, ruleIndexFile, ruleFile);
-                specialization(context, trainPairs, validPairs, ruleIndexFile);
-
-                IO.orderRuleIndexFile(ruleIndexFile);
-                tx.success();
-            }
-        }
+        TargetScheduler.run(targets, Settings.PARALLEL_TARGETS, Settings.THREAD_NUMBER
+                , Settings.MEMORY_BUDGET, this::readExamples, this::learnTarget);
 
         IO.orderRules(out);
         GlobalTimer.reportMaxMemoryUsed();
         GlobalTimer.reportTime();
     }
 
+    private void learnTarget(String target, TargetExamples examples, int threads) {
+        File ruleIndexFile = IO.createEmptyFile(new File(ruleIndexHome
+                , target.replaceAll("[:/<>]", "_") + RuleIndex.extension()));
+        Logger.println(MessageFormat.format("\n# ({0}\\{1}) Start Learning Rules for Target: {2}",
+                countTarget(), targets.size(), target), 1);
+
+        GraphAccess.Session session = access.open();
+        try {
+            Context context = new Context(target, examples.functional, threads);
+            Logger.println(MessageFormat.format("# Target: {0} | Train Size: {1}", target, examples.trainPairs.size()), 1);
+
+            generalization(examples.trainPairs, context);
+            if(Settings.ESSENTIAL_TIME != -1 && Settings.INS_DEPTH != 0)
+                EssentialRuleGenerator.generateEssentialRules(examples.trainPairs, examples.validPairs
+                        , context, access, ruleIndexFile, ruleFile);
+            specialization(context, examples, ruleIndexFile);
+
+            IO.orderRuleIndexFile(ruleIndexFile);
+        } finally {
+            session.close();
+        }
+    }
+
     public void apply() {
-        graphFile = new File(home, "databases/graph.db");
-        graph = IO.loadGraph(graphFile);
-        trainFile = new File(home, "data/annotated_train.txt");
-        validFile = new File(home, "data/annotated_valid.txt");
-        testFile = new File(home, "data/annotated_test.txt");
+        loadGraph(true);
 
         predictionFile = IO.createEmptyFile(new File(out, "predictions.txt"));
         verificationFile = IO.createEmptyFile(new File(out, "verifications.txt"));
         ruleIndexHome = new File(out, "index");
         populateTargets();
         GlobalTimer.programStartTime = System.currentTimeMillis();
-
-        for (String target : targets) {
-            File ruleIndexFile = new File(ruleIndexHome
-                    , target.replaceAll("[:/]", "_") + ".txt");
-            if(!ruleIndexFile.exists())
-                continue;
-
-            Settings.TARGET = target;
-            Context context = new Context();
-            Logger.println(MessageFormat.format("\n# ({0}\\{1}) Start Applying Rules for Target: {2}",
-                    globalTargetCounter++, targets.size(), target), 1);
-
-            try (Transaction tx = graph.beginTx()) {
-                Set<Pair> trainPairs = IO.readPair(graph, trainFile, target);
-                Set<Pair> validPairs = IO.readPair(graph, validFile, target);
-                Set<Pair> testPairs = IO.readPair(graph, testFile, target);
-                Set<Pair> filterSet = Helpers.combine(trainPairs, validPairs, testPairs);
-                Logger.println(MessageFormat.format("# Train Size: {0} | " + "Valid Size: {1} | " + "Test Size: {2}"
-                        , trainPairs.size(), validPairs.size(), testPairs.size()), 1);
-
-                ruleApplication(context, ruleIndexFile);
-                Evaluator evaluator = new Evaluator(testPairs, filterSet, context, predictionFile, verificationFile, graph);
-                evaluator.createQueries();
-                tx.success();
-            }
-        }
+        TargetScheduler.run(targets, Settings.PARALLEL_TARGETS, Settings.THREAD_NUMBER
+                , Settings.MEMORY_BUDGET, this::readApplyExamples, this::applyTarget);
 
         GlobalTimer.reportMaxMemoryUsed();
         GlobalTimer.reportTime();
@@ -171,4 +175,26 @@ public class GPFL extends Engine {
         Multimap<String, Triple> filterMap = Evaluator.buildFilterMap(home.getPath());
         Evaluator.scoreGPFL(filterMap, predictionFile);
     }
+
+    private void applyTarget(String target, TargetExamples examples, int threads) {
+        File ruleIndexFile = RuleIndex.locate(ruleIndexHome, target.replaceAll("[:/]", "_"));
+        Context context = new Context(target, examples.functional, threads);
+        Logger.println(MessageFormat.format("\n# ({0}\\{1}) Start Applying Rules for Target: {2}",
+                countTarget(), targets.size(), target), 1);
+
+        GraphAccess.Session session = access.open();
+        try {
+            Logger.println(MessageFormat.format("# Target: {0} | Train Size: {1} | " + "Valid Size: {2} | " + "Test Size: {3}"
+                    , target, examples.trainPairs.size(), examples.validPairs.size(), examples.testPairs.size()), 1);
+
+            if(Settings.QUERY_DRIVEN) context.setQueries(examples.testPairs);
+            if(Settings.EARLY_STOP) context.trackQueries(examples.testPairs, examples.filterSet);
+            ruleApplication(context, ruleIndexFile);
+            Evaluator evaluator = new Evaluator(examples.testPairs, examples.filterSet, context
+                    , predictionFile, verificationFile, access);
+            evaluator.createQueries();
+        } finally {
+            session.close();
+        }
+    }
 }
@@ -9,12 +9,19 @@ import org.apache.commons.io.LineIterator;
 import org.neo4j.graphdb.*;
 import uk.ac.ncl.Settings;
 import uk.ac.ncl.core.*;
+import uk.ac.ncl.graph.CSRGraph;
+import uk.ac.ncl.graph.EdgeMask;
+import uk.ac.ncl.graph.GraphAccess;
+import uk.ac.ncl.graph.GraphSnapshot;
 import uk.ac.ncl.graph.InMemoryGraph;
+import uk.ac.ncl.graph.MaskedGraphAccess;
+import uk.ac.ncl.graph.Neo4jGraphAccess;
 import uk.ac.ncl.structure.*;
 import uk.ac.ncl.structure.Package;
 import uk.ac.ncl.utils.Helpers;
 import uk.ac.ncl.utils.IO;
 import uk.ac.ncl.utils.Logger;
+import uk.ac.ncl.utils.ReorderBuffer;
 
 import java.io.File;
 import java.io.FileWriter;
@@ -25,7 +32,6 @@ import java.text.MessageFormat;
 import java.text.NumberFormat;
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingDeque;
 
 public class GenSpec extends Engine {
@@ -80,8 +86,35 @@ public class GenSpec extends Engine {
     }
 
     BiMap<String, Long> nodeIndex = HashBiMap.create();
+    CSRGraph snapshot;
+
+    /**
+     * Loads the graph snapshot exported next to the database, if there is one and it was
+     * exported from the database as it is now.
+     */
+    private boolean loadSnapshot() {
+        File snapshotFile = new File(home, "databases/graph.csr");
+        if(snapshotFile.exists()) {
+            if(GraphSnapshot.matches(snapshotFile, new File(home, "databases/graph.db")))
+                snapshot = GraphSnapshot.load(snapshotFile);
+            else
+                Logger.println("# Ignored outdated graph snapshot, export it again with -xg: " + snapshotFile.getPath(), 1);
+        }
+        return snapshot != null;
+    }
+
+    private InMemoryGraph buildInMemoryGraph(TripleSet tripleSet, int range) {
+        return snapshot != null ? new InMemoryGraph(snapshot, tripleSet, range)
+                : new InMemoryGraph(graph, tripleSet, range);
+    }
 
     private void indexing() {
+        if(snapshot != null) {
+            for (int i = 0; i < snapshot.nodeCount(); i++)
+                nodeIndex.put(snapshot.nodeName(i), snapshot.nodeId(i));
+            Logger.println("# Indexed " + nodeIndex.size() + " nodes.");
+            return;
+        }
         try(Transaction tx = graph.beginTx()) {
             for (Node node : graph.getAllNodes()) {
                 nodeIndex.put(GraphOps.readNeo4jProperty(node), node.getId());
@@ -132,6 +165,7 @@ public class GenSpec extends Engine {
 
     public void run() {
         graph = IO.loadGraph(new File(home, "databases/graph.db"));
+        loadSnapshot();
         trainFile = new File(home, "data/train.txt");
         validFile = new File(home, "data/valid.txt");
         testFile = new File(home, "data/test.txt");
@@ -158,8 +192,7 @@ public class GenSpec extends Engine {
             Logger.println(MessageFormat.format("# Train Size: {0} | Valid Size: {1} | Test Size: {2}"
                     , trainPairs.size(), validPairs.size(), testPairs.size()), 1);
 
-            GraphOps.removeRelationships(validPairs, graph);
-            GraphOps.removeRelationships(testPairs, graph);
+            access = new MaskedGraphAccess(Neo4jGraphAccess.of(graph), new EdgeMask(target, validPairs, testPairs));
 
             generalization(trainPairs, context);
             specialization(context, trainPairs, validPairs);
@@ -179,6 +212,7 @@ public class GenSpec extends Engine {
 
     public void learn() {
         graph = IO.loadGraph(new File(home, "databases/graph.db"));
+        loadSnapshot();
         trainFile = new File(home, "data/train.txt");
         validFile = new File(home, "data/valid.txt");
         testFile = new File(home, "data/test.txt");
@@ -201,21 +235,18 @@ public class GenSpec extends Engine {
             Logger.println(MessageFormat.format("# Train Size: {0} | Valid Size: {1} | Test Size: {2}"
                     , trainPairs.size(), validPairs.size(), testPairs.size()), 1);
 
-            GraphOps.removeRelationships(validPairs, graph);
-            GraphOps.removeRelationships(testPairs, graph);
+            access = new MaskedGraphAccess(Neo4jGraphAccess.of(graph), new EdgeMask(target, validPairs, testPairs));
 
             generalization(trainPairs, context);
             specialization(context, trainPairs, validPairs);
 
             IO.writeRules(ruleFile, context.topRules);
-
-//            GraphOps.addRelationships(validPairs, graph);
-//            GraphOps.addRelationships(testPairs, graph);
         }
     }
 
     public void apply() {
-        graph = IO.loadGraph(new File(home, "databases/graph.db"));
+        if(!loadSnapshot())
+            graph = IO.loadGraph(new File(home, "databases/graph.db"));
         trainFile = new File(home, "data/train.txt");
         validFile = new File(home, "data/valid.txt");
         testFile = new File(home, "data/test.txt");
@@ -240,7 +271,7 @@ public class GenSpec extends Engine {
             Logger.println(MessageFormat.format("# Train Size: {0} | Valid Size: {1} | Test Size: {2}"
                     , trainPairs.size(), validPairs.size(), testPairs.size()), 1);
 
-            InMemoryGraph inMemoryGraph = new InMemoryGraph(graph, tripleSet, range);
+            InMemoryGraph inMemoryGraph = buildInMemoryGraph(tripleSet, range);
             List<Rule> rules = ruleFilter(IO.readRules(ruleFile, nodeIndex, target), tripleSet);
             inMemoryGraph.ruleApplication(rules);
             writeQueries(tripleSet);
@@ -381,12 +412,12 @@ public class GenSpec extends Engine {
         LinkedBlockingDeque<Package> inputQueue = new LinkedBlockingDeque<>();
         Package.resetIndex();
         rules.forEach(r -> inputQueue.add(Package.create(r)));
-        ConcurrentHashMap<Integer, Package> outputQueue = new ConcurrentHashMap<>();
+        ReorderBuffer<Package> outputBuffer = new ReorderBuffer<>(3000);
 
-        Dispatcher dispatcher = new Dispatcher(inputQueue, outputQueue, tripleSet);
+        Dispatcher dispatcher = new Dispatcher(inputQueue.size(), outputBuffer, tripleSet);
         RuleApplier[] appliers = new RuleApplier[Settings.THREAD_NUMBER];
         for (int i = 0; i < appliers.length; i++) {
-            appliers[i] = new RuleApplier(i, dispatcher, outputQueue, inputQueue, graph, tripleSet);
+            appliers[i] = new RuleApplier(i, outputBuffer, inputQueue, graph, tripleSet);
         }
         try {
             for (RuleApplier applier : appliers) {
@@ -402,20 +433,17 @@ public class GenSpec extends Engine {
     }
 
     static class RuleApplier extends Thread {
-        Dispatcher dispatcher;
-        ConcurrentHashMap<Integer, Package> outputQueue;
+        ReorderBuffer<Package> outputBuffer;
         LinkedBlockingDeque<Package> inputQueue;
         GraphDatabaseService graph;
         TripleSet tripleSet;
 
-        public RuleApplier(int id, Dispatcher dispatcher
-                , ConcurrentHashMap<Integer, Package> outputQueue
+        public RuleApplier(int id, ReorderBuffer<Package> outputBuffer
                 , LinkedBlockingDeque<Package> inputQueue
                 , GraphDatabaseService graph
                 , TripleSet tripleSet) {
             super("RuleApplier-" + id);
-            this.dispatcher = dispatcher;
-            this.outputQueue = outputQueue;
+            this.outputBuffer = outputBuffer;
             this.inputQueue = inputQueue;
             this.graph = graph;
             this.tripleSet = tripleSet;
@@ -425,15 +453,13 @@ public class GenSpec extends Engine {
         @Override
         public void run() {
             try(Transaction tx = graph.beginTx()) {
-                Thread.sleep(500);
-                while (dispatcher.isAlive() && !inputQueue.isEmpty()) {
-                    if (outputQueue.size() < 3000) {
-                        Package p = inputQueue.poll();
-                        if (p != null) {
-                            p.candidates = groundRules(p.rule);
-                            outputQueue.put(p.id, p);
-                        }
-                    }
+                // Packages are polled in rule order, so the one the dispatcher waits for is
+                // always held by some applier and fits in the buffer.
+                while (!outputBuffer.isClosed()) {
+                    Package p = inputQueue.poll();
+                    if (p == null) break;
+                    p.candidates = groundRules(p.rule);
+                    if (!outputBuffer.put(p.id, p)) break;
                 }
                 tx.success();
             } catch (InterruptedException e) {
@@ -504,43 +530,38 @@ public class GenSpec extends Engine {
     }
 
     static class Dispatcher extends Thread {
-        LinkedBlockingDeque<Package> inputQueue;
-        ConcurrentHashMap<Integer, Package> outputQueue;
+        int allRules;
+        ReorderBuffer<Package> outputBuffer;
         TripleSet tripleSet;
         int current = 0;
 
-        public Dispatcher(LinkedBlockingDeque<Package> inputQueue
-                ,ConcurrentHashMap<Integer, Package> outputQueue, TripleSet tripleSet) {
-            this.outputQueue = outputQueue;
+        public Dispatcher(int allRules, ReorderBuffer<Package> outputBuffer, TripleSet tripleSet) {
+            this.allRules = allRules;
+            this.outputBuffer = outputBuffer;
             this.tripleSet = tripleSet;
-            this.inputQueue = inputQueue;
             start();
         }
 
         @Override
         public void run() {
             DecimalFormat f = new DecimalFormat("###.####");
-            int allRules = inputQueue.size();
-            int previous = 0;
-            boolean converge = false;
-
-            while(true) {
-                if(outputQueue.containsKey(current)) {
-                    Package p = outputQueue.remove(current);
+            try {
+                while(current < allRules) {
+                    Package p = outputBuffer.take();
                     current++;
                     if(!p.candidates.isEmpty())
                         tripleSet.updateTestCases(p);
-                        converge = tripleSet.converge();
-                }
+                    if(tripleSet.converge()) break;
 
-                if(current % 5000 == 0 && current != previous) {
-                    Logger.println("# Visited " + current + " Rules | Coverage: " + f.format(tripleSet.coverage));
+                    if(current % 5000 == 0) {
+                        Logger.println("# Visited " + current + " Rules | Coverage: " + f.format(tripleSet.coverage));
+                    }
                 }
-                previous = current;
-
-                boolean empty = inputQueue.isEmpty() && outputQueue.isEmpty();
-                if(converge) break;
-                else if(empty && current == allRules) break;
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                System.exit(-1);
+            } finally {
+                outputBuffer.close();
             }
 
             Logger.println(MessageFormat.format("# Visited/All Rules: {0}/{1} | Coverage: {2}",
@@ -559,26 +580,33 @@ public class GenSpec extends Engine {
         NumberFormat f = NumberFormat.getNumberInstance(Locale.US);
         long s = System.currentTimeMillis();
 
-        Multimap<Long, Long> objOriginalMap = MultimapBuilder.hashKeys().hashSetValues().build();
-        Multimap<Long, Long> subOriginalMap = MultimapBuilder.hashKeys().hashSetValues().build();
+        LongMultimap objOriginalMap = new LongMultimap();
+        LongMultimap subOriginalMap = new LongMultimap();
         for (Pair trainPair : trainPairs) {
             objOriginalMap.put(trainPair.objId, trainPair.subId);
             subOriginalMap.put(trainPair.subId, trainPair.objId);
         }
+        objOriginalMap.freeze();
+        subOriginalMap.freeze();
 
-        Multimap<Long, Long> validObjToSub = MultimapBuilder.hashKeys().hashSetValues().build();
-        Multimap<Long, Long> validSubToObj = MultimapBuilder.hashKeys().hashSetValues().build();
+        LongMultimap validObjToSub = new LongMultimap();
+        LongMultimap validSubToObj = new LongMultimap();
         for (Pair validPair : validPairs) {
             validObjToSub.put(validPair.objId, validPair.subId);
             validSubToObj.put(validPair.subId, validPair.objId);
         }
+        validObjToSub.freeze();
+        validSubToObj.freeze();
+
+        LongPairSet trainSet = new LongPairSet(trainPairs);
+        LongPairSet validSet = new LongPairSet(validPairs);
 
         BlockingQueue<Rule> abstractRuleQueue = new LinkedBlockingDeque<>(context.sortTemplates());
-        GlobalTimer.setSpecStartTime(System.currentTimeMillis());
+        context.setSpecStartTime(System.currentTimeMillis());
 
         SpecializationTask[] tasks = new SpecializationTask[Settings.THREAD_NUMBER];
         for (int i = 0; i < tasks.length; i++) {
-            tasks[i] = new SpecializationTask(i, graph, abstractRuleQueue, trainPairs, validPairs,
+            tasks[i] = new SpecializationTask(i, graphAccess(), abstractRuleQueue, trainSet, validSet,
                     objOriginalMap, subOriginalMap, validObjToSub, validSubToObj, context);
         }
         try {
@@ -597,25 +625,25 @@ public class GenSpec extends Engine {
 
     static class SpecializationTask extends Thread {
         int id;
-        GraphDatabaseService graph;
+        GraphAccess graph;
         BlockingQueue<Rule> abstractRuleQueue;
         Context context;
-        Set<Pair> trainPairs;
-        Set<Pair> validPairs;
-        Multimap<Long, Long> objOriginalMap;
-        Multimap<Long, Long> subOriginalMap;
-        Multimap<Long, Long> validObjToSub;
-        Multimap<Long, Long> validSubToObj;
+        LongPairSet trainPairs;
+        LongPairSet validPairs;
+        LongMultimap objOriginalMap;
+        LongMultimap subOriginalMap;
+        LongMultimap validObjToSub;
+        LongMultimap validSubToObj;
 
         public SpecializationTask(int id
-                , GraphDatabaseService graph
+                , GraphAccess graph
                 , BlockingQueue<Rule> abstractRuleQueue
-                , Set<Pair> trainPairs
-                , Set<Pair> validPairs
-                , Multimap<Long, Long> objOriginalMap
-                , Multimap<Long, Long> subOriginalMap
-                , Multimap<Long, Long> validObjToSub
-                , Multimap<Long, Long> validSubToObj
+                , LongPairSet trainPairs
+                , LongPairSet validPairs
+                , LongMultimap objOriginalMap
+                , LongMultimap subOriginalMap
+                , LongMultimap validObjToSub
+                , LongMultimap validSubToObj
                 , Context context) {
             super("InstantiationTask-" + id);
             this.id = id;
@@ -633,24 +661,26 @@ public class GenSpec extends Engine {
 
         @Override
         public void run() {
-            try(Transaction tx = graph.beginTx()) {
-                while (!abstractRuleQueue.isEmpty() && !GlobalTimer.stopSpec()) {
+            GraphAccess.Session session = graph.open();
+            try {
+                while (!abstractRuleQueue.isEmpty() && !context.stopSpec()) {
                     Template abstractRule = (Template) abstractRuleQueue.poll();
                     if(abstractRule != null) {
-                        Multimap<Long, Long> anchoringToOriginalMap = abstractRule.isFromSubject() ? objOriginalMap : subOriginalMap;
-                        Multimap<Long, Long> validOriginals = abstractRule.isFromSubject() ? validObjToSub : validSubToObj;
+                        LongMultimap anchoringToOriginalMap = abstractRule.isFromSubject() ? objOriginalMap : subOriginalMap;
+                        LongMultimap validOriginals = abstractRule.isFromSubject() ? validObjToSub : validSubToObj;
                         Specialization(abstractRule, graph, trainPairs, validPairs, anchoringToOriginalMap, validOriginals, context);
                     }
                 }
-                tx.success();
+            } finally {
+                session.close();
             }
         }
 
-        public void Specialization(Rule rule, GraphDatabaseService graph, Set<Pair> groundTruth, Set<Pair> validPair
-                , Multimap<Long, Long> anchoringToOriginal, Multimap<Long, Long> validOriginals
+        public void Specialization(Rule rule, GraphAccess graph, LongPairSet groundTruth, LongPairSet validPair
+                , LongMultimap anchoringToOriginal, LongMultimap validOriginals
                 , Context context) {
-            CountedSet<Pair> bodyGroundings = GraphOps.bodyGroundingCoreAPI(graph, rule, false, GlobalTimer::stopSpec);
-            if(GlobalTimer.stopSpec()) return;
+            LongPairCountedSet bodyGroundings = GraphOps.bodyGroundingCoreAPI(graph, rule, false, context::stopSpec);
+            if(context.stopSpec()) return;
 
             if(rule.closed) {
                 if(evalClosedRule(rule, bodyGroundings, groundTruth, validPair)) {
@@ -662,38 +692,44 @@ public class GenSpec extends Engine {
                 boolean valid = false;
 
                 rule.stats.groundTruth = groundTruth.size();
-                Multimap<Long, Long> originalToTail = MultimapBuilder.hashKeys().hashSetValues().build();
-                Multimap<Long, Long> tailToOriginal = MultimapBuilder.hashKeys().hashSetValues().build();
-                for (Pair bodyGrounding : bodyGroundings) {
-                    originalToTail.put(bodyGrounding.subId, bodyGrounding.objId);
-                    tailToOriginal.put(bodyGrounding.objId, bodyGrounding.subId);
+                LongMultimap originalToTail = new LongMultimap();
+                LongMultimap tailToOriginal = new LongMultimap();
+                for (int i = 0; i < bodyGroundings.size(); i++) {
+                    originalToTail.put(bodyGroundings.sub(i), bodyGroundings.obj(i));
+                    tailToOriginal.put(bodyGroundings.obj(i), bodyGroundings.sub(i));
                 }
-                Set<Long> groundingOriginals = originalToTail.keySet();
-
-                for (Long anchoring : anchoringToOriginal.keySet()) {
-                    if(GlobalTimer.stopSpec()) break;
-
-                    Set<Pair> visited = new HashSet<>();
-                    String headName = (String) graph.getNodeById(anchoring).getProperty(Settings.NEO4J_IDENTIFIER);
+                originalToTail.freeze();
+                tailToOriginal.freeze();
+                long[] groundingOriginals = originalToTail.keys();
+                LongSet visited = new LongSet();
+
+                for (int k = 0; k < anchoringToOriginal.keyCount(); k++) {
+                    if(context.stopSpec()) break;
+
+                    long anchoring = anchoringToOriginal.key(k);
+                    long[] originals = anchoringToOriginal.values(k);
+                    long[] anchoringValidOriginals = validOriginals.get(anchoring);
+                    visited.clear();
+                    String headName = graph.nodeName(anchoring);
                     Rule HAR = new InstantiatedRule(rule, headName, anchoring);
-                    if(evaluateRule(HAR, anchoringToOriginal.get(anchoring), validOriginals.get(anchoring), groundingOriginals)) {
+                    if(evaluateRule(HAR, originals, anchoringValidOriginals, groundingOriginals)) {
                         valid = true;
                         context.addTopRules(HAR);
                         context.updateTotalInsRules();
                     }
 
-                    for (Long original : anchoringToOriginal.get(anchoring)) {
-                        if(GlobalTimer.stopSpec()) break;
+                    for (long original : originals) {
+                        if(context.stopSpec()) break;
 
-                        for (Long tail : originalToTail.get(original)) {
-                            if(GlobalTimer.stopSpec()) break;
-                            Pair candidate = new Pair(anchoring, tail);
-                            if(!visited.contains(candidate) && !trivialCheck(rule, anchoring, tail)) {
-                                visited.add(new Pair(anchoring, tail));
+                        for (long tail : originalToTail.get(original)) {
+                            if(context.stopSpec()) break;
+                            if(!visited.contains(tail) && !trivialCheck(rule, anchoring, tail)) {
+                                visited.add(tail);
+                                Pair candidate = new Pair(anchoring, tail);
                                 candidate.subName = headName;
-                                candidate.objName = (String) graph.getNodeById(tail).getProperty(Settings.NEO4J_IDENTIFIER);
+                                candidate.objName = graph.nodeName(tail);
                                 Rule BAR = new InstantiatedRule(rule, candidate);
-                                if (evaluateRule(BAR, anchoringToOriginal.get(anchoring), validOriginals.get(anchoring), tailToOriginal.get(tail))) {
+                                if (evaluateRule(BAR, originals, anchoringValidOriginals, tailToOriginal.get(tail))) {
                                     valid = true;
                                     context.addTopRules(BAR);
                                     context.updateTotalInsRules();
@@ -709,25 +745,25 @@ public class GenSpec extends Engine {
             }
         }
 
-        private boolean evalClosedRule(Rule rule, CountedSet<Pair> bodyGroundings, Set<Pair> groundTruth, Set<Pair> validPair) {
+        private boolean evalClosedRule(Rule rule, LongPairSet bodyGroundings, LongPairSet groundTruth, LongPairSet validPair) {
             double totalPrediction = 0, correctPrediction = 0, pcaTotalPrediction = 0
                     , validTotalPredictions = 0, validPredictions = 0;
 
-            Set<Long> subs = new HashSet<>();
-            for (Pair pair : groundTruth)
-                subs.add(pair.subId);
+            LongSet subs = new LongSet(groundTruth.size());
+            for (int i = 0; i < groundTruth.size(); i++)
+                subs.add(groundTruth.sub(i));
 
-            for (Pair grounding : bodyGroundings) {
-                long sub = rule.fromSubject ? grounding.subId : grounding.objId;
+            for (int i = 0; i < bodyGroundings.size(); i++) {
+                long sub = rule.fromSubject ? bodyGroundings.sub(i) : bodyGroundings.obj(i);
+                long obj = rule.fromSubject ? bodyGroundings.obj(i) : bodyGroundings.sub(i);
                 if(subs.contains(sub))
                     pcaTotalPrediction++;
 
-                Pair prediction = rule.fromSubject ? grounding : new Pair(grounding.objId, grounding.subId);
-                if(groundTruth.contains(prediction))
+                if(groundTruth.contains(sub, obj))
                     correctPrediction++;
                 else {
                     validTotalPredictions++;
-                    if(validPair.contains(prediction))
+                    if(validPair.contains(sub, obj))
                         validPredictions++;
                 }
 
@@ -740,16 +776,16 @@ public class GenSpec extends Engine {
             return qualityCheck(rule);
         }
 
-        private boolean evaluateRule(Rule rule, Collection<Long> originals, Collection<Long> validOriginals, Collection<Long> groundingOriginals) {
-            int totalPrediction = 0, support = 0, groundTruth = originals.size()
+        private boolean evaluateRule(Rule rule, long[] originals, long[] validOriginals, long[] groundingOriginals) {
+            int totalPrediction = 0, support = 0, groundTruth = originals.length
                     , validTotalPredictions = 0, validPredictions = 0;
-            for (Long groundingOriginal : groundingOriginals) {
+            for (long groundingOriginal : groundingOriginals) {
                 totalPrediction++;
-                if(originals.contains(groundingOriginal))
+                if(LongMultimap.contains(originals, groundingOriginal))
                     support++;
                 else {
                     validTotalPredictions++;
-                    if(validOriginals.contains(groundingOriginal))
+                    if(LongMultimap.contains(validOriginals, groundingOriginal))
                         validPredictions++;
                 }
             }
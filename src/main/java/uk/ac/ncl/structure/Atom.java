@@ -1,16 +1,28 @@
 package uk.ac.ncl.structure;
 
-import uk.ac.ncl.Settings;
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.RelationshipType;
 
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * A rule is composed of head and body atoms. Each atom has predicate and terms.
  * A term can be a variable or a constant.
+ * <p>
+ * Predicates are interned to ids shared by all atoms. Atoms are compared on their predicate
+ * id and terms, and cache their hash, so rule sets do not build strings. Terms should be
+ * changed through the setters, which drop the cached hash.
  */
 public class Atom {
+    private final static Map<String, Integer> PREDICATE_IDS = new ConcurrentHashMap<>();
+    private final static Map<String, RelationshipType> TYPES = new ConcurrentHashMap<>();
+    private final static AtomicInteger PREDICATES = new AtomicInteger(1);
+
     public RelationshipType type;
     public Direction direction;
     public String predicate;
@@ -18,11 +30,13 @@ public class Atom {
     public long subjectId;
     public String object;
     public long objectId;
+    private int predicateId;
+    private int hash;
 
     public Atom() {}
 
     public Atom(String line, boolean head) {
-        predicate = line.split("\\(")[0];
+        setPredicate(line.split("\\(")[0]);
         String[] words = line.split("\\(")[1].split(",");
         String start = words[0];
         String end = words[1].replace(")", "");
@@ -44,6 +58,8 @@ public class Atom {
 
     public Atom(Atom base) {
         predicate = base.predicate;
+        predicateId = base.predicateId;
+        hash = base.hash;
         subject = base.subject;
         subjectId = base.subjectId;
         objectId = base.objectId;
@@ -56,8 +72,8 @@ public class Atom {
      * Init head atom with info provided by instance.
      */
     public Atom(Pair pair) {
+        setPredicate(pair.type.name());
         type = pair.type;
-        predicate = pair.type.name();
         subject = pair.subName;
         subjectId = pair.subId;
         object = pair.objName;
@@ -66,26 +82,46 @@ public class Atom {
     }
 
     /**
-     * This Atom structure always ensures that the subject
+     * Body atom of a relationship walked from {@code source}. Only node ids are read, as
+     * the names of a path are replaced by variables when it is abstracted into a template.
      */
     public Atom(Node source, Relationship relationship) {
-        boolean inverse = source.equals(relationship.getEndNode());
-        type = relationship.getType();
-        predicate = relationship.getType().name();
-        if ( inverse ) {
-            direction = Direction.INCOMING;
-            subject = (String) relationship.getEndNode().getProperty(Settings.NEO4J_IDENTIFIER);
-            object = (String) relationship.getStartNode().getProperty(Settings.NEO4J_IDENTIFIER);
-            subjectId = relationship.getEndNodeId();
-            objectId = relationship.getStartNodeId();
-        }
-        else  {
-            direction = Direction.OUTGOING;
-            subject = (String) relationship.getStartNode().getProperty(Settings.NEO4J_IDENTIFIER);
-            object = (String) relationship.getEndNode().getProperty(Settings.NEO4J_IDENTIFIER);
-            subjectId = relationship.getStartNodeId();
-            objectId = relationship.getEndNodeId();
-        }
+        this(source.getId(), relationship.getStartNodeId(), relationship.getEndNodeId(), relationship.getType().name());
+    }
+
+    /**
+     * Body atom of a relationship walked from {@code sourceId}, given by node ids only.
+     * Names are left to the rule, which assigns variables to its atoms.
+     */
+    public Atom(long sourceId, long startId, long endId, String predicate) {
+        boolean inverse = sourceId == endId;
+        setPredicate(predicate);
+        direction = inverse ? Direction.INCOMING : Direction.OUTGOING;
+        subjectId = inverse ? endId : startId;
+        objectId = inverse ? startId : endId;
+    }
+
+    /**
+     * @return id of the predicate, equal for all atoms of the predicate.
+     */
+    public static int predicateId(String predicate) {
+        return PREDICATE_IDS.computeIfAbsent(predicate, k -> PREDICATES.getAndIncrement());
+    }
+
+    public void setPredicate(String predicate) {
+        this.predicate = predicate;
+        predicateId = predicateId(predicate);
+        type = TYPES.computeIfAbsent(predicate, RelationshipType::withName);
+        hash = 0;
+    }
+
+    public int getPredicateId() {
+        return predicateId;
+    }
+
+    public void setDirection(Direction direction) {
+        this.direction = direction;
+        hash = 0;
     }
 
     public String getSubject() {
@@ -94,6 +130,7 @@ public class Atom {
 
     public void setSubject(String subject) {
         this.subject = subject;
+        hash = 0;
     }
 
     public String getObject() {
@@ -102,6 +139,7 @@ public class Atom {
 
     public void setObject(String object) {
         this.object = object;
+        hash = 0;
     }
 
     public long getSubjectId() {
@@ -143,16 +181,35 @@ public class Atom {
             return predicate + "(" + subject + "," + object + "," + 0 + ")";
     }
 
+    /**
+     * @return the first term as printed, which is the object of an inverse atom.
+     */
+    private String first() {
+        return isInverse() ? object : subject;
+    }
+
+    private String second() {
+        return isInverse() ? subject : object;
+    }
+
+    /**
+     * Equal atoms have equal strings, as the terms are compared in printed order.
+     */
     @Override
     public int hashCode() {
-        return this.toString().hashCode();
+        if(hash == 0) {
+            int h = 31 * (31 * predicateId + Objects.hashCode(first())) + Objects.hashCode(second());
+            hash = h == 0 ? 1 : h;
+        }
+        return hash;
     }
 
     @Override
     public boolean equals(Object obj) {
         if ( obj instanceof Atom) {
             Atom right = (Atom) obj;
-            return this.toString().equals(right.toString());
+            return predicateId == right.predicateId && hashCode() == right.hashCode()
+                    && Objects.equals(first(), right.first()) && Objects.equals(second(), right.second());
         }
         return false;
     }
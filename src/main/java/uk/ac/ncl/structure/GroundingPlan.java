@@ -0,0 +1,40 @@
+package uk.ac.ncl.structure;
+
+/**
+ * Where grounding of a rule body starts. Rules are normally grounded from every edge of
+ * the first body atom, but an anchored rule can start from far fewer nodes: from its tail
+ * constant, walking the body from the last atom back to the first, or from a known set
+ * of candidate start nodes. The plan compares the number of edges each start has to
+ * expand in its first step and picks the cheapest.
+ */
+public enum GroundingPlan {
+    /**
+     * Scan all edges of the first body atom.
+     */
+    SCAN,
+    /**
+     * Start at the tail constant and walk the body in reverse.
+     */
+    FROM_TAIL,
+    /**
+     * Start at each candidate node and walk the body forward.
+     */
+    FROM_CANDIDATES;
+
+    /**
+     * @param scanCost number of edges of the first body atom.
+     * @param tailCost edges of the last body atom at the tail constant, or -1 if the tail is not anchored.
+     * @param candidateCost edges of the first body atom at the candidate start nodes, or -1 if there are none.
+     */
+    public static GroundingPlan choose(long scanCost, long tailCost, long candidateCost) {
+        GroundingPlan plan = SCAN;
+        long cost = scanCost;
+        if(tailCost != -1 && tailCost < cost) {
+            plan = FROM_TAIL;
+            cost = tailCost;
+        }
+        if(candidateCost != -1 && candidateCost < cost)
+            plan = FROM_CANDIDATES;
+        return plan;
+    }
+}
@@ -0,0 +1,110 @@
+package uk.ac.ncl.structure;
+
+import java.util.Arrays;
+
+/**
+ * Preallocated path stack for DFS rule grounding. Each worker thread owns one
+ * stack, obtained by {@link #local()}, and grounding pushes and pops nodes in
+ * place instead of copying paths. Node uniqueness along the path is tracked by a
+ * small open-addressing set of node ids, and completed groundings are emitted as
+ * (start, end) ids into {@link #groundings}.
+ */
+public class GroundingStack {
+    private static final ThreadLocal<GroundingStack> local = ThreadLocal.withInitial(GroundingStack::new);
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] ids = new long[8];
+    private int size = 0;
+
+    private long[] table = new long[16];
+    private int mask = 15;
+
+    public final LongPairBuffer groundings = new LongPairBuffer();
+
+    /**
+     * Creates a stack not bound to the current thread, for tasks that can interleave on one worker.
+     */
+    public GroundingStack() {
+        Arrays.fill(table, EMPTY);
+    }
+
+    public static GroundingStack local() {
+        return local.get();
+    }
+
+    /**
+     * Empties the stack and the grounding buffer, and makes room for paths of
+     * up to {@code length} edges.
+     */
+    public GroundingStack reset(int length) {
+        while(size > 0) pop();
+        groundings.clear();
+        if(ids.length < length + 1) {
+            ids = new long[length + 1];
+        }
+        if(table.length < (length + 1) * 2) {
+            table = new long[Integer.highestOneBit((length + 1) * 2) << 1];
+            mask = table.length - 1;
+            Arrays.fill(table, EMPTY);
+        }
+        return this;
+    }
+
+    public void push(long id) {
+        ids[size] = id;
+        size++;
+        int i = slot(id);
+        while(table[i] != EMPTY) i = (i + 1) & mask;
+        table[i] = id;
+    }
+
+    public void pop() {
+        size--;
+        remove(ids[size]);
+    }
+
+    public boolean contains(long id) {
+        int i = slot(id);
+        while(table[i] != EMPTY) {
+            if(table[i] == id) return true;
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * @return number of edges on the path.
+     */
+    public int length() {
+        return size - 1;
+    }
+
+    public long startId() {
+        return ids[0];
+    }
+
+    public long endId() {
+        return ids[size - 1];
+    }
+
+    private int slot(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void remove(long id) {
+        int i = slot(id);
+        while(table[i] != id) i = (i + 1) & mask;
+        // Backward-shift deletion keeps probe sequences intact without tombstones.
+        int j = i;
+        while(true) {
+            j = (j + 1) & mask;
+            if(table[j] == EMPTY) break;
+            int k = slot(table[j]);
+            if(i <= j ? (i < k && k <= j) : (i < k || k <= j)) continue;
+            table[i] = table[j];
+            i = j;
+        }
+        table[i] = EMPTY;
+    }
+}
@@ -7,6 +7,7 @@ public class InstantiatedRule extends Rule {
     public InstantiatedRule(Rule base, String headAnchoring, long id) {
         super(base.copyHead(), base.copyBody());
         this.type = 0;
+        stats.functional = base.stats.functional;
         if ( fromSubject ) {
             head.setObject(headAnchoring);
             head.setObjectId(id);
@@ -20,6 +21,7 @@ public class InstantiatedRule extends Rule {
     public InstantiatedRule(Rule base, Pair candidate) {
         super(base.copyHead(), base.copyBody());
         this.type = 2;
+        stats.functional = base.stats.functional;
         if ( fromSubject ) {
             head.setObject(candidate.subName);
             head.setObjectId(candidate.subId);
@@ -32,13 +34,16 @@ public class InstantiatedRule extends Rule {
         bodyAtoms.get(bodyAtoms.size() - 1).setObjectId(candidate.objId);
     }
 
+    @Override
+    String header() {
+        if(type == 0) return "HAR\t";
+        else if(type == 1) return "TAR\t";
+        else return "BAR\t";
+    }
+
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder();
-        if(type == 0) sb.append("HAR\t");
-        else if(type == 1) sb.append("TAR\t");
-        else sb.append("BAR\t");
-        return sb.append(super.toString()).toString();
+        return header() + super.toString();
     }
 
     public long getTailAnchoring() {
@@ -0,0 +1,147 @@
+package uk.ac.ncl.structure;
+
+import java.util.Arrays;
+
+/**
+ * Primitive long to long[] multimap with set semantics on values. Values are
+ * collected with {@link #put(long, long)} and {@link #freeze()} then sorts and
+ * deduplicates them, after which value arrays are returned directly and
+ * membership is a binary search. Keys are iterated by index in insertion order.
+ */
+public class LongMultimap {
+    public static final long[] EMPTY = new long[0];
+
+    private long[] keys;
+    private long[][] values;
+    private int[] counts;
+    private int size = 0;
+    private int[] table;
+    private int mask;
+    private boolean frozen = false;
+
+    public LongMultimap() {
+        this(16);
+    }
+
+    public LongMultimap(int expectedKeys) {
+        int capacity = LongSet.tableCapacity(expectedKeys);
+        table = new int[capacity];
+        mask = capacity - 1;
+        keys = new long[Math.max(4, expectedKeys)];
+        values = new long[keys.length][];
+        counts = new int[keys.length];
+    }
+
+    public void put(long key, long value) {
+        if(frozen) throw new IllegalStateException("Multimap is frozen.");
+        int i = LongSet.hash(key) & mask;
+        int index = -1;
+        while(table[i] != 0) {
+            if(keys[table[i] - 1] == key) {
+                index = table[i] - 1;
+                break;
+            }
+            i = (i + 1) & mask;
+        }
+        if(index == -1) {
+            if(size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+            index = size++;
+            keys[index] = key;
+            values[index] = new long[2];
+            table[i] = size;
+            if(size * 2 > table.length) rehash();
+        }
+        long[] current = values[index];
+        if(counts[index] == current.length)
+            values[index] = current = Arrays.copyOf(current, current.length * 2);
+        current[counts[index]++] = value;
+    }
+
+    /**
+     * Sorts and deduplicates the values of every key. The multimap is read-only afterwards.
+     */
+    public LongMultimap freeze() {
+        if(frozen) return this;
+        for (int k = 0; k < size; k++) {
+            long[] current = values[k];
+            Arrays.sort(current, 0, counts[k]);
+            int distinct = 0;
+            for (int i = 0; i < counts[k]; i++) {
+                if(i == 0 || current[i] != current[distinct - 1])
+                    current[distinct++] = current[i];
+            }
+            values[k] = distinct == current.length ? current : Arrays.copyOf(current, distinct);
+            counts[k] = distinct;
+        }
+        frozen = true;
+        return this;
+    }
+
+    public int keyCount() {
+        return size;
+    }
+
+    public long key(int index) {
+        return keys[index];
+    }
+
+    /**
+     * @return the sorted values of the key at {@code index}.
+     */
+    public long[] values(int index) {
+        checkFrozen();
+        return values[index];
+    }
+
+    /**
+     * @return the sorted values of {@code key}, or {@link #EMPTY} if absent.
+     */
+    public long[] get(long key) {
+        checkFrozen();
+        int index = indexOf(key);
+        return index == -1 ? EMPTY : values[index];
+    }
+
+    public boolean containsKey(long key) {
+        return indexOf(key) != -1;
+    }
+
+    public boolean contains(long key, long value) {
+        return contains(get(key), value);
+    }
+
+    public long[] keys() {
+        return Arrays.copyOf(keys, size);
+    }
+
+    public static boolean contains(long[] sortedValues, long value) {
+        return Arrays.binarySearch(sortedValues, value) >= 0;
+    }
+
+    private int indexOf(long key) {
+        int i = LongSet.hash(key) & mask;
+        while(table[i] != 0) {
+            if(keys[table[i] - 1] == key) return table[i] - 1;
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void checkFrozen() {
+        if(!frozen) throw new IllegalStateException("Multimap must be frozen before reading values.");
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        mask = table.length - 1;
+        for (int e = 0; e < size; e++) {
+            int i = LongSet.hash(keys[e]) & mask;
+            while(table[i] != 0) i = (i + 1) & mask;
+            table[i] = e + 1;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package uk.ac.ncl.structure;
+
+import java.util.Arrays;
+
+/**
+ * Growable buffer of primitive (sub, obj) pairs. Clearing keeps the backing
+ * array so a buffer can be reused across rules without reallocating.
+ */
+public class LongPairBuffer {
+    private long[] data;
+    private int size = 0;
+
+    public LongPairBuffer() {
+        this(64);
+    }
+
+    public LongPairBuffer(int capacity) {
+        data = new long[Math.max(2, capacity * 2)];
+    }
+
+    public void add(long sub, long obj) {
+        if(size * 2 == data.length)
+            data = Arrays.copyOf(data, data.length * 2);
+        data[size * 2] = sub;
+        data[size * 2 + 1] = obj;
+        size++;
+    }
+
+    public long sub(int i) {
+        return data[i * 2];
+    }
+
+    public long obj(int i) {
+        return data[i * 2 + 1];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}
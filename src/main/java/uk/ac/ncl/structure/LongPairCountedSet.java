@@ -0,0 +1,63 @@
+package uk.ac.ncl.structure;
+
+import java.util.Arrays;
+
+/**
+ * Primitive counterpart of {@code CountedSet<Pair>}: a set of (sub, obj) pairs
+ * that also counts how many times each pair was added.
+ */
+public class LongPairCountedSet extends LongPairSet {
+    private int[] counts;
+
+    public LongPairCountedSet() {
+        this(16);
+    }
+
+    public LongPairCountedSet(int expected) {
+        super(expected);
+        counts = new int[subs.length];
+    }
+
+    /**
+     * @return the count of the pair after adding it.
+     */
+    public int increment(long sub, long obj) {
+        int index = insert(sub, obj);
+        if(index < 0) return ++counts[-index - 1];
+        counts[index] = 1;
+        return 1;
+    }
+
+    /**
+     * @return the count of the pair after adding it {@code times} times.
+     */
+    public int increment(long sub, long obj, int times) {
+        int index = insert(sub, obj);
+        if(index < 0) return counts[-index - 1] += times;
+        counts[index] = times;
+        return times;
+    }
+
+    @Override
+    public boolean add(long sub, long obj) {
+        return increment(sub, obj) == 1;
+    }
+
+    /**
+     * @return the count of the pair, or -1 if absent.
+     */
+    public int get(long sub, long obj) {
+        int index = indexOf(sub, obj);
+        return index == -1 ? -1 : counts[index];
+    }
+
+    public int count(int index) {
+        return counts[index];
+    }
+
+    @Override
+    protected void grow(int capacity) {
+        super.grow(capacity);
+        counts = Arrays.copyOf(counts, capacity);
+    }
+}
@@ -0,0 +1,120 @@
+package uk.ac.ncl.structure;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Open-addressing hash set of primitive (sub, obj) pairs, used in place of
+ * {@code Set<Pair>} where only ids matter. Pairs are kept densely in insertion
+ * order and can be iterated by index with {@link #sub(int)} and {@link #obj(int)}.
+ */
+public class LongPairSet {
+    protected long[] subs;
+    protected long[] objs;
+    protected int size = 0;
+    private int[] table;
+    private int mask;
+
+    public LongPairSet() {
+        this(16);
+    }
+
+    public LongPairSet(int expected) {
+        int capacity = LongSet.tableCapacity(expected);
+        table = new int[capacity];
+        mask = capacity - 1;
+        subs = new long[Math.max(4, expected)];
+        objs = new long[Math.max(4, expected)];
+    }
+
+    public LongPairSet(Collection<Pair> pairs) {
+        this(pairs.size());
+        for (Pair pair : pairs)
+            add(pair.subId, pair.objId);
+    }
+
+    public boolean add(long sub, long obj) {
+        return insert(sub, obj) >= 0;
+    }
+
+    public boolean contains(long sub, long obj) {
+        return indexOf(sub, obj) != -1;
+    }
+
+    public boolean contains(Pair pair) {
+        return indexOf(pair.subId, pair.objId) != -1;
+    }
+
+    /**
+     * @return the insertion index of the pair, or -1 if absent.
+     */
+    public int indexOf(long sub, long obj) {
+        int i = hash(sub, obj) & mask;
+        while(table[i] != 0) {
+            int e = table[i] - 1;
+            if(subs[e] == sub && objs[e] == obj) return e;
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    public long sub(int index) {
+        return subs[index];
+    }
+
+    public long obj(int index) {
+        return objs[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        if(size == 0) return;
+        Arrays.fill(table, 0);
+        size = 0;
+    }
+
+    /**
+     * Adds the pair if absent.
+     * @return the index of a newly added pair, or {@code -(index + 1)} if it was already present.
+     */
+    protected int insert(long sub, long obj) {
+        int i = hash(sub, obj) & mask;
+        while(table[i] != 0) {
+            int e = table[i] - 1;
+            if(subs[e] == sub && objs[e] == obj) return -(e + 1);
+            i = (i + 1) & mask;
+        }
+        if(size == subs.length) grow(size * 2);
+        subs[size] = sub;
+        objs[size] = obj;
+        table[i] = ++size;
+        if(size * 2 > table.length) rehash();
+        return size - 1;
+    }
+
+    protected void grow(int capacity) {
+        subs = Arrays.copyOf(subs, capacity);
+        objs = Arrays.copyOf(objs, capacity);
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        mask = table.length - 1;
+        for (int e = 0; e < size; e++) {
+            int i = hash(subs[e], objs[e]) & mask;
+            while(table[i] != 0) i = (i + 1) & mask;
+            table[i] = e + 1;
+        }
+    }
+
+    private static int hash(long sub, long obj) {
+        return LongSet.hash(sub * 31 + obj);
+    }
+}
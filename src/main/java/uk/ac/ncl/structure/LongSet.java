@@ -0,0 +1,99 @@
+package uk.ac.ncl.structure;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash set of primitive longs. Elements are kept densely in
+ * insertion order, so they can be iterated by index with {@link #get(int)}. The table
+ * slot of each element is kept as well, so clearing only touches the used slots.
+ */
+public class LongSet {
+    private long[] elements;
+    private int[] slots;
+    private int size = 0;
+    private int[] table;
+    private int mask;
+
+    public LongSet() {
+        this(16);
+    }
+
+    public LongSet(int expected) {
+        int capacity = tableCapacity(expected);
+        table = new int[capacity];
+        mask = capacity - 1;
+        elements = new long[Math.max(4, expected)];
+        slots = new int[elements.length];
+    }
+
+    public boolean add(long value) {
+        int i = hash(value) & mask;
+        while(table[i] != 0) {
+            if(elements[table[i] - 1] == value) return false;
+            i = (i + 1) & mask;
+        }
+        if(size == elements.length) {
+            elements = Arrays.copyOf(elements, size * 2);
+            slots = Arrays.copyOf(slots, size * 2);
+        }
+        slots[size] = i;
+        elements[size++] = value;
+        table[i] = size;
+        if(size * 2 > table.length) rehash();
+        return true;
+    }
+
+    public boolean contains(long value) {
+        int i = hash(value) & mask;
+        while(table[i] != 0) {
+            if(elements[table[i] - 1] == value) return true;
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    public long get(int index) {
+        return elements[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long[] toArray() {
+        return Arrays.copyOf(elements, size);
+    }
+
+    /**
+     * Removes all elements but keeps the allocated capacity. Only the slots of the
+     * elements are reset, so clearing a sparse set is cheap.
+     */
+    public void clear() {
+        for (int e = 0; e < size; e++) table[slots[e]] = 0;
+        size = 0;
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        mask = table.length - 1;
+        for (int e = 0; e < size; e++) {
+            int i = hash(elements[e]) & mask;
+            while(table[i] != 0) i = (i + 1) & mask;
+            table[i] = e + 1;
+            slots[e] = i;
+        }
+    }
+
+    static int tableCapacity(int expected) {
+        return Math.max(16, Integer.highestOneBit(Math.max(1, expected) * 2 - 1) << 1);
+    }
+
+    static int hash(long value) {
+        value *= 0x9E3779B97F4A7C15L;
+        return (int) (value ^ (value >>> 32));
+    }
+}
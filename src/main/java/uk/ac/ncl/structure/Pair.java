@@ -1,18 +1,15 @@
 package uk.ac.ncl.structure;
 
 import com.google.common.collect.BiMap;
-import uk.ac.ncl.Settings;
-import org.neo4j.graphdb.GraphDatabaseService;
+import uk.ac.ncl.graph.GraphAccess;
 import org.neo4j.graphdb.Path;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.RelationshipType;
 
 import java.text.MessageFormat;
-import java.util.Comparator;
 
 public class Pair {
     public long subId, objId, relId; // Ids
-    public Double[] scores;
     public String subName, objName, typeName; //Names
     public Relationship rel;
     public RelationshipType type;
@@ -95,32 +92,16 @@ public class Pair {
         return MessageFormat.format("[{0},{1}]", String.valueOf(subId), String.valueOf(objId));
     }
 
-    public static Comparator<Pair> scoresComparator(int l) {
-        return (o1, o2) -> {
-            if(o1.scores.length > l && o2.scores.length > l) {
-                double result = o2.scores[l] - o1.scores[l];
-                if (result > 0) return 1;
-                else if (result < 0) return -1;
-                else return 0;
-            } else {
-                int result = o2.scores.length - o1.scores.length;
-                if(result > 0) return 1;
-                else if (result < 0) return -1;
-                else return 0;
-            }
-        };
-    }
-
-    public String toQueryString(GraphDatabaseService graph) {
-        return "(" + subId + "|" + graph.getNodeById(subId).getProperty(Settings.NEO4J_IDENTIFIER)
-                + ", "  + Settings.TARGET + ", "
-                + objId + "|" + graph.getNodeById(objId).getProperty(Settings.NEO4J_IDENTIFIER) + ")";
-    }
-
-    public String toVerificationString(GraphDatabaseService graph) {
-        return graph.getNodeById(subId).getProperty(Settings.NEO4J_IDENTIFIER)
-                + "\t"  + Settings.TARGET + "\t"
-                + graph.getNodeById(objId).getProperty(Settings.NEO4J_IDENTIFIER);
+    public String toQueryString(GraphAccess graph, String target) {
+        return "(" + subId + "|" + graph.nodeName(subId)
+                + ", "  + target + ", "
+                + objId + "|" + graph.nodeName(objId) + ")";
+    }
+
+    public String toVerificationString(GraphAccess graph, String target) {
+        return graph.nodeName(subId)
+                + "\t"  + target + "\t"
+                + graph.nodeName(objId);
     }
 
     public String toTripleString() {
@@ -0,0 +1,46 @@
+package uk.ac.ncl.structure;
+
+/**
+ * Tracks the {@code k} best candidates of a test query by the max quality of the rules
+ * suggesting them. Since rule qualities of candidates only grow during application, the
+ * k-th best score only grows too: once it is above the quality of every rule still to be
+ * applied, the top-k answers of the query cannot change under max aggregation.
+ */
+public class QueryTracker {
+    private final long[] candidates;
+    private final double[] scores;
+    private int size = 0;
+
+    public QueryTracker(int k) {
+        candidates = new long[k];
+        scores = new double[k];
+    }
+
+    public synchronized void update(long candidate, double score) {
+        int min = 0;
+        for (int i = 0; i < size; i++) {
+            if(candidates[i] == candidate) {
+                if(score > scores[i]) scores[i] = score;
+                return;
+            }
+            if(scores[i] < scores[min]) min = i;
+        }
+        if(size < candidates.length) {
+            candidates[size] = candidate;
+            scores[size++] = score;
+        } else if(size > 0 && score > scores[min]) {
+            candidates[min] = candidate;
+            scores[min] = score;
+        }
+    }
+
+    /**
+     * @return true if no rule of quality at most {@code bound} can change the top-k answers.
+     */
+    public synchronized boolean settled(double bound) {
+        if(size < candidates.length) return false;
+        for (int i = 0; i < size; i++)
+            if(scores[i] <= bound) return false;
+        return true;
+    }
+}
@@ -0,0 +1,281 @@
+package uk.ac.ncl.structure;
+
+import java.util.*;
+
+/**
+ * Ranks candidates by the qualities of the rules suggesting them, sorted in descending
+ * order and compared lexicographically: the best rule decides, ties go to the next best
+ * rule, and a candidate with more rules of a quality ranks above one with fewer.
+ * <p>
+ * Rules are fed in levels of descending quality. Each level refines the tie groups by
+ * partition refinement: the candidates it suggests move to the front of their group,
+ * split by how many rules of the level suggest them. Groups are contiguous slices of a
+ * single order array, so a level only costs time in the candidates it touches, and the
+ * order array is the ranking. Groups starting at or after {@code limit} are left unrefined
+ * as they cannot affect the top of the ranking, except for the group of a focus candidate
+ * whose exact rank is needed.
+ */
+public class RankingEngine<E> {
+    private final int limit;
+    private final Map<E, Integer> ids = new HashMap<>();
+    private final List<E> candidates = new ArrayList<>();
+    private E focusCandidate;
+    private int focus = -1;
+
+    private int[] order = new int[16];
+    private int[] position = new int[16];
+    private int[] group = new int[16];
+    private double[] best = new double[16];
+    private int[] count = new int[16];
+    private int size = 0;
+
+    private int[] groupStart = new int[16];
+    private int[] groupEnd = new int[16];
+    private int[] touched = new int[16];
+    private int groups = 0;
+
+    private double level;
+    private boolean levelOpen = false;
+    private int freshGroup = -1;
+    private int[] levelCandidates = new int[16];
+    private int levelSize = 0;
+
+    /**
+     * @param limit number of top positions that have to be exact.
+     */
+    public RankingEngine(int limit) {
+        this.limit = limit;
+    }
+
+    public RankingEngine() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Ranks all candidates at once from their rule qualities, in any order.
+     */
+    public static <E> RankingEngine<E> rank(Map<E, double[]> scores, int limit, E focus) {
+        RankingEngine<E> engine = new RankingEngine<>(limit);
+        List<E> keys = new ArrayList<>(scores.keySet());
+        int entries = 0;
+        for (E key : keys) entries += scores.get(key).length;
+
+        double[] levels = new double[entries];
+        int n = 0;
+        for (E key : keys)
+            for (double score : scores.get(key)) levels[n++] = score;
+        Arrays.sort(levels);
+        int distinct = 0;
+        for (int i = 0; i < n; i++)
+            if(distinct == 0 || levels[distinct - 1] != levels[i]) levels[distinct++] = levels[i];
+
+        // Bucket the entries by level, then feed the levels from the highest down.
+        int[] bucketStart = new int[distinct + 1];
+        int[] entryLevel = new int[entries];
+        int[] entryKey = new int[entries];
+        n = 0;
+        for (int k = 0; k < keys.size(); k++) {
+            for (double score : scores.get(keys.get(k))) {
+                entryLevel[n] = Arrays.binarySearch(levels, 0, distinct, score);
+                entryKey[n++] = k;
+                bucketStart[entryLevel[n - 1] + 1]++;
+            }
+        }
+        for (int i = 0; i < distinct; i++) bucketStart[i + 1] += bucketStart[i];
+        int[] fill = Arrays.copyOf(bucketStart, distinct);
+        int[] bucketed = new int[entries];
+        for (int i = 0; i < entries; i++) bucketed[fill[entryLevel[i]]++] = entryKey[i];
+
+        if(focus != null) engine.focus(focus);
+        for (int l = distinct - 1; l >= 0; l--)
+            for (int i = bucketStart[l]; i < bucketStart[l + 1]; i++)
+                engine.add(keys.get(bucketed[i]), levels[l]);
+        engine.closeLevel();
+        return engine;
+    }
+
+    /**
+     * Keeps the group of the candidate refined wherever it is ranked.
+     */
+    public void focus(E candidate) {
+        focusCandidate = candidate;
+        Integer id = ids.get(candidate);
+        focus = id == null ? -1 : id;
+    }
+
+    /**
+     * Adds a rule of the quality suggesting the candidates. Qualities must not increase
+     * between calls; consecutive rules of equal quality form one level, until the
+     * ranking is read.
+     */
+    public void add(Collection<E> suggested, double quality) {
+        for (E candidate : suggested) add(candidate, quality);
+    }
+
+    public void add(E candidate, double quality) {
+        if(levelOpen && quality != level) closeLevel();
+        level = quality;
+        levelOpen = true;
+        int id = idOf(candidate);
+        if(count[id]++ == 0) {
+            if(levelSize == levelCandidates.length)
+                levelCandidates = Arrays.copyOf(levelCandidates, levelSize * 2);
+            levelCandidates[levelSize++] = id;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(E candidate) {
+        return ids.containsKey(candidate);
+    }
+
+    /**
+     * @return the first {@code k} candidates in rank order.
+     */
+    public List<E> top(int k) {
+        closeLevel();
+        List<E> top = new ArrayList<>(Math.min(k, size));
+        for (int i = 0; i < Math.min(k, size); i++) top.add(candidates.get(order[i]));
+        return top;
+    }
+
+    /**
+     * @return 1-based rank of the candidate, or 0 if it is not ranked. Exact within the
+     * limit and for the focus candidate.
+     */
+    public int rank(E candidate) {
+        closeLevel();
+        Integer id = ids.get(candidate);
+        return id == null ? 0 : position[id] + 1;
+    }
+
+    /**
+     * @return the candidates tied with the candidate, including itself, or an empty list.
+     */
+    public List<E> tieGroup(E candidate) {
+        closeLevel();
+        Integer id = ids.get(candidate);
+        if(id == null) return new ArrayList<>();
+        int g = group[id];
+        List<E> members = new ArrayList<>(groupEnd[g] - groupStart[g]);
+        for (int i = groupStart[g]; i < groupEnd[g]; i++) members.add(candidates.get(order[i]));
+        return members;
+    }
+
+    /**
+     * @return number of candidates ranked strictly above the tie group of the candidate,
+     * or the number of candidates if it is not ranked.
+     */
+    public int rankedAbove(E candidate) {
+        closeLevel();
+        Integer id = ids.get(candidate);
+        return id == null ? size : groupStart[group[id]];
+    }
+
+    /**
+     * @return quality of the best rule suggesting the candidate.
+     */
+    public double best(E candidate) {
+        return best[ids.get(candidate)];
+    }
+
+    private int idOf(E candidate) {
+        Integer id = ids.get(candidate);
+        if(id != null) return id;
+        id = size;
+        ids.put(candidate, id);
+        candidates.add(candidate);
+        if(size == order.length) {
+            int capacity = size * 2;
+            order = Arrays.copyOf(order, capacity);
+            position = Arrays.copyOf(position, capacity);
+            group = Arrays.copyOf(group, capacity);
+            best = Arrays.copyOf(best, capacity);
+            count = Arrays.copyOf(count, capacity);
+        }
+        // Unseen candidates rank below all seen ones and start tied with each other.
+        if(freshGroup == -1) freshGroup = newGroup(size, size);
+        order[size] = id;
+        position[id] = size;
+        group[id] = freshGroup;
+        best[id] = level;
+        if(candidate.equals(focusCandidate)) focus = id;
+        groupEnd[freshGroup]++;
+        size++;
+        return id;
+    }
+
+    private int newGroup(int start, int end) {
+        if(groups == groupStart.length) {
+            int capacity = groups * 2;
+            groupStart = Arrays.copyOf(groupStart, capacity);
+            groupEnd = Arrays.copyOf(groupEnd, capacity);
+            touched = Arrays.copyOf(touched, capacity);
+        }
+        groupStart[groups] = start;
+        groupEnd[groups] = end;
+        touched[groups] = 0;
+        return groups++;
+    }
+
+    private boolean refined(int g) {
+        return groupEnd[g] - groupStart[g] > 1
+                && (groupStart[g] < limit || (focus != -1 && group[focus] == g));
+    }
+
+    private void closeLevel() {
+        if(!levelOpen) return;
+        levelOpen = false;
+        freshGroup = -1;
+
+        // Move the suggested candidates of each group to its front.
+        int[] touchedGroups = new int[levelSize];
+        int touchedCount = 0;
+        for (int i = 0; i < levelSize; i++) {
+            int id = levelCandidates[i];
+            int g = group[id];
+            if(!refined(g)) continue;
+            if(touched[g] == 0) touchedGroups[touchedCount++] = g;
+            swap(position[id], groupStart[g] + touched[g]++);
+        }
+
+        for (int t = 0; t < touchedCount; t++) {
+            int g = touchedGroups[t];
+            int start = groupStart[g], end = start + touched[g];
+            touched[g] = 0;
+
+            long[] keys = new long[end - start];
+            for (int i = start; i < end; i++)
+                keys[i - start] = ((long) (Integer.MAX_VALUE - count[order[i]]) << 32) | order[i];
+            Arrays.sort(keys);
+            for (int i = start; i < end; i++) {
+                order[i] = (int) keys[i - start];
+                position[order[i]] = i;
+            }
+
+            int runStart = start;
+            for (int i = start; i < end; i++) {
+                if(i + 1 < end && count[order[i + 1]] == count[order[i]]) continue;
+                if(runStart == start && i + 1 == groupEnd[g]) break;
+                int split = newGroup(runStart, i + 1);
+                for (int j = runStart; j <= i; j++) group[order[j]] = split;
+                runStart = i + 1;
+            }
+            if(runStart != start || end != groupEnd[g]) groupStart[g] = end;
+        }
+
+        for (int i = 0; i < levelSize; i++) count[levelCandidates[i]] = 0;
+        levelSize = 0;
+    }
+
+    private void swap(int i, int j) {
+        int a = order[i], b = order[j];
+        order[i] = b;
+        order[j] = a;
+        position[b] = i;
+        position[a] = j;
+    }
+}
@@ -76,6 +76,13 @@ public abstract class Rule {
         return result;
     }
 
+    /**
+     * @return the type prefix of the rule string, which is part of rule equality.
+     */
+    String header() {
+        return "";
+    }
+
     @Override
     public String toString() {
         String str = head + " <- ";
@@ -97,7 +104,7 @@ public abstract class Rule {
     public boolean equals(Object obj) {
         if (obj instanceof Rule) {
             Rule right = (Rule) obj;
-            return this.toString().equals(right.toString());
+            return header().equals(right.header()) && head.equals(right.head) && bodyAtoms.equals(right.bodyAtoms);
         }
         return false;
     }
@@ -185,6 +192,11 @@ public abstract class Rule {
         public double validPrecision;
         public double precision;
 
+        /**
+         * If true, the head of the rule is a functional relationship and apcaConf is pcaConf.
+         */
+        public boolean functional;
+
         @Override
         public String toString() {
             return MessageFormat.format("Support = {0}\nSC = {1}\nHC = {2}"
@@ -198,7 +210,7 @@ public abstract class Rule {
             standardConf = totalPredictions == 0 ? 0 : support / totalPredictions;
             pcaConf = totalPredictions == 0 ? 0 : support / pcaTotalPredictions;
             headCoverage = groundTruth == 0 ? 0 : support / groundTruth;
-            apcaConf = Settings.TARGET_FUNCTIONAL ? pcaConf : smoothedConf;
+            apcaConf = functional ? pcaConf : smoothedConf;
             validPrecision = validTotalPredictions == 0 ? 0 : validPredictions / validTotalPredictions;
         }
 
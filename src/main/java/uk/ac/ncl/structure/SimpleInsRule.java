@@ -1,7 +1,7 @@
 package uk.ac.ncl.structure;
 
 import uk.ac.ncl.Settings;
-import org.neo4j.graphdb.GraphDatabaseService;
+import uk.ac.ncl.graph.GraphAccess;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -12,6 +12,14 @@ public class SimpleInsRule extends Rule {
     public Template base;
     private String rep;
 
+    public SimpleInsRule(Template base, int type, long headAnchoringId, long tailAnchoringId) {
+        this.base = base;
+        this.fromSubject = base.fromSubject;
+        this.type = type;
+        this.headAnchoringId = headAnchoringId;
+        this.tailAnchoringId = tailAnchoringId;
+    }
+
     public SimpleInsRule(Template base, String line) {
         this.base = base;
         this.fromSubject = base.fromSubject;
@@ -36,7 +44,7 @@ public class SimpleInsRule extends Rule {
         }
     }
 
-    public void insRuleString(GraphDatabaseService graph) {
+    public void insRuleString(GraphAccess graph) {
         rep = type == 0 ? "HAR\t" : "BAR\t";
         Atom head = new Atom(base.head);
         List<Atom> bodyAtoms = new ArrayList<>();
@@ -44,12 +52,12 @@ public class SimpleInsRule extends Rule {
         Atom lastAtom = bodyAtoms.get(bodyAtoms.size() - 1);
 
         if(base.fromSubject)
-            head.object = (String) graph.getNodeById(headAnchoringId).getProperty(Settings.NEO4J_IDENTIFIER);
+            head.setObject(graph.nodeName(headAnchoringId));
         else
-            head.subject = (String) graph.getNodeById(headAnchoringId).getProperty(Settings.NEO4J_IDENTIFIER);
+            head.setSubject(graph.nodeName(headAnchoringId));
 
         if(type == 2) {
-            lastAtom.object = (String) graph.getNodeById(tailAnchoringId).getProperty(Settings.NEO4J_IDENTIFIER);
+            lastAtom.setObject(graph.nodeName(tailAnchoringId));
         }
 
         rep += head + " <- ";
@@ -0,0 +1,73 @@
+package uk.ac.ncl.structure;
+
+import uk.ac.ncl.graph.GraphAccess;
+import uk.ac.ncl.utils.Helpers;
+import uk.ac.ncl.utils.IO;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Examples of a target with the indexes specialization builds from them. They only depend
+ * on the target, so they are prepared for the next target while the current one runs.
+ */
+public class TargetExamples {
+    public final String target;
+    public final Set<Pair> trainPairs;
+    public final Set<Pair> validPairs;
+    public final Set<Pair> testPairs;
+    public final Set<Pair> filterSet;
+    public final boolean functional;
+
+    public final LongPairSet trainSet;
+    public final LongPairSet validSet;
+    public final LongMultimap objOriginalMap = new LongMultimap();
+    public final LongMultimap subOriginalMap = new LongMultimap();
+    public final LongMultimap validObjToSub = new LongMultimap();
+    public final LongMultimap validSubToObj = new LongMultimap();
+
+    public TargetExamples(String target, Set<Pair> trainPairs, Set<Pair> validPairs, Set<Pair> testPairs) {
+        this.target = target;
+        this.trainPairs = trainPairs;
+        this.validPairs = validPairs;
+        this.testPairs = testPairs;
+        filterSet = Helpers.combine(trainPairs, validPairs, testPairs);
+        functional = IO.isTargetFunctional(trainPairs);
+
+        for (Pair trainPair : trainPairs) {
+            objOriginalMap.put(trainPair.objId, trainPair.subId);
+            subOriginalMap.put(trainPair.subId, trainPair.objId);
+        }
+        objOriginalMap.freeze();
+        subOriginalMap.freeze();
+
+        for (Pair validPair : validPairs) {
+            validObjToSub.put(validPair.objId, validPair.subId);
+            validSubToObj.put(validPair.subId, validPair.objId);
+        }
+        validObjToSub.freeze();
+        validSubToObj.freeze();
+
+        trainSet = new LongPairSet(trainPairs);
+        validSet = new LongPairSet(validPairs);
+    }
+
+    /**
+     * Reads the examples of the target from the example files. A missing file, such as the
+     * test file when only learning, gives no examples.
+     */
+    public static TargetExamples read(GraphAccess graph, String target, File trainFile, File validFile, File testFile) {
+        GraphAccess.Session session = graph.open();
+        try {
+            return new TargetExamples(target, readPairs(graph, trainFile, target)
+                    , readPairs(graph, validFile, target), readPairs(graph, testFile, target));
+        } finally {
+            session.close();
+        }
+    }
+
+    private static Set<Pair> readPairs(GraphAccess graph, File file, String target) {
+        return file == null ? new HashSet<>() : graph.readPairs(file, target);
+    }
+}
@@ -2,21 +2,27 @@ package uk.ac.ncl.structure;
 
 import uk.ac.ncl.Settings;
 import uk.ac.ncl.core.Context;
-import uk.ac.ncl.core.GlobalTimer;
 import uk.ac.ncl.core.GraphOps;
 import uk.ac.ncl.utils.IO;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.MultimapBuilder;
-import com.google.common.collect.Sets;
-import org.neo4j.graphdb.GraphDatabaseService;
+import uk.ac.ncl.utils.RuleIndex;
+import uk.ac.ncl.graph.GraphAccess;
 
 import java.text.DecimalFormat;
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 public class Template extends Rule {
+    private final static String[] VARIABLES = {"V0", "V1", "V2", "V3", "V4", "V5", "V6", "V7", "V8", "V9"};
     public List<SimpleInsRule> insRules = new ArrayList<>();
 
+    /**
+     * Upper bound on the quality of the rules of this template and of the templates
+     * applied after it, used to stop application early.
+     */
+    public double qualityBound = Double.MAX_VALUE;
+
     public Template() {}
 
     public Template(String line) {
@@ -37,20 +43,24 @@ public class Template extends Rule {
         super( h, b );
         Atom firstAtom = bodyAtoms.get( 0 );
         Atom lastAtom = bodyAtoms.get( bodyAtoms.size() - 1 );
-        head.subject = "X";
-        head.object = "Y";
+        head.setSubject("X");
+        head.setObject("Y");
 
         int variableCount = 0;
         for(Atom atom : bodyAtoms) {
-            atom.subject = "V" + variableCount;
-            atom.object = "V" + ++variableCount;
+            atom.setSubject(variable(variableCount));
+            atom.setObject(variable(++variableCount));
         }
 
-        if ( fromSubject ) firstAtom.subject = "X";
-        else firstAtom.subject = "Y";
+        if ( fromSubject ) firstAtom.setSubject("X");
+        else firstAtom.setSubject("Y");
+
+        if ( closed && fromSubject ) lastAtom.setObject("Y");
+        else if ( closed ) lastAtom.setObject("X");
+    }
 
-        if ( closed && fromSubject ) lastAtom.object = "Y";
-        else if ( closed ) lastAtom.object = "X";
+    private static String variable(int i) {
+        return i < VARIABLES.length ? VARIABLES[i] : "V" + i;
     }
 
     @Override
@@ -63,12 +73,12 @@ public class Template extends Rule {
         return -1;
     }
 
-    public void simpleSpec(GraphDatabaseService graph, Set<Pair> groundTruth, Set<Pair> validPair
-            , Multimap<Long, Long> anchoringToOriginal, Multimap<Long, Long> validOriginals
+    public void simpleSpec(GraphAccess graph, LongPairSet groundTruth, LongPairSet validPair
+            , LongMultimap anchoringToOriginal, LongMultimap validOriginals
             , Context context) {
-        CountedSet<Pair> bodyGroundings = GraphOps.bodyGroundingCoreAPI(graph, this
-                , false, GlobalTimer::stopSpec);
-        if(GlobalTimer.stopSpec()) return;
+        LongPairCountedSet bodyGroundings = GraphOps.bodyGroundingCoreAPI(graph, this
+                , false, context::stopSpec);
+        if(context.stopSpec()) return;
 
         if(closed) {
             if(evalClosedRule(bodyGroundings, groundTruth, validPair)) {
@@ -80,38 +90,39 @@ public class Template extends Rule {
             boolean valid = false;
 
             stats.groundTruth = groundTruth.size();
-            Multimap<Long, Long> originalToTail = MultimapBuilder.hashKeys().hashSetValues().build();
-            Multimap<Long, Long> tailToOriginal = MultimapBuilder.hashKeys().hashSetValues().build();
-            for (Pair bodyGrounding : bodyGroundings) {
-                originalToTail.put(bodyGrounding.subId, bodyGrounding.objId);
-                tailToOriginal.put(bodyGrounding.objId, bodyGrounding.subId);
-            }
-            Set<Long> groundingOriginals = originalToTail.keySet();
-
-            for (Long anchoring : anchoringToOriginal.keySet()) {
-                if(GlobalTimer.stopSpec()) break;
-
-                Set<Pair> visited = new HashSet<>();
-                String headName = (String) graph.getNodeById(anchoring).getProperty(Settings.NEO4J_IDENTIFIER);
+            LongMultimap originalToTail = new LongMultimap();
+            LongMultimap tailToOriginal = new LongMultimap();
+            buildGroundingMaps(bodyGroundings, originalToTail, tailToOriginal);
+            long[] groundingOriginals = originalToTail.keys();
+            LongSet visited = new LongSet();
+
+            for (int k = 0; k < anchoringToOriginal.keyCount(); k++) {
+                if(context.stopSpec()) break;
+
+                long anchoring = anchoringToOriginal.key(k);
+                long[] originals = anchoringToOriginal.values(k);
+                long[] anchoringValidOriginals = validOriginals.get(anchoring);
+                visited.clear();
+                String headName = graph.nodeName(anchoring);
                 Rule HAR = new InstantiatedRule(this, headName, anchoring);
-                if(evaluateRule(HAR, anchoringToOriginal.get(anchoring), validOriginals.get(anchoring), groundingOriginals)) {
+                if(evaluateRule(HAR, originals, anchoringValidOriginals, groundingOriginals)) {
                     valid = true;
                     context.addTopRules(HAR);
                     context.updateTotalInsRules();
                 }
 
-                for (Long original : anchoringToOriginal.get(anchoring)) {
-                    if(GlobalTimer.stopSpec()) break;
+                for (long original : originals) {
+                    if(context.stopSpec()) break;
 
-                    for (Long tail : originalToTail.get(original)) {
-                        if(GlobalTimer.stopSpec()) break;
-                        Pair candidate = new Pair(anchoring, tail);
-                        if(!visited.contains(candidate) && !trivialCheck(anchoring, tail)) {
-                            visited.add(new Pair(anchoring, tail));
+                    for (long tail : originalToTail.get(original)) {
+                        if(context.stopSpec()) break;
+                        if(!visited.contains(tail) && !trivialCheck(anchoring, tail)) {
+                            visited.add(tail);
+                            Pair candidate = new Pair(anchoring, tail);
                             candidate.subName = headName;
-                            candidate.objName = (String) graph.getNodeById(tail).getProperty(Settings.NEO4J_IDENTIFIER);
+                            candidate.objName = graph.nodeName(tail);
                             Rule BAR = new InstantiatedRule(this, candidate);
-                            if (evaluateRule(BAR, anchoringToOriginal.get(anchoring), validOriginals.get(anchoring), tailToOriginal.get(tail))) {
+                            if (evaluateRule(BAR, originals, anchoringValidOriginals, tailToOriginal.get(tail))) {
                                 valid = true;
                                 context.addTopRules(BAR);
                                 context.updateTotalInsRules();
@@ -127,28 +138,20 @@ public class Template extends Rule {
         }
     }
 
-    public void specialization(GraphDatabaseService graph, Set<Pair> groundTruth, Set<Pair> validPair
-            , Multimap<Long, Long> anchoringToOriginal, Multimap<Long, Long> validOriginals
+    public void specialization(GraphAccess graph, LongPairSet groundTruth, LongPairSet validPair
+            , LongMultimap anchoringToOriginal, LongMultimap validOriginals
             , Context context
             , BlockingQueue<String> ruleFileContents
-            , BlockingQueue<String> indexFileContents) throws InterruptedException {
+            , RuleIndex.Writer indexWriter) throws InterruptedException {
         DecimalFormat f = new DecimalFormat("####.#####");
-        List<String> contents = new ArrayList<>();
-        CountedSet<Pair> bodyGroundings = GraphOps.bodyGroundingCoreAPI(graph, this
-                , false, GlobalTimer::stopSpec);
-        if(context.checkInsRuleCap() || GlobalTimer.stopSpec()) return;
+        LongPairCountedSet bodyGroundings = GraphOps.bodyGroundingCoreAPI(graph, this
+                , false, context::stopSpec);
+        if(context.checkInsRuleCap() || context.stopSpec()) return;
 
         if(closed) {
              if(evalClosedRule(bodyGroundings, groundTruth, validPair)) {
                  context.addSpecializedRules(this);
-                 indexFileContents.put("ABS: " + context.getIndex(this) + "\t"
-                         + this.toRuleIndexString() + "\t"
-                         + f.format(getStandardConf()) + "\t"
-                         + f.format(getSmoothedConf()) + "\t"
-                         + f.format(getPcaConf()) + "\t"
-                         + f.format(getApcaConf()) + "\t"
-                         + f.format(getHeadCoverage()) + "\t"
-                         + f.format(getValidPrecision()) + "\n");
+                 indexWriter.write(context.getIndex(this), this, null);
                  ruleFileContents.put(this.toString() + "\t"
                          + f.format(getQuality()) + "\t"
                          + f.format(getHeadCoverage()) + "\t"
@@ -159,33 +162,131 @@ public class Template extends Rule {
         }
         else {
             stats.groundTruth = groundTruth.size();
-            Multimap<Long, Long> originalToTail = MultimapBuilder.hashKeys().hashSetValues().build();
-            Multimap<Long, Long> tailToOriginal = MultimapBuilder.hashKeys().hashSetValues().build();
-            for (Pair bodyGrounding : bodyGroundings) {
-                originalToTail.put(bodyGrounding.subId, bodyGrounding.objId);
-                tailToOriginal.put(bodyGrounding.objId, bodyGrounding.subId);
+            LongMultimap originalToTail = new LongMultimap();
+            LongMultimap tailToOriginal = new LongMultimap();
+            buildGroundingMaps(bodyGroundings, originalToTail, tailToOriginal);
+
+            AnchoringTask task = new AnchoringTask(graph, anchoringToOriginal, validOriginals
+                    , originalToTail, tailToOriginal, context, ruleFileContents
+                    , 0, anchoringToOriginal.keyCount(), grainSize(anchoringToOriginal.keyCount()));
+            AnchoringResult result = ForkJoinTask.inForkJoinPool() ? task.invoke() : task.compute();
+
+            stats.support += result.support;
+            stats.totalPredictions += result.totalPredictions;
+            stats.pcaTotalPredictions += result.pcaTotalPredictions;
+            stats.compute();
+            if(!result.insRules.isEmpty()) {
+                context.addSpecializedRules(this);
+                indexWriter.write(context.getIndex(this), this, result.insRules);
             }
-            Set<Long> groundingOriginals = originalToTail.keySet();
+        }
+    }
 
-            for (Long anchoring : anchoringToOriginal.keySet()) {
-                if(context.checkInsRuleCap() || GlobalTimer.stopSpec()) break;
+    /**
+     * Number of anchorings below which a range is specialized without further splitting.
+     * Ranges are kept small enough for idle workers to steal from a single hot template.
+     */
+    private static int grainSize(int anchorings) {
+        if(!ForkJoinTask.inForkJoinPool()) return Math.max(1, anchorings);
+        return Math.max(1, anchorings / (ForkJoinTask.getPool().getParallelism() * 16));
+    }
 
-                Set<Pair> visited = new HashSet<>();
-                String headName = (String) graph.getNodeById(anchoring).getProperty(Settings.NEO4J_IDENTIFIER);
-                Rule HAR = new InstantiatedRule(this, headName, anchoring);
-                if(evaluateRule(HAR, anchoringToOriginal.get(anchoring), validOriginals.get(anchoring), groundingOriginals)) {
-                    stats.support += HAR.stats.support;
-                    stats.totalPredictions += HAR.stats.totalPredictions;
-                    stats.pcaTotalPredictions += HAR.stats.pcaTotalPredictions;
+    /**
+     * Instantiated rules and stats of the head anchored rules found in a range of anchorings.
+     */
+    private static class AnchoringResult {
+        double support = 0;
+        double totalPredictions = 0;
+        double pcaTotalPredictions = 0;
+        RuleIndex.Block insRules = new RuleIndex.Block();
+
+        AnchoringResult merge(AnchoringResult other) {
+            support += other.support;
+            totalPredictions += other.totalPredictions;
+            pcaTotalPredictions += other.pcaTotalPredictions;
+            insRules.addAll(other.insRules);
+            return this;
+        }
+    }
+
+    /**
+     * Specializes the anchorings {@code [from, to)} of this template, splitting the range
+     * in halves while it is larger than the grain. Results are merged in anchoring order,
+     * so the index file content is the same as a serial run.
+     */
+    private class AnchoringTask extends RecursiveTask<AnchoringResult> {
+        private static final long serialVersionUID = 1L;
+        final GraphAccess graph;
+        final LongMultimap anchoringToOriginal;
+        final LongMultimap validOriginals;
+        final LongMultimap originalToTail;
+        final LongMultimap tailToOriginal;
+        final Context context;
+        final BlockingQueue<String> ruleFileContents;
+        final int from;
+        final int to;
+        final int grain;
+
+        AnchoringTask(GraphAccess graph, LongMultimap anchoringToOriginal, LongMultimap validOriginals
+                , LongMultimap originalToTail, LongMultimap tailToOriginal
+                , Context context, BlockingQueue<String> ruleFileContents
+                , int from, int to, int grain) {
+            this.graph = graph;
+            this.anchoringToOriginal = anchoringToOriginal;
+            this.validOriginals = validOriginals;
+            this.originalToTail = originalToTail;
+            this.tailToOriginal = tailToOriginal;
+            this.context = context;
+            this.ruleFileContents = ruleFileContents;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        AnchoringTask subTask(int from, int to) {
+            return new AnchoringTask(graph, anchoringToOriginal, validOriginals, originalToTail, tailToOriginal
+                    , context, ruleFileContents, from, to, grain);
+        }
+
+        @Override
+        protected AnchoringResult compute() {
+            if(to - from > grain) {
+                int mid = (from + to) >>> 1;
+                AnchoringTask right = subTask(mid, to);
+                right.fork();
+                AnchoringResult result = subTask(from, mid).compute();
+                return result.merge(right.join());
+            }
+            try {
+                return specialize();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                System.exit(-1);
+                return null;
+            }
+        }
+
+        private AnchoringResult specialize() throws InterruptedException {
+            DecimalFormat f = new DecimalFormat("####.#####");
+            AnchoringResult result = new AnchoringResult();
+            long[] groundingOriginals = originalToTail.keys();
+            LongSet visited = new LongSet();
+
+            for (int k = from; k < to; k++) {
+                if(context.checkInsRuleCap() || context.stopSpec()) break;
+
+                long anchoring = anchoringToOriginal.key(k);
+                long[] originals = anchoringToOriginal.values(k);
+                long[] anchoringValidOriginals = validOriginals.get(anchoring);
+                visited.clear();
+                String headName = graph.nodeName(anchoring);
+                Rule HAR = new InstantiatedRule(Template.this, headName, anchoring);
+                if(evaluateRule(HAR, originals, anchoringValidOriginals, groundingOriginals)) {
+                    result.support += HAR.stats.support;
+                    result.totalPredictions += HAR.stats.totalPredictions;
+                    result.pcaTotalPredictions += HAR.stats.pcaTotalPredictions;
                     context.updateTotalInsRules();
-                    contents.add("0" + ","
-                            + HAR.getHeadAnchoring() + ","
-                            + f.format(HAR.getStandardConf()) + ","
-                            + f.format(HAR.getSmoothedConf()) + ","
-                            + f.format(HAR.getPcaConf()) + ","
-                            + f.format(HAR.getApcaConf()) + ","
-                            + f.format(HAR.getHeadCoverage()) + ","
-                            + f.format(HAR.getValidPrecision()));
+                    result.insRules.add(HAR);
                     ruleFileContents.put(HAR.toString() + "\t"
                             + f.format(HAR.getQuality()) + "\t"
                             + f.format(HAR.getHeadCoverage()) + "\t"
@@ -194,28 +295,20 @@ public class Template extends Rule {
                             + (int) HAR.stats.totalPredictions);
                 }
 
-                for (Long original : anchoringToOriginal.get(anchoring)) {
-                    if(context.checkInsRuleCap() || GlobalTimer.stopSpec()) break;
+                for (long original : originals) {
+                    if(context.checkInsRuleCap() || context.stopSpec()) break;
 
-                    for (Long tail : originalToTail.get(original)) {
-                        if(context.checkInsRuleCap() || GlobalTimer.stopSpec()) break;
-                        Pair candidate = new Pair(anchoring, tail);
-                        if(!visited.contains(candidate) && !trivialCheck(anchoring, tail)) {
-                            visited.add(new Pair(anchoring, tail));
+                    for (long tail : originalToTail.get(original)) {
+                        if(context.checkInsRuleCap() || context.stopSpec()) break;
+                        if(!visited.contains(tail) && !trivialCheck(anchoring, tail)) {
+                            visited.add(tail);
+                            Pair candidate = new Pair(anchoring, tail);
                             candidate.subName = headName;
-                            candidate.objName = (String) graph.getNodeById(tail).getProperty(Settings.NEO4J_IDENTIFIER);
-                            Rule BAR = new InstantiatedRule(this, candidate);
-                            if (evaluateRule(BAR, anchoringToOriginal.get(anchoring), validOriginals.get(anchoring), tailToOriginal.get(tail))) {
+                            candidate.objName = graph.nodeName(tail);
+                            Rule BAR = new InstantiatedRule(Template.this, candidate);
+                            if (evaluateRule(BAR, originals, anchoringValidOriginals, tailToOriginal.get(tail))) {
                                 context.updateTotalInsRules();
-                                contents.add("2" + ","
-                                        + BAR.getHeadAnchoring() + ","
-                                        + BAR.getTailAnchoring() + ","
-                                        + f.format(BAR.getStandardConf()) + ","
-                                        + f.format(BAR.getSmoothedConf()) + ","
-                                        + f.format(BAR.getPcaConf()) + ","
-                                        + f.format(BAR.getApcaConf()) + ","
-                                        + f.format(BAR.getHeadCoverage()) + ","
-                                        + f.format(BAR.getValidPrecision()));
+                                result.insRules.add(BAR);
                                 ruleFileContents.put(BAR.toString() + "\t"
                                         + f.format(BAR.getQuality()) + "\t"
                                         + f.format(BAR.getHeadCoverage()) + "\t"
@@ -227,34 +320,27 @@ public class Template extends Rule {
                     }
                 }
             }
-
-            stats.compute();
-            if(!contents.isEmpty()) {
-                context.addSpecializedRules(this);
-                indexFileContents.put("ABS: " + context.getIndex(this) + "\t"
-                        + this.toRuleIndexString() + "\t"
-                        + f.format(getStandardConf()) + "\t"
-                        + f.format(getSmoothedConf()) + "\t"
-                        + f.format(getPcaConf()) + "\t"
-                        + f.format(getApcaConf()) + "\t"
-                        + f.format(getHeadCoverage()) + "\t"
-                        + f.format(getValidPrecision()) + "\n"
-                        + String.join("\t", contents) + "\n");
-            }
+            return result;
         }
     }
 
-    public void applyRule(GraphDatabaseService graph, Context context) {
-        CountedSet<Pair> bodyGroundings = GraphOps.bodyGroundingCoreAPI(graph, this, true, context::checkSuggestionCap);
-        Set<Long> originals = Sets.newHashSet();
-        Multimap<Long, Long> tailToOriginals = MultimapBuilder.hashKeys().hashSetValues().build();
-        for (Pair grounding : bodyGroundings) {
-            originals.add(grounding.subId);
-            tailToOriginals.put(grounding.objId, grounding.subId);
+    public void applyRule(GraphAccess graph, Context context) {
+        if(context.isQueryDriven()) {
+            applyRuleToQueries(graph, context);
+            return;
         }
+        LongPairCountedSet bodyGroundings = GraphOps.bodyGroundingCoreAPI(graph, this, true, context::checkSuggestionCap);
 
         if (closed) applyClosedRule(bodyGroundings, context);
         else {
+            LongSet originals = new LongSet(bodyGroundings.size());
+            LongMultimap tailToOriginals = new LongMultimap();
+            for (int i = 0; i < bodyGroundings.size(); i++) {
+                originals.add(bodyGroundings.sub(i));
+                tailToOriginals.put(bodyGroundings.obj(i), bodyGroundings.sub(i));
+            }
+            tailToOriginals.freeze();
+
             assert !insRules.isEmpty();
             insRules.sort(IO.ruleComparatorBySC());
             for (SimpleInsRule rule : insRules) {
@@ -265,31 +351,105 @@ public class Template extends Rule {
                 if (rule.type == 0)
                     applyHeadAnchoredRules(rule, originals, context);
                 else if (rule.type == 2)
-                    applyBothAnchoredRules(rule, tailToOriginals, context);
+                    applyBothAnchoredRules(rule, tailToOriginals.get(rule.tailAnchoringId), context);
             }
             insRules.clear();
         }
     }
 
-    private boolean evalClosedRule(CountedSet<Pair> bodyGroundings, Set<Pair> groundTruth, Set<Pair> validPair) {
+    /**
+     * Applies the rule top-down from the entities of the test queries in the context. Closed
+     * rules are grounded forward from query heads and backward from query tails. Open rules
+     * only ground the whole body for head-anchored rules whose constant is itself a query
+     * entity, as any start node then answers a query; otherwise head-anchored rules check
+     * the query entities on the start side, and both-anchored rules walk back from their tail.
+     */
+    private void applyRuleToQueries(GraphAccess graph, Context context) {
+        if(closed) {
+            LongPairCountedSet bodyGroundings = GraphOps.bodyGroundingBetween(graph, this
+                    , context.getQueryHeads(), context.getQueryTails(), true, context::checkSuggestionCap);
+            applyClosedRule(bodyGroundings, context);
+            return;
+        }
+
+        LongSet startQueries = fromSubject ? context.getQueryHeads() : context.getQueryTails();
+        LongSet anchorQueries = fromSubject ? context.getQueryTails() : context.getQueryHeads();
+        LongSet allOriginals = null;
+        LongSet queryOriginals = null;
+        Map<Long, long[]> tailToOriginals = new HashMap<>();
+
+        insRules.sort(IO.ruleComparatorBySC());
+        for (SimpleInsRule rule : insRules) {
+            if(context.checkSuggestionCap())
+                break;
+
+            boolean anchorIsQuery = anchorQueries.contains(rule.headAnchoringId);
+            rule.insRuleString(graph);
+            if (rule.type == 0) {
+                if(anchorIsQuery) {
+                    if(allOriginals == null) {
+                        LongPairCountedSet bodyGroundings = GraphOps.bodyGroundingCoreAPI(graph, this, true, context::checkSuggestionCap);
+                        allOriginals = new LongSet(bodyGroundings.size());
+                        for (int i = 0; i < bodyGroundings.size(); i++)
+                            allOriginals.add(bodyGroundings.sub(i));
+                    }
+                    applyHeadAnchoredRules(rule, allOriginals, context);
+                } else {
+                    if(queryOriginals == null)
+                        queryOriginals = GraphOps.groundedStarts(graph, this, startQueries, context::checkSuggestionCap);
+                    applyHeadAnchoredRules(rule, queryOriginals, context);
+                }
+            }
+            else if (rule.type == 2) {
+                long[] originals = tailToOriginals.computeIfAbsent(rule.tailAnchoringId, tail -> {
+                    LongSet tails = new LongSet(1);
+                    tails.add(tail);
+                    LongPairCountedSet bodyGroundings = GraphOps.bodyGroundingToEnds(graph, this, tails, true, context::checkSuggestionCap);
+                    LongSet starts = new LongSet(bodyGroundings.size());
+                    for (int i = 0; i < bodyGroundings.size(); i++)
+                        starts.add(bodyGroundings.sub(i));
+                    return starts.toArray();
+                });
+                if(!anchorIsQuery) {
+                    LongSet kept = new LongSet();
+                    for (long original : originals)
+                        if(startQueries.contains(original)) kept.add(original);
+                    originals = kept.toArray();
+                }
+                applyBothAnchoredRules(rule, originals, context);
+            }
+        }
+        insRules.clear();
+    }
+
+    private static void buildGroundingMaps(LongPairSet bodyGroundings, LongMultimap originalToTail, LongMultimap tailToOriginal) {
+        for (int i = 0; i < bodyGroundings.size(); i++) {
+            originalToTail.put(bodyGroundings.sub(i), bodyGroundings.obj(i));
+            tailToOriginal.put(bodyGroundings.obj(i), bodyGroundings.sub(i));
+        }
+        originalToTail.freeze();
+        tailToOriginal.freeze();
+    }
+
+    private boolean evalClosedRule(LongPairSet bodyGroundings, LongPairSet groundTruth, LongPairSet validPair) {
         double totalPrediction = 0, correctPrediction = 0, pcaTotalPrediction = 0
                 , validTotalPredictions = 0, validPredictions = 0;
 
-        Set<Long> subs = new HashSet<>();
-        for (Pair pair : groundTruth)
-            subs.add(pair.subId);
+        LongSet subs = new LongSet(groundTruth.size());
+        for (int i = 0; i < groundTruth.size(); i++)
+            subs.add(groundTruth.sub(i));
 
-        for (Pair grounding : bodyGroundings) {
-            long sub = fromSubject ? grounding.subId : grounding.objId;
+        for (int i = 0; i < bodyGroundings.size(); i++) {
+            long sub = fromSubject ? bodyGroundings.sub(i) : bodyGroundings.obj(i);
+            long obj = fromSubject ? bodyGroundings.obj(i) : bodyGroundings.sub(i);
             if(subs.contains(sub))
                 pcaTotalPrediction++;
 
-            Pair prediction = fromSubject ? grounding : new Pair(grounding.objId, grounding.subId);
-            if(groundTruth.contains(prediction))
+            if(groundTruth.contains(sub, obj))
                 correctPrediction++;
             else {
                 validTotalPredictions++;
-                if(validPair.contains(prediction))
+                if(validPair.contains(sub, obj))
                     validPredictions++;
             }
 
@@ -300,16 +460,19 @@ public class Template extends Rule {
         return qualityCheck(this);
     }
 
-    private boolean evaluateRule(Rule rule, Collection<Long> originals, Collection<Long> validOriginals, Collection<Long> groundingOriginals) {
-        int totalPrediction = 0, support = 0, groundTruth = originals.size()
+    /**
+     * {@code originals} and {@code validOriginals} must be sorted, as returned by {@link LongMultimap}.
+     */
+    private boolean evaluateRule(Rule rule, long[] originals, long[] validOriginals, long[] groundingOriginals) {
+        int totalPrediction = 0, support = 0, groundTruth = originals.length
                 , validTotalPredictions = 0, validPredictions = 0;
-        for (Long groundingOriginal : groundingOriginals) {
+        for (long groundingOriginal : groundingOriginals) {
             totalPrediction++;
-            if(originals.contains(groundingOriginal))
+            if(LongMultimap.contains(originals, groundingOriginal))
                 support++;
             else {
                 validTotalPredictions++;
-                if(validOriginals.contains(groundingOriginal))
+                if(LongMultimap.contains(validOriginals, groundingOriginal))
                     validPredictions++;
             }
         }
@@ -333,8 +496,9 @@ public class Template extends Rule {
         return head == tail && length() == 1 && this.head.predicate.equals(bodyAtoms.get(0).predicate);
     }
 
-    private void applyHeadAnchoredRules(SimpleInsRule rule, Set<Long> originals, Context context) {
-        for (Long original : originals) {
+    private void applyHeadAnchoredRules(SimpleInsRule rule, LongSet originals, Context context) {
+        for (int i = 0; i < originals.size(); i++) {
+            long original = originals.get(i);
             Pair pair = fromSubject ? new Pair(original, rule.headAnchoringId) : new Pair(rule.headAnchoringId, original);
             if(!pair.isSelfloop()) {
                 context.putInPredictionMap(pair, rule);
@@ -342,8 +506,8 @@ public class Template extends Rule {
         }
     }
 
-    private void applyBothAnchoredRules(SimpleInsRule rule, Multimap<Long, Long> tailToOriginals, Context context) {
-        for (Long original : tailToOriginals.get(rule.tailAnchoringId)) {
+    private void applyBothAnchoredRules(SimpleInsRule rule, long[] originals, Context context) {
+        for (long original : originals) {
             Pair pair = fromSubject ? new Pair(original, rule.headAnchoringId) : new Pair(rule.headAnchoringId, original);
             if(!pair.isSelfloop()) {
                 context.putInPredictionMap(pair, rule);
@@ -351,19 +515,23 @@ public class Template extends Rule {
         }
     }
 
-    private void applyClosedRule(CountedSet<Pair> bodyGroundings, Context context) {
-        for (Pair grounding : bodyGroundings) {
-            Pair pair = fromSubject ? grounding : new Pair(grounding.objId, grounding.subId);
-            if(!pair.isSelfloop()) {
+    private void applyClosedRule(LongPairSet bodyGroundings, Context context) {
+        for (int i = 0; i < bodyGroundings.size(); i++) {
+            Pair grounding = new Pair(bodyGroundings.sub(i), bodyGroundings.obj(i));
+            if(!grounding.isSelfloop()) {
                 context.putInPredictionMap(grounding, this);
             }
         }
     }
 
+    @Override
+    String header() {
+        return isClosed() ? "CAR\t" : "OAR\t";
+    }
+
     @Override
     public String toString() {
-        String header = isClosed() ? "CAR\t" : "OAR\t";
-        return header + super.toString();
+        return header() + super.toString();
     }
 
     public String toRuleIndexString() {
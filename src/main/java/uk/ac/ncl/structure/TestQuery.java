@@ -13,17 +13,19 @@ import java.util.Set;
 public class TestQuery {
     public Pair testPair;
     public boolean headQuery;
-    public ScoreList<Pair> scoreList;
+    public RankingEngine<Pair> ranking;
 
     public Multimap<Pair, Rule> pairRuleMap = MultimapBuilder.hashKeys().hashSetValues().build();
 
     public TestQuery(Pair testPair, boolean headQuery) {
         this.testPair = testPair;
         this.headQuery = headQuery;
-        scoreList = new ScoreList<>();
+        // Only the top answers and the tie group of the test pair are ever read.
+        ranking = new RankingEngine<>(Settings.TOP_K + 1);
+        ranking.focus(testPair);
     }
 
-    public void updateScoreList(Set<Pair> candidates, Rule r) {
+    public void updateRanking(Set<Pair> candidates, Rule r) {
         Set<Pair> filterCandidates = new HashSet<>();
         Set<Pair> targetGroup = getTargetGroup();
         if(targetGroup.size() > 1) {
@@ -35,39 +37,21 @@ public class TestQuery {
         }
 
         filterCandidates.forEach(c -> pairRuleMap.put(c, r));
-        scoreList.add(filterCandidates);
+        ranking.add(filterCandidates, r.getQuality());
     }
 
     public Set<Pair> getTargetGroup() {
-        for (Set<Pair> group : scoreList.getList())
-            if(group.contains(testPair)) return group;
-        return new HashSet<>();
+        return new HashSet<>(ranking.tieGroup(testPair));
     }
 
     public boolean covered() {
-        int countBeforeTestCase = 0;
-        for (Set<Pair> group : scoreList.getList()) {
-            if(group.contains(testPair)) {
-                return group.size() == 1 || countBeforeTestCase > Settings.TOP_K;
-            } else {
-                countBeforeTestCase += group.size();
-            }
-        }
-        return countBeforeTestCase > Settings.TOP_K;
+        if(!ranking.contains(testPair))
+            return ranking.size() > Settings.TOP_K;
+        return ranking.tieGroup(testPair).size() == 1 || ranking.rankedAbove(testPair) > Settings.TOP_K;
     }
 
     public List<Pair> getTopPairs(int k) {
-        List<Pair> list = new ArrayList<>();
-        for (Set<Pair> s : scoreList.getList()) {
-            for (Pair pair : s) {
-                if(list.size() < k && !list.contains(pair)) {
-                    list.add(pair);
-                    if(list.size() >= k)
-                        break;
-                }
-            }
-        }
-        return list;
+        return ranking.top(k);
     }
 
     public List<Rule> getSuggestingRules(Pair p) {
@@ -0,0 +1,65 @@
+package uk.ac.ncl.structure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps the best {@code cap} rules suggesting a candidate, ordered by descending
+ * quality. A rule whose quality ties with kept rules goes after them, and a full
+ * list only admits rules strictly better than its worst one. Not thread-safe;
+ * callers update it under the lock of the owning map entry.
+ */
+public class TopRules {
+    private final int cap;
+    private Rule[] rules;
+    private double[] qualities;
+    private int size = 0;
+
+    public TopRules(int cap) {
+        this.cap = cap;
+        int capacity = Math.max(1, Math.min(cap, 4));
+        rules = new Rule[capacity];
+        qualities = new double[capacity];
+    }
+
+    /**
+     * @return true if the rule is kept.
+     */
+    public boolean add(Rule rule) {
+        double quality = rule.getQuality();
+        if(size == cap) {
+            if(size == 0 || qualities[size - 1] >= quality) return false;
+            size--;
+        }
+        if(size == rules.length) {
+            int capacity = Math.min(cap, rules.length * 2);
+            rules = Arrays.copyOf(rules, capacity);
+            qualities = Arrays.copyOf(qualities, capacity);
+        }
+        int position = size;
+        while(position > 0 && qualities[position - 1] < quality) {
+            rules[position] = rules[position - 1];
+            qualities[position] = qualities[position - 1];
+            position--;
+        }
+        rules[position] = rule;
+        qualities[position] = quality;
+        size++;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Rule get(int i) {
+        return rules[i];
+    }
+
+    public List<Rule> toList() {
+        List<Rule> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) list.add(rules[i]);
+        return list;
+    }
+}
@@ -18,14 +18,20 @@ public class TripleSet {
     public Multimap<Long, TestQuery> headIndex = MultimapBuilder.hashKeys().hashSetValues().build();
     public Multimap<Long, TestQuery> tailIndex = MultimapBuilder.hashKeys().hashSetValues().build();
 
-    public Set<Long> testHeads = new HashSet<>();
-    public Set<Long> testTails = new HashSet<>();
+    public LongSet testHeads = new LongSet();
+    public LongSet testTails = new LongSet();
+
+    private final LongPairSet nonTestPairs;
 
     public TripleSet(Set<Pair> trainPairs, Set<Pair> validPairs, Set<Pair> testPairs) {
         this.trainPairs = trainPairs;
         this.validPairs = validPairs;
         this.testPairs = testPairs;
 
+        nonTestPairs = new LongPairSet(trainPairs.size() + validPairs.size());
+        trainPairs.forEach(p -> nonTestPairs.add(p.subId, p.objId));
+        validPairs.forEach(p -> nonTestPairs.add(p.subId, p.objId));
+
         testPairs.forEach(t -> {
             testHeads.add(t.subId);
             testTails.add(t.objId);
@@ -42,11 +48,19 @@ public class TripleSet {
     }
 
     public boolean inNonTest(Pair pair) {
-        return trainPairs.contains(pair) || validPairs.contains(pair);
+        return inNonTest(pair.subId, pair.objId);
+    }
+
+    public boolean inNonTest(long sub, long obj) {
+        return nonTestPairs.contains(sub, obj);
     }
 
     public boolean possibleSolution(Pair pair) {
-        return testHeads.contains(pair.subId) || testTails.contains(pair.objId);
+        return possibleSolution(pair.subId, pair.objId);
+    }
+
+    public boolean possibleSolution(long sub, long obj) {
+        return testHeads.contains(sub) || testTails.contains(obj);
     }
 
     public void updateTestCases(Package p) {
@@ -69,7 +83,7 @@ public class TripleSet {
         }
 
         for (Map.Entry<TestQuery, Collection<Pair>> entry : distMap.asMap().entrySet()) {
-            entry.getKey().updateScoreList(new HashSet<>(entry.getValue()), p.rule);
+            entry.getKey().updateRanking(new HashSet<>(entry.getValue()), p.rule);
         }
 
         for (TestQuery testQuery : testQueries) {
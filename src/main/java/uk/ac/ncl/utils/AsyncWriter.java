@@ -0,0 +1,92 @@
+package uk.ac.ncl.utils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes the lines put into a queue to a file on its own thread. The writer blocks
+ * while the queue is empty and drains it in batches into a large buffer. Producers
+ * signal the end of the stream by closing the writer, which waits until every line
+ * queued before the call has been written. The buffer goes to the file when it is full
+ * or the stream ends, in one unbuffered write under a lock shared by the writers of the
+ * same file, so entries stay whole when targets processed at the same time append to one file.
+ */
+public class AsyncWriter extends Thread implements AutoCloseable {
+    private final static String END = new String("END");
+    private final static int BATCH_SIZE = 4096;
+    private final static int BUFFER_SIZE = 1 << 20;
+    private final static Map<File, Object> LOCKS = new ConcurrentHashMap<>();
+
+    private final File file;
+    private final BlockingQueue<String> contents;
+    private final boolean append;
+    private final boolean newLine;
+
+    /**
+     * @param newLine if true, a line separator is written after each entry.
+     */
+    public AsyncWriter(String name, File file, BlockingQueue<String> contents, boolean append, boolean newLine) {
+        super(name);
+        this.file = file;
+        this.contents = contents;
+        this.append = append;
+        this.newLine = newLine;
+        start();
+    }
+
+    @Override
+    public void run() {
+        List<String> batch = new ArrayList<>(BATCH_SIZE);
+        String separator = System.lineSeparator();
+        StringBuilder buffer = new StringBuilder();
+        Object lock = LOCKS.computeIfAbsent(file.getAbsoluteFile(), f -> new Object());
+        try(OutputStream out = new FileOutputStream(file, append)) {
+            boolean end = false;
+            while(!end) {
+                batch.add(contents.take());
+                contents.drainTo(batch, BATCH_SIZE - 1);
+                for (String line : batch) {
+                    if(line == END) {
+                        end = true;
+                        break;
+                    }
+                    buffer.append(line);
+                    if(newLine) buffer.append(separator);
+                }
+                batch.clear();
+                if(end || buffer.length() >= BUFFER_SIZE) {
+                    byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+                    synchronized (lock) {
+                        out.write(bytes);
+                    }
+                    buffer.setLength(0);
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Signals the end of the stream and waits for the remaining lines to be written.
+     */
+    @Override
+    public void close() {
+        try {
+            contents.put(END);
+            join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package uk.ac.ncl.utils;
+
+import uk.ac.ncl.Settings;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Relation-partitioned binary index of an annotated example file, whose lines are
+ * {@code relId \t headId \t relation \t tailId}. The index is written next to the file as
+ * {@code <name>.idx} the first time the file is read, by one pass over the file in parallel
+ * chunks, and is rebuilt when the file changes. The index is written to a temporary file
+ * and moved over {@code <name>.idx} in one step, so a run reading it never sees it half
+ * written. It holds a header, the sorted relation names
+ * with the record range of each relation, and the (relId, headId, tailId) records grouped by
+ * relation in file order. Reading the examples of a relation maps its range only, so a
+ * target no longer scans the whole file.
+ */
+public class ExampleIndex {
+    private final static long MAGIC = 0x4750464C45584931L;
+    private final static int VERSION = 1;
+    private final static int RECORD_SIZE = 24;
+    private final static int WINDOW = 1 << 30;
+    private final static Map<File, ExampleIndex> INDEXES = new ConcurrentHashMap<>();
+
+    private final File file;
+    private final Map<String, Integer> relations = new HashMap<>();
+    private final String[] names;
+    private final int[] offsets;
+    private final long dataStart;
+
+    public interface RecordConsumer {
+        void accept(long relId, long headId, long tailId);
+    }
+
+    private ExampleIndex(File file, String[] names, int[] offsets, long dataStart) {
+        this.file = file;
+        this.names = names;
+        this.offsets = offsets;
+        this.dataStart = dataStart;
+        for (int i = 0; i < names.length; i++) relations.put(names[i], i);
+    }
+
+    /**
+     * @return true if the file is an annotated example file that can be indexed.
+     */
+    public static boolean indexes(File file) {
+        return file != null && file.getName().startsWith("annotated_");
+    }
+
+    /**
+     * @return the index of the annotated file, building it first if it is missing or older
+     * than the file.
+     */
+    public static ExampleIndex of(File annotatedFile) {
+        return INDEXES.computeIfAbsent(annotatedFile.getAbsoluteFile(), ExampleIndex::open);
+    }
+
+    public static File indexFile(File annotatedFile) {
+        String name = annotatedFile.getName();
+        int dot = name.lastIndexOf('.');
+        return new File(annotatedFile.getParentFile(), (dot == -1 ? name : name.substring(0, dot)) + ".idx");
+    }
+
+    private static ExampleIndex open(File annotatedFile) {
+        File file = indexFile(annotatedFile);
+        ExampleIndex index = file.exists() ? load(file, annotatedFile) : null;
+        if(index == null) {
+            build(annotatedFile, file);
+            index = load(file, annotatedFile);
+        }
+        return index;
+    }
+
+    public List<String> relations() {
+        return Collections.unmodifiableList(Arrays.asList(names));
+    }
+
+    public int count(String relation) {
+        Integer i = relations.get(relation);
+        return i == null ? 0 : offsets[i + 1] - offsets[i];
+    }
+
+    /**
+     * Passes the records of the relation to the consumer in file order.
+     */
+    public void forEach(String relation, RecordConsumer consumer) {
+        Integer i = relations.get(relation);
+        if(i == null) return;
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            int maxRecords = WINDOW / RECORD_SIZE;
+            for (int from = offsets[i]; from < offsets[i + 1]; from += maxRecords) {
+                int records = Math.min(maxRecords, offsets[i + 1] - from);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY
+                        , dataStart + (long) from * RECORD_SIZE, (long) records * RECORD_SIZE);
+                for (int r = 0; r < records; r++)
+                    consumer.accept(buffer.getLong(), buffer.getLong(), buffer.getLong());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * @return the index, or null if it was built from another version of the annotated file.
+     */
+    private static ExampleIndex load(File file, File annotatedFile) {
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), 32));
+            if(header.remaining() < 32 || header.getLong() != MAGIC || header.getInt() != VERSION
+                    || header.getLong() != annotatedFile.length() || header.getLong() != annotatedFile.lastModified())
+                return null;
+            int relations = header.getInt();
+            ByteBuffer table = channel.map(FileChannel.MapMode.READ_ONLY, 32, (long) (relations + 1) * 8);
+            int[] offsets = new int[relations + 1];
+            int[] nameOffsets = new int[relations + 1];
+            for (int i = 0; i <= relations; i++) offsets[i] = table.getInt();
+            for (int i = 0; i <= relations; i++) nameOffsets[i] = table.getInt();
+            long namesStart = 32 + (long) (relations + 1) * 8;
+            byte[] bytes = new byte[nameOffsets[relations]];
+            channel.map(FileChannel.MapMode.READ_ONLY, namesStart, bytes.length).get(bytes);
+            String[] names = new String[relations];
+            for (int i = 0; i < relations; i++)
+                names[i] = new String(bytes, nameOffsets[i], nameOffsets[i + 1] - nameOffsets[i], StandardCharsets.UTF_8);
+            return new ExampleIndex(file, names, offsets, namesStart + bytes.length);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
+            return null;
+        }
+    }
+
+    /**
+     * Parses the annotated file in one pass of parallel chunks split at line boundaries, then
+     * writes the records of each relation chunk by chunk so that they keep the file order.
+     * The records go to a temporary file in the same folder, which then atomically replaces
+     * the index.
+     */
+    private static void build(File annotatedFile, File file) {
+        long s = System.currentTimeMillis();
+        long length = annotatedFile.length(), modified = annotatedFile.lastModified();
+        List<ChunkParser> parsers = new ArrayList<>();
+        try(FileChannel channel = FileChannel.open(annotatedFile.toPath(), StandardOpenOption.READ)) {
+            for (MappedByteBuffer chunk : TripleReader.mapChunks(channel, Settings.THREAD_NUMBER))
+                parsers.add(new ChunkParser(annotatedFile, chunk));
+            for (ChunkParser parser : parsers) parser.join();
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+
+        TreeSet<String> relationSet = new TreeSet<>();
+        for (ChunkParser parser : parsers) relationSet.addAll(parser.records.keySet());
+        String[] names = relationSet.toArray(new String[0]);
+        byte[][] encoded = new byte[names.length][];
+        int[] offsets = new int[names.length + 1];
+        int[] nameOffsets = new int[names.length + 1];
+        for (int i = 0; i < names.length; i++) {
+            encoded[i] = names[i].getBytes(StandardCharsets.UTF_8);
+            nameOffsets[i + 1] = nameOffsets[i] + encoded[i].length;
+            long records = offsets[i];
+            for (ChunkParser parser : parsers) {
+                Records chunk = parser.records.get(names[i]);
+                if(chunk != null) records += chunk.size / 3;
+            }
+            if(records > Integer.MAX_VALUE) {
+                System.err.println("# Too many examples to index in: " + annotatedFile.getPath());
+                System.exit(-1);
+            }
+            offsets[i + 1] = (int) records;
+        }
+
+        File temp = null;
+        try {
+            temp = File.createTempFile(file.getName() + ".", ".tmp", file.getAbsoluteFile().getParentFile());
+            write(temp, length, modified, names, encoded, offsets, nameOffsets, parsers);
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            if(temp != null) temp.delete();
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        Logger.println(MessageFormat.format("# Indexed {0} Examples of {1} Relations in: {2} | Time: {3}s"
+                , offsets[names.length], names.length, annotatedFile.getPath()
+                , (System.currentTimeMillis() - s) / 1000d), 3);
+    }
+
+    private static void write(File file, long length, long modified, String[] names, byte[][] encoded
+            , int[] offsets, int[] nameOffsets, List<ChunkParser> parsers) throws IOException {
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+            buffer.putLong(MAGIC).putInt(VERSION).putLong(length).putLong(modified).putInt(names.length);
+            for (int offset : offsets) buffer = put(channel, buffer, 4).putInt(offset);
+            for (int offset : nameOffsets) buffer = put(channel, buffer, 4).putInt(offset);
+            for (byte[] bytes : encoded) {
+                for (byte b : bytes) buffer = put(channel, buffer, 1).put(b);
+            }
+            for (String name : names) {
+                for (ChunkParser parser : parsers) {
+                    Records chunk = parser.records.get(name);
+                    if(chunk == null) continue;
+                    for (int i = 0; i < chunk.size; i++) buffer = put(channel, buffer, 8).putLong(chunk.data[i]);
+                }
+            }
+            flush(channel, buffer);
+        }
+    }
+
+    private static ByteBuffer put(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if(buffer.remaining() < bytes) flush(channel, buffer);
+        return buffer;
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    private static class Records {
+        long[] data = new long[48];
+        int size = 0;
+
+        void add(long relId, long headId, long tailId) {
+            if(size + 3 > data.length)
+                data = Arrays.copyOf(data, data.length * 2);
+            data[size++] = relId;
+            data[size++] = headId;
+            data[size++] = tailId;
+        }
+    }
+
+    /**
+     * Tokenizes the lines of one mapped chunk on tabs without building a string per field.
+     * The relation name of a line is only decoded when it differs from the one of the
+     * previous line, as the examples of a relation are mostly written together.
+     */
+    private static class ChunkParser extends Thread {
+        final File source;
+        final MappedByteBuffer chunk;
+        final Map<String, Records> records = new HashMap<>();
+        final long[] numbers = new long[3];
+        byte[] lastName = new byte[0];
+        Records lastRecords;
+
+        ChunkParser(File source, MappedByteBuffer chunk) {
+            super("ExampleIndex-" + source.getName());
+            this.source = source;
+            this.chunk = chunk;
+            start();
+        }
+
+        @Override
+        public void run() {
+            int limit = chunk.limit();
+            int position = 0;
+            while(position < limit) {
+                int end = position;
+                while(end < limit && chunk.get(end) != '\n') end++;
+                int lineEnd = end > position && chunk.get(end - 1) == '\r' ? end - 1 : end;
+                if(lineEnd > position) parseLine(position, lineEnd);
+                position = end + 1;
+            }
+        }
+
+        void parseLine(int from, int to) {
+            int field = 0, number = 0, nameFrom = -1, nameTo = -1;
+            int start = from;
+            for (int i = from; i <= to; i++) {
+                if(i < to && chunk.get(i) != '\t') continue;
+                if(field == 2) {
+                    nameFrom = start;
+                    nameTo = i;
+                } else if(number < 3) {
+                    numbers[number++] = parseLong(start, i);
+                }
+                field++;
+                start = i + 1;
+            }
+            if(field != 4) {
+                System.err.println("# Invalid annotated triple in: " + source.getPath());
+                System.exit(-1);
+            }
+            relation(nameFrom, nameTo).add(numbers[0], numbers[1], numbers[2]);
+        }
+
+        Records relation(int from, int to) {
+            boolean same = lastRecords != null && lastName.length == to - from;
+            for (int i = 0; same && i < lastName.length; i++)
+                same = lastName[i] == chunk.get(from + i);
+            if(!same) {
+                lastName = new byte[to - from];
+                for (int i = 0; i < lastName.length; i++) lastName[i] = chunk.get(from + i);
+                lastRecords = records.computeIfAbsent(new String(lastName, StandardCharsets.UTF_8), k -> new Records());
+            }
+            return lastRecords;
+        }
+
+        long parseLong(int from, int to) {
+            boolean negative = from < to && chunk.get(from) == '-';
+            long value = 0;
+            for (int i = negative ? from + 1 : from; i < to; i++) {
+                int digit = chunk.get(i) - '0';
+                if(digit < 0 || digit > 9) {
+                    System.err.println("# Invalid annotated triple in: " + source.getPath());
+                    System.exit(-1);
+                }
+                value = value * 10 + digit;
+            }
+            return negative ? -value : value;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package uk.ac.ncl.utils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Sorts text records by descending score with bounded memory. Records are buffered until
+ * the memory budget is used up, then the buffer is sorted and spilled to a temporary run
+ * file, optionally on a background thread while reading continues. The runs are finally
+ * merged k ways. Records with equal scores are ordered by their text, and duplicate
+ * records are written once.
+ */
+public class ExternalSorter implements AutoCloseable {
+    private final static int MAX_FAN_IN = 128;
+    private final static Comparator<Record> ORDER = Comparator.comparingDouble((Record r) -> -r.score)
+            .thenComparing(r -> r.text);
+
+    private final long memoryLimit;
+    private final ExecutorService spillers;
+    private final int threads;
+    private final List<Future<File>> runs = new ArrayList<>();
+
+    private List<Record> buffer = new ArrayList<>();
+    private long bufferedBytes = 0;
+
+    /**
+     * @param memoryLimit approximate bytes of records held in memory per buffer.
+     * @param threads number of runs sorted and spilled in parallel with reading, 0 to spill inline.
+     */
+    public ExternalSorter(long memoryLimit, int threads) {
+        this.memoryLimit = memoryLimit;
+        this.threads = threads;
+        this.spillers = threads > 0 ? Executors.newFixedThreadPool(threads) : null;
+    }
+
+    /**
+     * Budgets an eighth of the max heap, split among the buffers that can be alive at once.
+     */
+    public ExternalSorter() {
+        this(Runtime.getRuntime().maxMemory() / 8 / 3, 2);
+    }
+
+    public void add(double score, String text) {
+        buffer.add(new Record(score, text));
+        bufferedBytes += 2L * text.length() + 48;
+        if(bufferedBytes >= memoryLimit) spill();
+    }
+
+    /**
+     * Emits all records in order. The sorter cannot be reused afterwards.
+     */
+    public void sort(Consumer<String> out) {
+        try {
+            if(runs.isEmpty()) {
+                buffer.sort(ORDER);
+                String last = null;
+                for (Record record : buffer) {
+                    if(!record.text.equals(last)) out.accept(record.text);
+                    last = record.text;
+                }
+                buffer = new ArrayList<>();
+                return;
+            }
+
+            spill();
+            List<File> files = new ArrayList<>();
+            for (Future<File> run : runs) files.add(run.get());
+            runs.clear();
+
+            while(files.size() > MAX_FAN_IN) {
+                List<File> merged = new ArrayList<>();
+                for (int i = 0; i < files.size(); i += MAX_FAN_IN) {
+                    List<File> group = files.subList(i, Math.min(files.size(), i + MAX_FAN_IN));
+                    File run = createRunFile();
+                    try(DataOutputStream stream = openOutput(run)) {
+                        merge(group, record -> write(stream, record));
+                    }
+                    group.forEach(File::delete);
+                    merged.add(run);
+                }
+                files = merged;
+            }
+
+            merge(files, record -> out.accept(record.text));
+            files.forEach(File::delete);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Deletes the runs not merged yet. Spills in flight are let finish, as a spill dropped
+     * from the queue would never complete and its run could not be deleted.
+     */
+    @Override
+    public void close() {
+        if(spillers != null) spillers.shutdown();
+        for (Future<File> run : runs) {
+            try {
+                run.get().delete();
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    private void spill() {
+        if(buffer.isEmpty()) return;
+        List<Record> records = buffer;
+        buffer = new ArrayList<>();
+        bufferedBytes = 0;
+        if(spillers == null) {
+            File run = writeRun(records);
+            runs.add(CompletableFuture.completedFuture(run));
+            return;
+        }
+        try {
+            // Keep at most `threads` buffers in flight besides the one being filled.
+            int pending = 0;
+            for (Future<File> run : runs) if(!run.isDone()) pending++;
+            if(pending >= threads) {
+                for (Future<File> run : runs) {
+                    if(!run.isDone()) {
+                        run.get();
+                        break;
+                    }
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        runs.add(spillers.submit(() -> writeRun(records)));
+    }
+
+    private static File writeRun(List<Record> records) {
+        records.sort(ORDER);
+        try {
+            File run = createRunFile();
+            try(DataOutputStream stream = openOutput(run)) {
+                for (Record record : records) write(stream, record);
+            }
+            return run;
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
+            return null;
+        }
+    }
+
+    private interface RecordSink {
+        void accept(Record record) throws IOException;
+    }
+
+    private static void merge(List<File> files, RecordSink sink) throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(files.size(), (a, b) -> ORDER.compare(a.head, b.head));
+        List<RunReader> readers = new ArrayList<>();
+        try {
+            for (File file : files) {
+                RunReader reader = new RunReader(file);
+                readers.add(reader);
+                if(reader.advance()) queue.add(reader);
+            }
+            String last = null;
+            while(!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                if(!reader.head.text.equals(last)) sink.accept(reader.head);
+                last = reader.head.text;
+                if(reader.advance()) queue.add(reader);
+            }
+        } finally {
+            for (RunReader reader : readers) reader.close();
+        }
+    }
+
+    private static File createRunFile() throws IOException {
+        File file = File.createTempFile("gpfl-sort", ".run");
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static DataOutputStream openOutput(File file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+    }
+
+    private static void write(DataOutputStream stream, Record record) throws IOException {
+        byte[] bytes = record.text.getBytes(StandardCharsets.UTF_8);
+        stream.writeDouble(record.score);
+        stream.writeInt(bytes.length);
+        stream.write(bytes);
+    }
+
+    private static class Record {
+        final double score;
+        final String text;
+
+        Record(double score, String text) {
+            this.score = score;
+            this.text = text;
+        }
+    }
+
+    private static class RunReader implements Closeable {
+        final DataInputStream stream;
+        Record head;
+
+        RunReader(File file) throws IOException {
+            stream = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        }
+
+        boolean advance() throws IOException {
+            double score;
+            try {
+                score = stream.readDouble();
+            } catch (EOFException e) {
+                head = null;
+                return false;
+            }
+            byte[] bytes = new byte[stream.readInt()];
+            stream.readFully(bytes);
+            head = new Record(score, new String(bytes, StandardCharsets.UTF_8));
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            stream.close();
+        }
+    }
+}
@@ -1,10 +1,11 @@
 package uk.ac.ncl.utils;
 
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.LineIterator;
 import org.neo4j.graphdb.*;
 import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.unsafe.batchinsert.BatchInserter;
+import org.neo4j.unsafe.batchinsert.BatchInserters;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -16,66 +17,97 @@ import java.util.stream.Collectors;
 
 public class GraphBuilder {
 
-    private static Map<String, Long> map = new HashMap<>();
+    private final static Label ENTITY = Label.label("Entity");
 
     public static GraphDatabaseService populateGraphFromTriples(File graphFile, File trainFile) {
         System.out.println("# GPFL System - Neo4j Graph Database Construction: ");
-        GraphDatabaseService graph = createEmptyGraph(graphFile);
-        Set<localTriple> trainTriples = new HashSet<>(readTriples(trainFile));
-
-        System.out.println(MessageFormat.format("# Data Stats: Train={0}"
-                , trainTriples.size()));
-        writeToGraph(graph, trainTriples, true, true);
-        writeToSeparateFile(trainTriples, new File(trainFile.getParent(), "annotated_train.txt"));
-
-        DecimalFormat format = new DecimalFormat("####.###");
-        try(Transaction tx = graph.beginTx()) {
-            long relationshipTypes = graph.getAllRelationshipTypes().stream().count();
-            long relationships = graph.getAllRelationships().stream().count();
-            long nodes = graph.getAllNodes().stream().count();
-
-            Logger.println(MessageFormat.format("# Relationship Types: {0} | Relationships: {1} " +
-                            "| Nodes: {2} | Instance Density: {3} | Degree {4}",
-                    relationshipTypes,
-                    relationships,
-                    nodes,
-                    format.format((double) relationships / relationshipTypes),
-                    format.format((double) relationships / nodes)), 1);
-            tx.success();
-        }
-        return graph;
+        int[] sizes = batchImport(graphFile, trainFile);
+        System.out.println(MessageFormat.format("# Data Stats: Train={0}", sizes[0]));
+        return openGraph(graphFile);
     }
 
     public static GraphDatabaseService populateGraphFromTriples(File graphFile, File trainFile, File validFile, File testFile) {
         System.out.println("# GPFL System - Neo4j Graph Database Construction: ");
-
-        GraphDatabaseService graph = createEmptyGraph(graphFile);
-        Set<localTriple> trainTriples = new HashSet<>(readTriples(trainFile));
-        Set<localTriple> validTriples = new HashSet<>(readTriples(validFile));
-        Set<localTriple> testTriples = new HashSet<>(readTriples(testFile));
-        Set<localTriple> completeTriples = new HashSet<>();
-
-        completeTriples.addAll(trainTriples);
-        completeTriples.addAll(validTriples);
-        completeTriples.addAll(testTriples);
-
+        int[] sizes = batchImport(graphFile, trainFile, validFile, testFile);
         System.out.println(MessageFormat.format("# Data Stats: Train={0} | Valid={1} | Test={2} | All={3}"
-                , trainTriples.size()
-                , validTriples.size()
-                , testTriples.size()
-                , completeTriples.size())
-        );
+                , sizes[0], sizes[1], sizes[2], sizes[0] + sizes[1] + sizes[2]));
+        return openGraph(graphFile);
+    }
 
-        writeToGraph(graph, trainTriples, true, true);
-        writeToGraph(graph, validTriples, true, false);
-        writeToGraph(graph, testTriples, true, false);
+    /**
+     * Imports triple files into a new Neo4j store with the batch inserter, which writes the
+     * store directly without transactions. Nodes are created from a dictionary of entity names
+     * the first time a name is met, and only the triples of the train file become relationships.
+     * The annotated file of each triple file is written in the same pass.
+     *
+     * @return the number of distinct triples of each file.
+     */
+    public static int[] batchImport(File graphFile, File trainFile, File... otherFiles) {
+        long s = System.currentTimeMillis();
+        System.out.println("# Created New Neo4J Graph at: " + graphFile.getAbsolutePath());
+        deleteDirectory(graphFile);
+        // A snapshot of the previous graph does not match the node ids of the new one.
+        new File(graphFile.getParentFile(), "graph.csr").delete();
+        int[] sizes = new int[otherFiles.length + 1];
+        BatchInserter inserter = null;
+        try {
+            inserter = BatchInserters.inserter(graphFile);
+            Map<String, Long> nodes = new HashMap<>();
+            Map<String, RelationshipType> types = new HashMap<>();
+            sizes[0] = importTriples(inserter, nodes, types, trainFile, true);
+            for (int i = 0; i < otherFiles.length; i++)
+                sizes[i + 1] = importTriples(inserter, nodes, types, otherFiles[i], false);
+            Logger.println(MessageFormat.format("# Imported {0} Nodes | Time: {1}s"
+                    , nodes.size(), (System.currentTimeMillis() - s) / 1000d), 1);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        } finally {
+            if(inserter != null) inserter.shutdown();
+        }
+        return sizes;
+    }
+
+    private static int importTriples(BatchInserter inserter, Map<String, Long> nodes, Map<String, RelationshipType> types
+            , File file, boolean createRelationship) throws IOException {
+        if(!file.exists()) {
+            System.out.println("# Notice: " + file.getName() + " does not exist.");
+            return 0;
+        }
+        Set<localTriple> triples = new HashSet<>();
+        try(PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(
+                new File(file.getParent(), "annotated_" + file.getName()))))) {
+            TripleReader.read(file, (head, relation, tail) -> {
+                localTriple triple = new localTriple(head, relation, tail);
+                if(!triples.add(triple)) return;
+                triple.headId = createNode(inserter, nodes, head);
+                triple.tailId = createNode(inserter, nodes, tail);
+                if(createRelationship)
+                    triple.relId = inserter.createRelationship(triple.headId, triple.tailId
+                            , types.computeIfAbsent(relation, RelationshipType::withName), null);
+                writer.println(triple.toFileLine());
+                if(triples.size() % 500000 == 0)
+                    System.out.println("# Imported " + triples.size() + " Triples from " + file.getName());
+            });
+        }
+        return triples.size();
+    }
 
-        writeToSeparateFile(trainTriples, new File(trainFile.getParent(), "annotated_train.txt"));
-        writeToSeparateFile(validTriples, new File(validFile.getParent(), "annotated_valid.txt"));
-        writeToSeparateFile(testTriples, new File(testFile.getParent(), "annotated_test.txt"));
+    private static long createNode(BatchInserter inserter, Map<String, Long> nodes, String name) {
+        Long id = nodes.get(name);
+        if(id == null) {
+            Map<String, Object> properties = new HashMap<>();
+            properties.put("name", name);
+            id = inserter.createNode(properties, ENTITY);
+            nodes.put(name, id);
+        }
+        return id;
+    }
 
+    private static GraphDatabaseService openGraph(File graphFile) {
+        GraphDatabaseService graph = new GraphDatabaseFactory().newEmbeddedDatabase(graphFile);
+        Runtime.getRuntime().addShutdownHook(new Thread(graph::shutdown));
         DecimalFormat format = new DecimalFormat("####.###");
-
         try(Transaction tx = graph.beginTx()) {
             long relationshipTypes = graph.getAllRelationshipTypes().stream().count();
             long relationships = graph.getAllRelationships().stream().count();
@@ -90,101 +122,9 @@ public class GraphBuilder {
                     format.format((double) relationships / nodes)), 1);
             tx.success();
         }
-
         return graph;
     }
 
-    private static void writeToSeparateFile(Set<localTriple> triples, File outFile) {
-        try(PrintWriter writer = new PrintWriter(new FileWriter(outFile))) {
-            for (localTriple triple : triples)
-                writer.println(triple.toFileLine());
-        } catch (IOException e) {
-            e.printStackTrace();
-            System.exit(-1);
-        }
-    }
-
-    private static void analyzeTripleSets(Set<localTriple> trainTriples, Set<localTriple> validTriples, Set<localTriple> testTriples) {
-        Map<String, Integer> trainCounter = createMapCounter(trainTriples);
-        Map<String, Integer> validCounter = createMapCounter(validTriples);
-        Map<String, Integer> testCounter = createMapCounter(testTriples);
-
-        System.out.println(trainCounter);
-        System.out.println(validCounter);
-        System.out.println(testCounter);
-    }
-
-    private static Map<String, Integer> createMapCounter(Set<localTriple> triples) {
-        Map<String, Integer> map = new HashMap<>();
-        for (localTriple triple : triples) {
-            if(map.containsKey(triple.relation))
-                map.put(triple.relation, map.get(triple.relation) + 1);
-            else
-                map.put(triple.relation, 1);
-        }
-        return map;
-    }
-
-    public static void writeToGraph(GraphDatabaseService graph, Set<localTriple> triples
-            , boolean singleProperty, boolean createRelationship) {
-        int current = 0;
-        List<localTriple> tripleList = new ArrayList<>(triples);
-        while(current < triples.size()) {
-            try(Transaction tx = graph.beginTx()) {
-                for (int i = current; i < triples.size();) {
-                    localTriple triple = tripleList.get(i);
-                    Node headNode = null, tailNode = null;
-                    if (map.containsKey(triple.head)) headNode = graph.getNodeById(map.get(triple.head));
-                    if (map.containsKey(triple.tail)) tailNode = graph.getNodeById(map.get(triple.tail));
-
-                    if (headNode == null) {
-                        headNode = graph.createNode();
-                        if(triple.head.equals(triple.tail)) tailNode = headNode;
-                        if (singleProperty) headNode.setProperty("name", triple.head);
-                        else setProperties(triple.headProperties, headNode);
-                        if (triple.headLabels.isEmpty()) headNode.addLabel(Label.label("Entity"));
-                        else for (String label : triple.headLabels) headNode.addLabel(Label.label(label));
-                        map.put(triple.head, headNode.getId());
-                    }
-                    if (tailNode == null) {
-                        tailNode = graph.createNode();
-                        if (singleProperty) tailNode.setProperty("name", triple.tail);
-                        else setProperties(triple.tailProperties, tailNode);
-                        if (triple.tailLabels.isEmpty()) tailNode.addLabel(Label.label("Entity"));
-                        else for (String label : triple.tailLabels) tailNode.addLabel(Label.label(label));
-                        map.put(triple.tail, tailNode.getId());
-                    }
-
-                    triple.headId = headNode.getId();
-                    triple.tailId = tailNode.getId();
-
-                    if (createRelationship) {
-                        Relationship relationship = headNode.createRelationshipTo(tailNode, RelationshipType.withName(triple.relation));
-                        triple.relId = relationship.getId();
-                        if (!singleProperty) setProperties(triple.relationProperties, relationship);
-                    }
-
-                    i++;
-                    current++;
-                    if (i % 500000 == 0) {
-                        System.out.println("# Created " + current + " Relationships in the Graph.");
-                        break;
-                    }
-                }
-                tx.success();
-            }
-        }
-    }
-
-    private static void setProperties(Map<String, Object> propertyMap, Entity entity) {
-        for (Map.Entry<String, Object> entry : propertyMap.entrySet()) {
-            if(entry.getValue() instanceof Collection) {
-                entity.setProperty(entry.getKey(), ((Collection) entry.getValue()).toArray(new String[0]));
-            } else
-                entity.setProperty(entry.getKey(), entry.getValue());
-        }
-    }
-
     public static GraphDatabaseService createEmptyGraph(File graphFile) {
         System.out.println("# Created New Neo4J Graph at: " + graphFile.getAbsolutePath());
         deleteDirectory(graphFile);
@@ -206,14 +146,7 @@ public class GraphBuilder {
     public static Set<localTriple> readTriples(File file) {
         Set<localTriple> triples = new HashSet<>();
         if(file.exists()) {
-            try (LineIterator l = FileUtils.lineIterator(file)) {
-                while (l.hasNext()) {
-                    triples.add(new localTriple(l.nextLine()));
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-                System.exit(-1);
-            }
+            TripleReader.read(file, (head, relation, tail) -> triples.add(new localTriple(head, relation, tail)));
         } else {
             System.out.println("# Notice: " + file.getName() + " does not exist.");
         }
@@ -228,13 +161,6 @@ public class GraphBuilder {
         long tailId;
         long relId = -1;
 
-        Map<String, Object> headProperties;
-        Map<String, Object> relationProperties;
-        Map<String, Object> tailProperties;
-
-        List<String> headLabels = new ArrayList<>();
-        List<String> tailLabels = new ArrayList<>();
-
         localTriple(String h, String r, String t) {
             head = h; relation = r; tail = t;
         }
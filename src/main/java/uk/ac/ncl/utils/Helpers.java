@@ -119,7 +119,8 @@ public class Helpers {
                 "# Suggestion Cap = {12} | Threads = {13}\n" +
                 "# Random Walkers = {14} | Essential Time = {15}\n" +
                 "# Ins Rule Cap = {16} | Gen Time = {17}\n" +
-                "# Quality Measure = {18} | Overfitting Factor = {19}"
+                "# Quality Measure = {18} | Overfitting Factor = {19}\n" +
+                "# Parallel Targets = {20} | Memory Budget = {21}"
                 , Settings.INS_DEPTH
                 , Settings.CAR_DEPTH
                 , Settings.SUPPORT
@@ -140,6 +141,8 @@ public class Helpers {
                 , Settings.GEN_TIME == Integer.MAX_VALUE ? "Max" : Settings.GEN_TIME
                 , Settings.QUALITY_MEASURE
                 , Settings.OVERFITTING_FACTOR
+                , Settings.PARALLEL_TARGETS
+                , Settings.MEMORY_BUDGET
         );
         Logger.println(msg, 1);
     }
@@ -4,6 +4,7 @@ import com.google.common.collect.BiMap;
 import org.neo4j.graphdb.*;
 import uk.ac.ncl.Settings;
 import uk.ac.ncl.core.Context;
+import uk.ac.ncl.graph.Neo4jGraphAccess;
 import uk.ac.ncl.structure.*;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.MultimapBuilder;
@@ -65,53 +66,38 @@ public class IO {
         return instances;
     }
 
+    /**
+     * Reads the instances of the target from an annotated example file through its {@link ExampleIndex}.
+     */
     public static List<Instance> readInstance(GraphDatabaseService graph, File in, String target) {
         List<Instance> instances = new ArrayList<>();
         try(Transaction tx = graph.beginTx()) {
-            try(LineIterator l = FileUtils.lineIterator(in)) {
-                while(l.hasNext()) {
-                    String currentLine = l.nextLine();
-                    long relationshipId = Long.parseLong(currentLine.split("\t")[0]);
-                    String relationType = currentLine.split("\t")[2];
-                    if(relationType.equals(target))
-                        instances.add(new Instance(graph.getRelationshipById(relationshipId)));
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            ExampleIndex.of(in).forEach(target, (relationId, headId, tailId) ->
+                    instances.add(new Instance(graph.getRelationshipById(relationId))));
             tx.success();
         }
         Collections.shuffle(instances);
         return instances;
     }
 
+    /**
+     * Reads the examples of the target from an annotated example file through its {@link ExampleIndex}.
+     */
     public static Set<Pair> readPair(GraphDatabaseService graph, File in, String target) {
         Set<Pair> pairs = new HashSet<>();
         try(Transaction tx = graph.beginTx()) {
-            try(LineIterator l = FileUtils.lineIterator(in)) {
-                while(l.hasNext()) {
-                    String[] words = l.nextLine().split("\t");
-                    long relationId = Long.parseLong(words[0]);
-                    long headId = Long.parseLong(words[1]);
-                    String type = words[2];
-                    long tailId = Long.parseLong(words[3]);
-                    if(type.equals(target)) {
-                        if(relationId != -1) {
-                            Relationship rel = graph.getRelationshipById(relationId);
-                            pairs.add(new Pair(rel.getStartNodeId(), rel.getEndNodeId(), rel.getId()
-                                    , rel, rel.getType()
-                                    , (String) rel.getStartNode().getProperty(Settings.NEO4J_IDENTIFIER)
-                                    , (String) rel.getEndNode().getProperty(Settings.NEO4J_IDENTIFIER)
-                                    , rel.getType().name()));
-                        } else {
-                            pairs.add(new Pair(headId, tailId));
-                        }
-                    }
+            ExampleIndex.of(in).forEach(target, (relationId, headId, tailId) -> {
+                if(relationId != -1) {
+                    Relationship rel = graph.getRelationshipById(relationId);
+                    pairs.add(new Pair(rel.getStartNodeId(), rel.getEndNodeId(), rel.getId()
+                            , rel, rel.getType()
+                            , (String) rel.getStartNode().getProperty(Settings.NEO4J_IDENTIFIER)
+                            , (String) rel.getEndNode().getProperty(Settings.NEO4J_IDENTIFIER)
+                            , rel.getType().name()));
+                } else {
+                    pairs.add(new Pair(headId, tailId));
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
-                System.exit(-1);
-            }
+            });
             tx.success();
         }
         return pairs;
@@ -157,37 +143,6 @@ public class IO {
         };
     }
 
-    public static void writePredictedFacts(GraphDatabaseService graph, File predictionFile, List<Map<Long, List<Pair>>> rankedMap) {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(predictionFile))) {
-            for (int i = 0; i < 2; i++) {
-                for (Long key : rankedMap.get(i).keySet()) {
-                    String header = i == 0 ? "Query: " + Settings.TARGET + "("
-                            + graph.getNodeById(key).getProperty(Settings.NEO4J_IDENTIFIER)
-                            + ", ?)"
-                            : "Query: " + Settings.TARGET + "("
-                            + "(?, "
-                            + graph.getNodeById(key).getProperty(Settings.NEO4J_IDENTIFIER) + ")";
-                    writer.println(header);
-                    List<Pair> localPairs = rankedMap.get(i).get(key);
-                    localPairs = localPairs.size() > Settings.TOP_K
-                            ? localPairs.subList(0, Settings.TOP_K) : localPairs;
-                    localPairs.forEach(pair -> {
-                        String subName = (String) graph.getNodeById(pair.subId).getProperty(Settings.NEO4J_IDENTIFIER);
-                        String objName = (String) graph.getNodeById(pair.objId).getProperty(Settings.NEO4J_IDENTIFIER);
-                        writer.println(MessageFormat.format("({0}, {1}, {2})\t{3}"
-                                ,subName
-                                ,Settings.TARGET
-                                ,objName
-                                ,pair.scores[0]));
-                    });
-                    writer.println();
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-
     public static File createEmptyFile(File file) {
         try{
             file.createNewFile();
@@ -201,6 +156,10 @@ public class IO {
 
     public static Set<String> readTargets(File file) {
         Set<String> targets = new HashSet<>();
+        if(ExampleIndex.indexes(file)) {
+            targets.addAll(ExampleIndex.of(file).relations());
+            return targets;
+        }
         try(LineIterator l = FileUtils.lineIterator(file)) {
             while(l.hasNext()) {
                 String[] words = l.nextLine().split("\t");
@@ -235,18 +194,7 @@ public class IO {
 
     public static Multimap<String, Triple> readTripleMap(File file) {
         Multimap<String, Triple> tripleMap = MultimapBuilder.hashKeys().hashSetValues().build();
-        try(LineIterator l = FileUtils.lineIterator(file)) {
-            while(l.hasNext()) {
-                String line = l.nextLine();
-                if (line != null) {
-                    String[] words = line.split("\t");
-                    tripleMap.put(words[1], new Triple(words[0], words[1], words[2]));
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-            System.exit(-1);
-        }
+        TripleReader.read(file, (head, relation, tail) -> tripleMap.put(relation, new Triple(head, relation, tail)));
         return tripleMap;
     }
 
@@ -295,90 +243,89 @@ public class IO {
     }
 
     public static void orderRuleIndexFile(File ruleIndexFile) {
+        if(RuleIndex.isBinary(ruleIndexFile)) {
+            RuleIndex.order(ruleIndexFile);
+            return;
+        }
         DecimalFormat f = new DecimalFormat("####.#####");
-        Map<String, Double> map = new HashMap<>();
-        try(LineIterator l = FileUtils.lineIterator(ruleIndexFile)) {
-            while(l.hasNext()) {
-                String line = l.nextLine();
-                if(line.startsWith("ABS: ")) {
-                    String[] words = line.split("ABS: ")[1].split("\t");
-                    if(words[1].equals("CAR")) {
-                        double score = 0;
-                        switch (Settings.QUALITY_MEASURE) {
-                            case "standardConf":
-                                score = Double.parseDouble(words[3]);
-                                break;
-                            case "smoothedConf":
-                                score = Double.parseDouble(words[4]);
-                                break;
-                            case "pcaConf":
-                                score = Double.parseDouble(words[5]);
-                                break;
-                            default:
-                                score = Double.parseDouble(words[6]);
-                        }
-                        map.put(line, score);
-                    } else {
-                        String nextLine = l.nextLine();
-                        if(!nextLine.equals("")) {
-                            String[] insRules = nextLine.split("\t");
-                            List<Double> scores = new ArrayList<>();
-                            for (String insRule : insRules) {
-                                String[] components = insRule.split(",");
-                                if(components[0].equals("0")) {
-                                    switch (Settings.QUALITY_MEASURE) {
-                                        case "standardConf":
-                                            scores.add(Double.parseDouble(components[2]));
-                                            break;
-                                        case "smoothedConf":
-                                            scores.add(Double.parseDouble(components[3]));
-                                            break;
-                                        case "pcaConf":
-                                            scores.add(Double.parseDouble(components[4]));
-                                            break;
-                                        default:
-                                            scores.add(Double.parseDouble(components[5]));
-                                    }
-                                } else if(components[0].equals("2")) {
-                                    switch (Settings.QUALITY_MEASURE) {
-                                        case "standardConf":
-                                            scores.add(Double.parseDouble(components[3]));
-                                            break;
-                                        case "smoothedConf":
-                                            scores.add(Double.parseDouble(components[4]));
-                                            break;
-                                        case "pcaConf":
-                                            scores.add(Double.parseDouble(components[5]));
-                                            break;
-                                        default:
-                                            scores.add(Double.parseDouble(components[6]));
+        try(ExternalSorter sorter = new ExternalSorter()) {
+            try(LineIterator l = FileUtils.lineIterator(ruleIndexFile)) {
+                while(l.hasNext()) {
+                    String line = l.nextLine();
+                    if(line.startsWith("ABS: ")) {
+                        String[] words = line.split("ABS: ")[1].split("\t");
+                        if(words[1].equals("CAR")) {
+                            double score = 0;
+                            switch (Settings.QUALITY_MEASURE) {
+                                case "standardConf":
+                                    score = Double.parseDouble(words[3]);
+                                    break;
+                                case "smoothedConf":
+                                    score = Double.parseDouble(words[4]);
+                                    break;
+                                case "pcaConf":
+                                    score = Double.parseDouble(words[5]);
+                                    break;
+                                default:
+                                    score = Double.parseDouble(words[6]);
+                            }
+                            sorter.add(score, line);
+                        } else {
+                            String nextLine = l.nextLine();
+                            if(!nextLine.equals("")) {
+                                String[] insRules = nextLine.split("\t");
+                                List<Double> scores = new ArrayList<>();
+                                for (String insRule : insRules) {
+                                    String[] components = insRule.split(",");
+                                    if(components[0].equals("0")) {
+                                        switch (Settings.QUALITY_MEASURE) {
+                                            case "standardConf":
+                                                scores.add(Double.parseDouble(components[2]));
+                                                break;
+                                            case "smoothedConf":
+                                                scores.add(Double.parseDouble(components[3]));
+                                                break;
+                                            case "pcaConf":
+                                                scores.add(Double.parseDouble(components[4]));
+                                                break;
+                                            default:
+                                                scores.add(Double.parseDouble(components[5]));
+                                        }
+                                    } else if(components[0].equals("2")) {
+                                        switch (Settings.QUALITY_MEASURE) {
+                                            case "standardConf":
+                                                scores.add(Double.parseDouble(components[3]));
+                                                break;
+                                            case "smoothedConf":
+                                                scores.add(Double.parseDouble(components[4]));
+                                                break;
+                                            case "pcaConf":
+                                                scores.add(Double.parseDouble(components[5]));
+                                                break;
+                                            default:
+                                                scores.add(Double.parseDouble(components[6]));
+                                        }
+                                    } else {
+                                        System.err.println("# Error: Unknown rule type in rule index file.");
                                     }
-                                } else {
-                                    System.err.println("# Error: Unknown rule type in rule index file.");
                                 }
+                                double score = MathUtils.listMean(scores);
+                                sorter.add(score, line + "\t" + f.format(score) + "\n" + nextLine);
                             }
-                            double score = MathUtils.listMean(scores);
-                            map.put(line + "\t" + f.format(score) + "\n" + nextLine, score);
                         }
                     }
                 }
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.exit(-1);
             }
-        } catch (IOException e) {
-            e.printStackTrace();
-            System.exit(-1);
-        }
-
-        List<Map.Entry<String, Double>> list = map.entrySet().stream()
-                .sorted(Map.Entry.comparingByValue(Comparator.reverseOrder()))
-                .collect(Collectors.toList());
 
-        try(PrintWriter writer = new PrintWriter(new FileWriter(ruleIndexFile, false))) {
-            for (Map.Entry<String, Double> entry : list) {
-                writer.println(entry.getKey() + "\n");
+            try(PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(ruleIndexFile, false), 1 << 20))) {
+                sorter.sort(entry -> writer.println(entry + "\n"));
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.exit(-1);
             }
-        } catch (IOException e) {
-            e.printStackTrace();
-            System.exit(-1);
         }
     }
 
@@ -387,27 +334,25 @@ public class IO {
 
         System.out.println("\n# GPFL System - Order Rules in File: " + ruleFile.getPath());
 
-        Map<String, Double> map = new HashMap<>();
-        try(LineIterator l = FileUtils.lineIterator(ruleFile)) {
-            while(l.hasNext()) {
-                String line = l.nextLine();
-                if(!line.equals("")) {
-                    map.put(line, Double.parseDouble(line.split("\t")[2]));
+        try(ExternalSorter sorter = new ExternalSorter()) {
+            try(LineIterator l = FileUtils.lineIterator(ruleFile)) {
+                while(l.hasNext()) {
+                    String line = l.nextLine();
+                    if(!line.equals("")) {
+                        sorter.add(Double.parseDouble(line.split("\t")[2]), line);
+                    }
                 }
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.exit(-1);
             }
-        } catch (IOException e) {
-            e.printStackTrace();
-            System.exit(-1);
-        }
 
-        List<Map.Entry<String, Double>> list = map.entrySet().stream().sorted(Map.Entry.comparingByValue(Comparator.reverseOrder())).collect(Collectors.toList());
-        try(PrintWriter writer = new PrintWriter(new FileWriter(ruleFile, false))) {
-            for (Map.Entry<String, Double> entry : list) {
-                writer.println(entry.getKey());
+            try(PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(ruleFile, false), 1 << 20))) {
+                sorter.sort(writer::println);
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.exit(-1);
             }
-        } catch (IOException e) {
-            e.printStackTrace();
-            System.exit(-1);
         }
 
         System.out.println("# Rules are ordered.");
@@ -456,8 +401,20 @@ public class IO {
     public static Set<Rule> readRules(String target, File ruleIndexHome, GraphDatabaseService graph) {
         Logger.println("# Start Analyzing Target: " + target);
         Set<Rule> rules = new HashSet<>();
-        File ruleIndexFile = new File(ruleIndexHome, target.replaceAll("[:/<>]", "_") + ".txt");
+        File ruleIndexFile = RuleIndex.locate(ruleIndexHome, target.replaceAll("[:/<>]", "_"));
         try(Transaction tx = graph.beginTx()) {
+            if(RuleIndex.isBinary(ruleIndexFile)) {
+                try (RuleIndex.Reader reader = new RuleIndex.Reader(ruleIndexFile)) {
+                    for (int i = 0; i < reader.size(); i++) {
+                        Template rule = reader.read(i);
+                        for (SimpleInsRule insRule : rule.insRules)
+                            insRule.insRuleString(Neo4jGraphAccess.of(graph));
+                        rules.add(rule);
+                    }
+                }
+                tx.success();
+                return rules;
+            }
             try (LineIterator l = FileUtils.lineIterator(ruleIndexFile)) {
                 while (l.hasNext()) {
                     String line = l.nextLine();
@@ -467,7 +424,7 @@ public class IO {
                             String insRuleLine = l.nextLine();
                             for (String s : insRuleLine.split("\t")) {
                                 SimpleInsRule insRule = new SimpleInsRule(rule, s);
-                                insRule.insRuleString(graph);
+                                insRule.insRuleString(Neo4jGraphAccess.of(graph));
                                 rule.insRules.add(insRule);
                             }
                         } else {
@@ -508,16 +465,11 @@ public class IO {
 
     public static Set<Pair> readExamples(File f, BiMap<String, Long> nodeIndex) {
         Set<Pair> pairs = new HashSet<>();
-        try(LineIterator l = FileUtils.lineIterator(f)) {
-            while(l.hasNext()) {
-                String[] words = l.next().split("\t");
-                if(words[1].equals(Settings.TARGET))
-                    pairs.add(new Pair(words, nodeIndex));
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-            System.exit(-1);
-        }
+        String target = Settings.TARGET;
+        TripleReader.read(f, (head, relation, tail) -> {
+            if(relation.equals(target))
+                pairs.add(new Pair(new String[]{head, relation, tail}, nodeIndex));
+        });
         return pairs;
     }
 
@@ -575,16 +527,15 @@ public class IO {
         String[] words = atomString.split(",");
         assert words.length == 4;
         Atom atom = new Atom();
-        atom.direction = words[0].equals("+") ? Direction.OUTGOING : Direction.INCOMING;
-        atom.predicate = words[1];
-        atom.type = RelationshipType.withName(words[1]);
+        atom.setDirection(words[0].equals("+") ? Direction.OUTGOING : Direction.INCOMING);
+        atom.setPredicate(words[1]);
         Predicate<String> isConstant = (s) ->
                 !((s.startsWith("V") && s.length() == 2) || (s.equals("X") || s.equals("Y")));
 
-        atom.subject = words[2];
+        atom.setSubject(words[2]);
         atom.subjectId = isConstant.test(atom.subject) ? nodeName2Id.get(atom.subject) : -1;
 
-        atom.object = words[3];
+        atom.setObject(words[3]);
         atom.objectId = isConstant.test(atom.object) ? nodeName2Id.get(atom.object) : -1;
         return atom;
     }
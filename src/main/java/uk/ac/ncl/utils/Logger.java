@@ -10,7 +10,7 @@ import java.io.PrintWriter;
 public class Logger {
     static File logFile;
 
-    public static void init(File f, boolean append) {
+    public static synchronized void init(File f, boolean append) {
         logFile = f;
         if(!append) overwrite();
     }
@@ -19,7 +19,7 @@ public class Logger {
         println(msg, 1);
     }
 
-    public static void println(String msg, int verbosity) {
+    public static synchronized void println(String msg, int verbosity) {
         if(verbosity <= Settings.VERBOSITY) {
             System.out.println(msg);
         }
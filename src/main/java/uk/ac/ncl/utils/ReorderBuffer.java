@@ -0,0 +1,59 @@
+package uk.ac.ncl.utils;
+
+/**
+ * Hands items produced out of order by several threads to a single consumer in sequence
+ * order. Producers put an item under its sequence number and park while it is more than
+ * {@code capacity} ahead of the next item to be taken; the consumer parks until the next
+ * item arrives. The item the consumer waits for always fits, so producers taking sequence
+ * numbers in order cannot deadlock. Closing the buffer releases all waiting threads and
+ * makes further puts fail, which lets producers stop as soon as the consumer is done.
+ */
+public class ReorderBuffer<T> {
+    private final Object[] slots;
+    private long next = 0;
+    private boolean closed = false;
+
+    public ReorderBuffer(int capacity) {
+        slots = new Object[capacity];
+    }
+
+    /**
+     * Puts the item under its sequence number, waiting until it fits in the window.
+     *
+     * @return false if the buffer has been closed and the item was dropped.
+     */
+    public synchronized boolean put(long sequence, T item) throws InterruptedException {
+        while(!closed && sequence >= next + slots.length) wait();
+        if(closed) return false;
+        slots[(int) (sequence % slots.length)] = item;
+        if(sequence == next) notifyAll();
+        return true;
+    }
+
+    /**
+     * Takes the next item in sequence order, waiting until it has been put.
+     *
+     * @return the item, or null if the buffer has been closed.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized T take() throws InterruptedException {
+        int slot = (int) (next % slots.length);
+        while(!closed && slots[slot] == null) wait();
+        if(closed) return null;
+        T item = (T) slots[slot];
+        slots[slot] = null;
+        next++;
+        // The window moved by one, so the producer of the item it admitted can proceed.
+        notifyAll();
+        return item;
+    }
+
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+}
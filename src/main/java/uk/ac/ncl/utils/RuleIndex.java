@@ -0,0 +1,544 @@
+package uk.ac.ncl.utils;
+
+import uk.ac.ncl.Settings;
+import uk.ac.ncl.structure.Rule;
+import uk.ac.ncl.structure.SimpleInsRule;
+import uk.ac.ncl.structure.Template;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingDeque;
+
+/**
+ * Rule index files, holding the specialized templates of a target and their instantiated rules.
+ * <p>
+ * The binary format is a sequence of self-contained template blocks followed by a directory
+ * and a fixed-size tail. A block stores the template index and its rule index string, the six
+ * template measures, and then its instantiated rules as columns: types, head anchorings, tail
+ * anchorings and one float column per measure. Each directory entry holds the offset and length
+ * of a block, its ordering score and the max quality of its rules. Ordering an index only rewrites
+ * the directory, and reading maps the file instead of parsing it. Blocks are written and read
+ * column by column, so a block may exceed the 2GB limit of a buffer; version 1 indexes, whose
+ * directory keeps block lengths as ints, are still read.
+ * <p>
+ * The text format is the original {@code ABS: } line format and can still be written by setting
+ * {@code rule_index_format} to {@code text}.
+ */
+public class RuleIndex {
+    private final static int MAGIC = 0x47504649;
+    private final static int VERSION = 2;
+    private final static int TAIL_SIZE = 20;
+    private final static int CHUNK_SIZE = 1 << 20;
+    public final static int MEASURES = 6;
+
+    private static int entrySize(int version) {
+        return version == 1 ? 20 : 24;
+    }
+
+    public static boolean binaryFormat() {
+        return !Settings.RULE_INDEX_FORMAT.equals("text");
+    }
+
+    public static String extension() {
+        return binaryFormat() ? ".bin" : ".txt";
+    }
+
+    /**
+     * @return the index file of the given name in the home folder, preferring a binary index
+     * over a text one when both exist.
+     */
+    public static File locate(File ruleIndexHome, String name) {
+        File binary = new File(ruleIndexHome, name + ".bin");
+        return binary.exists() ? binary : new File(ruleIndexHome, name + ".txt");
+    }
+
+    public static boolean isBinary(File file) {
+        if(file.length() < TAIL_SIZE) return false;
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return readTail(channel) != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Column of the measure selected by {@code Settings.QUALITY_MEASURE}.
+     */
+    private static int qualityColumn() {
+        switch (Settings.QUALITY_MEASURE) {
+            case "standardConf":
+                return 0;
+            case "smoothedConf":
+                return 1;
+            case "pcaConf":
+                return 2;
+            default:
+                return 3;
+        }
+    }
+
+    /**
+     * Measures are kept with the five decimals of the text format, so rules tied in a text
+     * index are also tied in a binary one.
+     */
+    private static float round(double value) {
+        return (float) (Math.round(value * 100000d) / 100000d);
+    }
+
+    private static void setMeasures(Rule rule, double standardConf, double smoothedConf, double pcaConf
+            , double apcaConf, double headCoverage, double validPrecision) {
+        rule.stats.setStandardConf(standardConf);
+        rule.stats.setSmoothedConf(smoothedConf);
+        rule.stats.setPcaConf(pcaConf);
+        rule.stats.setApcaConf(apcaConf);
+        rule.stats.setHeadCoverage(headCoverage);
+        rule.stats.setValidPrecision(validPrecision);
+    }
+
+    /**
+     * Instantiated rules of a template in columnar form. Adding is thread-safe.
+     */
+    public static class Block {
+        private int size = 0;
+        private byte[] types = new byte[16];
+        private long[] heads = new long[16];
+        private long[] tails = new long[16];
+        private float[][] measures = new float[MEASURES][16];
+
+        public synchronized void add(Rule rule) {
+            if(size == types.length) grow(size * 2);
+            types[size] = (byte) rule.getType();
+            heads[size] = rule.getHeadAnchoring();
+            tails[size] = rule.getType() == 2 ? rule.getTailAnchoring() : 0;
+            measures[0][size] = round(rule.getStandardConf());
+            measures[1][size] = round(rule.getSmoothedConf());
+            measures[2][size] = round(rule.getPcaConf());
+            measures[3][size] = round(rule.getApcaConf());
+            measures[4][size] = round(rule.getHeadCoverage());
+            measures[5][size] = round(rule.getValidPrecision());
+            size++;
+        }
+
+        public synchronized void addAll(Block other) {
+            if(size + other.size > types.length) grow(Math.max(size + other.size, size * 2));
+            System.arraycopy(other.types, 0, types, size, other.size);
+            System.arraycopy(other.heads, 0, heads, size, other.size);
+            System.arraycopy(other.tails, 0, tails, size, other.size);
+            for (int m = 0; m < MEASURES; m++)
+                System.arraycopy(other.measures[m], 0, measures[m], size, other.size);
+            size += other.size;
+        }
+
+        public synchronized int size() {
+            return size;
+        }
+
+        public synchronized boolean isEmpty() {
+            return size == 0;
+        }
+
+        private void grow(int capacity) {
+            types = Arrays.copyOf(types, capacity);
+            heads = Arrays.copyOf(heads, capacity);
+            tails = Arrays.copyOf(tails, capacity);
+            for (int m = 0; m < MEASURES; m++)
+                measures[m] = Arrays.copyOf(measures[m], capacity);
+        }
+    }
+
+    /**
+     * Appends templates to a rule index. Writes from concurrent specialization tasks are
+     * serialized by the writer, and closing it completes the file.
+     */
+    public static abstract class Writer implements AutoCloseable {
+        /**
+         * Opens a writer in the format set by {@code rule_index_format}. If {@code append} is set,
+         * templates already in the file are kept.
+         */
+        public static Writer open(File file, boolean append) {
+            return binaryFormat() ? new BinaryWriter(file, append) : new TextWriter(file, append);
+        }
+
+        /**
+         * Writes a closed template, or an open template with its instantiated rules.
+         */
+        public abstract void write(int index, Template template, Block block);
+
+        @Override
+        public abstract void close();
+    }
+
+    private static class TextWriter extends Writer {
+        private final BlockingQueue<String> contents = new LinkedBlockingDeque<>(1000000);
+        private final AsyncWriter writer;
+
+        TextWriter(File file, boolean append) {
+            writer = new AsyncWriter("RuleIndexWriter", file, contents, append, true);
+        }
+
+        @Override
+        public void write(int index, Template template, Block block) {
+            DecimalFormat f = new DecimalFormat("####.#####");
+            StringBuilder sb = new StringBuilder("ABS: ").append(index).append("\t")
+                    .append(template.toRuleIndexString()).append("\t")
+                    .append(f.format(template.getStandardConf())).append("\t")
+                    .append(f.format(template.getSmoothedConf())).append("\t")
+                    .append(f.format(template.getPcaConf())).append("\t")
+                    .append(f.format(template.getApcaConf())).append("\t")
+                    .append(f.format(template.getHeadCoverage())).append("\t")
+                    .append(f.format(template.getValidPrecision())).append("\n");
+            if(block != null) {
+                synchronized (block) {
+                    for (int i = 0; i < block.size; i++) {
+                        if(i != 0) sb.append("\t");
+                        sb.append(block.types[i]).append(",").append(block.heads[i]).append(",");
+                        if(block.types[i] == 2) sb.append(block.tails[i]).append(",");
+                        for (int m = 0; m < MEASURES; m++) {
+                            if(m != 0) sb.append(",");
+                            sb.append(f.format(block.measures[m][i]));
+                        }
+                    }
+                }
+                sb.append("\n");
+            }
+            try {
+                contents.put(sb.toString());
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                System.exit(-1);
+            }
+        }
+
+        @Override
+        public void close() {
+            writer.close();
+        }
+    }
+
+    private static class BinaryWriter extends Writer {
+        private final FileChannel channel;
+        private final List<Entry> entries = new ArrayList<>();
+        private long position = 0;
+
+        BinaryWriter(File file, boolean append) {
+            try {
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE
+                        , StandardOpenOption.READ, StandardOpenOption.WRITE);
+                long[] tail = append ? readTail(channel) : null;
+                if(tail != null) {
+                    entries.addAll(readDirectory(channel, tail));
+                    position = tail[0];
+                }
+                channel.truncate(position);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot open rule index " + file, e);
+            }
+        }
+
+        @Override
+        public void write(int index, Template template, Block block) {
+            byte[] rule = template.toRuleIndexString().getBytes(StandardCharsets.UTF_8);
+            ByteBuffer header = ByteBuffer.allocate(4 + 4 + rule.length + 4 * MEASURES + 4);
+            header.putInt(index).putInt(rule.length).put(rule);
+            header.putFloat(round(template.getStandardConf()))
+                    .putFloat(round(template.getSmoothedConf()))
+                    .putFloat(round(template.getPcaConf()))
+                    .putFloat(round(template.getApcaConf()))
+                    .putFloat(round(template.getHeadCoverage()))
+                    .putFloat(round(template.getValidPrecision()));
+
+            if(block == null) {
+                header.putInt(0);
+                float quality = header.getFloat(8 + rule.length + 4 * qualityColumn());
+                header.flip();
+                long offset = reserve(header.remaining());
+                write(header, offset);
+                addEntry(new Entry(offset, header.limit(), quality, quality));
+                return;
+            }
+
+            synchronized (block) {
+                int size = block.size;
+                header.putInt(size);
+                header.flip();
+                long length = header.remaining() + (long) size * (1 + 8 + 8 + 4 * MEASURES);
+                long offset = reserve(length);
+                long position = write(header, offset);
+
+                // Columns go through a bounded buffer, as a block may not fit in one.
+                ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+                for (int i = 0; i < size; i++) {
+                    if(!buffer.hasRemaining()) position = flush(buffer, position);
+                    buffer.put(block.types[i]);
+                }
+                for (long[] column : new long[][]{block.heads, block.tails}) {
+                    for (int i = 0; i < size; i++) {
+                        if(buffer.remaining() < 8) position = flush(buffer, position);
+                        buffer.putLong(column[i]);
+                    }
+                }
+                for (int m = 0; m < MEASURES; m++) {
+                    for (int i = 0; i < size; i++) {
+                        if(buffer.remaining() < 4) position = flush(buffer, position);
+                        buffer.putFloat(block.measures[m][i]);
+                    }
+                }
+                flush(buffer, position);
+
+                float[] qualities = block.measures[qualityColumn()];
+                double sum = 0;
+                float maxQuality = 0;
+                for (int i = 0; i < size; i++) {
+                    sum += qualities[i];
+                    maxQuality = Math.max(maxQuality, qualities[i]);
+                }
+                addEntry(new Entry(offset, length, size == 0 ? 0 : (float) (sum / size), maxQuality));
+            }
+        }
+
+        /**
+         * @return the offset of a range of the given length at the end of the blocks, which the
+         * caller writes without holding the writer.
+         */
+        private synchronized long reserve(long length) {
+            long offset = position;
+            position += length;
+            return offset;
+        }
+
+        private synchronized void addEntry(Entry entry) {
+            entries.add(entry);
+        }
+
+        private long flush(ByteBuffer buffer, long position) {
+            buffer.flip();
+            position = write(buffer, position);
+            buffer.clear();
+            return position;
+        }
+
+        private long write(ByteBuffer buffer, long position) {
+            try {
+                while(buffer.hasRemaining())
+                    position += channel.write(buffer, position);
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.exit(-1);
+            }
+            return position;
+        }
+
+        @Override
+        public synchronized void close() {
+            try {
+                writeDirectory(channel, entries, position);
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.exit(-1);
+            }
+        }
+    }
+
+    private static class Entry {
+        final long offset;
+        final long length;
+        final float score;
+        final float maxQuality;
+
+        Entry(long offset, long length, float score, float maxQuality) {
+            this.offset = offset;
+            this.length = length;
+            this.score = score;
+            this.maxQuality = maxQuality;
+        }
+    }
+
+    /**
+     * @return the directory offset, entry count and version, or null if the file does not end
+     * with a valid tail.
+     */
+    private static long[] readTail(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if(size < TAIL_SIZE) return null;
+        ByteBuffer tail = ByteBuffer.allocate(TAIL_SIZE);
+        while(tail.hasRemaining())
+            if(channel.read(tail, size - TAIL_SIZE + tail.position()) < 0) return null;
+        tail.flip();
+        long directoryOffset = tail.getLong();
+        int count = tail.getInt();
+        int version = tail.getInt();
+        int magic = tail.getInt();
+        if(magic != MAGIC || (version != 1 && version != VERSION)
+                || directoryOffset + (long) count * entrySize(version) + TAIL_SIZE != size)
+            return null;
+        return new long[]{directoryOffset, count, version};
+    }
+
+    private static List<Entry> readDirectory(FileChannel channel, long[] tail) throws IOException {
+        int count = (int) tail[1];
+        int version = (int) tail[2];
+        ByteBuffer directory = ByteBuffer.allocate(count * entrySize(version));
+        while(directory.hasRemaining())
+            channel.read(directory, tail[0] + directory.position());
+        directory.flip();
+        List<Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long offset = directory.getLong();
+            long length = version == 1 ? directory.getInt() : directory.getLong();
+            entries.add(new Entry(offset, length, directory.getFloat(), directory.getFloat()));
+        }
+        return entries;
+    }
+
+    private static void writeDirectory(FileChannel channel, List<Entry> entries, long offset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(entries.size() * entrySize(VERSION) + TAIL_SIZE);
+        for (Entry entry : entries)
+            buffer.putLong(entry.offset).putLong(entry.length).putFloat(entry.score).putFloat(entry.maxQuality);
+        buffer.putLong(offset).putInt(entries.size()).putInt(VERSION).putInt(MAGIC);
+        buffer.flip();
+        channel.truncate(offset);
+        long position = offset;
+        while(buffer.hasRemaining())
+            position += channel.write(buffer, position);
+    }
+
+    /**
+     * Orders the templates of a binary index by descending score, rewriting only the directory.
+     * The score of a closed template is its quality and that of an open template is the mean
+     * quality of its instantiated rules.
+     */
+    public static void order(File file) {
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long[] tail = readTail(channel);
+            if(tail == null) throw new IllegalStateException("Not a binary rule index: " + file);
+            List<Entry> entries = readDirectory(channel, tail);
+            entries.sort(Comparator.comparingDouble((Entry e) -> e.score).reversed());
+            writeDirectory(channel, entries, tail[0]);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Memory-mapped view of a binary rule index, listing templates in directory order.
+     */
+    public static class Reader implements AutoCloseable {
+        private final FileChannel channel;
+        private final List<Entry> entries;
+        private final MappedByteBuffer mapped;
+
+        public Reader(File file) {
+            try {
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                long[] tail = readTail(channel);
+                if(tail == null) throw new IllegalStateException("Not a binary rule index: " + file);
+                entries = readDirectory(channel, tail);
+                mapped = tail[0] <= Integer.MAX_VALUE ? channel.map(FileChannel.MapMode.READ_ONLY, 0, tail[0]) : null;
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot open rule index " + file, e);
+            }
+        }
+
+        public int size() {
+            return entries.size();
+        }
+
+        /**
+         * @return the max quality of the rules of the i-th template.
+         */
+        public double maxQuality(int i) {
+            return entries.get(i).maxQuality;
+        }
+
+        /**
+         * @return the index of the i-th template in the context it was learned in.
+         */
+        public int templateIndex(int i) {
+            return map(entries.get(i).offset, 4).getInt(0);
+        }
+
+        public Template read(int i) {
+            return read(i, null);
+        }
+
+        /**
+         * Reads the i-th template into {@code template}, or into a new template if it is null.
+         * Closed templates get their measures, and open templates get their instantiated rules.
+         */
+        public Template read(int i, Template template) {
+            long offset = entries.get(i).offset;
+            int ruleLength = map(offset, 8).getInt(4);
+            ByteBuffer header = map(offset, 8 + ruleLength + 4 * MEASURES + 4);
+            int index = header.getInt();
+            header.getInt();
+            byte[] rule = new byte[ruleLength];
+            header.get(rule);
+            if(template == null)
+                template = new Template(index + "\t" + new String(rule, StandardCharsets.UTF_8));
+
+            float[] measures = new float[MEASURES];
+            for (int m = 0; m < MEASURES; m++) measures[m] = header.getFloat();
+            int size = header.getInt();
+            if(template.isClosed()) {
+                setMeasures(template, measures[0], measures[1], measures[2], measures[3], measures[4], measures[5]);
+                return template;
+            }
+
+            // Each column is mapped on its own, so none exceeds the limit of a buffer.
+            long columns = offset + header.limit();
+            ByteBuffer types = map(columns, size);
+            ByteBuffer heads = map(columns + size, 8L * size);
+            ByteBuffer tails = map(columns + 9L * size, 8L * size);
+            ByteBuffer[] measureColumns = new ByteBuffer[MEASURES];
+            for (int m = 0; m < MEASURES; m++)
+                measureColumns[m] = map(columns + 17L * size + 4L * m * size, 4L * size);
+            for (int r = 0; r < size; r++) {
+                SimpleInsRule insRule = new SimpleInsRule(template, types.get(r)
+                        , heads.getLong(r * 8), tails.getLong(r * 8));
+                setMeasures(insRule, measureColumns[0].getFloat(r * 4)
+                        , measureColumns[1].getFloat(r * 4)
+                        , measureColumns[2].getFloat(r * 4)
+                        , measureColumns[3].getFloat(r * 4)
+                        , measureColumns[4].getFloat(r * 4)
+                        , measureColumns[5].getFloat(r * 4));
+                template.insRules.add(insRule);
+            }
+            return template;
+        }
+
+        private ByteBuffer map(long offset, long length) {
+            try {
+                if(mapped != null) {
+                    ByteBuffer region = mapped.duplicate();
+                    region.position((int) offset).limit((int) (offset + length));
+                    return region.slice();
+                }
+                return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
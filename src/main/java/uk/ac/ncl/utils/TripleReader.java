@@ -0,0 +1,178 @@
+package uk.ac.ncl.utils;
+
+import uk.ac.ncl.Settings;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Shared loader of triple files with lines {@code head \t relation \t tail}. The file is
+ * memory-mapped and split at line breaks into chunks of about {@link #CHUNK_SIZE} bytes,
+ * which a pool of {@link Settings#THREAD_NUMBER} threads tokenizes on tabs,
+ * falling back to spaces for lines without three tab-separated fields as the old
+ * {@code split("\\s")} readers accepted them. The first three non-empty fields of a line
+ * are kept and trailing or extra ones ignored, as the old readers did; a line with fewer
+ * fails the read. Entity and relation names are interned in a dictionary of the read, so
+ * the triples of a file share one string per name. Triples are passed to the handler on
+ * the calling thread in file order, chunk by chunk as they are parsed, with at most two
+ * chunks per thread parsed ahead of the handler.
+ */
+public class TripleReader {
+    private final static int WINDOW = 1 << 30;
+    /**
+     * Size of the chunk parsed by one task, which bounds the triples held ahead of the handler.
+     */
+    private final static int CHUNK_SIZE = 1 << 24;
+
+    public interface TripleHandler {
+        void handle(String head, String relation, String tail);
+    }
+
+    /**
+     * @throws UncheckedIOException if the file cannot be read.
+     * @throws IllegalArgumentException if a line has fewer than three fields.
+     */
+    public static void read(File file, TripleHandler handler) {
+        ConcurrentHashMap<String, String> dictionary = new ConcurrentHashMap<>();
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            int threads = Math.max(1, Settings.THREAD_NUMBER);
+            List<MappedByteBuffer> chunks = mapChunks(channel, (int) Math.min(Integer.MAX_VALUE
+                    , Math.max(threads, channel.size() / CHUNK_SIZE + 1)));
+            ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, chunks.size())));
+            try {
+                Deque<Future<String[]>> parsed = new ArrayDeque<>();
+                int next = 0;
+                while(next < chunks.size() || !parsed.isEmpty()) {
+                    while(next < chunks.size() && parsed.size() < 2 * threads) {
+                        MappedByteBuffer chunk = chunks.get(next++);
+                        parsed.add(pool.submit(() -> parse(file, chunk, dictionary)));
+                    }
+                    String[] triples = parsed.poll().get();
+                    for (int i = 0; i < triples.length; i += 3)
+                        handler.handle(triples[i], triples[i + 1], triples[i + 2]);
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted reading: " + file.getPath(), e);
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Maps the file as about {@code chunks} consecutive buffers of whole lines, each smaller
+     * than the 2GB limit of a mapping.
+     */
+    static List<MappedByteBuffer> mapChunks(FileChannel channel, int chunks) throws IOException {
+        long length = channel.size();
+        chunks = (int) Math.max(chunks, length / WINDOW + 1);
+        List<MappedByteBuffer> buffers = new ArrayList<>();
+        long start = 0;
+        for (int i = 0; i < chunks && start < length; i++) {
+            long end = i == chunks - 1 ? length : lineEnd(channel, Math.max(start, length / chunks * (i + 1)), length);
+            if(end > start)
+                buffers.add(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+            start = end;
+        }
+        return buffers;
+    }
+
+    /**
+     * @return the position after the first line break at or after {@code position}.
+     */
+    private static long lineEnd(FileChannel channel, long position, long length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        while(position < length) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if(read <= 0) break;
+            for (int i = 0; i < read; i++) {
+                if(buffer.get(i) == '\n') return position + i + 1;
+            }
+            position += read;
+        }
+        return length;
+    }
+
+    private static String[] parse(File file, MappedByteBuffer chunk, ConcurrentHashMap<String, String> dictionary) {
+        String[] triples = new String[3 * 1024];
+        int size = 0;
+        int[] bounds = new int[6];
+        int limit = chunk.limit();
+        int position = 0;
+        while(position < limit) {
+            int end = position;
+            while(end < limit && chunk.get(end) != '\n') end++;
+            int lineEnd = end > position && chunk.get(end - 1) == '\r' ? end - 1 : end;
+            int fields = tokenize(chunk, position, lineEnd, false, bounds);
+            if(fields < 3) fields = tokenize(chunk, position, lineEnd, true, bounds);
+            if(fields == 3) {
+                if(size + 3 > triples.length)
+                    triples = Arrays.copyOf(triples, triples.length * 2);
+                for (int i = 0; i < 3; i++)
+                    triples[size++] = intern(dictionary, decode(chunk, bounds[i * 2], bounds[i * 2 + 1]));
+            } else if(fields > 0) {
+                throw new IllegalArgumentException("Invalid triple in: " + file.getPath()
+                        + ": " + decode(chunk, position, lineEnd));
+            }
+            position = end + 1;
+        }
+        return Arrays.copyOf(triples, size);
+    }
+
+    /**
+     * Finds the first three non-empty fields of the line split on tabs, or on tabs and spaces.
+     *
+     * @return the number of fields found, at most three.
+     */
+    private static int tokenize(ByteBuffer chunk, int from, int to, boolean spaces, int[] bounds) {
+        int field = 0, start = from;
+        for (int i = from; i <= to && field < 3; i++) {
+            if(i < to) {
+                byte b = chunk.get(i);
+                if(b != '\t' && !(spaces && b == ' ')) continue;
+            }
+            if(i > start) {
+                bounds[field * 2] = start;
+                bounds[field * 2 + 1] = i;
+                field++;
+            }
+            start = i + 1;
+        }
+        return field;
+    }
+
+    private static String intern(ConcurrentHashMap<String, String> dictionary, String name) {
+        String interned = dictionary.putIfAbsent(name, name);
+        return interned == null ? name : interned;
+    }
+
+    private static String decode(ByteBuffer chunk, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = chunk.get(from + i);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
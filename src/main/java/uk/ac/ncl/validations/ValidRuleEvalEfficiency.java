@@ -2,9 +2,11 @@ package uk.ac.ncl.validations;
 
 import uk.ac.ncl.core.Engine;
 import uk.ac.ncl.core.GraphOps;
+import uk.ac.ncl.graph.Neo4jGraphAccess;
 import uk.ac.ncl.structure.*;
 import uk.ac.ncl.utils.IO;
 import uk.ac.ncl.utils.Logger;
+import uk.ac.ncl.utils.RuleIndex;
 import uk.ac.ncl.utils.MathUtils;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.MultimapBuilder;
@@ -117,7 +119,20 @@ public class ValidRuleEvalEfficiency extends Engine {
     public Set<Rule> readRules(String target) {
         Set<Rule> rules = new HashSet<>();
         int ruleCount = 0;
-        File ruleIndexFile = new File(ruleIndexHome, target.replaceAll("[:/<>]", "_") + ".txt");
+        File ruleIndexFile = RuleIndex.locate(ruleIndexHome, target.replaceAll("[:/<>]", "_"));
+        if(RuleIndex.isBinary(ruleIndexFile)) {
+            try (RuleIndex.Reader reader = new RuleIndex.Reader(ruleIndexFile)) {
+                for (int i = 0; i < reader.size(); i++) {
+                    Template rule = reader.read(i);
+                    for (SimpleInsRule insRule : rule.insRules)
+                        insRule.insRuleString(Neo4jGraphAccess.of(graph));
+                    ruleCount += rule.isClosed() ? 1 : rule.insRules.size();
+                    rules.add(rule);
+                }
+            }
+            Logger.println(MessageFormat.format("# Start Analyzing for Target: {0} | Rule Size: {1}", target, ruleCount));
+            return rules;
+        }
         try (LineIterator l = FileUtils.lineIterator(ruleIndexFile)) {
             while(l.hasNext()) {
                 String line = l.nextLine();
@@ -127,7 +142,7 @@ public class ValidRuleEvalEfficiency extends Engine {
                         String insRuleLine = l.nextLine();
                         for (String s : insRuleLine.split("\t")) {
                             SimpleInsRule insRule = new SimpleInsRule(rule, s);
-                            insRule.insRuleString(graph);
+                            insRule.insRuleString(Neo4jGraphAccess.of(graph));
                             rule.insRules.add(insRule);
                             ruleCount++;
                         }
@@ -170,11 +185,11 @@ public class ValidRuleEvalEfficiency extends Engine {
 
             long startingTime = System.currentTimeMillis();
             Supplier<Boolean> condition = () -> (System.currentTimeMillis() - startingTime) / 1000 > 30;
-            CountedSet<Pair> bodyGroundings = GraphOps.bodyGroundingCoreAPI(graph, rule, false, condition);
+            LongPairCountedSet bodyGroundings = GraphOps.bodyGroundingCoreAPI(graph, rule, false, condition);
 
             Multimap<Long, Long> tailToOriginals = MultimapBuilder.hashKeys().hashSetValues().build();
-            for (Pair bodyGrounding : bodyGroundings) {
-                tailToOriginals.put(bodyGrounding.objId, bodyGrounding.subId);
+            for (int i = 0; i < bodyGroundings.size(); i++) {
+                tailToOriginals.put(bodyGroundings.obj(i), bodyGroundings.sub(i));
             }
 
             if(rule.isClosed()) {
@@ -240,7 +255,7 @@ public class ValidRuleEvalEfficiency extends Engine {
 
             long startingTime = System.currentTimeMillis();
             Supplier<Boolean> condition = () -> (System.currentTimeMillis() - startingTime) / 1000 > 30;
-            CountedSet<Pair> bodyGroundings = GraphOps.bodyGroundingCoreAPI(graph, rule, false, condition);
+            LongPairCountedSet bodyGroundings = GraphOps.bodyGroundingCoreAPI(graph, rule, false, condition);
 
             if(rule.isClosed()) {
                 count++;
@@ -249,8 +264,8 @@ public class ValidRuleEvalEfficiency extends Engine {
             else {
                 count++;
                 Multimap<Long, Long> tailToOriginals = MultimapBuilder.hashKeys().hashSetValues().build();
-                for (Pair bodyGrounding : bodyGroundings) {
-                    tailToOriginals.put(bodyGrounding.objId, bodyGrounding.subId);
+                for (int i = 0; i < bodyGroundings.size(); i++) {
+                    tailToOriginals.put(bodyGroundings.obj(i), bodyGroundings.sub(i));
                 }
 
                 Collection<Long> originals = rule.isFromSubject() ? objToOriginals.get(rule.getHeadAnchoring()) :
@@ -269,10 +284,11 @@ public class ValidRuleEvalEfficiency extends Engine {
         return elapsedTime;
     }
 
-    public void evalClosedRule(Rule rule, CountedSet<Pair> bodyGroundings, Set<Pair> groundTruth) {
+    public void evalClosedRule(Rule rule, LongPairSet bodyGroundings, Set<Pair> groundTruth) {
         double totalPrediction = 0, correctPrediction = 0;
-        for (Pair grounding : bodyGroundings) {
-            Pair prediction = rule.isFromSubject() ? grounding : new Pair(grounding.objId, grounding.subId);
+        for (int i = 0; i < bodyGroundings.size(); i++) {
+            Pair prediction = rule.isFromSubject() ? new Pair(bodyGroundings.sub(i), bodyGroundings.obj(i))
+                    : new Pair(bodyGroundings.obj(i), bodyGroundings.sub(i));
             if(groundTruth.contains(prediction))
                 correctPrediction++;
             totalPrediction++;
@@ -555,15 +555,16 @@ public class ValidRuleQuality extends Engine {
         Set<Pair> predictions = new HashSet<>();
         long startTime = System.currentTimeMillis();
         Supplier<Boolean> condition = () -> ((double) System.currentTimeMillis() - startTime) / 1000d > 30;
-        CountedSet<Pair> bodyGroundings = GraphOps.bodyGroundingCoreAPI(graph, rule, false, condition);
+        LongPairCountedSet bodyGroundings = GraphOps.bodyGroundingCoreAPI(graph, rule, false, condition);
 
         if(rule.isClosed()) {
-            for (Pair grounding : bodyGroundings)
-                predictions.add(rule.isFromSubject() ? grounding : new Pair(grounding.objId, grounding.subId));
+            for (int i = 0; i < bodyGroundings.size(); i++)
+                predictions.add(rule.isFromSubject() ? new Pair(bodyGroundings.sub(i), bodyGroundings.obj(i))
+                        : new Pair(bodyGroundings.obj(i), bodyGroundings.sub(i)));
         } else {
             Multimap<Long, Long> tailToOriginals = MultimapBuilder.hashKeys().hashSetValues().build();
-            for (Pair bodyGrounding : bodyGroundings) {
-                tailToOriginals.put(bodyGrounding.objId, bodyGrounding.subId);
+            for (int i = 0; i < bodyGroundings.size(); i++) {
+                tailToOriginals.put(bodyGroundings.obj(i), bodyGroundings.sub(i));
             }
 
             if(rule.getType() == 0) {
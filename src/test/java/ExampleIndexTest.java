@@ -0,0 +1,53 @@
+import org.junit.Assert;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import uk.ac.ncl.structure.Pair;
+import uk.ac.ncl.utils.ExampleIndex;
+import uk.ac.ncl.utils.IO;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+public class ExampleIndexTest {
+
+    @Test
+    public void roundTripTest() throws IOException {
+        File home = Files.createTempDirectory("example-index").toFile();
+        File annotated = new File(home, "annotated_test.txt");
+        Files.copy(new File("data/UWCSE/data/annotated_test.txt").toPath(), annotated.toPath()
+                , StandardCopyOption.REPLACE_EXISTING);
+
+        Map<String, List<long[]>> expected = new TreeMap<>();
+        for (String line : Files.readAllLines(annotated.toPath())) {
+            String[] words = line.split("\t");
+            expected.computeIfAbsent(words[2], k -> new ArrayList<>()).add(new long[]{
+                    Long.parseLong(words[0]), Long.parseLong(words[1]), Long.parseLong(words[3])});
+        }
+
+        ExampleIndex index = ExampleIndex.of(annotated);
+        Assert.assertTrue(ExampleIndex.indexFile(annotated).exists());
+        Assert.assertEquals(new ArrayList<>(expected.keySet()), index.relations());
+
+        GraphDatabaseService graph = new GraphDatabaseFactory().newEmbeddedDatabase(new File(home, "graph.db"));
+        try {
+            for (Map.Entry<String, List<long[]>> entry : expected.entrySet()) {
+                List<long[]> records = new ArrayList<>();
+                index.forEach(entry.getKey(), (relId, headId, tailId) -> records.add(new long[]{relId, headId, tailId}));
+                Assert.assertEquals(entry.getValue().size(), index.count(entry.getKey()));
+                Assert.assertEquals(entry.getValue().size(), records.size());
+                for (int i = 0; i < records.size(); i++)
+                    Assert.assertArrayEquals(entry.getValue().get(i), records.get(i));
+
+                Set<Pair> pairs = new HashSet<>();
+                for (long[] record : entry.getValue()) pairs.add(new Pair(record[1], record[2]));
+                Assert.assertEquals(pairs, IO.readPair(graph, annotated, entry.getKey()));
+            }
+        } finally {
+            graph.shutdown();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+import org.junit.Assert;
+import org.junit.Test;
+import uk.ac.ncl.utils.ExternalSorter;
+
+import java.io.File;
+import java.util.*;
+
+public class ExternalSorterTest {
+
+    @Test
+    public void inMemoryTest() {
+        check(1 << 20, 0, 500, new Random(1));
+    }
+
+    @Test
+    public void spillTest() {
+        // About ten records per run.
+        check(600, 0, 2000, new Random(2));
+        check(600, 2, 2000, new Random(3));
+    }
+
+    @Test
+    public void multiLevelMergeTest() {
+        // One record per run, so more runs than the fan-in of a single merge.
+        check(1, 0, 300, new Random(4));
+        check(1, 3, 1000, new Random(5));
+    }
+
+    @Test
+    public void closeTest() {
+        int before = runFiles();
+        try(ExternalSorter sorter = new ExternalSorter(1, 2)) {
+            for (int i = 0; i < 100; i++) sorter.add(i, "record-" + i);
+        }
+        Assert.assertEquals(before, runFiles());
+    }
+
+    private static void check(long memoryLimit, int threads, int records, Random rand) {
+        int before = runFiles();
+        List<String> expected = new ArrayList<>();
+        TreeMap<String, Double> distinct = new TreeMap<>();
+        List<String> output = new ArrayList<>();
+        try(ExternalSorter sorter = new ExternalSorter(memoryLimit, threads)) {
+            for (int i = 0; i < records; i++) {
+                // Few scores and repeated texts, so that ties and duplicates are common.
+                String text = "rule-" + rand.nextInt(records / 2);
+                double score = score(text);
+                sorter.add(score, text);
+                distinct.put(text, score);
+            }
+            sorter.sort(output::add);
+        }
+        List<Map.Entry<String, Double>> entries = new ArrayList<>(distinct.entrySet());
+        entries.sort((a, b) -> a.getValue().equals(b.getValue())
+                ? a.getKey().compareTo(b.getKey()) : Double.compare(b.getValue(), a.getValue()));
+        for (Map.Entry<String, Double> entry : entries) expected.add(entry.getKey());
+        Assert.assertEquals(expected, output);
+        Assert.assertEquals(before, runFiles());
+    }
+
+    /**
+     * Score of a record, the same for every copy of its text.
+     */
+    private static double score(String text) {
+        return (text.hashCode() & 7) / 8d;
+    }
+
+    private static int runFiles() {
+        File[] files = new File(System.getProperty("java.io.tmpdir"))
+                .listFiles((dir, name) -> name.startsWith("gpfl-sort") && name.endsWith(".run"));
+        return files == null ? 0 : files.length;
+    }
+}
@@ -0,0 +1,132 @@
+import org.junit.Assert;
+import org.junit.Test;
+import uk.ac.ncl.structure.LongMultimap;
+import uk.ac.ncl.structure.LongPairCountedSet;
+import uk.ac.ncl.structure.LongPairSet;
+import uk.ac.ncl.structure.LongSet;
+
+import java.util.*;
+
+public class PrimitiveCollectionsTest {
+
+    @Test
+    public void longSetTest() {
+        Random rand = new Random(1);
+        LongSet set = new LongSet(2);
+        List<Long> order = new ArrayList<>();
+        Set<Long> expected = new HashSet<>();
+        // Enough elements to grow and rehash several times, with duplicates, zero and negatives.
+        for (int i = 0; i < 20000; i++) {
+            long value = rand.nextInt(15000) - 5000;
+            Assert.assertEquals(expected.add(value), set.add(value));
+            if(order.size() < expected.size()) order.add(value);
+        }
+        Assert.assertEquals(expected.size(), set.size());
+        for (int i = 0; i < order.size(); i++) Assert.assertEquals((long) order.get(i), set.get(i));
+        for (long value = -6000; value < 11000; value++) Assert.assertEquals(expected.contains(value), set.contains(value));
+        Assert.assertEquals(expected.size(), set.toArray().length);
+
+        for (int round = 0; round < 5; round++) {
+            set.clear();
+            Assert.assertTrue(set.isEmpty());
+            for (long value : expected) Assert.assertFalse(set.contains(value));
+            // Refill sparsely after the table has grown large.
+            for (int i = 0; i < 10; i++) Assert.assertTrue(set.add(round * 100 + i));
+            for (int i = 0; i < 10; i++) Assert.assertTrue(set.contains(round * 100 + i));
+            Assert.assertFalse(set.contains(-1));
+            Assert.assertEquals(10, set.size());
+        }
+    }
+
+    @Test
+    public void longPairSetTest() {
+        Random rand = new Random(2);
+        LongPairSet set = new LongPairSet();
+        Map<String, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            long sub = rand.nextInt(200), obj = rand.nextInt(200);
+            boolean added = !expected.containsKey(sub + "," + obj);
+            if(added) expected.put(sub + "," + obj, expected.size());
+            Assert.assertEquals(added, set.add(sub, obj));
+        }
+        Assert.assertEquals(expected.size(), set.size());
+        for (int sub = 0; sub < 200; sub++) {
+            for (int obj = 0; obj < 200; obj++) {
+                Integer index = expected.get(sub + "," + obj);
+                Assert.assertEquals(index == null ? -1 : index, set.indexOf(sub, obj));
+                if(index != null) {
+                    Assert.assertEquals(sub, set.sub(index));
+                    Assert.assertEquals(obj, set.obj(index));
+                }
+            }
+        }
+
+        set.clear();
+        Assert.assertTrue(set.isEmpty());
+        for (int sub = 0; sub < 200; sub++) Assert.assertFalse(set.contains(sub, sub));
+        Assert.assertTrue(set.add(3, 4));
+        Assert.assertTrue(set.contains(3, 4));
+        Assert.assertFalse(set.contains(4, 3));
+    }
+
+    @Test
+    public void longPairCountedSetTest() {
+        Random rand = new Random(3);
+        LongPairCountedSet set = new LongPairCountedSet(1);
+        Map<String, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            long sub = rand.nextInt(100), obj = rand.nextInt(100);
+            int times = rand.nextInt(3) + 1;
+            int count = expected.merge(sub + "," + obj, times, Integer::sum);
+            Assert.assertEquals(count, times == 1 ? set.increment(sub, obj) : set.increment(sub, obj, times));
+        }
+        Assert.assertEquals(expected.size(), set.size());
+        for (int i = 0; i < set.size(); i++)
+            Assert.assertEquals((int) expected.get(set.sub(i) + "," + set.obj(i)), set.count(i));
+        Assert.assertEquals(-1, set.get(100, 100));
+
+        LongPairCountedSet other = new LongPairCountedSet();
+        Assert.assertTrue(other.add(1, 2));
+        Assert.assertFalse(other.add(1, 2));
+        Assert.assertEquals(2, other.get(1, 2));
+    }
+
+    @Test
+    public void longMultimapTest() {
+        Random rand = new Random(4);
+        LongMultimap map = new LongMultimap(1);
+        Map<Long, TreeSet<Long>> expected = new LinkedHashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            long key = rand.nextInt(500) - 100, value = rand.nextInt(50);
+            expected.computeIfAbsent(key, k -> new TreeSet<>()).add(value);
+            map.put(key, value);
+        }
+        try {
+            map.get(0);
+            Assert.fail("Values are read before freezing.");
+        } catch (IllegalStateException ignored) {
+        }
+
+        Assert.assertSame(map, map.freeze());
+        Assert.assertSame(map, map.freeze());
+        Assert.assertEquals(expected.size(), map.keyCount());
+        int index = 0;
+        for (Map.Entry<Long, TreeSet<Long>> entry : expected.entrySet()) {
+            long[] values = entry.getValue().stream().mapToLong(Long::longValue).toArray();
+            Assert.assertEquals((long) entry.getKey(), map.key(index));
+            Assert.assertArrayEquals(values, map.values(index++));
+            Assert.assertArrayEquals(values, map.get(entry.getKey()));
+            Assert.assertTrue(map.containsKey(entry.getKey()));
+            for (long value = 0; value < 50; value++)
+                Assert.assertEquals(entry.getValue().contains(value), map.contains(entry.getKey(), value));
+        }
+        Assert.assertSame(LongMultimap.EMPTY, map.get(1000));
+        Assert.assertFalse(map.containsKey(1000));
+
+        try {
+            map.put(1, 1);
+            Assert.fail("A frozen multimap is changed.");
+        } catch (IllegalStateException ignored) {
+        }
+    }
+}
@@ -0,0 +1,128 @@
+import org.junit.Assert;
+import org.junit.Test;
+import uk.ac.ncl.structure.RankingEngine;
+
+import java.util.*;
+
+public class RankingEngineTest {
+
+    @Test
+    public void fullRankingTest() {
+        Random rand = new Random(7);
+        for (int round = 0; round < 200; round++) {
+            Map<Integer, double[]> scores = randomScores(rand);
+            RankingEngine<Integer> engine = RankingEngine.rank(scores, Integer.MAX_VALUE, null);
+            List<Integer> ranking = engine.top(scores.size());
+            Assert.assertEquals(scores.size(), ranking.size());
+            for (int i = 0; i < ranking.size(); i++) {
+                Integer candidate = ranking.get(i);
+                Assert.assertEquals(better(scores, candidate), engine.rankedAbove(candidate));
+                Assert.assertEquals(tied(scores, candidate), new HashSet<>(engine.tieGroup(candidate)));
+                Assert.assertEquals(i + 1, engine.rank(candidate));
+                Assert.assertEquals(scores.get(candidate)[0], engine.best(candidate), 0d);
+            }
+        }
+    }
+
+    @Test
+    public void topLimitTest() {
+        Random rand = new Random(11);
+        for (int round = 0; round < 200; round++) {
+            Map<Integer, double[]> scores = randomScores(rand);
+            int limit = 1 + rand.nextInt(5);
+            List<Integer> expected = bruteForce(scores);
+            RankingEngine<Integer> engine = RankingEngine.rank(scores, limit, null);
+            List<Integer> top = engine.top(limit);
+            Assert.assertEquals(Math.min(limit, scores.size()), top.size());
+            for (int i = 0; i < top.size(); i++) {
+                // Tied candidates may come in any order, but their score lists must match.
+                Assert.assertArrayEquals(sorted(scores.get(expected.get(i))), sorted(scores.get(top.get(i))), 0d);
+                Assert.assertEquals(better(scores, top.get(i)), engine.rankedAbove(top.get(i)));
+            }
+        }
+    }
+
+    @Test
+    public void focusTest() {
+        Random rand = new Random(13);
+        for (int round = 0; round < 200; round++) {
+            Map<Integer, double[]> scores = randomScores(rand);
+            List<Integer> keys = new ArrayList<>(scores.keySet());
+            Integer focus = keys.get(rand.nextInt(keys.size()));
+            RankingEngine<Integer> engine = RankingEngine.rank(scores, 1, focus);
+            Assert.assertEquals(better(scores, focus), engine.rankedAbove(focus));
+            Assert.assertEquals(tied(scores, focus), new HashSet<>(engine.tieGroup(focus)));
+        }
+    }
+
+    @Test
+    public void incrementalTest() {
+        Random rand = new Random(17);
+        for (int round = 0; round < 100; round++) {
+            Map<Integer, double[]> scores = randomScores(rand);
+            // Feed the rules one by one in descending quality, as rule application does.
+            TreeMap<Double, List<Integer>> levels = new TreeMap<>(Comparator.reverseOrder());
+            for (Map.Entry<Integer, double[]> entry : scores.entrySet())
+                for (double score : entry.getValue())
+                    levels.computeIfAbsent(score, k -> new ArrayList<>()).add(entry.getKey());
+            RankingEngine<Integer> engine = new RankingEngine<>();
+            for (Map.Entry<Double, List<Integer>> level : levels.entrySet())
+                engine.add(level.getValue(), level.getKey());
+            for (Integer candidate : scores.keySet())
+                Assert.assertEquals(better(scores, candidate), engine.rankedAbove(candidate));
+        }
+    }
+
+    private static Map<Integer, double[]> randomScores(Random rand) {
+        // Few distinct qualities and short lists, so that ties and shared prefixes are common.
+        Map<Integer, double[]> scores = new HashMap<>();
+        int candidates = 1 + rand.nextInt(30);
+        for (int c = 0; c < candidates; c++) {
+            double[] values = new double[1 + rand.nextInt(4)];
+            for (int i = 0; i < values.length; i++) values[i] = (1 + rand.nextInt(5)) / 10d;
+            scores.put(c, sorted(values));
+        }
+        return scores;
+    }
+
+    private static double[] sorted(double[] values) {
+        double[] copy = values.clone();
+        Arrays.sort(copy);
+        for (int i = 0; i < copy.length / 2; i++) {
+            double t = copy[i];
+            copy[i] = copy[copy.length - 1 - i];
+            copy[copy.length - 1 - i] = t;
+        }
+        return copy;
+    }
+
+    /**
+     * Lexicographic order of the descending score lists, where a list ranks above its prefixes.
+     */
+    private static int compare(double[] a, double[] b) {
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            if(a[i] != b[i]) return Double.compare(b[i], a[i]);
+        }
+        return Integer.compare(b.length, a.length);
+    }
+
+    private static List<Integer> bruteForce(Map<Integer, double[]> scores) {
+        List<Integer> ranking = new ArrayList<>(scores.keySet());
+        ranking.sort((a, b) -> compare(scores.get(a), scores.get(b)));
+        return ranking;
+    }
+
+    private static int better(Map<Integer, double[]> scores, Integer candidate) {
+        int count = 0;
+        for (double[] other : scores.values())
+            if(compare(other, scores.get(candidate)) < 0) count++;
+        return count;
+    }
+
+    private static Set<Integer> tied(Map<Integer, double[]> scores, Integer candidate) {
+        Set<Integer> tied = new HashSet<>();
+        for (Map.Entry<Integer, double[]> entry : scores.entrySet())
+            if(compare(entry.getValue(), scores.get(candidate)) == 0) tied.add(entry.getKey());
+        return tied;
+    }
+}
@@ -0,0 +1,110 @@
+import org.junit.Assert;
+import org.junit.Test;
+import uk.ac.ncl.utils.ReorderBuffer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ReorderBufferTest {
+
+    @Test
+    public void orderedTakeTest() throws InterruptedException {
+        ReorderBuffer<Long> buffer = new ReorderBuffer<>(4);
+        // Completed out of order within the window.
+        for (long sequence : new long[]{3, 1, 0, 2}) Assert.assertTrue(buffer.put(sequence, sequence));
+        for (long sequence = 0; sequence < 4; sequence++) Assert.assertEquals(sequence, (long) buffer.take());
+    }
+
+    @Test
+    public void concurrentProducersTest() throws InterruptedException {
+        int items = 20000;
+        ReorderBuffer<Long> buffer = new ReorderBuffer<>(8);
+        AtomicLong sequences = new AtomicLong();
+        List<Thread> producers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Random rand = new Random(i);
+            Thread producer = new Thread(() -> {
+                try {
+                    long sequence;
+                    while((sequence = sequences.getAndIncrement()) < items) {
+                        // Uneven work so that items complete out of order.
+                        if(rand.nextInt(10) == 0) Thread.sleep(0, rand.nextInt(100000));
+                        Assert.assertTrue(buffer.put(sequence, sequence * 2));
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            producer.start();
+            producers.add(producer);
+        }
+        for (long sequence = 0; sequence < items; sequence++) Assert.assertEquals(sequence * 2, (long) buffer.take());
+        for (Thread producer : producers) producer.join(10000);
+        for (Thread producer : producers) Assert.assertFalse(producer.isAlive());
+    }
+
+    @Test
+    public void windowTest() throws InterruptedException {
+        ReorderBuffer<Long> buffer = new ReorderBuffer<>(2);
+        AtomicBoolean put = new AtomicBoolean();
+        Thread producer = new Thread(() -> {
+            try {
+                put.set(buffer.put(2, 2L));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        producer.start();
+        producer.join(200);
+        // Sequence 2 is outside the window until sequence 0 is taken.
+        Assert.assertTrue(producer.isAlive());
+        Assert.assertTrue(buffer.put(1, 1L));
+        Assert.assertTrue(buffer.put(0, 0L));
+        Assert.assertEquals(0L, (long) buffer.take());
+        producer.join(10000);
+        Assert.assertFalse(producer.isAlive());
+        Assert.assertTrue(put.get());
+        Assert.assertEquals(1L, (long) buffer.take());
+        Assert.assertEquals(2L, (long) buffer.take());
+    }
+
+    @Test
+    public void closeTest() throws InterruptedException {
+        ReorderBuffer<Long> buffer = new ReorderBuffer<>(2);
+        AtomicBoolean put = new AtomicBoolean(true);
+        List<Long> taken = new ArrayList<>();
+        Thread producer = new Thread(() -> {
+            try {
+                put.set(buffer.put(5, 5L));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread consumer = new Thread(() -> {
+            try {
+                taken.add(buffer.take());
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        producer.start();
+        consumer.start();
+        producer.join(200);
+        Assert.assertTrue(producer.isAlive() && consumer.isAlive());
+
+        // Both the blocked producer and the blocked consumer are released.
+        buffer.close();
+        producer.join(10000);
+        consumer.join(10000);
+        Assert.assertFalse(producer.isAlive() || consumer.isAlive());
+        Assert.assertTrue(buffer.isClosed());
+        Assert.assertFalse(put.get());
+        Assert.assertEquals(1, taken.size());
+        Assert.assertNull(taken.get(0));
+        Assert.assertFalse(buffer.put(0, 0L));
+        Assert.assertNull(buffer.take());
+    }
+}
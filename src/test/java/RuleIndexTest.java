@@ -0,0 +1,130 @@
+import org.junit.Assert;
+import org.junit.Test;
+import uk.ac.ncl.Settings;
+import uk.ac.ncl.structure.Rule;
+import uk.ac.ncl.structure.SimpleInsRule;
+import uk.ac.ncl.structure.Template;
+import uk.ac.ncl.utils.RuleIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+
+public class RuleIndexTest {
+
+    @Test
+    public void binaryRoundTripTest() throws IOException {
+        Settings.RULE_INDEX_FORMAT = "binary";
+        Random rand = new Random(3);
+        File file = new File(Files.createTempDirectory("rule-index").toFile(), "target.bin");
+
+        List<Template> templates = new ArrayList<>();
+        List<RuleIndex.Block> blocks = new ArrayList<>();
+        templates.add(template("OAR\tadvisedBy(X,Y) <- publishes(X,V0,0), publishes(Y,V0,1)", rand));
+        // Large enough to be written through several chunks.
+        blocks.add(block(templates.get(0), 100000, rand));
+        templates.add(template("CAR\tadvisedBy(X,Y) <- tempAdvisedBy(X,Y,0)", rand));
+        blocks.add(null);
+        templates.add(template("OAR\tadvisedBy(X,Y) <- taughtBy(Y,V0,1)", rand));
+        blocks.add(new RuleIndex.Block());
+        templates.add(template("OAR\tadvisedBy(X,Y) <- ta(X,V0,0)", rand));
+        blocks.add(block(templates.get(3), 50, rand));
+
+        try(RuleIndex.Writer writer = RuleIndex.Writer.open(file, false)) {
+            for (int i = 0; i < 3; i++) writer.write(10 + i, templates.get(i), blocks.get(i));
+        }
+        // Appending keeps the blocks already in the file.
+        try(RuleIndex.Writer writer = RuleIndex.Writer.open(file, true)) {
+            writer.write(13, templates.get(3), blocks.get(3));
+        }
+        Assert.assertTrue(RuleIndex.isBinary(file));
+
+        try(RuleIndex.Reader reader = new RuleIndex.Reader(file)) {
+            Assert.assertEquals(templates.size(), reader.size());
+            for (int i = 0; i < reader.size(); i++) {
+                Assert.assertEquals(10 + i, reader.templateIndex(i));
+                check(templates.get(i), reader.read(i));
+            }
+        }
+
+        RuleIndex.order(file);
+        try(RuleIndex.Reader reader = new RuleIndex.Reader(file)) {
+            Assert.assertEquals(templates.size(), reader.size());
+            Set<Integer> indexes = new HashSet<>();
+            double previous = Double.MAX_VALUE;
+            for (int i = 0; i < reader.size(); i++) {
+                int index = reader.templateIndex(i);
+                Assert.assertTrue(indexes.add(index));
+                Template template = reader.read(i);
+                check(templates.get(index - 10), template);
+                double score = score(template);
+                Assert.assertTrue(score <= previous);
+                previous = score;
+            }
+        }
+    }
+
+    private static Template template(String rule, Random rand) {
+        Template template = new Template("0\t" + rule);
+        setMeasures(template, rand);
+        return template;
+    }
+
+    private static RuleIndex.Block block(Template template, int size, Random rand) {
+        RuleIndex.Block block = new RuleIndex.Block();
+        for (int i = 0; i < size; i++) {
+            int type = rand.nextInt(3) == 0 ? 2 : rand.nextInt(2);
+            SimpleInsRule rule = new SimpleInsRule(template, type, rand.nextInt(1 << 30), type == 2 ? rand.nextInt(1 << 30) : 0);
+            setMeasures(rule, rand);
+            block.add(rule);
+            template.insRules.add(rule);
+        }
+        return block;
+    }
+
+    private static void setMeasures(Rule rule, Random rand) {
+        // Five decimals, as kept by the index.
+        rule.stats.setStandardConf(rand.nextInt(100000) / 100000d);
+        rule.stats.setSmoothedConf(rand.nextInt(100000) / 100000d);
+        rule.stats.setPcaConf(rand.nextInt(100000) / 100000d);
+        rule.stats.setApcaConf(rand.nextInt(100000) / 100000d);
+        rule.stats.setHeadCoverage(rand.nextInt(100000) / 100000d);
+        rule.stats.setValidPrecision(rand.nextInt(100000) / 100000d);
+    }
+
+    private static void check(Template expected, Template actual) {
+        Assert.assertEquals(expected.toRuleIndexString(), actual.toRuleIndexString());
+        if(expected.isClosed()) {
+            checkMeasures(expected, actual);
+            return;
+        }
+        Assert.assertEquals(expected.insRules.size(), actual.insRules.size());
+        for (int r = 0; r < expected.insRules.size(); r++) {
+            Rule rule = expected.insRules.get(r), read = actual.insRules.get(r);
+            Assert.assertEquals(rule.getType(), read.getType());
+            Assert.assertEquals(rule.getHeadAnchoring(), read.getHeadAnchoring());
+            Assert.assertEquals(rule.getTailAnchoring(), read.getTailAnchoring());
+            checkMeasures(rule, read);
+        }
+    }
+
+    private static void checkMeasures(Rule expected, Rule actual) {
+        Assert.assertEquals((float) expected.getStandardConf(), actual.getStandardConf(), 0d);
+        Assert.assertEquals((float) expected.getSmoothedConf(), actual.getSmoothedConf(), 0d);
+        Assert.assertEquals((float) expected.getPcaConf(), actual.getPcaConf(), 0d);
+        Assert.assertEquals((float) expected.getApcaConf(), actual.getApcaConf(), 0d);
+        Assert.assertEquals((float) expected.getHeadCoverage(), actual.getHeadCoverage(), 0d);
+        Assert.assertEquals((float) expected.getValidPrecision(), actual.getValidPrecision(), 0d);
+    }
+
+    /**
+     * Ordering score of a template: its quality if closed, else the mean quality of its rules.
+     */
+    private static double score(Template template) {
+        if(template.isClosed()) return (float) template.getQuality();
+        double sum = 0;
+        for (Rule rule : template.insRules) sum += (float) rule.getQuality();
+        return template.insRules.isEmpty() ? 0 : (float) (sum / template.insRules.size());
+    }
+}